@@ -0,0 +1,125 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.benchmarks;
+
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.consumer.JwtConsumer;
+import org.jose4j.jwt.consumer.JwtConsumerBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustedanalytics.auth.gateway.engine.AdminControlInterceptor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authorizing one request with a token of UAA size. "perRequestConsumer" is the former
+ * implementation, building a consumer and parsing the token on every request; "sameToken" with
+ * cacheMaxSize=0 parses with a shared consumer, with cacheMaxSize>0 it is a cache hit.
+ * "rotatingTokens" cycles through more tokens than the cache holds when it is small.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdminControlInterceptorBenchmark {
+
+    private static final String ADMIN_SCOPE = "cloud_controller.admin";
+
+    private static final int TOKENS = 1000;
+
+    @Param({"0", "10000"})
+    public long cacheMaxSize;
+
+    private String token;
+
+    private String[] tokens;
+
+    private int nextToken;
+
+    private AdminControlInterceptor sameTokenInterceptor;
+
+    private AdminControlInterceptor rotatingTokensInterceptor;
+
+    @Setup
+    public void setUp() {
+        token = token("admin");
+        tokens = new String[TOKENS];
+        for (int i = 0; i < TOKENS; i++) {
+            tokens[i] = token("user" + i);
+        }
+        sameTokenInterceptor = new AdminControlInterceptor(() -> token, cacheMaxSize, 300);
+        rotatingTokensInterceptor = new AdminControlInterceptor(
+            () -> tokens[nextToken++ % TOKENS], cacheMaxSize, 300);
+    }
+
+    @Benchmark
+    public boolean perRequestConsumer() throws Exception {
+        JwtConsumer jwtConsumer = new JwtConsumerBuilder()
+            .setSkipAllValidators()
+            .setDisableRequireSignature()
+            .setSkipSignatureVerification()
+            .build();
+        JwtClaims claims = jwtConsumer.process(token).getJwtClaims();
+        return ((List<?>) claims.getClaimsMap().get("scope")).contains(ADMIN_SCOPE);
+    }
+
+    @Benchmark
+    public boolean sameToken() throws Exception {
+        return sameTokenInterceptor.preHandle(null, null, null);
+    }
+
+    @Benchmark
+    public boolean rotatingTokens() throws Exception {
+        return rotatingTokensInterceptor.preHandle(null, null, null);
+    }
+
+    /**
+     * @return token with the claims UAA issues, valid for an hour, with a dummy signature as
+     * signatures are not verified by the interceptor
+     */
+    private static String token(String userName) {
+        long now = System.currentTimeMillis() / 1000;
+        String claims = "{\"jti\":\"1f6f525ebd754b76ba16972dd934c15d\","
+            + "\"sub\":\"97c4b711-7c3b-45f7-b06e-c671c5915b27\","
+            + "\"scope\":[\"scim.read\",\"console.admin\",\"" + ADMIN_SCOPE + "\","
+            + "\"password.write\",\"scim.write\",\"openid\",\"cloud_controller.write\","
+            + "\"cloud_controller.read\",\"doppler.firehose\"],"
+            + "\"client_id\":\"cf\",\"cid\":\"cf\",\"azp\":\"cf\",\"grant_type\":\"password\","
+            + "\"user_id\":\"97c4b711-7c3b-45f7-b06e-c671c5915b27\","
+            + "\"user_name\":\"" + userName + "\",\"email\":\"" + userName + "\","
+            + "\"rev_sig\":\"a1a24b4\",\"iat\":" + now + ",\"exp\":" + (now + 3600) + ","
+            + "\"iss\":\"https://uaa.example.com/oauth/token\",\"zid\":\"uaa\","
+            + "\"aud\":[\"doppler\",\"scim\",\"console\",\"openid\",\"cloud_controller\","
+            + "\"password\",\"cf\"]}";
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        byte[] signature = new byte[256];
+        return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8))
+            + "." + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8))
+            + "." + encoder.encodeToString(signature);
+    }
+}
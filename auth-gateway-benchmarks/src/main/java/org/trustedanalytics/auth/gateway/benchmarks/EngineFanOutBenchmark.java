@@ -0,0 +1,193 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.embedded.EmbeddedWebApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.web.client.RestTemplate;
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Cost of running one operation through the engine on every gateway. The engine runs as in
+ * production, minus the token check (see AdminControlInterceptorBenchmark), and "execute" adds an
+ * organization through its REST API on a loopback connection. Gateways are stubs waiting for the
+ * given latency, so the difference between "execute" and the latency of the slowest gateway is
+ * the overhead of the request, dispatching, deadlines, metrics and result handling; how it grows
+ * with the number of gateways is the cost of the fan-out. "direct" calls the same stubs one after
+ * another on the calling thread, as a reference. Every invocation uses another organization, so
+ * calls are neither coalesced nor skipped by idempotency.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EngineFanOutBenchmark {
+
+    @Param({"1", "4", "8"})
+    public int gateways;
+
+    @Param({"0", "1000"})
+    public long latencyInMicros;
+
+    @Param({"bounded", "virtual"})
+    public String mode;
+
+    private final AtomicLong nextOrganization = new AtomicLong();
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private List<Authorizable> authorizables;
+
+    private ConfigurableApplicationContext engine;
+
+    private String organizationUrl;
+
+    @Setup
+    public void setUp() {
+        authorizables = new ArrayList<>();
+        for (int i = 0; i < gateways; i++) {
+            authorizables.add(new StubAuthorizable("stub" + i, latencyInMicros));
+        }
+        engine = new SpringApplicationBuilder(EngineApplication.class)
+            .properties("spring.config.name=benchmark", "server.port=0",
+                "security.basic.enabled=false", "management.security.enabled=false",
+                "engine.executor.mode=" + mode)
+            .initializers(context -> authorizables.forEach(authorizable -> context
+                .getBeanFactory().registerSingleton(authorizable.getName(), authorizable)))
+            .run();
+        int port = ((EmbeddedWebApplicationContext) engine).getEmbeddedServletContainer()
+            .getPort();
+        organizationUrl = "http://localhost:" + port + "/organizations/{orgId}";
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    /**
+     * Fails the benchmark with HttpServerErrorException if some gateway did not succeed.
+     */
+    @Benchmark
+    public void execute() {
+        restTemplate.put(organizationUrl, null, nextOrganization());
+    }
+
+    @Benchmark
+    public void direct() throws AuthorizableGatewayException {
+        String orgId = nextOrganization();
+        for (Authorizable authorizable : authorizables) {
+            authorizable.addOrganization(orgId);
+        }
+    }
+
+    private String nextOrganization() {
+        return "org" + nextOrganization.incrementAndGet();
+    }
+
+    /**
+     * Engine with its REST API and the stub gateways registered before startup. The token check
+     * needs a UAA token and Swagger is not needed, so both are left out.
+     */
+    @Configuration
+    @EnableAutoConfiguration
+    @ComponentScan(basePackages = "org.trustedanalytics.auth.gateway.engine",
+        excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX, pattern = {
+            "org\\.trustedanalytics\\.auth\\.gateway\\.engine\\.WebApplicationConfig",
+            "org\\.trustedanalytics\\.auth\\.gateway\\.engine\\.SwaggerConfig"}))
+    public static class EngineApplication {
+    }
+
+    /**
+     * Gateway doing nothing but waiting, like one blocked on a backend call.
+     */
+    private static class StubAuthorizable implements Authorizable {
+
+        private final String name;
+
+        private final long latencyInNanos;
+
+        StubAuthorizable(String name, long latencyInMicros) {
+            this.name = name;
+            this.latencyInNanos = TimeUnit.MICROSECONDS.toNanos(latencyInMicros);
+        }
+
+        @Override
+        public void addOrganization(String orgId) {
+            call();
+        }
+
+        @Override
+        public void addUser(String userId) {
+            call();
+        }
+
+        @Override
+        public void addUserToOrg(String userId, String orgId) {
+            call();
+        }
+
+        @Override
+        public void removeOrganization(String orgId) {
+            call();
+        }
+
+        @Override
+        public void removeUser(String userId) {
+            call();
+        }
+
+        @Override
+        public void removeUserFromOrg(String userId, String orgId) {
+            call();
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        private void call() {
+            if (latencyInNanos > 0) {
+                LockSupport.parkNanos(latencyInNanos);
+            }
+        }
+    }
+}
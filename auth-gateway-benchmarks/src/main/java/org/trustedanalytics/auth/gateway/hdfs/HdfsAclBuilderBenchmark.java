@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties;
+
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Cost of building the ACLs set on every organization directory: "defaultAcl" builds the list
+ * with the builder, "organizationAcl" resolves the compiled "organization" ACL of the layout the
+ * way HdfsGateway does for every organization, "usersAcl" builds one with an entry per user. Run
+ * with "-prof gc" to compare the allocation per organization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HdfsAclBuilderBenchmark {
+
+  @Param({"1", "10", "100"})
+  public int users;
+
+  private List<String> userNames;
+
+  private OrganizationLayout.AclTemplate organizationAcl;
+
+  private int organization;
+
+  @Setup
+  public void setUp() {
+    userNames = new ArrayList<>();
+    for (int i = 0; i < users; i++) {
+      userNames.add("user" + i);
+    }
+    organizationAcl = OrganizationLayout.AclTemplate.compile(
+        new HdfsLayoutProperties().getEffectiveAcls().get("organization"),
+        ImmutableMap.of("hiveUser", "hive", "arcadiaUser", "arcadia", "vcapUser", "vcap",
+            "technicalUser", "authgateway"));
+  }
+
+  @Benchmark
+  public List<AclEntry> defaultAcl() {
+    return HdfsAclBuilder.newInstanceWithDefaultEntries(FsAction.READ_EXECUTE)
+        .withUsersAclEntry(ImmutableMap.of("arcadia", FsAction.EXECUTE, "hive",
+            FsAction.EXECUTE, "vcap", FsAction.EXECUTE))
+        .withUserAclEntry("authgateway", FsAction.ALL)
+        .withGroupAclEntry("sys_org", FsAction.EXECUTE).build();
+  }
+
+  @Benchmark
+  public List<AclEntry> organizationAcl() {
+    return organizationAcl.resolve("org" + (organization++ & 1023));
+  }
+
+  @Benchmark
+  public List<AclEntry> usersAcl() {
+    return HdfsAclBuilder.newInstanceWithDefaultEntries(FsAction.ALL)
+        .withUsersAclEntry(userNames, FsAction.ALL).build();
+  }
+}
@@ -0,0 +1,91 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.fs.Path;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties.DirectoryProperties;
+
+/**
+ * Per-request cost of the organization layout: "resolve" puts the organization into the layout
+ * compiled at startup, as HdfsGateway does, "compileAndResolve" compiles the layout for every
+ * organization. "extraDirectories" adds directories with an ACL to the default layout.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrganizationLayoutBenchmark {
+
+  private static final Path ORG_PATH = new Path("/org/benchmark_org");
+
+  @Param({"0", "20"})
+  public int extraDirectories;
+
+  private HdfsLayoutProperties properties;
+
+  private Map<String, String> variables;
+
+  private OrganizationLayout layout;
+
+  @Setup
+  public void setUp() {
+    variables = new HashMap<>();
+    variables.put("hiveUser", "hive");
+    variables.put("arcadiaUser", "arcadia");
+    variables.put("vcapUser", "vcap");
+    variables.put("technicalUser", "authgateway");
+
+    properties = new HdfsLayoutProperties();
+    List<DirectoryProperties> directories =
+        new ArrayList<>(properties.getEffectiveDirectories());
+    for (int i = 0; i < extraDirectories; i++) {
+      DirectoryProperties directory = new DirectoryProperties();
+      directory.setPath("extra/{org}-" + i);
+      directory.setAcl("organization");
+      directories.add(directory);
+    }
+    properties.setDirectories(directories);
+    layout = OrganizationLayout.compile(properties, variables);
+  }
+
+  @Benchmark
+  public DirectoryTree resolve() {
+    return layout.resolve(ORG_PATH, "benchmark_org");
+  }
+
+  @Benchmark
+  public DirectoryTree compileAndResolve() {
+    return OrganizationLayout.compile(properties, variables).resolve(ORG_PATH, "benchmark_org");
+  }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.yarn.cloudera;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Cost of reading and writing the scheduled allocations of the YARN service, done on every queue
+ * added or deleted, for a cluster with the given number of organization queues. The "newMapper"
+ * variants create a mapper per call, as ApiConnection and YarnClouderaApiClient do, the
+ * "sharedMapper" variants reuse one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class YarnScheduledAllocationsBenchmark {
+
+  @Param({"10", "100", "1000"})
+  public int queues;
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private String json;
+
+  private YarnScheduledAllocations allocations;
+
+  @Setup
+  public void setUp() throws IOException {
+    json = allocationsJson(queues);
+    allocations = objectMapper.readValue(json, YarnScheduledAllocations.class);
+  }
+
+  @Benchmark
+  public YarnScheduledAllocations deserializeNewMapper() throws IOException {
+    return new ObjectMapper().readValue(json, YarnScheduledAllocations.class);
+  }
+
+  @Benchmark
+  public YarnScheduledAllocations deserializeSharedMapper() throws IOException {
+    return objectMapper.readValue(json, YarnScheduledAllocations.class);
+  }
+
+  @Benchmark
+  public String serializeNewMapper() throws JsonProcessingException {
+    return new ObjectMapper().writeValueAsString(allocations);
+  }
+
+  @Benchmark
+  public String serializeSharedMapper() throws JsonProcessingException {
+    return objectMapper.writeValueAsString(allocations);
+  }
+
+  /**
+   * @return allocations in the form returned by Cloudera Manager, with a root queue holding the
+   * default queue and the given number of organization queues
+   */
+  private static String allocationsJson(int queues) {
+    StringBuilder json = new StringBuilder()
+        .append("{\"queuePlacementRules\":[{\"create\":false,\"name\":\"specified\"},")
+        .append("{\"create\":false,\"name\":\"user\"},{\"create\":false,\"name\":\"reject\"}],")
+        .append("\"users\":[],\"queues\":[{\"queues\":[")
+        .append(queueJson("default", "*"));
+    for (int i = 0; i < queues; i++) {
+      String name = "org" + i;
+      json.append(',').append(queueJson(name, name + " " + name));
+    }
+    return json
+        .append("],\"aclAdministerApps\":\"*\",\"aclSubmitApps\":\"*\",")
+        .append("\"minSharePreemptionTimeout\":null,\"schedulingPolicy\":\"drf\",")
+        .append("\"schedulablePropertiesList\":[{\"weight\":1,\"scheduleName\":\"default\"}],")
+        .append("\"name\":\"root\"}],\"defaultQueueSchedulingPolicy\":\"drf\",")
+        .append("\"defaultMinSharePreemptionTimeout\":null,\"fairSharePreemptionTimeout\":null,")
+        .append("\"queueMaxAMShareDefault\":null,\"queueMaxAppsDefault\":null,")
+        .append("\"userMaxAppsDefault\":null}")
+        .toString();
+  }
+
+  private static String queueJson(String name, String aclSubmitApps) {
+    return "{\"queues\":[],\"aclAdministerApps\":\"*\",\"aclSubmitApps\":\"" + aclSubmitApps
+        + "\",\"minSharePreemptionTimeout\":null,\"schedulingPolicy\":\"fair\","
+        + "\"schedulablePropertiesList\":[{\"weight\":1,"
+        + "\"maxResources\":{\"memory\":4096,\"vcores\":20},"
+        + "\"minResources\":{\"memory\":1024,\"vcores\":1},\"scheduleName\":\"default\"}],"
+        + "\"name\":\"" + name + "\"}";
+  }
+}
@@ -27,23 +27,32 @@ import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.context.web.WebAppConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import org.springframework.web.context.WebApplicationContext;
 import org.trustedanalytics.auth.gateway.Application;
 import org.trustedanalytics.auth.gateway.engine.WebApplicationConfig;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Map;
 
+import static org.hamcrest.CoreMatchers.containsString;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.springframework.security.test.web.servlet.setup.SecurityMockMvcConfigurers.springSecurity;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
 import static org.springframework.test.web.servlet.result.MockMvcResultHandlers.print;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -122,6 +131,39 @@ public class AuthGatewayControllerTest {
         assertTrue(Files.isDirectory(FileSystems.getDefault().getPath(SYSTEM_TEMP, ORG_ID)));
     }
 
+    @Test
+    public void addOrganizationAsync_shouldReturn202WithJobAndCreateDir() throws Exception {
+        MvcResult result = mvc.perform(
+            put("/organizations/" + ORG_ID + "?async=true")
+                .with(helper.bearerToken(ADMIN_NAME))
+        ).andExpect(status().isAccepted())
+            .andExpect(header().string("Location", containsString("/jobs/")))
+            .andExpect(content().string(containsString("ADD_ORGANIZATION")))
+            .andReturn();
+        String jobId = new ObjectMapper().readTree(result.getResponse().getContentAsString())
+            .get("id").asText();
+
+        MvcResult job = mvc.perform(
+            get("/jobs/" + jobId + "?wait=5")
+                .with(helper.bearerToken(ADMIN_NAME))
+        ).andExpect(request().asyncStarted()).andReturn();
+        mvc.perform(asyncDispatch(job))
+            .andExpect(status().isOk())
+            .andExpect(content().string(containsString("\"status\":\"SUCCEEDED\"")));
+
+        assertTrue(Files.isDirectory(FileSystems.getDefault().getPath(SYSTEM_TEMP, ORG_ID)));
+    }
+
+    @Test
+    public void getJob_unknownJob_shouldReturn404() throws Exception {
+        MvcResult job = mvc.perform(
+            get("/jobs/unknown")
+                .with(helper.bearerToken(ADMIN_NAME))
+        ).andReturn();
+        mvc.perform(asyncDispatch(job))
+            .andExpect(status().isNotFound());
+    }
+
     @Test
     public void addUserToOrg_shouldReturn200AndCreateFileInOrgDir() throws Exception {
         mvc.perform(put("/organizations/" + ORG_ID + "/users/" + USER_ID)
@@ -13,52 +13,130 @@
  */
 package org.trustedanalytics.auth.gateway.engine;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
+
 import org.jose4j.jwt.JwtClaims;
+import org.jose4j.jwt.MalformedClaimException;
+import org.jose4j.jwt.NumericDate;
 import org.jose4j.jwt.consumer.InvalidJwtException;
 import org.jose4j.jwt.consumer.JwtConsumer;
 import org.jose4j.jwt.consumer.JwtConsumerBuilder;
-import org.jose4j.jwt.consumer.JwtContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
 
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+/**
+ * Lets only requests with the cloud controller admin scope through. The decision for a token is
+ * remembered until the token expires (at most cacheTtl seconds), keyed by hash of the token, so
+ * clients reusing one token for many requests pay for parsing it once.
+ */
 public class AdminControlInterceptor extends HandlerInterceptorAdapter {
 
   private static final String UBER_ADMIN_SCOPE = "cloud_controller.admin";
 
+  private static final long DEFAULT_CACHE_MAX_SIZE = 10000;
+
+  private static final long DEFAULT_CACHE_TTL_IN_SECONDS = 300;
+
   private static final Logger LOGGER = LoggerFactory.getLogger(AdminControlInterceptor.class);
 
+  // claims are only read here, signature and expiry are verified by the OAuth2 resource filter
+  private static final JwtConsumer JWT_CONSUMER = new JwtConsumerBuilder()
+      .setSkipAllValidators()
+      .setDisableRequireSignature()
+      .setSkipSignatureVerification()
+      .build();
+
   private Supplier<String> tokenExtractor;
 
+  private final Cache<HashCode, AdminDecision> decisions;
+
   public AdminControlInterceptor(Supplier<String> tokenExtractor) {
+    this(tokenExtractor, DEFAULT_CACHE_MAX_SIZE, DEFAULT_CACHE_TTL_IN_SECONDS);
+  }
+
+  /**
+   * @param cacheMaxSize number of tokens whose decision is remembered, 0 disables the cache
+   * @param cacheTtlInSeconds longest time a decision is remembered, even if the token is valid
+   * for longer
+   */
+  public AdminControlInterceptor(Supplier<String> tokenExtractor, long cacheMaxSize,
+      long cacheTtlInSeconds) {
     super();
     this.tokenExtractor = tokenExtractor;
+    this.decisions = CacheBuilder.newBuilder()
+        .maximumSize(cacheMaxSize)
+        .expireAfterWrite(cacheTtlInSeconds, TimeUnit.SECONDS)
+        .build();
   }
 
   @Override
   public boolean preHandle(HttpServletRequest request,
                            HttpServletResponse response,
                            Object handler) throws Exception {
-    LOGGER.info("Check if cloudfoundry admin.");
+    LOGGER.debug("Check if cloudfoundry admin.");
     return checkIfAdmin();
   }
 
+  long cachedDecisions() {
+    return decisions.size();
+  }
+
   private boolean checkIfAdmin() throws InvalidJwtException {
-    JwtConsumer jwtConsumer = new JwtConsumerBuilder()
-        .setSkipAllValidators()
-        .setDisableRequireSignature()
-        .setSkipSignatureVerification()
-        .build();
+    String token = tokenExtractor.get();
+    HashCode key = Hashing.sha256().hashString(token, StandardCharsets.UTF_8);
+    long now = System.currentTimeMillis();
+    AdminDecision cached = decisions.getIfPresent(key);
+    if (cached != null && now < cached.expiresAt) {
+      return cached.admin;
+    }
 
-    JwtContext context = jwtConsumer.process(tokenExtractor.get());
-    JwtClaims claims = context.getJwtClaims();
+    JwtClaims claims = JWT_CONSUMER.process(token).getJwtClaims();
     List<String> extractedScopes = (List<String>)claims.getClaimsMap().get("scope");
-    return extractedScopes.contains(UBER_ADMIN_SCOPE);
+    boolean admin = extractedScopes.contains(UBER_ADMIN_SCOPE);
+    long expiresAt = expiresAt(claims);
+    if (now < expiresAt) {
+      decisions.put(key, new AdminDecision(admin, expiresAt));
+    } else if (cached != null) {
+      decisions.invalidate(key);
+    }
+    return admin;
+  }
+
+  /**
+   * @return expiry of the token in epoch milliseconds, Long.MAX_VALUE if it has none, or 0 if it
+   * cannot be read, so the decision is not remembered
+   */
+  private static long expiresAt(JwtClaims claims) {
+    try {
+      NumericDate expirationTime = claims.getExpirationTime();
+      return expirationTime == null ? Long.MAX_VALUE : expirationTime.getValueInMillis();
+    } catch (MalformedClaimException e) {
+      LOGGER.warn("Cannot read expiration time of the token", e);
+      return 0;
+    }
+  }
+
+  private static class AdminDecision {
+
+    private final boolean admin;
+
+    private final long expiresAt;
+
+    AdminDecision(boolean admin, long expiresAt) {
+      this.admin = admin;
+      this.expiresAt = expiresAt;
+    }
   }
-}
\ No newline at end of file
+}
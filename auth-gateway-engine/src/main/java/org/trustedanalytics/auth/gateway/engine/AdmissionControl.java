@@ -0,0 +1,149 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.util.concurrent.RateLimiter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.counting;
+import static java.util.stream.Collectors.groupingBy;
+
+/**
+ * Admission of provisioning requests before any of their operations reaches a gateway.
+ *
+ * Every request takes one permit per operation from the token bucket of the operation type and
+ * from the bucket of every gateway, as every gateway gets every operation. A request waits at
+ * most "engine.admission.maxWait" milliseconds for its permits and at most
+ * "engine.admission.maxWaiting" requests wait at once; otherwise it is rejected with
+ * {@link AdmissionRejectedException}. A request larger than one second of permits is still
+ * admitted when its buckets are idle and makes the following requests wait instead, so bulk
+ * requests never starve. Permits taken from one bucket are not returned when another bucket
+ * rejects the request.
+ *
+ * Registered metrics: "engine.admission.admitted|rejected|wait|waiting", where wait times
+ * waiting for permits and waiting is the number of requests doing so, and
+ * "engine.admission.{operation|gateway}.{name}.rejected" naming the saturated bucket.
+ */
+class AdmissionControl {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionControl.class);
+
+    private static final String METRIC_PREFIX = "engine.admission";
+
+    private static final String OPERATION = "operation";
+
+    private static final String GATEWAY = "gateway";
+
+    private final Map<String, RateLimiter> operationLimiters = new HashMap<>();
+
+    private final Map<String, RateLimiter> gatewayLimiters = new HashMap<>();
+
+    private final Semaphore waiting;
+
+    private final long maxWaitInMillis;
+
+    private final MetricRegistry metricRegistry;
+
+    public AdmissionControl(List<String> gatewayNames, EngineProperties properties,
+        MetricRegistry metricRegistry) {
+        EngineProperties.AdmissionProperties admission = properties.getAdmission();
+        for (OperationType type : OperationType.values()) {
+            double rate = admission.getOperations().getOrDefault(type.getMetricName(), 0.0);
+            if (rate > 0) {
+                operationLimiters.put(type.getMetricName(), RateLimiter.create(rate));
+            }
+        }
+        for (String gatewayName : gatewayNames) {
+            double rate = properties.getRate(gatewayName);
+            if (rate > 0) {
+                gatewayLimiters.put(gatewayName, RateLimiter.create(rate));
+            }
+        }
+        this.waiting = new Semaphore(admission.getMaxWaiting());
+        this.maxWaitInMillis = admission.getMaxWait();
+        this.metricRegistry = metricRegistry;
+
+        String waitingName = MetricRegistry.name(METRIC_PREFIX, "waiting");
+        metricRegistry.remove(waitingName);
+        metricRegistry.register(waitingName,
+            (Gauge<Integer>) () -> admission.getMaxWaiting() - waiting.availablePermits());
+    }
+
+    /**
+     * Blocks until the operations can be sent to gateways without exceeding configured rates.
+     *
+     * @throws AdmissionRejectedException if permits are not available within the maximum wait
+     * or too many requests are waiting already
+     */
+    public void admit(List<Operation> operations) {
+        if (operations.isEmpty()) {
+            return;
+        }
+        if (!waiting.tryAcquire()) {
+            reject("Too many requests waiting for admission",
+                Math.max(TimeUnit.MILLISECONDS.toSeconds(maxWaitInMillis), 1));
+        }
+
+        Timer.Context wait = metricRegistry.timer(MetricRegistry.name(METRIC_PREFIX, "wait"))
+            .time();
+        try {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitInMillis);
+            Map<String, Long> operationCounts = operations.stream()
+                .collect(groupingBy(operation -> operation.getType().getMetricName(), counting()));
+            for (Map.Entry<String, Long> count : operationCounts.entrySet()) {
+                acquire(OPERATION, count.getKey(), operationLimiters.get(count.getKey()),
+                    count.getValue().intValue(), deadline);
+            }
+            for (Map.Entry<String, RateLimiter> limiter : gatewayLimiters.entrySet()) {
+                acquire(GATEWAY, limiter.getKey(), limiter.getValue(), operations.size(),
+                    deadline);
+            }
+            metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, "admitted")).inc();
+        } finally {
+            wait.stop();
+            waiting.release();
+        }
+    }
+
+    private void acquire(String kind, String name, RateLimiter limiter, int permits,
+        long deadline) {
+        if (limiter == null) {
+            return;
+        }
+        long timeout = Math.max(deadline - System.nanoTime(), 0);
+        if (!limiter.tryAcquire(permits, timeout, TimeUnit.NANOSECONDS)) {
+            metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, kind, name, "rejected"))
+                .inc();
+            reject(kind + " " + name + " saturated",
+                Math.max((long) Math.ceil(permits / limiter.getRate()), 1));
+        }
+    }
+
+    private void reject(String message, long retryAfterSeconds) {
+        metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, "rejected")).inc();
+        LOGGER.warn("Request rejected: " + message);
+        throw new AdmissionRejectedException(message, retryAfterSeconds);
+    }
+}
@@ -14,63 +14,234 @@
 package org.trustedanalytics.auth.gateway.engine;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
 
 import io.swagger.annotations.ApiOperation;
+import io.swagger.annotations.ApiParam;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 class AuthGatewayController {
 
+    private static final String ASYNC_DESCRIPTION =
+        "Return 202 with a job resource immediately instead of waiting for all gateways";
+
+    private static final String FAIL_FAST_DESCRIPTION =
+        "Cancel remaining gateway calls as soon as one gateway fails. " +
+        "Defaults to engine.failurePolicy";
+
+    private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+
+    private static final String RETRY_AFTER_HEADER = "Retry-After";
+
+    private static final String IDEMPOTENCY_KEY_DESCRIPTION =
+        "Key identifying the request across client retries. Gateways which already succeeded " +
+        "with the same key and operation are not called again";
+
     private final Engine authGatewayEngine;
 
+    private final JobRegistry jobRegistry;
+
+    private final EngineProperties engineProperties;
+
+    private final AdmissionControl admissionControl;
+
     @Autowired
-    public AuthGatewayController(Engine authGatewayEngine) {
+    public AuthGatewayController(Engine authGatewayEngine, JobRegistry jobRegistry,
+            EngineProperties engineProperties, AdmissionControl admissionControl) {
         this.authGatewayEngine = authGatewayEngine;
+        this.jobRegistry = jobRegistry;
+        this.engineProperties = engineProperties;
+        this.admissionControl = admissionControl;
     }
 
     @RequestMapping(value = "/users/{userId}", method = RequestMethod.PUT)
-    public void addUser(@PathVariable String userId)
+    public ResponseEntity<?> addUser(@PathVariable String userId,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
             throws AuthorizableGatewayException {
-        authGatewayEngine.addUser(userId);
+        return run(Operation.addUser(userId), async, failFast, idempotencyKey);
     }
 
     @ApiOperation("Creating organization: in case of hdfs - creating directory, zookeeper - creating znode, " +
             "sentry - roles on cdh cluster, hgm - usergroupmapping")
     @RequestMapping(value = "/organizations/{orgId}", method = RequestMethod.PUT)
-    public void addOrganization(@PathVariable String orgId)
+    public ResponseEntity<?> addOrganization(@PathVariable String orgId,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
             throws AuthorizableGatewayException {
-        authGatewayEngine.addOrganization(orgId);
+        return run(Operation.addOrganization(orgId), async, failFast, idempotencyKey);
     }
 
     @ApiOperation("Adding user's access to hadoop components in given organization")
     @RequestMapping(value = "/organizations/{orgId}/users/{userId}", method = RequestMethod.PUT)
-    public void addUserToOrganization(@PathVariable String userId, @PathVariable String orgId)
+    public ResponseEntity<?> addUserToOrganization(@PathVariable String userId,
+            @PathVariable String orgId,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
             throws AuthorizableGatewayException {
-        authGatewayEngine.addUserToOrg(userId, orgId);
+        return run(Operation.addUserToOrg(userId, orgId), async, failFast, idempotencyKey);
     }
 
     @RequestMapping(value = "/users/{userId}", method = RequestMethod.DELETE)
-    public void deleteUser(@PathVariable String userId)
+    public ResponseEntity<?> deleteUser(@PathVariable String userId,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
             throws AuthorizableGatewayException {
-        authGatewayEngine.removeUser(userId);
+        return run(Operation.removeUser(userId), async, failFast, idempotencyKey);
     }
 
     @ApiOperation("Removing organization: in case of hdfs - removing directory, zookeeper - removing znode, " +
             "sentry - roles on cdh cluster, hgm - usergroupmapping")
     @RequestMapping(value = "/organizations/{orgId}", method = RequestMethod.DELETE)
-    public void deleteOrganization(@PathVariable String orgId)
+    public ResponseEntity<?> deleteOrganization(@PathVariable String orgId,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
             throws AuthorizableGatewayException {
-        authGatewayEngine.removeOrganization(orgId);
+        return run(Operation.removeOrganization(orgId), async, failFast, idempotencyKey);
     }
 
     @ApiOperation("Removing user's access to hadoop components in given organization")
     @RequestMapping(value = "/organizations/{orgId}/users/{userId}", method = RequestMethod.DELETE)
-    public void deleteUserFromOrganization(@PathVariable String userId, @PathVariable String orgId)
+    public ResponseEntity<?> deleteUserFromOrganization(@PathVariable String userId,
+            @PathVariable String orgId,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
+            throws AuthorizableGatewayException {
+        return run(Operation.removeUserFromOrg(userId, orgId), async, failFast, idempotencyKey);
+    }
+
+    @ApiOperation("Applying list of operations in one pass. Every gateway gets neighbouring " +
+            "operations of the same type (and organization) as one batch, e.g. adding many users " +
+            "to one organization")
+    @RequestMapping(value = "/bulk", method = RequestMethod.POST)
+    public ResponseEntity<?> bulk(@RequestBody List<Operation> operations,
+            @ApiParam(ASYNC_DESCRIPTION) @RequestParam(defaultValue = "false") boolean async,
+            @ApiParam(FAIL_FAST_DESCRIPTION) @RequestParam(required = false) Boolean failFast,
+            @ApiParam(IDEMPOTENCY_KEY_DESCRIPTION)
+            @RequestHeader(value = IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey)
             throws AuthorizableGatewayException {
-        authGatewayEngine.removeUserFromOrg(userId, orgId);
+        admissionControl.admit(operations);
+        FailurePolicy policy = failurePolicy(failFast);
+        if (!async) {
+            return completed(authGatewayEngine.executeAll(operations, policy, idempotencyKey));
+        }
+        return accepted(jobRegistry.submitAll(operations, policy, idempotencyKey));
+    }
+
+    @ApiOperation("Planning list of operations without applying them. Every gateway reports " +
+            "the backend calls it would make (directories, ACL entries, znodes, queues, roles), " +
+            "their count and the time estimated from its past calls")
+    @RequestMapping(value = "/plan", method = RequestMethod.POST)
+    public ResponseEntity<ExecutionPlan> plan(@RequestBody List<Operation> operations,
+            @ApiParam("List planned calls, not only count them")
+            @RequestParam(defaultValue = "true") boolean details) {
+        ExecutionPlan plan = authGatewayEngine.plan(operations, details);
+        HttpStatus status = plan.isSucceeded() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
+        return new ResponseEntity<>(plan, status);
+    }
+
+    @ApiOperation("Bringing every gateway to the given organizations and their users. Actual " +
+            "state is listed from each backend and only missing entries are added. Returns 202 " +
+            "with a job resource, whose reconciliation report is filled in once it finished")
+    @RequestMapping(value = "/reconciliation", method = RequestMethod.POST)
+    public ResponseEntity<Job> reconcile(@RequestBody DesiredState desiredState,
+            @ApiParam("Also remove organizations and users which are not desired")
+            @RequestParam(defaultValue = "false") boolean prune) {
+        return accepted(jobRegistry.submitReconciliation(desiredState, prune));
+    }
+
+    @ApiOperation("Status of asynchronous job. With wait > 0 the request is held until the job " +
+            "finishes or the given number of seconds elapses, whichever comes first")
+    @RequestMapping(value = "/jobs/{jobId}", method = RequestMethod.GET)
+    public DeferredResult<ResponseEntity<Job>> getJob(@PathVariable String jobId,
+            @RequestParam(defaultValue = "0") long wait) {
+        Optional<Job> job = jobRegistry.get(jobId);
+        if (!job.isPresent()) {
+            DeferredResult<ResponseEntity<Job>> notFound = new DeferredResult<>();
+            notFound.setResult(ResponseEntity.notFound().build());
+            return notFound;
+        }
+
+        long waitInSeconds = Math.min(Math.max(wait, 0), engineProperties.getJobs().getMaxWait());
+        ResponseEntity<Job> current = ResponseEntity.ok(job.get());
+        DeferredResult<ResponseEntity<Job>> result =
+            new DeferredResult<>(TimeUnit.SECONDS.toMillis(waitInSeconds), current);
+        if (waitInSeconds == 0) {
+            result.setResult(current);
+        } else {
+            job.get().completion().thenAccept(finished -> result.setResult(current));
+        }
+        return result;
+    }
+
+    /**
+     * @return 429 with the number of seconds after which the request may be retried
+     */
+    @ExceptionHandler(AdmissionRejectedException.class)
+    public ResponseEntity<String> rejected(AdmissionRejectedException e) {
+        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(RETRY_AFTER_HEADER, String.valueOf(e.getRetryAfterSeconds()))
+            .body(e.getMessage());
+    }
+
+    private ResponseEntity<?> run(Operation operation, boolean async, Boolean failFast,
+            String idempotencyKey) throws AuthorizableGatewayException {
+        admissionControl.admit(Collections.singletonList(operation));
+        FailurePolicy policy = failurePolicy(failFast);
+        if (!async) {
+            return completed(authGatewayEngine.execute(operation, policy, idempotencyKey));
+        }
+        return accepted(jobRegistry.submit(operation, policy, idempotencyKey));
+    }
+
+    private FailurePolicy failurePolicy(Boolean failFast) {
+        if (failFast == null) {
+            return engineProperties.getFailurePolicy();
+        }
+        return failFast ? FailurePolicy.FAIL_FAST : FailurePolicy.WAIT_FOR_ALL;
+    }
+
+    /**
+     * @return 200 when every gateway succeeded, 500 otherwise, always with result of every gateway
+     */
+    private ResponseEntity<ExecutionResult> completed(ExecutionResult result) {
+        HttpStatus status = result.isSucceeded() ? HttpStatus.OK : HttpStatus.INTERNAL_SERVER_ERROR;
+        return new ResponseEntity<>(result, status);
+    }
+
+    private ResponseEntity<Job> accepted(Job job) {
+        return ResponseEntity.accepted()
+            .location(ServletUriComponentsBuilder.fromCurrentContextPath()
+                .path("/jobs/{jobId}").buildAndExpand(job.getId()).toUri())
+            .body(job);
     }
 }
@@ -0,0 +1,202 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Circuit breaker of a single gateway.
+ *
+ * Outcomes of the last "windowSize" calls are kept. Once at least "minimumCalls" of them are
+ * known and the share of failed calls or of calls slower than "slowCallDuration" reaches its
+ * threshold, the circuit opens: calls are rejected without reaching the gateway for
+ * "openDuration" seconds. Then the circuit is half-open and lets "halfOpenCalls" probe calls
+ * through; it closes if all of them succeed in time and opens again on the first one which does
+ * not.
+ */
+class CircuitBreaker {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final String gatewayName;
+
+    private final EngineProperties.CircuitBreakerProperties properties;
+
+    private final LongSupplier nanoTime;
+
+    // ring buffers of outcomes of the last calls
+    private final boolean[] failed;
+
+    private final boolean[] slow;
+
+    private int recorded;
+
+    private int next;
+
+    private int failures;
+
+    private int slowCalls;
+
+    private State state = State.CLOSED;
+
+    private long openedAt;
+
+    private int probesPermitted;
+
+    private int probesSucceeded;
+
+    public CircuitBreaker(String gatewayName,
+        EngineProperties.CircuitBreakerProperties properties) {
+        this(gatewayName, properties, System::nanoTime);
+    }
+
+    CircuitBreaker(String gatewayName, EngineProperties.CircuitBreakerProperties properties,
+        LongSupplier nanoTime) {
+        this.gatewayName = gatewayName;
+        this.properties = properties;
+        this.nanoTime = nanoTime;
+        this.failed = new boolean[properties.getWindowSize()];
+        this.slow = new boolean[properties.getWindowSize()];
+    }
+
+    /**
+     * @return whether a call may be made now; a permitted call has to be followed by
+     * {@link #onSuccess}, {@link #onFailure} or {@link #release}
+     */
+    public synchronized boolean tryAcquire() {
+        if (state == State.OPEN) {
+            if (remainingOpenMillis() > 0) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            probesPermitted = 0;
+            probesSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (probesPermitted >= properties.getHalfOpenCalls()) {
+                return false;
+            }
+            probesPermitted++;
+        }
+        return true;
+    }
+
+    public synchronized void onSuccess(long durationMillis) {
+        record(false, durationMillis >= properties.getSlowCallDuration());
+    }
+
+    public synchronized void onFailure(long durationMillis) {
+        record(true, durationMillis >= properties.getSlowCallDuration());
+    }
+
+    /**
+     * Gives back a permitted call which ended without an outcome, e.g. was cancelled.
+     */
+    public synchronized void release() {
+        if (state == State.HALF_OPEN && probesPermitted > probesSucceeded) {
+            probesPermitted--;
+        }
+    }
+
+    public synchronized State getState() {
+        if (state == State.OPEN && remainingOpenMillis() == 0) {
+            return State.HALF_OPEN;
+        }
+        return state;
+    }
+
+    /**
+     * @return milliseconds until an open circuit lets probe calls through, 0 if it is not open
+     */
+    public synchronized long remainingOpenMillis() {
+        if (state != State.OPEN) {
+            return 0;
+        }
+        long elapsed = nanoTime.getAsLong() - openedAt;
+        return Math.max(TimeUnit.SECONDS.toMillis(properties.getOpenDuration())
+            - TimeUnit.NANOSECONDS.toMillis(elapsed), 0);
+    }
+
+    /**
+     * @return percentage of failed calls among the recorded ones
+     */
+    public synchronized double getFailureRate() {
+        return recorded == 0 ? 0 : 100.0 * failures / recorded;
+    }
+
+    /**
+     * @return percentage of slow calls among the recorded ones
+     */
+    public synchronized double getSlowCallRate() {
+        return recorded == 0 ? 0 : 100.0 * slowCalls / recorded;
+    }
+
+    private void record(boolean isFailed, boolean isSlow) {
+        if (state == State.OPEN) {
+            // late outcome of a call started before the circuit opened
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            if (isFailed || isSlow) {
+                open();
+            } else if (++probesSucceeded >= properties.getHalfOpenCalls()) {
+                close();
+            }
+            return;
+        }
+
+        if (recorded == failed.length) {
+            failures -= failed[next] ? 1 : 0;
+            slowCalls -= slow[next] ? 1 : 0;
+        } else {
+            recorded++;
+        }
+        failed[next] = isFailed;
+        slow[next] = isSlow;
+        failures += isFailed ? 1 : 0;
+        slowCalls += isSlow ? 1 : 0;
+        next = (next + 1) % failed.length;
+
+        if (recorded >= properties.getMinimumCalls()
+            && (getFailureRate() >= properties.getFailureRateThreshold()
+            || getSlowCallRate() >= properties.getSlowCallRateThreshold())) {
+            open();
+        }
+    }
+
+    private void open() {
+        LOGGER.warn(String.format("Circuit of %s opened for %d s, failure rate %.0f%%, "
+            + "slow call rate %.0f%%", gatewayName, properties.getOpenDuration(),
+            getFailureRate(), getSlowCallRate()));
+        state = State.OPEN;
+        openedAt = nanoTime.getAsLong();
+    }
+
+    private void close() {
+        LOGGER.info("Circuit of " + gatewayName + " closed");
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+}
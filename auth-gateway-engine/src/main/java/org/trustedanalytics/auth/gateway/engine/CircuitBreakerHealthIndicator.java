@@ -0,0 +1,46 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.AbstractHealthIndicator;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.stereotype.Component;
+
+/**
+ * Reports the circuit of every gateway on the health endpoint as "circuitBreaker". The engine
+ * stays UP while circuits are open, as only calls of those gateways are rejected.
+ */
+@Component
+class CircuitBreakerHealthIndicator extends AbstractHealthIndicator {
+
+    private final CircuitBreakers circuitBreakers;
+
+    @Autowired
+    public CircuitBreakerHealthIndicator(CircuitBreakers circuitBreakers) {
+        this.circuitBreakers = circuitBreakers;
+    }
+
+    @Override
+    protected void doHealthCheck(Health.Builder builder) {
+        builder.up();
+        circuitBreakers.all().forEach((name, breaker) -> builder.withDetail(name, ImmutableMap.of(
+            "state", breaker.getState(),
+            "failureRate", breaker.getFailureRate(),
+            "slowCallRate", breaker.getSlowCallRate(),
+            "deferred", circuitBreakers.deferredFor(name).map(DeferredCalls::size).orElse(0))));
+    }
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds the circuit breaker and the deferred calls of every gateway, shared by Engine, which
+ * consults them before every call, and the health endpoint, which reports their state.
+ */
+class CircuitBreakers {
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private final Map<String, DeferredCalls> deferred = new ConcurrentHashMap<>();
+
+    private final EngineProperties.CircuitBreakerProperties properties;
+
+    public CircuitBreakers(EngineProperties properties) {
+        this.properties = properties.getCircuitBreaker();
+    }
+
+    /**
+     * @return circuit breaker of the gateway, or empty if circuit breakers are disabled
+     */
+    public Optional<CircuitBreaker> forGateway(String gatewayName) {
+        if (!properties.isEnabled()) {
+            return Optional.empty();
+        }
+        return Optional.of(breakers.computeIfAbsent(gatewayName,
+            name -> new CircuitBreaker(name, properties)));
+    }
+
+    /**
+     * @return calls of the gateway waiting for replay, or empty if calls rejected by an open
+     * circuit are not replayed
+     */
+    public Optional<DeferredCalls> deferredFor(String gatewayName) {
+        if (!properties.isEnabled() || !properties.isReplay()) {
+            return Optional.empty();
+        }
+        return Optional.of(deferred.computeIfAbsent(gatewayName,
+            name -> new DeferredCalls(properties.getMaxDeferred(),
+                properties.getMaxReplayAttempts(), properties.getMaxDeferredAge())));
+    }
+
+    /**
+     * @return circuit breakers created so far, keyed by gateway name
+     */
+    public Map<String, CircuitBreaker> all() {
+        return Collections.unmodifiableMap(breakers);
+    }
+}
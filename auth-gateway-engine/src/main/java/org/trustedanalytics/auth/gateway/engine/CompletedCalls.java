@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded memory of gateway calls which already succeeded for an idempotency key. When a client
+ * retries a request with the same key, gateways which completed the same operations before are
+ * not called again, so only the failed ones redo their work.
+ */
+class CompletedCalls {
+
+    private final Cache<List<Object>, Boolean> completed;
+
+    public CompletedCalls(long retentionInSeconds, long maxSize) {
+        this.completed = CacheBuilder.newBuilder()
+            .expireAfterWrite(retentionInSeconds, TimeUnit.SECONDS)
+            .maximumSize(maxSize)
+            .build();
+    }
+
+    /**
+     * @param idempotencyKey key sent by the client, or null if calls should not be remembered
+     */
+    public boolean contains(String idempotencyKey, List<Operation> operations,
+        String gatewayName) {
+        return idempotencyKey != null
+            && completed.getIfPresent(key(idempotencyKey, operations, gatewayName)) != null;
+    }
+
+    public void add(String idempotencyKey, List<Operation> operations, String gatewayName) {
+        if (idempotencyKey != null) {
+            completed.put(key(idempotencyKey, operations, gatewayName), Boolean.TRUE);
+        }
+    }
+
+    private static List<Object> key(String idempotencyKey, List<Operation> operations,
+        String gatewayName) {
+        return Arrays.asList(idempotencyKey, ImmutableList.copyOf(operations), gatewayName);
+    }
+}
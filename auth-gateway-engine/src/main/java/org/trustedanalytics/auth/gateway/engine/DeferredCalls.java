@@ -0,0 +1,157 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls of one gateway which were not made as its circuit was open, kept in memory in order of
+ * arrival until they are replayed. At most one replay runs at a time. Every call keeps its
+ * operation journaled and its organizations reserved until it is replayed, so deferred calls
+ * lost by a restart are replayed from the journal. A call whose replay failed too many times or
+ * which waits for too long is given up: it releases its organizations but stays journaled.
+ */
+class DeferredCalls {
+
+    private final Deque<DeferredCall> calls = new ArrayDeque<>();
+
+    private final int maxSize;
+
+    private final int maxReplayAttempts;
+
+    private final long maxAgeInNanos;
+
+    private boolean replaying;
+
+    /**
+     * @param maxAgeInSeconds time since a call was deferred after which it is given up
+     */
+    public DeferredCalls(int maxSize, int maxReplayAttempts, long maxAgeInSeconds) {
+        this.maxSize = maxSize;
+        this.maxReplayAttempts = maxReplayAttempts;
+        this.maxAgeInNanos = TimeUnit.SECONDS.toNanos(maxAgeInSeconds);
+    }
+
+    /**
+     * @return false if the call was not kept, as maximum number of deferred calls was reached
+     */
+    public synchronized boolean add(DeferredCall call) {
+        if (calls.size() >= maxSize) {
+            return false;
+        }
+        calls.addLast(call);
+        return true;
+    }
+
+    /**
+     * @return whether the caller should start the replay, false if there is nothing to replay or
+     * another replay is running
+     */
+    public synchronized boolean startReplay() {
+        if (replaying || calls.isEmpty()) {
+            return false;
+        }
+        replaying = true;
+        return true;
+    }
+
+    /**
+     * @return oldest deferred call, or null if there is none, which also ends the replay
+     */
+    public synchronized DeferredCall next() {
+        DeferredCall call = calls.peekFirst();
+        if (call == null) {
+            replaying = false;
+        }
+        return call;
+    }
+
+    /**
+     * Removes the call once it was replayed or given up.
+     */
+    public synchronized void remove(DeferredCall call) {
+        calls.remove(call);
+    }
+
+    /**
+     * Counts a failed replay of the call.
+     *
+     * @return whether the call should be given up, as it failed maximum number of times
+     */
+    public synchronized boolean replayFailed(DeferredCall call) {
+        return ++call.failedReplays >= maxReplayAttempts;
+    }
+
+    /**
+     * @return whether the call should be given up, as it waits for longer than allowed
+     */
+    public boolean isExpired(DeferredCall call) {
+        return System.nanoTime() - call.deferredAt >= maxAgeInNanos;
+    }
+
+    public synchronized int size() {
+        return calls.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return calls.isEmpty();
+    }
+
+    static class DeferredCall {
+
+        private final ThrowableAction action;
+
+        private final String operationName;
+
+        private final String operationDescription;
+
+        private final CompletableFuture<Void> settled;
+
+        private final long deferredAt = System.nanoTime();
+
+        // guarded by the deferred calls holding it
+        private int failedReplays;
+
+        /**
+         * @param settled future to complete once the call was replayed, cancelled if the call was
+         * given up
+         */
+        DeferredCall(ThrowableAction action, String operationName, String operationDescription,
+            CompletableFuture<Void> settled) {
+            this.action = action;
+            this.operationName = operationName;
+            this.operationDescription = operationDescription;
+            this.settled = settled;
+        }
+
+        public ThrowableAction getAction() {
+            return action;
+        }
+
+        public String getOperationName() {
+            return operationName;
+        }
+
+        public String getOperationDescription() {
+            return operationDescription;
+        }
+
+        public CompletableFuture<Void> getSettled() {
+            return settled;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Organizations and their users which should exist in every backend, read from JSON like
+ * {"organizations": {"orgId": ["userId", ...]}}.
+ */
+class DesiredState {
+
+    private final Map<String, Set<String>> organizations;
+
+    @JsonCreator
+    DesiredState(
+        @JsonProperty("organizations") Map<String, ? extends Collection<String>> organizations) {
+        ImmutableMap.Builder<String, Set<String>> builder = ImmutableMap.builder();
+        if (organizations != null) {
+            organizations.forEach((orgId, users) -> builder.put(orgId,
+                users == null ? Collections.emptySet() : ImmutableSet.copyOf(users)));
+        }
+        this.organizations = builder.build();
+    }
+
+    public Map<String, Set<String>> getOrganizations() {
+        return organizations;
+    }
+
+    Set<String> getUsers(String orgId) {
+        return organizations.getOrDefault(orgId, Collections.emptySet());
+    }
+}
@@ -13,122 +13,854 @@
  */
 package org.trustedanalytics.auth.gateway.engine;
 
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.collect.ImmutableList;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toSet;
 
 class Engine {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(Engine.class);
 
-    private List<Authorizable> supportedAuthorizables;
-    private long timeoutInSeconds;
+    private static final String BULK_METRIC_NAME = "bulk";
 
+    private static final String BULK_ERROR_MESSAGE = "Error executing bulk operations";
+
+    // delay of the next replay attempt when an open circuit cannot tell a better one
+    private static final long REPLAY_DELAY_IN_MILLIS = 1000;
+
+    private List<Authorizable> supportedAuthorizables;
+    private EngineProperties properties;
+    private GatewayExecutors executors;
+    private GatewayMetrics metrics;
+    private CompletedCalls completedCalls;
+    private OperationJournal journal;
+    private CircuitBreakers circuitBreakers;
+    private final OrganizationOrdering organizationOrdering = new OrganizationOrdering();
+    private final Map<List<Operation>, CompletableFuture<Dispatch>> inFlight =
+        new ConcurrentHashMap<>();
 
     public Engine(List<Authorizable> supportedAuthorizables, long timeoutInSeconds) {
-        this.supportedAuthorizables = supportedAuthorizables;
-        this.timeoutInSeconds = timeoutInSeconds;
+        this(supportedAuthorizables, timeoutInSeconds,
+            new GatewayExecutors(new EngineProperties(), new MetricRegistry()));
     }
 
-    public void addUser(String userId) throws AuthorizableGatewayException {
-        List<CompletableFuture<Void>> tasks = new LinkedList<>();
-        for (Authorizable authorizable : supportedAuthorizables) {
-            tasks.add(createFutureForMethod(() -> authorizable.addUser(userId),
-                authorizable.getName(), "adding user"));
-        }
+    public Engine(List<Authorizable> supportedAuthorizables, long timeoutInSeconds,
+        GatewayExecutors executors) {
+        this(supportedAuthorizables, timeoutInSeconds, executors,
+            new GatewayMetrics(new MetricRegistry()));
+    }
 
-        runTasks(tasks, "Error adding user");
+    public Engine(List<Authorizable> supportedAuthorizables, long timeoutInSeconds,
+        GatewayExecutors executors, GatewayMetrics metrics) {
+        this(supportedAuthorizables, withTimeout(timeoutInSeconds), executors, metrics);
     }
 
-    public void addOrganization(String orgId) throws AuthorizableGatewayException {
-        List<CompletableFuture<Void>> tasks = new LinkedList<>();
+    public Engine(List<Authorizable> supportedAuthorizables, EngineProperties properties,
+        GatewayExecutors executors, GatewayMetrics metrics) {
+        this(supportedAuthorizables, properties, executors, metrics, OperationJournal.NONE);
+    }
+
+    /**
+     * @param properties source of timeout of every gateway, see
+     * {@link EngineProperties#getTimeout(String)}, of the default failure policy and of retry
+     * and idempotency settings
+     * @param journal write-ahead log of dispatched operations, see {@link #replayUnfinished()}
+     */
+    public Engine(List<Authorizable> supportedAuthorizables, EngineProperties properties,
+        GatewayExecutors executors, GatewayMetrics metrics, OperationJournal journal) {
+        this(supportedAuthorizables, properties, executors, metrics, journal,
+            new CircuitBreakers(properties));
+    }
+
+    public Engine(List<Authorizable> supportedAuthorizables, EngineProperties properties,
+        GatewayExecutors executors, GatewayMetrics metrics, OperationJournal journal,
+        CircuitBreakers circuitBreakers) {
+        this.supportedAuthorizables = supportedAuthorizables;
+        this.journal = journal;
+        this.properties = properties;
+        this.executors = executors;
+        this.metrics = metrics;
+        this.circuitBreakers = circuitBreakers;
+        this.completedCalls = new CompletedCalls(properties.getIdempotency().getRetention(),
+            properties.getIdempotency().getMaxSize());
+        metrics.registerOrganizationsInFlight(organizationOrdering::size);
         for (Authorizable authorizable : supportedAuthorizables) {
-            tasks.add(createFutureForMethod(() -> authorizable.addOrganization(orgId),
-                authorizable.getName(), "adding organization"));
+            String name = authorizable.getName();
+            executors.forGateway(name);
+            circuitBreakers.forGateway(name).ifPresent(breaker -> metrics.registerCircuit(name,
+                () -> breaker.getState().ordinal(),
+                () -> circuitBreakers.deferredFor(name).map(DeferredCalls::size).orElse(0)));
         }
+    }
 
-        runTasks(tasks, "Error adding organization");
+    public void shutdown() {
+        executors.shutdown();
+        journal.shutdown();
     }
 
-    public void addUserToOrg(String userId, String orgId) throws AuthorizableGatewayException {
-        List<CompletableFuture<Void>> tasks = new LinkedList<>();
-        for (Authorizable authorizable : supportedAuthorizables) {
-            tasks.add(createFutureForMethod(() -> authorizable.addUserToOrg(userId, orgId),
-                authorizable.getName(), "adding user to organization"));
+    /**
+     * Dispatches operations which were journaled but did not finish before the last shutdown,
+     * e.g. because of a crash in the middle of the fan-out, to the gateways which did not
+     * complete them. Returns without waiting for the results.
+     *
+     * @return number of replayed journal entries
+     */
+    public int replayUnfinished() {
+        List<JournalEntry> unfinished = journal.unfinished();
+        for (JournalEntry entry : unfinished) {
+            List<Operation> operations = entry.getOperations();
+            LOGGER.info("Replaying " + operations + " on all gateways except "
+                + entry.getCompleted());
+
+            // gateways which completed the entry are skipped like on a client retry
+            String idempotencyKey = "journal-" + UUID.randomUUID();
+            entry.getCompleted().forEach(
+                gatewayName -> completedCalls.add(idempotencyKey, operations, gatewayName));
+            if (operations.size() == 1) {
+                dispatch(operations.get(0), FailurePolicy.WAIT_FOR_ALL, idempotencyKey);
+            } else {
+                dispatchAll(operations, FailurePolicy.WAIT_FOR_ALL, idempotencyKey);
+            }
+            // journaled again by the dispatch above
+            journal.close(entry.getId());
         }
+        return unfinished.size();
+    }
 
-        runTasks(tasks, "Error adding user to organization");
+    public void addUser(String userId) throws AuthorizableGatewayException {
+        execute(Operation.addUser(userId));
+    }
+
+    public void addOrganization(String orgId) throws AuthorizableGatewayException {
+        execute(Operation.addOrganization(orgId));
+    }
+
+    public void addUserToOrg(String userId, String orgId) throws AuthorizableGatewayException {
+        execute(Operation.addUserToOrg(userId, orgId));
     }
 
     public void removeUser(String userId) throws AuthorizableGatewayException {
-        List<CompletableFuture<Void>> tasks = new LinkedList<>();
-        for (Authorizable authorizable : supportedAuthorizables) {
-            tasks.add(createFutureForMethod(() -> authorizable.removeUser(userId),
-                authorizable.getName(), "removing user"));
+        execute(Operation.removeUser(userId));
+    }
+
+    public void removeOrganization(String orgId)
+        throws AuthorizableGatewayException {
+        execute(Operation.removeOrganization(orgId));
+    }
+
+    public void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException {
+        execute(Operation.removeUserFromOrg(userId, orgId));
+    }
+
+    /**
+     * Runs operation on every gateway with the default failure policy and waits until all of
+     * them finish.
+     *
+     * @throws AuthorizableGatewayException if any gateway did not succeed
+     */
+    public void execute(Operation operation) throws AuthorizableGatewayException {
+        throwIfFailed(execute(operation, properties.getFailurePolicy(), null),
+            operation.getType().getErrorMessage());
+    }
+
+    /**
+     * Runs operation on every gateway and waits until all of them finish.
+     */
+    public ExecutionResult execute(Operation operation, FailurePolicy policy)
+        throws AuthorizableGatewayException {
+        return execute(operation, policy, null);
+    }
+
+    /**
+     * Runs operation on every gateway and waits until all of them finish.
+     *
+     * @param idempotencyKey key of the client request, or null; gateways which already succeeded
+     * with the same key and operation are not called again
+     */
+    public ExecutionResult execute(Operation operation, FailurePolicy policy,
+        String idempotencyKey) throws AuthorizableGatewayException {
+        OperationType type = operation.getType();
+        return await(dispatch(operation, policy, idempotencyKey), type.getMetricName(),
+            type.getErrorMessage());
+    }
+
+    /**
+     * Starts operation on every gateway without waiting for the results.
+     *
+     * @return call of every gateway, keyed by gateway name
+     */
+    public Map<String, GatewayCall> dispatch(Operation operation, FailurePolicy policy,
+        String idempotencyKey) {
+        OperationType type = operation.getType();
+        return dispatch(Collections.singletonList(operation),
+            authorizable -> () -> apply(operation, authorizable), type.getMetricName(),
+            type.getDescription(), policy, idempotencyKey);
+    }
+
+    /**
+     * Applies single operation, unless the gateway reports it would change nothing. The check
+     * runs as part of the gateway call, so it is subject to the same deadline and retries.
+     */
+    private void apply(Operation operation, Authorizable authorizable)
+        throws AuthorizableGatewayException {
+        if (properties.isSkipNoopWrites() && operation.isNoop(authorizable)) {
+            OperationType type = operation.getType();
+            metrics.noop(authorizable.getName(), type.getMetricName());
+            LOGGER.info(authorizable.getName() + " skipped " + type.getDescription()
+                + ", already applied");
+            return;
         }
+        operation.applyTo(authorizable);
+    }
 
-        runTasks(tasks, "Error removing user");
+    /**
+     * Runs operations on every gateway with the default failure policy and waits until all of
+     * them finish. Every gateway applies the operations in the given order, merged into batches,
+     * see {@link OperationBatch}.
+     *
+     * @throws AuthorizableGatewayException if any gateway did not succeed
+     */
+    public void executeAll(List<Operation> operations) throws AuthorizableGatewayException {
+        throwIfFailed(executeAll(operations, properties.getFailurePolicy(), null),
+            BULK_ERROR_MESSAGE);
     }
 
-    public void removeOrganization(String orgId)
+    public ExecutionResult executeAll(List<Operation> operations, FailurePolicy policy,
+        String idempotencyKey) throws AuthorizableGatewayException {
+        return await(dispatchAll(operations, policy, idempotencyKey), BULK_METRIC_NAME,
+            BULK_ERROR_MESSAGE);
+    }
+
+    /**
+     * Starts operations on every gateway without waiting for the results.
+     *
+     * @return call of every gateway, keyed by gateway name
+     */
+    public Map<String, GatewayCall> dispatchAll(List<Operation> operations,
+        FailurePolicy policy, String idempotencyKey) {
+        List<OperationBatch> batches = OperationBatch.group(operations);
+        return dispatch(operations, authorizable -> () -> {
+            for (OperationBatch batch : batches) {
+                batch.applyTo(authorizable);
+            }
+        }, BULK_METRIC_NAME, "bulk of " + operations.size() + " operations", policy,
+            idempotencyKey);
+    }
+
+    /**
+     * Runs the action on the calling thread once earlier operations on given organizations
+     * finished; operations on them dispatched meanwhile wait until it returns. Used for writes
+     * made outside of the fan-out, which are neither journaled nor retried.
+     *
+     * @throws AuthorizableGatewayException thrown by the action, or when the thread was
+     * interrupted while waiting for its turn
+     */
+    public void runInTurn(Set<String> orgIds, ThrowableAction action, String description)
         throws AuthorizableGatewayException {
-        List<CompletableFuture<Void>> tasks = new LinkedList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        try {
+            awaitTurn(orgIds, done, description).get();
+            action.apply();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AuthorizableGatewayException(
+                description + " interrupted waiting for earlier operations", e);
+        } catch (ExecutionException e) {
+            // turns are completed only normally
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Computes backend calls the operations would make on every gateway, without making them.
+     * Gateways are planned in parallel, each on its own executor and within its timeout. Nothing
+     * is journaled, ordered by organization or remembered for idempotency.
+     *
+     * @param details whether planned calls should be listed, not only counted
+     */
+    public ExecutionPlan plan(List<Operation> operations, boolean details) {
+        Map<String, GatewayPlan> plans = new LinkedHashMap<>();
+        Map<String, Future<GatewayPlan>> tasks = new LinkedHashMap<>();
         for (Authorizable authorizable : supportedAuthorizables) {
-            tasks.add(createFutureForMethod(() -> authorizable.removeOrganization(orgId),
-                authorizable.getName(), "removing organization"));
+            String name = authorizable.getName();
+            try {
+                tasks.put(name, executors.forGateway(name)
+                    .submit(() -> plan(authorizable, operations, details)));
+            } catch (RejectedExecutionException e) {
+                tasks.put(name, CompletableFuture.completedFuture(
+                    GatewayPlan.failed(name + " rejected planning: executor saturated")));
+            }
         }
 
-        runTasks(tasks, "Error removing organization");
+        long start = System.nanoTime();
+        tasks.forEach((name, task) -> plans.put(name, awaitPlan(name, task,
+            start + TimeUnit.SECONDS.toNanos(properties.getTimeout(name)))));
+        return new ExecutionPlan(operations.size(), plans);
     }
 
-    public void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException {
-        List<CompletableFuture<Void>> tasks = new LinkedList<>();
-        for (Authorizable authorizable : supportedAuthorizables) {
-            tasks.add(createFutureForMethod(() -> authorizable.removeUserFromOrg(userId, orgId),
-                authorizable.getName(), "removing user from organization"));
+    private GatewayPlan plan(Authorizable authorizable, List<Operation> operations,
+        boolean details) {
+        long estimatedCalls = 0;
+        int unplannedOperations = 0;
+        List<PlannedCall> calls = details ? new ArrayList<>() : null;
+        for (Operation operation : operations) {
+            Optional<List<PlannedCall>> plan = operation.plan(authorizable);
+            if (!plan.isPresent()) {
+                unplannedOperations++;
+                continue;
+            }
+            estimatedCalls += plan.get().size();
+            if (details) {
+                calls.addAll(plan.get());
+            }
         }
+        return GatewayPlan.planned(estimatedCalls, unplannedOperations,
+            estimateMillis(authorizable.getName(), operations), calls);
+    }
 
-        runTasks(tasks, "Error removing user from organization");
+    /**
+     * @return sum of mean durations of past calls of every operation on the gateway, or null if
+     * some of them was never called
+     */
+    private Long estimateMillis(String authorizableName, List<Operation> operations) {
+        double millis = 0;
+        for (Operation operation : operations) {
+            OptionalDouble mean =
+                metrics.meanDurationMillis(authorizableName, operation.getType().getMetricName());
+            if (!mean.isPresent()) {
+                return null;
+            }
+            millis += mean.getAsDouble();
+        }
+        return Math.round(millis);
     }
 
-    private CompletableFuture<Void> createFutureForMethod(ThrowableAction consumer,
-        String authorizableName, String authorizableOperation) {
+    private GatewayPlan awaitPlan(String authorizableName, Future<GatewayPlan> task,
+        long deadline) {
+        try {
+            return task.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            LOGGER.warn(authorizableName + " timed out planning");
+            return GatewayPlan.failed(authorizableName + " timed out planning");
+        } catch (ExecutionException e) {
+            LOGGER.error(authorizableName + " failed planning", e.getCause());
+            return GatewayPlan.failed(authorizableName + " failed: " + e.getCause().getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(true);
+            return GatewayPlan.failed(authorizableName + " planning interrupted");
+        }
+    }
 
-        return CompletableFuture.completedFuture(null).thenAcceptAsync(x -> {
-            try {
-                consumer.apply();
-                LOGGER.info(authorizableName + " finished " + authorizableOperation);
-            } catch (AuthorizableGatewayException e) {
-                throw new RuntimeException(authorizableName + " failed: " + e.getMessage(), e);
+    /**
+     * Fans operations out to every gateway, unless the same operations are already in flight;
+     * then the caller joins their calls instead of starting new ones, as the operations are
+     * idempotent and concurrent duplicates (e.g. retries from several brokers) would only queue
+     * behind each other in the gateways. Operations are only joined while nothing else was
+     * ordered after them on their organizations, otherwise e.g. an add joining an earlier add
+     * would be undone by a remove queued between the two, and only with the same failure policy,
+     * so a caller never gets calls cancelled by a policy it did not ask for. Gateways which
+     * succeed are remembered for the idempotency key of the joining caller as well.
+     */
+    private Map<String, GatewayCall> dispatch(List<Operation> operations,
+        Function<Authorizable, ThrowableAction> action, String operationName,
+        String operationDescription, FailurePolicy policy, String idempotencyKey) {
+        List<Operation> key = ImmutableList.copyOf(operations);
+        CompletableFuture<Dispatch> dispatched = new CompletableFuture<>();
+        CompletableFuture<Dispatch> inFlight;
+        while ((inFlight = this.inFlight.putIfAbsent(key, dispatched)) != null) {
+            Dispatch other = inFlight.exceptionally(e -> null).join();
+            if (other != null && canJoin(other, policy)) {
+                metrics.coalesced(operationName);
+                LOGGER.info("Joining " + operationDescription + " already in flight");
+                rememberCompleted(other.calls, idempotencyKey, operations);
+                return other.calls;
             }
+            // finished, failed to dispatch or followed by other operations, so the new
+            // operations are the ones to join from now on
+            if (this.inFlight.replace(key, inFlight, dispatched)) {
+                break;
+            }
+        }
+
+        try {
+            Dispatch dispatch = fanOut(operations, action, operationName, operationDescription,
+                policy, idempotencyKey);
+            dispatched.complete(dispatch);
+            dispatch.done.thenRun(() -> this.inFlight.remove(key, dispatched));
+            return dispatch.calls;
+        } catch (RuntimeException e) {
+            this.inFlight.remove(key, dispatched);
+            dispatched.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    private boolean canJoin(Dispatch dispatch, FailurePolicy policy) {
+        return dispatch.policy == policy
+            && !dispatch.calls.values().stream().allMatch(call -> call.result().isDone())
+            && organizationOrdering.isLatest(dispatch.orgIds, dispatch.done);
+    }
+
+    private void rememberCompleted(Map<String, GatewayCall> calls, String idempotencyKey,
+        List<Operation> operations) {
+        if (idempotencyKey == null) {
+            return;
+        }
+        calls.forEach((name, call) -> call.result().thenAccept(result -> {
+            if (result.isSucceeded()) {
+                completedCalls.add(idempotencyKey, operations, name);
+            }
+        }));
+    }
+
+    private Dispatch fanOut(List<Operation> operations,
+        Function<Authorizable, ThrowableAction> action, String operationName,
+        String operationDescription, FailurePolicy policy, String idempotencyKey) {
+        Set<String> orgIds = operations.stream().map(Operation::getOrgId)
+            .filter(Objects::nonNull).collect(toSet());
+        long entryId = journal.accept(operations);
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> turn = awaitTurn(orgIds, done, operationDescription);
+        Map<String, GatewayCall> calls = new LinkedHashMap<>();
+        List<CompletableFuture<Void>> settled = new ArrayList<>();
+        try {
+            for (Authorizable authorizable : supportedAuthorizables) {
+                String name = authorizable.getName();
+                if (completedCalls.contains(idempotencyKey, operations, name)) {
+                    journal.complete(entryId, name);
+                    calls.put(name, skippedCall(name, operationName, operationDescription));
+                    continue;
+                }
+
+                ThrowableAction gatewayAction = action.apply(authorizable);
+                CompletableFuture<Void> callSettled = new CompletableFuture<>();
+                settled.add(callSettled);
+                calls.put(name, createFutureForMethod(turn, () -> {
+                    gatewayAction.apply();
+                    // remembered before the call completes, so a retry right after sees it
+                    completedCalls.add(idempotencyKey, operations, name);
+                    journal.complete(entryId, name);
+                }, name, operationName, operationDescription, callSettled));
+            }
+        } finally {
+            // a deferred call settles only once replayed, until then its journal entry stays
+            // open and later operations on its organizations wait for it; a call given up
+            // settles cancelled and leaves the entry to replayUnfinished
+            CompletableFuture.allOf(settled.toArray(new CompletableFuture[settled.size()]))
+                .whenComplete((ignored, givenUp) -> {
+                    if (givenUp == null) {
+                        journal.close(entryId);
+                    }
+                    done.complete(null);
+                });
+        }
+        return new Dispatch(applyPolicy(calls, policy), policy, orgIds, done);
+    }
+
+    /**
+     * @param done future completed once the operations finished on every gateway
+     * @return future completed once earlier operations on the same organizations finished
+     */
+    private CompletableFuture<Void> awaitTurn(Set<String> orgIds, CompletableFuture<Void> done,
+        String operationDescription) {
+        CompletableFuture<Void> turn = organizationOrdering.enqueue(orgIds, done);
+        if (!turn.isDone()) {
+            metrics.contended();
+            LOGGER.info(operationDescription + " waiting for earlier operations on " + orgIds);
+            Timer.Context wait = metrics.startOrganizationWait();
+            turn.thenRun(wait::stop);
+        }
+        return turn;
+    }
+
+    private GatewayCall skippedCall(String authorizableName, String operationName,
+        String authorizableOperation) {
+        GatewayCall call = new GatewayCall(authorizableName);
+        call.succeed();
+        metrics.skipped(authorizableName, operationName);
+        LOGGER.info(authorizableName + " skipped " + authorizableOperation
+            + ", already completed for this idempotency key");
+        return call;
+    }
+
+    /**
+     * @return whether the circuit of the gateway lets a call through; calls deferred earlier go
+     * first, so later calls are deferred behind them to keep their order
+     */
+    private boolean isPermitted(String authorizableName, CircuitBreaker breaker) {
+        return circuitBreakers.deferredFor(authorizableName).map(DeferredCalls::isEmpty)
+            .orElse(true) && breaker.tryAcquire();
+    }
+
+    private static void record(CircuitBreaker breaker, GatewayCall call, GatewayResult result) {
+        switch (result.getStatus()) {
+            case SUCCEEDED:
+                breaker.onSuccess(call.runningMillis());
+                break;
+            case FAILED:
+            case TIMED_OUT:
+                breaker.onFailure(call.runningMillis());
+                break;
+            default:
+                breaker.release();
+        }
+    }
+
+    /**
+     * Fails the call without reaching the gateway, as its circuit is open. If configured, the
+     * call is kept for replay and settles only once the replay succeeded or was given up.
+     */
+    private void shortCircuit(GatewayCall call, ThrowableAction action, String operationName,
+        String authorizableOperation, CompletableFuture<Void> settled) {
+        String authorizableName = call.getGatewayName();
+        metrics.shortCircuited(authorizableName, operationName);
+        Optional<DeferredCalls> deferred = circuitBreakers.deferredFor(authorizableName);
+        if (deferred.isPresent() && deferred.get().add(new DeferredCalls.DeferredCall(action,
+            operationName, authorizableOperation, settled))) {
+            LOGGER.warn(authorizableName + " circuit open, deferred " + authorizableOperation);
+            call.fail(authorizableName + " circuit open, deferred for replay");
+            if (deferred.get().startReplay()) {
+                scheduleReplay(authorizableName, circuitBreakers.forGateway(authorizableName)
+                    .map(CircuitBreaker::remainingOpenMillis).orElse(0L));
+            }
+        } else {
+            LOGGER.warn(authorizableName + " circuit open, skipped " + authorizableOperation);
+            call.fail(authorizableName + " circuit open, not called");
+            settled.complete(null);
+        }
+    }
+
+    private void scheduleReplay(String authorizableName, long delayInMillis) {
+        try {
+            executors.deadlines().schedule(() -> replayDeferred(authorizableName), delayInMillis,
+                TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // shutting down, deferred calls stay journaled and are replayed after restart
+            LOGGER.warn(authorizableName + " deferred calls not replayed, engine shut down");
+        }
+    }
+
+    /**
+     * Replays deferred calls of the gateway one by one, in order of arrival, as long as its
+     * circuit lets them through. The first one which does not succeed stays first and is tried
+     * again once the circuit lets calls through again. Deferred calls already had their turn and
+     * keep it until replayed, so replays never overtake other operations on their organizations.
+     * A call which failed {@code maxReplayAttempts} replays or waits longer than
+     * {@code maxDeferredAge} is given up, so it releases its turn and the calls behind it.
+     */
+    private void replayDeferred(String authorizableName) {
+        CircuitBreaker breaker = circuitBreakers.forGateway(authorizableName).get();
+        DeferredCalls deferred = circuitBreakers.deferredFor(authorizableName).get();
+        DeferredCalls.DeferredCall next = deferred.next();
+        if (next == null) {
+            return;
+        }
+        if (deferred.isExpired(next)) {
+            giveUp(authorizableName, deferred, next, "not replayed in time");
+            scheduleReplay(authorizableName, 0);
+            return;
+        }
+        if (!breaker.tryAcquire()) {
+            scheduleReplay(authorizableName,
+                Math.max(breaker.remainingOpenMillis(), REPLAY_DELAY_IN_MILLIS));
+            return;
+        }
+
+        LOGGER.info(authorizableName + " replaying deferred " + next.getOperationDescription());
+        GatewayCall call = new GatewayCall(authorizableName);
+        run(call, next.getAction(), next.getOperationName(), next.getOperationDescription());
+        call.result().thenAccept(result -> {
+            record(breaker, call, result);
+            if (result.isSucceeded()) {
+                deferred.remove(next);
+                next.getSettled().complete(null);
+                scheduleReplay(authorizableName, 0);
+                return;
+            }
+            if (deferred.replayFailed(next)) {
+                giveUp(authorizableName, deferred, next, "replay failed too many times");
+            }
+            scheduleReplay(authorizableName,
+                Math.max(breaker.remainingOpenMillis(), REPLAY_DELAY_IN_MILLIS));
         });
     }
 
-    private void runTasks(List<CompletableFuture<Void>> tasks, String errorMessagePrefix)
-        throws AuthorizableGatewayException {
+    /**
+     * Drops the deferred call and releases its turn; its journal entry stays open, so it is
+     * replayed by {@link #replayUnfinished()} after restart.
+     */
+    private void giveUp(String authorizableName, DeferredCalls deferred,
+        DeferredCalls.DeferredCall call, String reason) {
+        deferred.remove(call);
+        metrics.abandoned(authorizableName, call.getOperationName());
+        LOGGER.error(authorizableName + " gave up deferred " + call.getOperationDescription()
+            + ": " + reason + ", left to the journal");
+        call.getSettled().cancel(false);
+    }
+
+    /**
+     * Submits gateway call to the executor of the gateway once it is the turn of the operation.
+     * A failed attempt is retried after a backoff, up to the configured number of attempts. If
+     * the call does not finish within the timeout of the gateway, counted from its turn and
+     * including retries, it is reported as timed out and interrupted.
+     *
+     * @param settled future completed once the call finished, or once it was replayed if it was
+     * deferred by an open circuit
+     */
+    private GatewayCall createFutureForMethod(CompletableFuture<Void> turn,
+        ThrowableAction consumer, String authorizableName, String operationName,
+        String authorizableOperation, CompletableFuture<Void> settled) {
+
+        GatewayCall call = new GatewayCall(authorizableName);
+        turn.thenRun(() -> start(call, consumer, operationName, authorizableOperation, settled));
+        return call;
+    }
+
+    /**
+     * Consults the circuit of the gateway when the turn of the call came, so the call cannot
+     * overtake calls deferred while it was waiting for its turn.
+     */
+    private void start(GatewayCall call, ThrowableAction consumer, String operationName,
+        String authorizableOperation, CompletableFuture<Void> settled) {
+        if (call.result().isDone()) {
+            // cancelled while waiting for its turn
+            settled.complete(null);
+            return;
+        }
+        String authorizableName = call.getGatewayName();
+        Optional<CircuitBreaker> breaker = circuitBreakers.forGateway(authorizableName);
+        if (breaker.isPresent() && !isPermitted(authorizableName, breaker.get())) {
+            shortCircuit(call, consumer, operationName, authorizableOperation, settled);
+            return;
+        }
+        breaker.ifPresent(permitted ->
+            call.result().thenAccept(result -> record(permitted, call, result)));
+        call.result().thenRun(() -> settled.complete(null));
+        run(call, consumer, operationName, authorizableOperation);
+    }
 
-        CompletableFuture<Void> allDone =
-            CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()]));
+    private void run(GatewayCall call, ThrowableAction consumer, String operationName,
+        String authorizableOperation) {
+        String authorizableName = call.getGatewayName();
+        call.started();
+        long timeoutInSeconds = properties.getTimeout(authorizableName);
+        ScheduledFuture<?> deadline;
         try {
-            allDone.get(timeoutInSeconds, TimeUnit.SECONDS);
+            deadline = executors.deadlines().schedule(() -> {
+                if (call.timeOut(authorizableName + " timed out after " + timeoutInSeconds
+                    + " s")) {
+                    metrics.timeout(authorizableName, operationName);
+                    LOGGER.warn(authorizableName + " timed out " + authorizableOperation
+                        + ", interrupting");
+                }
+            }, timeoutInSeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // runs on whichever thread completed the turn, so the call has to be failed here,
+            // nobody else would complete it
+            metrics.failure(authorizableName, operationName);
+            call.fail(authorizableName + " rejected " + authorizableOperation
+                + ": engine shut down");
+            return;
+        }
+        call.result().thenRun(() -> deadline.cancel(false));
+        submitAttempt(call, consumer, operationName, authorizableOperation, 1);
+    }
+
+    private void submitAttempt(GatewayCall call, ThrowableAction consumer, String operationName,
+        String authorizableOperation, int attempt) {
+
+        String authorizableName = call.getGatewayName();
+        if (call.result().isDone()) {
+            // timed out or cancelled while waiting for the retry
+            return;
+        }
+        try {
+            call.attach(executors.forGateway(authorizableName).submit(() -> {
+                Timer.Context timer = metrics.startCall(authorizableName, operationName);
+                try {
+                    consumer.apply();
+                    if (call.succeed()) {
+                        metrics.success(authorizableName, operationName);
+                        LOGGER.info(authorizableName + " finished " + authorizableOperation);
+                    }
+                } catch (AuthorizableGatewayException | RuntimeException e) {
+                    if (attempt < properties.getRetry().getMaxAttempts()
+                        && !call.result().isDone()) {
+                        long backoff = backoffInMillis(attempt);
+                        metrics.retry(authorizableName, operationName);
+                        LOGGER.warn(authorizableName + " failed " + authorizableOperation
+                            + " (attempt " + attempt + "), retrying in " + backoff + " ms: "
+                            + e.getMessage());
+                        scheduleRetry(call, consumer, operationName, authorizableOperation,
+                            attempt + 1, backoff);
+                    } else if (call.fail(authorizableName + " failed: " + e.getMessage())) {
+                        metrics.failure(authorizableName, operationName);
+                        LOGGER.error(authorizableName + " failed " + authorizableOperation, e);
+                    }
+                } finally {
+                    timer.stop();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            metrics.failure(authorizableName, operationName);
+            call.fail(authorizableName + " rejected " + authorizableOperation
+                + ": executor saturated");
+        }
+    }
+
+    private void scheduleRetry(GatewayCall call, ThrowableAction consumer, String operationName,
+        String authorizableOperation, int attempt, long backoffInMillis) {
+        try {
+            call.attach(executors.deadlines().schedule(
+                () -> submitAttempt(call, consumer, operationName, authorizableOperation,
+                    attempt), backoffInMillis, TimeUnit.MILLISECONDS));
+        } catch (RejectedExecutionException e) {
+            String authorizableName = call.getGatewayName();
+            if (call.fail(authorizableName + " rejected retry of " + authorizableOperation
+                + ": engine shut down")) {
+                metrics.failure(authorizableName, operationName);
+            }
+        }
+    }
+
+    /**
+     * @return exponential backoff with jitter, so retries of many requests failed by the same
+     * backend outage do not hit it again all at once
+     */
+    private long backoffInMillis(int attempt) {
+        EngineProperties.RetryProperties retry = properties.getRetry();
+        long ceiling = Math.min(retry.getMaxBackoff(),
+            retry.getInitialBackoff() << Math.min(attempt - 1, 30));
+        return ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+    }
+
+    private Map<String, GatewayCall> applyPolicy(Map<String, GatewayCall> calls,
+        FailurePolicy policy) {
+        if (policy == FailurePolicy.FAIL_FAST) {
+            calls.values().forEach(failed -> failed.result().thenAccept(result -> {
+                if (result.getStatus() == GatewayStatus.FAILED
+                    || result.getStatus() == GatewayStatus.TIMED_OUT) {
+                    calls.values().forEach(call -> {
+                        if (call.cancel("cancelled after " + failed.getGatewayName() + " failed")) {
+                            metrics.cancelled(call.getGatewayName());
+                        }
+                    });
+                }
+            }));
+        }
+        return calls;
+    }
+
+    /**
+     * Waits until every call finished, failed, timed out or was cancelled, at most for the
+     * timeout of its gateway counted from now. The deadline of a call itself starts only with
+     * its turn, so calls still queued behind earlier operations on their organizations, or
+     * still running, when the caller gives up are reported as timed out.
+     */
+    private ExecutionResult await(Map<String, GatewayCall> calls, String operationName,
+        String errorMessagePrefix) throws AuthorizableGatewayException {
+
+        long arrival = System.nanoTime();
+        try {
+            for (GatewayCall call : calls.values()) {
+                awaitCall(call, arrival, operationName);
+            }
         } catch (ExecutionException e) {
-            LOGGER.error(errorMessagePrefix, e);
-            throw new AuthorizableGatewayException(errorMessagePrefix + " " + e.getMessage());
+            // gateway calls never complete exceptionally
+            throw new IllegalStateException(e);
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
+            // calls are left to their deadlines, other callers may have joined them
             LOGGER.error(errorMessagePrefix, e);
             throw new AuthorizableGatewayException(errorMessagePrefix + " " + e.toString());
+        }
+        return ExecutionResult.of(calls);
+    }
+
+    private void awaitCall(GatewayCall call, long arrival, String operationName)
+        throws ExecutionException, InterruptedException {
+        String authorizableName = call.getGatewayName();
+        long timeoutInSeconds = properties.getTimeout(authorizableName);
+        long remaining = arrival + TimeUnit.SECONDS.toNanos(timeoutInSeconds) - System.nanoTime();
+        try {
+            call.result().get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
         } catch (TimeoutException e) {
-            LOGGER.error(errorMessagePrefix, e);
-            throw new AuthorizableGatewayException(errorMessagePrefix + " " + e.toString());
+            if (call.timeOut(authorizableName + " timed out after " + timeoutInSeconds
+                + " s, including wait for earlier operations")) {
+                metrics.timeout(authorizableName, operationName);
+                LOGGER.warn(authorizableName + " timed out " + operationName + ", interrupting");
+            }
+        }
+    }
+
+    private void throwIfFailed(ExecutionResult result, String errorMessagePrefix)
+        throws AuthorizableGatewayException {
+        if (!result.isSucceeded()) {
+            String message = errorMessagePrefix + " " + result.describeFailures();
+            LOGGER.error(message);
+            throw new AuthorizableGatewayException(message);
+        }
+    }
+
+    private static EngineProperties withTimeout(long timeoutInSeconds) {
+        EngineProperties properties = new EngineProperties();
+        properties.setTimeout(timeoutInSeconds);
+        return properties;
+    }
+
+    /**
+     * Calls of operations fanned out together, failure policy applied to them, organizations
+     * they are ordered on and future completed once they finished on every gateway.
+     */
+    private static final class Dispatch {
+
+        private final Map<String, GatewayCall> calls;
+
+        private final FailurePolicy policy;
+
+        private final Set<String> orgIds;
+
+        private final CompletableFuture<Void> done;
+
+        Dispatch(Map<String, GatewayCall> calls, FailurePolicy policy, Set<String> orgIds,
+            CompletableFuture<Void> done) {
+            this.calls = calls;
+            this.policy = policy;
+            this.orgIds = orgIds;
+            this.done = done;
         }
     }
 
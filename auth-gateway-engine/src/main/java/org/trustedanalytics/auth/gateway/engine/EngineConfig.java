@@ -13,8 +13,10 @@
  */
 package org.trustedanalytics.auth.gateway.engine;
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Strings;
+
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.core.context.SecurityContextHolder;
@@ -22,14 +24,21 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationDetails;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
 import java.util.function.Supplier;
 
+import static java.util.stream.Collectors.toList;
+
 @Configuration
 class EngineConfig {
 
-    @Value("${engine.timeout}")
-    private long timeout;
+    @Autowired
+    private EngineProperties engineProperties;
+
+    @Autowired
+    private MetricRegistry metricRegistry;
 
     /**
      * IoC Container collects all Beans implementing Authorizable interface and injects here.
@@ -37,9 +46,41 @@ class EngineConfig {
     @Autowired
     private List<Authorizable> supportedAuthorizables;
 
+    @Bean(destroyMethod = "shutdown")
+    public GatewayExecutors getGatewayExecutors() {
+        return new GatewayExecutors(engineProperties, metricRegistry);
+    }
+
+    @Bean
+    public CircuitBreakers getCircuitBreakers() {
+        return new CircuitBreakers(engineProperties);
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Engine getEngine(GatewayExecutors gatewayExecutors, CircuitBreakers circuitBreakers)
+        throws IOException {
+        Engine engine = new Engine(supportedAuthorizables, engineProperties, gatewayExecutors,
+            new GatewayMetrics(metricRegistry), createJournal(), circuitBreakers);
+        engine.replayUnfinished();
+        return engine;
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public Reconciler getReconciler(Engine engine) {
+        return new Reconciler(supportedAuthorizables, engine, engineProperties);
+    }
+
     @Bean
-    public Engine getEngine() {
-        return new Engine(supportedAuthorizables, timeout);
+    public AdmissionControl getAdmissionControl() {
+        return new AdmissionControl(
+            supportedAuthorizables.stream().map(Authorizable::getName).collect(toList()),
+            engineProperties, metricRegistry);
+    }
+
+    @Bean
+    public JobRegistry getJobRegistry(Engine engine, Reconciler reconciler) {
+        return new JobRegistry(engine, reconciler, engineProperties.getJobs().getRetention(),
+            engineProperties.getJobs().getMaxSize());
     }
 
     @Bean
@@ -52,4 +93,11 @@ class EngineConfig {
         };
     }
 
+    private OperationJournal createJournal() throws IOException {
+        String path = engineProperties.getJournal().getPath();
+        if (Strings.isNullOrEmpty(path)) {
+            return OperationJournal.NONE;
+        }
+        return new FileOperationJournal(Paths.get(path), engineProperties.getJournal().getMaxSize());
+    }
 }
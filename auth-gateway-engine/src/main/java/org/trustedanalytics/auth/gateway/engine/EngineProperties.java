@@ -0,0 +1,624 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+
+/**
+ * Engine settings bound from the "engine" section of application.yml.
+ *
+ * Values of "engine.timeout", "engine.admission.gatewayRate" and under "engine.executor" are
+ * defaults used for every gateway. They can be overridden for a single gateway under
+ * "engine.gateways.{name}", where name is Authorizable.getName().
+ */
+@Configuration
+@ConfigurationProperties("engine")
+class EngineProperties {
+
+    private long timeout = 30;
+
+    private FailurePolicy failurePolicy = FailurePolicy.WAIT_FOR_ALL;
+
+    // ask gateways whether a single operation is already applied before writing it
+    private boolean skipNoopWrites;
+
+    private ExecutorProperties executor = new ExecutorProperties();
+
+    private Map<String, GatewayProperties> gateways = new HashMap<>();
+
+    private JobProperties jobs = new JobProperties();
+
+    private RetryProperties retry = new RetryProperties();
+
+    private IdempotencyProperties idempotency = new IdempotencyProperties();
+
+    private JournalProperties journal = new JournalProperties();
+
+    private ReconciliationProperties reconciliation = new ReconciliationProperties();
+
+    private AdmissionProperties admission = new AdmissionProperties();
+
+    private CircuitBreakerProperties circuitBreaker = new CircuitBreakerProperties();
+
+    private AuthorizationProperties authorization = new AuthorizationProperties();
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public void setTimeout(long timeout) {
+        this.timeout = timeout;
+    }
+
+    public FailurePolicy getFailurePolicy() {
+        return failurePolicy;
+    }
+
+    public void setFailurePolicy(FailurePolicy failurePolicy) {
+        this.failurePolicy = failurePolicy;
+    }
+
+    public boolean isSkipNoopWrites() {
+        return skipNoopWrites;
+    }
+
+    public void setSkipNoopWrites(boolean skipNoopWrites) {
+        this.skipNoopWrites = skipNoopWrites;
+    }
+
+    public ExecutorProperties getExecutor() {
+        return executor;
+    }
+
+    public void setExecutor(ExecutorProperties executor) {
+        this.executor = executor;
+    }
+
+    public Map<String, GatewayProperties> getGateways() {
+        return gateways;
+    }
+
+    public void setGateways(Map<String, GatewayProperties> gateways) {
+        this.gateways = gateways;
+    }
+
+    public JobProperties getJobs() {
+        return jobs;
+    }
+
+    public void setJobs(JobProperties jobs) {
+        this.jobs = jobs;
+    }
+
+    public RetryProperties getRetry() {
+        return retry;
+    }
+
+    public void setRetry(RetryProperties retry) {
+        this.retry = retry;
+    }
+
+    public IdempotencyProperties getIdempotency() {
+        return idempotency;
+    }
+
+    public void setIdempotency(IdempotencyProperties idempotency) {
+        this.idempotency = idempotency;
+    }
+
+    public JournalProperties getJournal() {
+        return journal;
+    }
+
+    public void setJournal(JournalProperties journal) {
+        this.journal = journal;
+    }
+
+    public ReconciliationProperties getReconciliation() {
+        return reconciliation;
+    }
+
+    public void setReconciliation(ReconciliationProperties reconciliation) {
+        this.reconciliation = reconciliation;
+    }
+
+    public AdmissionProperties getAdmission() {
+        return admission;
+    }
+
+    public void setAdmission(AdmissionProperties admission) {
+        this.admission = admission;
+    }
+
+    public CircuitBreakerProperties getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public void setCircuitBreaker(CircuitBreakerProperties circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
+
+    public AuthorizationProperties getAuthorization() {
+        return authorization;
+    }
+
+    public void setAuthorization(AuthorizationProperties authorization) {
+        this.authorization = authorization;
+    }
+
+    /**
+     * @return seconds after which a call to given gateway is cancelled
+     */
+    public long getTimeout(String gatewayName) {
+        return forGateway(gatewayName, GatewayProperties::getTimeout).orElse(timeout);
+    }
+
+    public int getPoolSize(String gatewayName) {
+        return forGateway(gatewayName, GatewayProperties::getPoolSize)
+            .orElse(executor.getPoolSize());
+    }
+
+    public int getQueueCapacity(String gatewayName) {
+        return forGateway(gatewayName, GatewayProperties::getQueueCapacity)
+            .orElse(executor.getQueueCapacity());
+    }
+
+    /**
+     * @return operations per second admitted to given gateway, 0 if unlimited
+     */
+    public double getRate(String gatewayName) {
+        return forGateway(gatewayName, GatewayProperties::getRate)
+            .orElse(admission.getGatewayRate());
+    }
+
+    private <T> Optional<T> forGateway(String gatewayName,
+        Function<GatewayProperties, T> property) {
+        return Optional.ofNullable(gateways.get(gatewayName)).map(property);
+    }
+
+    public static class ExecutorProperties {
+
+        private ExecutionMode mode = ExecutionMode.BOUNDED;
+
+        private int poolSize = 4;
+
+        private int queueCapacity = 100;
+
+        public ExecutionMode getMode() {
+            return mode;
+        }
+
+        public void setMode(ExecutionMode mode) {
+            this.mode = mode;
+        }
+
+        public int getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(int poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+    }
+
+    public static class JobProperties {
+
+        // seconds a finished job stays available for polling
+        private long retention = 3600;
+
+        // running jobs above which new jobs are rejected, and finished jobs above which the
+        // oldest are evicted
+        private long maxSize = 10000;
+
+        // upper limit in seconds for long-polling a job
+        private long maxWait = 60;
+
+        public long getRetention() {
+            return retention;
+        }
+
+        public void setRetention(long retention) {
+            this.retention = retention;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public long getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(long maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    public static class RetryProperties {
+
+        // 1 disables retries
+        private int maxAttempts = 1;
+
+        // milliseconds before the first retry, doubled with every next one
+        private long initialBackoff = 100;
+
+        private long maxBackoff = 2000;
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public void setMaxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+        }
+
+        public long getInitialBackoff() {
+            return initialBackoff;
+        }
+
+        public void setInitialBackoff(long initialBackoff) {
+            this.initialBackoff = initialBackoff;
+        }
+
+        public long getMaxBackoff() {
+            return maxBackoff;
+        }
+
+        public void setMaxBackoff(long maxBackoff) {
+            this.maxBackoff = maxBackoff;
+        }
+    }
+
+    public static class IdempotencyProperties {
+
+        // seconds a successful gateway call is remembered for its idempotency key
+        private long retention = 3600;
+
+        private long maxSize = 100000;
+
+        public long getRetention() {
+            return retention;
+        }
+
+        public void setRetention(long retention) {
+            this.retention = retention;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class JournalProperties {
+
+        // file of the operation journal, no journal is kept if empty
+        private String path;
+
+        // bytes after which the journal is rewritten with unfinished entries only
+        private long maxSize = 64L * 1024 * 1024;
+
+        public String getPath() {
+            return path;
+        }
+
+        public void setPath(String path) {
+            this.path = path;
+        }
+
+        public long getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(long maxSize) {
+            this.maxSize = maxSize;
+        }
+    }
+
+    public static class ReconciliationProperties {
+
+        // writes per second issued to a single gateway, a batch counts as one write per item
+        private double rate = 50;
+
+        // seconds after which reconciliation of a gateway is cancelled
+        private long timeout = 3600;
+
+        public double getRate() {
+            return rate;
+        }
+
+        public void setRate(double rate) {
+            this.rate = rate;
+        }
+
+        public long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(long timeout) {
+            this.timeout = timeout;
+        }
+    }
+
+    public static class AdmissionProperties {
+
+        // operations per second admitted by operation type, e.g. add_organization; unlimited if
+        // not given
+        private Map<String, Double> operations = new HashMap<>();
+
+        // operations per second admitted to a single gateway, 0 means unlimited
+        private double gatewayRate;
+
+        // requests waiting for admission at once, further ones are rejected immediately
+        private int maxWaiting = 100;
+
+        // milliseconds a request waits for admission before it is rejected
+        private long maxWait = 1000;
+
+        public Map<String, Double> getOperations() {
+            return operations;
+        }
+
+        public void setOperations(Map<String, Double> operations) {
+            this.operations = operations;
+        }
+
+        public double getGatewayRate() {
+            return gatewayRate;
+        }
+
+        public void setGatewayRate(double gatewayRate) {
+            this.gatewayRate = gatewayRate;
+        }
+
+        public int getMaxWaiting() {
+            return maxWaiting;
+        }
+
+        public void setMaxWaiting(int maxWaiting) {
+            this.maxWaiting = maxWaiting;
+        }
+
+        public long getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(long maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    public static class CircuitBreakerProperties {
+
+        private boolean enabled;
+
+        // number of last calls of a gateway whose outcomes are taken into account
+        private int windowSize = 20;
+
+        // calls which have to be recorded before the circuit can open
+        private int minimumCalls = 10;
+
+        // percentage of failed calls opening the circuit
+        private double failureRateThreshold = 50;
+
+        // milliseconds after which a call counts as slow
+        private long slowCallDuration = 10000;
+
+        // percentage of slow calls opening the circuit
+        private double slowCallRateThreshold = 100;
+
+        // seconds an open circuit rejects calls before letting probe calls through
+        private long openDuration = 30;
+
+        // probe calls which have to succeed to close the circuit
+        private int halfOpenCalls = 3;
+
+        // keep calls rejected by an open circuit and replay them once it lets calls through
+        private boolean replay;
+
+        // deferred calls kept per gateway, further rejected calls are not replayed
+        private int maxDeferred = 1000;
+
+        // failed replays after which a deferred call is given up and left to the journal
+        private int maxReplayAttempts = 10;
+
+        // seconds after which a deferred call not replayed yet is given up
+        private long maxDeferredAge = 600;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getMinimumCalls() {
+            return minimumCalls;
+        }
+
+        public void setMinimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public long getSlowCallDuration() {
+            return slowCallDuration;
+        }
+
+        public void setSlowCallDuration(long slowCallDuration) {
+            this.slowCallDuration = slowCallDuration;
+        }
+
+        public double getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public void setSlowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+        }
+
+        public long getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(long openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getHalfOpenCalls() {
+            return halfOpenCalls;
+        }
+
+        public void setHalfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+        }
+
+        public boolean isReplay() {
+            return replay;
+        }
+
+        public void setReplay(boolean replay) {
+            this.replay = replay;
+        }
+
+        public int getMaxDeferred() {
+            return maxDeferred;
+        }
+
+        public void setMaxDeferred(int maxDeferred) {
+            this.maxDeferred = maxDeferred;
+        }
+
+        public int getMaxReplayAttempts() {
+            return maxReplayAttempts;
+        }
+
+        public void setMaxReplayAttempts(int maxReplayAttempts) {
+            this.maxReplayAttempts = maxReplayAttempts;
+        }
+
+        public long getMaxDeferredAge() {
+            return maxDeferredAge;
+        }
+
+        public void setMaxDeferredAge(long maxDeferredAge) {
+            this.maxDeferredAge = maxDeferredAge;
+        }
+    }
+
+    public static class AuthorizationProperties {
+
+        // tokens whose admin decision is remembered, 0 disables the cache
+        private long cacheMaxSize = 10000;
+
+        // seconds a decision is remembered at most, never longer than the token is valid
+        private long cacheTtl = 300;
+
+        public long getCacheMaxSize() {
+            return cacheMaxSize;
+        }
+
+        public void setCacheMaxSize(long cacheMaxSize) {
+            this.cacheMaxSize = cacheMaxSize;
+        }
+
+        public long getCacheTtl() {
+            return cacheTtl;
+        }
+
+        public void setCacheTtl(long cacheTtl) {
+            this.cacheTtl = cacheTtl;
+        }
+    }
+
+    public static class GatewayProperties {
+
+        private Long timeout;
+
+        private Integer poolSize;
+
+        private Integer queueCapacity;
+
+        private Double rate;
+
+        public Long getTimeout() {
+            return timeout;
+        }
+
+        public void setTimeout(Long timeout) {
+            this.timeout = timeout;
+        }
+
+        public Integer getPoolSize() {
+            return poolSize;
+        }
+
+        public void setPoolSize(Integer poolSize) {
+            this.poolSize = poolSize;
+        }
+
+        public Integer getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(Integer queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public Double getRate() {
+            return rate;
+        }
+
+        public void setRate(Double rate) {
+            this.rate = rate;
+        }
+    }
+}
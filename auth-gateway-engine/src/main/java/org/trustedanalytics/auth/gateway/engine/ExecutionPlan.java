@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Backend calls which operations would make on every gateway, keyed by gateway name. Computed by
+ * {@link Engine#plan(java.util.List, boolean)} without calling any backend.
+ */
+class ExecutionPlan {
+
+    private final ExecutionStatus status;
+
+    private final int operations;
+
+    private final long estimatedCalls;
+
+    private final Map<String, GatewayPlan> gateways;
+
+    ExecutionPlan(int operations, Map<String, GatewayPlan> gateways) {
+        this.operations = operations;
+        this.gateways = Collections.unmodifiableMap(gateways);
+        this.estimatedCalls = gateways.values().stream()
+            .mapToLong(GatewayPlan::getEstimatedCalls).sum();
+        this.status = gateways.values().stream().allMatch(GatewayPlan::isSucceeded)
+            ? ExecutionStatus.SUCCEEDED : ExecutionStatus.FAILED;
+    }
+
+    public ExecutionStatus getStatus() {
+        return status;
+    }
+
+    public int getOperations() {
+        return operations;
+    }
+
+    /**
+     * @return number of backend calls of all gateways together
+     */
+    public long getEstimatedCalls() {
+        return estimatedCalls;
+    }
+
+    public Map<String, GatewayPlan> getGateways() {
+        return gateways;
+    }
+
+    boolean isSucceeded() {
+        return status == ExecutionStatus.SUCCEEDED;
+    }
+}
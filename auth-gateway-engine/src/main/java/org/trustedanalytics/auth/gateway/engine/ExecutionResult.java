@@ -0,0 +1,89 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Result of an operation executed on all gateways: overall status and result of every gateway,
+ * keyed by gateway name. Returned as JSON by the provisioning endpoints, so clients can retry
+ * only the gateways which did not succeed.
+ */
+class ExecutionResult {
+
+    private final ExecutionStatus status;
+
+    private final Map<String, GatewayResult> gateways;
+
+    private ExecutionResult(Map<String, GatewayResult> gateways) {
+        this.gateways = Collections.unmodifiableMap(gateways);
+        this.status = gateways.values().stream().allMatch(GatewayResult::isSucceeded)
+            ? ExecutionStatus.SUCCEEDED : ExecutionStatus.FAILED;
+    }
+
+    /**
+     * @param calls finished gateway calls, keyed by gateway name
+     */
+    static ExecutionResult of(Map<String, GatewayCall> calls) {
+        Map<String, GatewayResult> gateways = new LinkedHashMap<>();
+        calls.forEach((name, call) -> gateways.put(name, call.current()));
+        return new ExecutionResult(gateways);
+    }
+
+    public ExecutionStatus getStatus() {
+        return status;
+    }
+
+    public Map<String, GatewayResult> getGateways() {
+        return gateways;
+    }
+
+    boolean isSucceeded() {
+        return status == ExecutionStatus.SUCCEEDED;
+    }
+
+    /**
+     * @return names of gateways with given status
+     */
+    List<String> getGateways(GatewayStatus gatewayStatus) {
+        return gateways.entrySet().stream()
+            .filter(gateway -> gateway.getValue().getStatus() == gatewayStatus)
+            .map(Map.Entry::getKey)
+            .collect(toList());
+    }
+
+    /**
+     * @return errors of gateways which did not succeed followed by names of those which did
+     */
+    String describeFailures() {
+        List<String> failures = gateways.values().stream()
+            .filter(gateway -> !gateway.isSucceeded())
+            .map(ExecutionResult::describe)
+            .collect(toList());
+        return String.join("; ", failures) + "; completed: "
+            + getGateways(GatewayStatus.SUCCEEDED);
+    }
+
+    private static String describe(GatewayResult gateway) {
+        // timeouts keep the exception type in the message, as before per-gateway deadlines
+        return gateway.getStatus() == GatewayStatus.TIMED_OUT
+            ? TimeoutException.class.getName() + ": " + gateway.getError() : gateway.getError();
+    }
+}
@@ -0,0 +1,26 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+/**
+ * What Engine does with the remaining gateway calls when one of them fails.
+ */
+enum FailurePolicy {
+
+    // let every gateway finish, report all results
+    WAIT_FOR_ALL,
+
+    // cancel (interrupt) calls still running or queued as soon as one gateway fails
+    FAIL_FAST
+}
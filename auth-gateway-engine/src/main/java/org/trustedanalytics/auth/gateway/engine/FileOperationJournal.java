@@ -0,0 +1,307 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Operation journal in a local append-only file, one record per line:
+ * <pre>
+ * A {entry} {operation}...   operations accepted
+ * D {entry} {gateway}        gateway completed the operations
+ * C {entry}                  all gateway calls finished
+ * </pre>
+ *
+ * Accepted records are forced to disk before the operations are dispatched. Concurrent requests
+ * share one fsync (group commit): a request whose record was already covered by another
+ * request's fsync does not force the file again. Completion and close records are not forced;
+ * losing them in a crash only makes the entry replay, which is safe as gateway operations are
+ * idempotent.
+ *
+ * Once the file grows over the size limit, it is rewritten with the open entries only.
+ */
+class FileOperationJournal implements OperationJournal {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileOperationJournal.class);
+
+    private static final String ACCEPTED = "A";
+
+    private static final String COMPLETED = "D";
+
+    private static final String CLOSED = "C";
+
+    private static final String NULL_FIELD = "-";
+
+    private final Path path;
+
+    private final long maxSize;
+
+    private final List<JournalEntry> unfinished;
+
+    // guarded by this
+    private final Map<Long, JournalEntry> open;
+
+    // guarded by this
+    private FileChannel channel;
+
+    // guarded by this
+    private long nextId;
+
+    // bytes appended since the journal was opened, guarded by this
+    private long appended;
+
+    // guarded by this
+    private long size;
+
+    private final Object syncLock = new Object();
+
+    // bytes appended which are on disk, guarded by syncLock
+    private long synced;
+
+    public FileOperationJournal(Path path, long maxSize) throws IOException {
+        this.path = path;
+        this.maxSize = maxSize;
+        this.open = read(path);
+        this.unfinished = Collections.unmodifiableList(new ArrayList<>(open.values()));
+        this.nextId = open.keySet().stream().mapToLong(Long::longValue).max().orElse(0) + 1;
+        compact();
+        LOGGER.info("Operation journal " + path + " opened, " + unfinished.size()
+            + " unfinished entries");
+    }
+
+    @Override
+    public long accept(List<Operation> operations) {
+        long id;
+        long position;
+        synchronized (this) {
+            id = nextId++;
+            open.put(id, new JournalEntry(id, operations));
+            position = append(ACCEPTED + " " + id + " " + encode(operations));
+        }
+        sync(position);
+        return id;
+    }
+
+    @Override
+    public synchronized void complete(long entryId, String gatewayName) {
+        JournalEntry entry = open.get(entryId);
+        if (entry != null) {
+            entry.complete(gatewayName);
+            appendQuietly(COMPLETED + " " + entryId + " " + encode(gatewayName));
+        }
+    }
+
+    @Override
+    public void close(long entryId) {
+        boolean full;
+        synchronized (this) {
+            if (open.remove(entryId) == null) {
+                return;
+            }
+            appendQuietly(CLOSED + " " + entryId);
+            full = size > maxSize;
+        }
+        if (full) {
+            try {
+                compact();
+            } catch (IOException e) {
+                LOGGER.error("Compacting operation journal " + path + " failed", e);
+            }
+        }
+    }
+
+    @Override
+    public List<JournalEntry> unfinished() {
+        return unfinished;
+    }
+
+    @Override
+    public void shutdown() {
+        synchronized (syncLock) {
+            synchronized (this) {
+                try {
+                    channel.force(false);
+                    channel.close();
+                } catch (IOException e) {
+                    LOGGER.error("Closing operation journal " + path + " failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return position in the journal right after the record
+     */
+    private long append(String record) {
+        byte[] bytes = (record + "\n").getBytes(StandardCharsets.UTF_8);
+        try {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Writing operation journal " + path + " failed", e);
+        }
+        size += bytes.length;
+        appended += bytes.length;
+        return appended;
+    }
+
+    private void appendQuietly(String record) {
+        try {
+            append(record);
+        } catch (UncheckedIOException e) {
+            // the entry is replayed after a restart, which gateways tolerate
+            LOGGER.error(e.getMessage(), e.getCause());
+        }
+    }
+
+    private void sync(long position) {
+        synchronized (syncLock) {
+            if (synced >= position) {
+                return;
+            }
+            long target;
+            FileChannel current;
+            synchronized (this) {
+                target = appended;
+                current = channel;
+            }
+            try {
+                current.force(false);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Syncing operation journal " + path + " failed", e);
+            }
+            synced = target;
+        }
+    }
+
+    /**
+     * Rewrites the journal with open entries only and atomically replaces the old file.
+     */
+    private void compact() throws IOException {
+        synchronized (syncLock) {
+            synchronized (this) {
+                Path compacted = path.resolveSibling(path.getFileName() + ".tmp");
+                List<String> records = new ArrayList<>();
+                for (JournalEntry entry : open.values()) {
+                    records.add(ACCEPTED + " " + entry.getId() + " "
+                        + encode(entry.getOperations()));
+                    entry.getCompleted().forEach(gatewayName -> records.add(
+                        COMPLETED + " " + entry.getId() + " " + encode(gatewayName)));
+                }
+                Files.write(compacted, records, StandardCharsets.UTF_8);
+                try (FileChannel written = FileChannel.open(compacted, StandardOpenOption.WRITE)) {
+                    written.force(true);
+                }
+
+                if (channel != null) {
+                    channel.close();
+                }
+                Files.move(compacted, path, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+                channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+                size = channel.size();
+                synced = appended;
+            }
+        }
+    }
+
+    private static Map<Long, JournalEntry> read(Path path) throws IOException {
+        Map<Long, JournalEntry> entries = new LinkedHashMap<>();
+        if (!Files.exists(path)) {
+            return entries;
+        }
+        String content = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        List<String> records = new ArrayList<>(Arrays.asList(content.split("\n", -1)));
+        // the last record is complete only if terminated; a torn one was never forced to disk,
+        // so its operations were never dispatched
+        records.remove(records.size() - 1);
+        for (String record : records) {
+            try {
+                apply(entries, record.split(" ", -1));
+            } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+                LOGGER.warn("Skipping malformed operation journal record: " + record);
+            }
+        }
+        return entries;
+    }
+
+    private static void apply(Map<Long, JournalEntry> entries, String[] fields) {
+        long id = Long.parseLong(fields[1]);
+        switch (fields[0]) {
+            case ACCEPTED:
+                List<Operation> operations = new ArrayList<>();
+                for (int i = 2; i < fields.length; i++) {
+                    operations.add(decodeOperation(fields[i]));
+                }
+                entries.put(id, new JournalEntry(id, operations));
+                break;
+            case COMPLETED:
+                JournalEntry entry = entries.get(id);
+                if (entry != null) {
+                    entry.complete(decode(fields[2]));
+                }
+                break;
+            case CLOSED:
+                entries.remove(id);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown record type " + fields[0]);
+        }
+    }
+
+    private static String encode(List<Operation> operations) {
+        List<String> encoded = new ArrayList<>();
+        for (Operation operation : operations) {
+            encoded.add(operation.getType().name() + "," + encode(operation.getUserId()) + ","
+                + encode(operation.getOrgId()));
+        }
+        return String.join(" ", encoded);
+    }
+
+    private static Operation decodeOperation(String field) {
+        String[] parts = field.split(",", -1);
+        return Operation.of(OperationType.valueOf(parts[0]), decode(parts[1]), decode(parts[2]));
+    }
+
+    private static String encode(String value) {
+        return value == null ? NULL_FIELD
+            : Base64.getEncoder().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decode(String value) {
+        return NULL_FIELD.equals(value) ? null
+            : new String(Base64.getDecoder().decode(value), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,112 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Handle of one call to one gateway. Exactly one of succeed, fail, timeOut and cancel wins and
+ * completes the result; timeOut and cancel also interrupt the call, or prevent it from starting
+ * if it is still queued.
+ */
+class GatewayCall {
+
+    private final String gatewayName;
+
+    private final long submitted = System.nanoTime();
+
+    private volatile long started;
+
+    private final CompletableFuture<GatewayResult> result = new CompletableFuture<>();
+
+    private volatile Future<?> task;
+
+    GatewayCall(String gatewayName) {
+        this.gatewayName = gatewayName;
+    }
+
+    public String getGatewayName() {
+        return gatewayName;
+    }
+
+    /**
+     * @return future completed once the call finished, never exceptionally
+     */
+    public CompletableFuture<GatewayResult> result() {
+        return result;
+    }
+
+    /**
+     * @return final result, or RUNNING result if the call did not finish yet
+     */
+    public GatewayResult current() {
+        return result.getNow(new GatewayResult(GatewayStatus.RUNNING, elapsedMillis(), null));
+    }
+
+    /**
+     * Marks the turn of the call, after earlier operations on the same organizations finished.
+     */
+    void started() {
+        started = System.nanoTime();
+    }
+
+    /**
+     * @return milliseconds since the call started, including retries, or 0 if it did not start
+     */
+    long runningMillis() {
+        long startedAt = started;
+        return startedAt == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+    }
+
+    void attach(Future<?> task) {
+        this.task = task;
+        if (result.isDone() && !result.join().isSucceeded()) {
+            task.cancel(true);
+        }
+    }
+
+    boolean succeed() {
+        return complete(GatewayStatus.SUCCEEDED, null);
+    }
+
+    boolean fail(String error) {
+        return complete(GatewayStatus.FAILED, error);
+    }
+
+    boolean timeOut(String error) {
+        return interrupt(complete(GatewayStatus.TIMED_OUT, error));
+    }
+
+    boolean cancel(String reason) {
+        return interrupt(complete(GatewayStatus.CANCELLED, reason));
+    }
+
+    private boolean complete(GatewayStatus status, String error) {
+        return result.complete(new GatewayResult(status, elapsedMillis(), error));
+    }
+
+    private boolean interrupt(boolean completed) {
+        Future<?> current = task;
+        if (completed && current != null) {
+            current.cancel(true);
+        }
+        return completed;
+    }
+
+    private long elapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - submitted);
+    }
+}
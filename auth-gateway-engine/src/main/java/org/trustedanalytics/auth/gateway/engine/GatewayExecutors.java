@@ -0,0 +1,145 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Holds one executor per gateway (bulkhead), so a slow backend can only exhaust its own threads
+ * and queue, never those of the other gateways or the JVM common pool.
+ *
+ * In {@link ExecutionMode#BOUNDED} mode every gateway gets a fixed-size pool with a bounded queue.
+ * In {@link ExecutionMode#VIRTUAL} mode every call runs on its own virtual thread, so the number
+ * of calls in flight is not limited by the number of platform threads. On JVMs without virtual
+ * threads the latter falls back to an unbounded, elastic platform thread pool.
+ */
+class GatewayExecutors {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GatewayExecutors.class);
+
+    private static final String METRIC_PREFIX = "engine.executor";
+
+    private static final long KEEP_ALIVE_IN_SECONDS = 60;
+
+    private final Map<String, ExecutorService> executors = new ConcurrentHashMap<>();
+
+    private final ScheduledThreadPoolExecutor deadlines = createDeadlineScheduler();
+
+    private final EngineProperties properties;
+
+    private final MetricRegistry metricRegistry;
+
+    public GatewayExecutors(EngineProperties properties, MetricRegistry metricRegistry) {
+        this.properties = properties;
+        this.metricRegistry = metricRegistry;
+    }
+
+    public ExecutorService forGateway(String gatewayName) {
+        return executors.computeIfAbsent(gatewayName, this::createExecutor);
+    }
+
+    /**
+     * @return scheduler for short actions enforcing deadlines of gateway calls
+     */
+    public ScheduledExecutorService deadlines() {
+        return deadlines;
+    }
+
+    public void shutdown() {
+        deadlines.shutdownNow();
+        executors.values().forEach(ExecutorService::shutdownNow);
+    }
+
+    private static ScheduledThreadPoolExecutor createDeadlineScheduler() {
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1,
+            new ThreadFactoryBuilder().setNameFormat("gateway-deadlines-%d").setDaemon(true)
+                .build());
+        scheduler.setRemoveOnCancelPolicy(true);
+        return scheduler;
+    }
+
+    private ExecutorService createExecutor(String gatewayName) {
+        if (properties.getExecutor().getMode() == ExecutionMode.VIRTUAL) {
+            Optional<ExecutorService> executor = createVirtualExecutor(gatewayName);
+            if (executor.isPresent()) {
+                return executor.get();
+            }
+            // an unbounded pool would give up the bulkhead, so the bounded one is used instead
+            LOGGER.warn(String.format("Virtual threads are not supported by this JVM, "
+                + "creating bounded executor for %s", gatewayName));
+        }
+
+        int poolSize = properties.getPoolSize(gatewayName);
+        int queueCapacity = properties.getQueueCapacity(gatewayName);
+        LOGGER.info(String.format("Creating executor for %s: %d threads, queue capacity %d",
+            gatewayName, poolSize, queueCapacity));
+        ThreadPoolExecutor executor = createThreadPool(gatewayName, poolSize, poolSize,
+            new ArrayBlockingQueue<>(queueCapacity));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private Optional<ExecutorService> createVirtualExecutor(String gatewayName) {
+        AtomicInteger activeThreads = new AtomicInteger();
+        Optional<ExecutorService> executor =
+            VirtualThreads.newThreadPerTaskExecutor(threadNamePrefix(gatewayName), activeThreads);
+        if (executor.isPresent()) {
+            LOGGER.info(String.format("Creating virtual thread executor for %s", gatewayName));
+            registerGauge(gatewayName, "queue", () -> 0);
+            registerGauge(gatewayName, "active", activeThreads::get);
+            registerGauge(gatewayName, "pool", activeThreads::get);
+        }
+        return executor;
+    }
+
+    private ThreadPoolExecutor createThreadPool(String gatewayName, int corePoolSize,
+        int maximumPoolSize, BlockingQueue<Runnable> queue) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(corePoolSize, maximumPoolSize,
+            KEEP_ALIVE_IN_SECONDS, TimeUnit.SECONDS, queue,
+            new ThreadFactoryBuilder().setNameFormat(threadNamePrefix(gatewayName) + "%d")
+                .setDaemon(true).build());
+
+        registerGauge(gatewayName, "queue", () -> executor.getQueue().size());
+        registerGauge(gatewayName, "active", executor::getActiveCount);
+        registerGauge(gatewayName, "pool", executor::getPoolSize);
+        return executor;
+    }
+
+    private String threadNamePrefix(String gatewayName) {
+        return "gateway-" + gatewayName + "-";
+    }
+
+    private void registerGauge(String gatewayName, String metric, Gauge<Integer> gauge) {
+        String name = MetricRegistry.name(METRIC_PREFIX, gatewayName, metric);
+        metricRegistry.remove(name);
+        metricRegistry.register(name, gauge);
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+
+import java.util.OptionalDouble;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency and outcome of gateway calls, per gateway and per operation. Registered as
+ * "engine.gateway.{gateway}.{operation}.duration|success|failure|timeout|retry|skipped|noop",
+ * where duration is a timer of every attempt of the call (without time spent waiting in the
+ * executor queue), retry counts failed attempts followed by another one, skipped counts calls not
+ * made as they already succeeded for the same idempotency key and noop counts writes left out as
+ * the gateway reported the operation already applied,
+ * "engine.operation.{operation}.coalesced" counting requests which joined identical operations
+ * already in flight, "engine.organization.contended|wait|inflight" counting operations which
+ * had to wait for earlier operations on the same organization, timing that wait and showing the
+ * number of organizations with operations in flight, and
+ * "engine.gateway.{gateway}.cancelled" counting calls cancelled by fail-fast policy. With
+ * circuit breakers enabled "engine.gateway.{gateway}.{operation}.shortcircuited" counts calls
+ * rejected by an open circuit, "engine.gateway.{gateway}.circuit" shows the state of the circuit
+ * (0 closed, 1 half-open, 2 open) and "engine.gateway.{gateway}.deferred" the number of calls
+ * waiting for replay.
+ */
+class GatewayMetrics {
+
+    private static final String METRIC_PREFIX = "engine.gateway";
+
+    private static final String OPERATION_METRIC_PREFIX = "engine.operation";
+
+    private static final String ORGANIZATION_METRIC_PREFIX = "engine.organization";
+
+    private final MetricRegistry metricRegistry;
+
+    public GatewayMetrics(MetricRegistry metricRegistry) {
+        this.metricRegistry = metricRegistry;
+    }
+
+    public Timer.Context startCall(String gatewayName, String operationName) {
+        return metricRegistry.timer(name(gatewayName, operationName, "duration")).time();
+    }
+
+    /**
+     * @return mean duration of recent calls of the operation on the gateway, or empty if there
+     * was none
+     */
+    public OptionalDouble meanDurationMillis(String gatewayName, String operationName) {
+        Timer timer = metricRegistry.getTimers().get(name(gatewayName, operationName, "duration"));
+        if (timer == null || timer.getCount() == 0) {
+            return OptionalDouble.empty();
+        }
+        return OptionalDouble.of(timer.getSnapshot().getMean() / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    public void success(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "success")).inc();
+    }
+
+    public void failure(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "failure")).inc();
+    }
+
+    public void timeout(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "timeout")).inc();
+    }
+
+    public void retry(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "retry")).inc();
+    }
+
+    public void skipped(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "skipped")).inc();
+    }
+
+    public void noop(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "noop")).inc();
+    }
+
+    public void coalesced(String operationName) {
+        metricRegistry.counter(MetricRegistry.name(OPERATION_METRIC_PREFIX, operationName,
+            "coalesced")).inc();
+    }
+
+    public void contended() {
+        metricRegistry.counter(MetricRegistry.name(ORGANIZATION_METRIC_PREFIX, "contended")).inc();
+    }
+
+    public Timer.Context startOrganizationWait() {
+        return metricRegistry.timer(MetricRegistry.name(ORGANIZATION_METRIC_PREFIX, "wait"))
+            .time();
+    }
+
+    public void registerOrganizationsInFlight(Gauge<Integer> gauge) {
+        register(MetricRegistry.name(ORGANIZATION_METRIC_PREFIX, "inflight"), gauge);
+    }
+
+    public void shortCircuited(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "shortcircuited")).inc();
+    }
+
+    public void abandoned(String gatewayName, String operationName) {
+        metricRegistry.counter(name(gatewayName, operationName, "abandoned")).inc();
+    }
+
+    public void registerCircuit(String gatewayName, Gauge<Integer> state,
+        Gauge<Integer> deferred) {
+        register(MetricRegistry.name(METRIC_PREFIX, gatewayName, "circuit"), state);
+        register(MetricRegistry.name(METRIC_PREFIX, gatewayName, "deferred"), deferred);
+    }
+
+    public void cancelled(String gatewayName) {
+        metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, gatewayName, "cancelled")).inc();
+    }
+
+    private void register(String name, Gauge<Integer> gauge) {
+        metricRegistry.remove(name);
+        metricRegistry.register(name, gauge);
+    }
+
+    private String name(String gatewayName, String operationName, String metric) {
+        return MetricRegistry.name(METRIC_PREFIX, gatewayName, operationName, metric);
+    }
+}
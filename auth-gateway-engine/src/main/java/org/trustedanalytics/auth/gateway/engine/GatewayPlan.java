@@ -0,0 +1,94 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Backend calls a single gateway would make to apply planned operations, serialized as part of
+ * {@link ExecutionPlan}.
+ */
+class GatewayPlan {
+
+    private final long estimatedCalls;
+
+    private final int unplannedOperations;
+
+    private final Long estimatedMillis;
+
+    private final List<PlannedCall> calls;
+
+    private final String error;
+
+    private GatewayPlan(long estimatedCalls, int unplannedOperations, Long estimatedMillis,
+        List<PlannedCall> calls, String error) {
+        this.estimatedCalls = estimatedCalls;
+        this.unplannedOperations = unplannedOperations;
+        this.estimatedMillis = estimatedMillis;
+        this.calls = calls;
+        this.error = error;
+    }
+
+    /**
+     * @param calls planned calls, or null if they should not be listed, only counted
+     */
+    static GatewayPlan planned(long estimatedCalls, int unplannedOperations,
+        Long estimatedMillis, List<PlannedCall> calls) {
+        return new GatewayPlan(estimatedCalls, unplannedOperations, estimatedMillis,
+            calls == null ? null : Collections.unmodifiableList(calls), null);
+    }
+
+    static GatewayPlan failed(String error) {
+        return new GatewayPlan(0, 0, null, null, error);
+    }
+
+    /**
+     * @return number of backend calls, lower than the actual one if some operations could not be
+     * planned
+     */
+    public long getEstimatedCalls() {
+        return estimatedCalls;
+    }
+
+    /**
+     * @return number of operations the gateway could not plan, see
+     * {@link org.trustedanalytics.auth.gateway.spi.Authorizable}
+     */
+    public int getUnplannedOperations() {
+        return unplannedOperations;
+    }
+
+    /**
+     * @return time the gateway would need for the operations, estimated from mean durations of
+     * its past calls, or null if some operation was never called yet
+     */
+    public Long getEstimatedMillis() {
+        return estimatedMillis;
+    }
+
+    public List<PlannedCall> getCalls() {
+        return calls;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    boolean isSucceeded() {
+        return error == null;
+    }
+}
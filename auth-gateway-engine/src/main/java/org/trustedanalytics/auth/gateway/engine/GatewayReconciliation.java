@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Changes applied to a single gateway by {@link Reconciler}. Filled in while the gateway is being
+ * reconciled, so it also describes partial progress of a gateway which failed or timed out.
+ */
+class GatewayReconciliation {
+
+    private boolean listed = true;
+
+    private final Set<String> addedOrganizations = new TreeSet<>();
+
+    private final Set<String> removedOrganizations = new TreeSet<>();
+
+    private final Map<String, Set<String>> addedUsers = new TreeMap<>();
+
+    private final Map<String, Set<String>> removedUsers = new TreeMap<>();
+
+    private final List<String> errors = new ArrayList<>();
+
+    /**
+     * @return false if the gateway could not list its organizations or users, so desired ones were
+     * applied without comparing and nothing was removed
+     */
+    public synchronized boolean isListed() {
+        return listed;
+    }
+
+    public synchronized Set<String> getAddedOrganizations() {
+        return new TreeSet<>(addedOrganizations);
+    }
+
+    public synchronized Set<String> getRemovedOrganizations() {
+        return new TreeSet<>(removedOrganizations);
+    }
+
+    public synchronized Map<String, Set<String>> getAddedUsers() {
+        return new TreeMap<>(addedUsers);
+    }
+
+    public synchronized Map<String, Set<String>> getRemovedUsers() {
+        return new TreeMap<>(removedUsers);
+    }
+
+    public synchronized List<String> getErrors() {
+        return Collections.unmodifiableList(new ArrayList<>(errors));
+    }
+
+    synchronized boolean isSucceeded() {
+        return errors.isEmpty();
+    }
+
+    synchronized void notListed() {
+        listed = false;
+    }
+
+    synchronized void organizationsAdded(Collection<String> orgIds) {
+        addedOrganizations.addAll(orgIds);
+    }
+
+    synchronized void organizationsRemoved(Collection<String> orgIds) {
+        removedOrganizations.addAll(orgIds);
+    }
+
+    synchronized void usersAdded(String orgId, Collection<String> userIds) {
+        addedUsers.computeIfAbsent(orgId, id -> new TreeSet<>()).addAll(userIds);
+    }
+
+    synchronized void usersRemoved(String orgId, Collection<String> userIds) {
+        removedUsers.computeIfAbsent(orgId, id -> new TreeSet<>()).addAll(userIds);
+    }
+
+    synchronized void error(String error) {
+        errors.add(error);
+    }
+}
@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+/**
+ * Outcome of a single gateway call, serialized as part of {@link ExecutionResult} and {@link Job}.
+ */
+class GatewayResult {
+
+    private final GatewayStatus status;
+
+    private final long durationMillis;
+
+    private final String error;
+
+    GatewayResult(GatewayStatus status, long durationMillis, String error) {
+        this.status = status;
+        this.durationMillis = durationMillis;
+        this.error = error;
+    }
+
+    public GatewayStatus getStatus() {
+        return status;
+    }
+
+    /**
+     * @return milliseconds from submitting the call until its completion, or until now while
+     * still running
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    boolean isSucceeded() {
+        return status == GatewayStatus.SUCCEEDED;
+    }
+}
@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+/**
+ * State of a single gateway call.
+ */
+enum GatewayStatus {
+
+    RUNNING,
+
+    SUCCEEDED,
+
+    // gateway threw an exception or its executor rejected the call
+    FAILED,
+
+    // call did not finish within the gateway timeout and was interrupted
+    TIMED_OUT,
+
+    // call was cancelled because another gateway failed, see FailurePolicy.FAIL_FAST
+    CANCELLED
+}
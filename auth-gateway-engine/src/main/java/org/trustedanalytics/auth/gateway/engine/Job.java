@@ -0,0 +1,133 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Operation dispatched by Engine in the background, tracked per gateway, or reconciliation run by
+ * {@link Reconciler}. Serialized as the job resource returned by the asynchronous API.
+ */
+class Job {
+
+    private final String id;
+
+    private final List<Operation> operations;
+
+    private final long created;
+
+    private final Map<String, GatewayCall> calls;
+
+    private final CompletableFuture<Job> completion = new CompletableFuture<>();
+
+    private volatile ExecutionResult result;
+
+    private volatile ReconciliationReport reconciliation;
+
+    private volatile Long finished;
+
+    private volatile ExecutionStatus status = ExecutionStatus.RUNNING;
+
+    private Job(String id, List<Operation> operations, Map<String, GatewayCall> calls) {
+        this.id = id;
+        this.operations = Collections.unmodifiableList(operations);
+        this.created = System.currentTimeMillis();
+        this.calls = Collections.unmodifiableMap(calls);
+    }
+
+    /**
+     * Creates job tracking given gateway calls, keyed by gateway name.
+     */
+    static Job start(String id, List<Operation> operations, Map<String, GatewayCall> calls) {
+        Job job = new Job(id, operations, calls);
+        CompletableFuture.allOf(calls.values().stream()
+            .map(GatewayCall::result).toArray(CompletableFuture[]::new))
+            .thenRun(job::complete);
+        return job;
+    }
+
+    /**
+     * Creates job tracking reconciliation, which has no operations nor gateway calls and reports
+     * its result as {@link #getReconciliation()}.
+     */
+    static Job reconcile(String id, CompletableFuture<ReconciliationReport> report) {
+        Job job = new Job(id, Collections.emptyList(), Collections.emptyMap());
+        report.whenComplete(job::reconciled);
+        return job;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public ExecutionStatus getStatus() {
+        return status;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public Long getFinished() {
+        return finished;
+    }
+
+    public Map<String, GatewayResult> getGateways() {
+        ExecutionResult current = result;
+        if (current != null) {
+            return current.getGateways();
+        }
+        Map<String, GatewayResult> gateways = new LinkedHashMap<>();
+        calls.forEach((name, call) -> gateways.put(name, call.current()));
+        return gateways;
+    }
+
+    /**
+     * @return report of a finished reconciliation, null for other jobs and while running
+     */
+    public ReconciliationReport getReconciliation() {
+        return reconciliation;
+    }
+
+    /**
+     * @return future completed with this job once every gateway call finished
+     */
+    CompletableFuture<Job> completion() {
+        return completion;
+    }
+
+    private void complete() {
+        result = ExecutionResult.of(calls);
+        finish(result.getStatus());
+    }
+
+    private void reconciled(ReconciliationReport report, Throwable error) {
+        reconciliation = report;
+        finish(report == null ? ExecutionStatus.FAILED : report.getStatus());
+    }
+
+    private void finish(ExecutionStatus finalStatus) {
+        finished = System.currentTimeMillis();
+        status = finalStatus;
+        completion.complete(this);
+    }
+}
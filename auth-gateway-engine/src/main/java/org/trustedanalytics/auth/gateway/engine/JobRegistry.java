@@ -0,0 +1,139 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Ints;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * In-memory table of asynchronous jobs. Running jobs are never evicted: at most the configured
+ * number of them run at once and further jobs are rejected until some finish. A finished job is
+ * kept for the configured retention period; when there are more finished jobs than the
+ * configured number the oldest are evicted first.
+ */
+class JobRegistry {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JobRegistry.class);
+
+    private static final long RETRY_AFTER_IN_SECONDS = 1;
+
+    private final Engine engine;
+
+    private final Reconciler reconciler;
+
+    private final Map<String, Job> running = new ConcurrentHashMap<>();
+
+    private final Semaphore runningSlots;
+
+    private final Cache<String, Job> finished;
+
+    public JobRegistry(Engine engine, Reconciler reconciler, long retentionInSeconds,
+        long maxSize) {
+        this.engine = engine;
+        this.reconciler = reconciler;
+        this.runningSlots = new Semaphore(Ints.saturatedCast(maxSize));
+        this.finished = CacheBuilder.newBuilder()
+            .expireAfterWrite(retentionInSeconds, TimeUnit.SECONDS)
+            .maximumSize(maxSize)
+            .build();
+    }
+
+    /**
+     * Dispatches operation to every gateway and returns immediately.
+     *
+     * @throws AdmissionRejectedException if the maximum number of jobs is running
+     */
+    public Job submit(Operation operation, FailurePolicy policy, String idempotencyKey) {
+        return start(() -> Job.start(UUID.randomUUID().toString(),
+            Collections.singletonList(operation),
+            engine.dispatch(operation, policy, idempotencyKey)), "1 operation(s)");
+    }
+
+    /**
+     * Dispatches bulk of operations to every gateway and returns immediately.
+     *
+     * @throws AdmissionRejectedException if the maximum number of jobs is running
+     */
+    public Job submitAll(List<Operation> operations, FailurePolicy policy,
+        String idempotencyKey) {
+        return start(() -> Job.start(UUID.randomUUID().toString(), operations,
+            engine.dispatchAll(operations, policy, idempotencyKey)),
+            operations.size() + " operation(s)");
+    }
+
+    /**
+     * Starts reconciliation of every gateway and returns immediately.
+     *
+     * @throws AdmissionRejectedException if the maximum number of jobs is running
+     * @see Reconciler#reconcile(DesiredState, boolean)
+     */
+    public Job submitReconciliation(DesiredState desired, boolean prune) {
+        return start(() -> {
+            CompletableFuture<ReconciliationReport> report = reconciler.reconcile(desired, prune);
+            report.exceptionally(e -> {
+                LOGGER.error("Reconciliation failed", e);
+                return null;
+            });
+            return Job.reconcile(UUID.randomUUID().toString(), report);
+        }, "reconciliation of " + desired.getOrganizations().size() + " organization(s)");
+    }
+
+    public Optional<Job> get(String jobId) {
+        Job job = running.get(jobId);
+        return job != null ? Optional.of(job) : Optional.ofNullable(finished.getIfPresent(jobId));
+    }
+
+    /**
+     * Takes a running slot before the job is started, so a rejected job is never dispatched.
+     */
+    private Job start(Supplier<Job> starter, String description) {
+        if (!runningSlots.tryAcquire()) {
+            throw new AdmissionRejectedException("Too many running jobs", RETRY_AFTER_IN_SECONDS);
+        }
+        Job job;
+        try {
+            job = starter.get();
+        } catch (RuntimeException e) {
+            runningSlots.release();
+            throw e;
+        }
+        running.put(job.getId(), job);
+        LOGGER.info("Job " + job.getId() + " started " + description);
+
+        // retention is counted from the moment the job finished; it is added to finished jobs
+        // before it is removed from running ones, so it can always be found
+        job.completion().thenAccept(done -> {
+            finished.put(done.getId(), done);
+            running.remove(done.getId());
+            runningSlots.release();
+            LOGGER.info("Job " + done.getId() + " " + done.getStatus());
+        });
+        return job;
+    }
+}
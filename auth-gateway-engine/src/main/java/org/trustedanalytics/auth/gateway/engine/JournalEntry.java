@@ -0,0 +1,52 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Operations journaled together and gateways which already completed them.
+ */
+class JournalEntry {
+
+    private final long id;
+
+    private final List<Operation> operations;
+
+    private final Set<String> completed = new LinkedHashSet<>();
+
+    JournalEntry(long id, List<Operation> operations) {
+        this.id = id;
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    public Set<String> getCompleted() {
+        return Collections.unmodifiableSet(completed);
+    }
+
+    void complete(String gatewayName) {
+        completed.add(gatewayName);
+    }
+}
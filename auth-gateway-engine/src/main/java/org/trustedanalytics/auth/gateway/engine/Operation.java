@@ -0,0 +1,134 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Single provisioning request: operation type together with ids it applies to. Ids not used by
+ * the operation type are null.
+ */
+final class Operation {
+
+    private final OperationType type;
+
+    private final String userId;
+
+    private final String orgId;
+
+    private Operation(OperationType type, String userId, String orgId) {
+        this.type = type;
+        this.userId = userId;
+        this.orgId = orgId;
+    }
+
+    @JsonCreator
+    public static Operation of(@JsonProperty("type") OperationType type,
+        @JsonProperty("userId") String userId, @JsonProperty("orgId") String orgId) {
+        checkArgument(type != null, "Operation type is required");
+        checkArgument(userId != null || !usesUserId(type), "userId is required for " + type);
+        checkArgument(orgId != null || !usesOrgId(type), "orgId is required for " + type);
+        return new Operation(type, userId, orgId);
+    }
+
+    public static Operation addUser(String userId) {
+        return new Operation(OperationType.ADD_USER, userId, null);
+    }
+
+    public static Operation addOrganization(String orgId) {
+        return new Operation(OperationType.ADD_ORGANIZATION, null, orgId);
+    }
+
+    public static Operation addUserToOrg(String userId, String orgId) {
+        return new Operation(OperationType.ADD_USER_TO_ORG, userId, orgId);
+    }
+
+    public static Operation removeUser(String userId) {
+        return new Operation(OperationType.REMOVE_USER, userId, null);
+    }
+
+    public static Operation removeOrganization(String orgId) {
+        return new Operation(OperationType.REMOVE_ORGANIZATION, null, orgId);
+    }
+
+    public static Operation removeUserFromOrg(String userId, String orgId) {
+        return new Operation(OperationType.REMOVE_USER_FROM_ORG, userId, orgId);
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getOrgId() {
+        return orgId;
+    }
+
+    void applyTo(Authorizable authorizable) throws AuthorizableGatewayException {
+        type.applyTo(authorizable, this);
+    }
+
+    boolean isNoop(Authorizable authorizable) throws AuthorizableGatewayException {
+        return type.isNoop(authorizable, this);
+    }
+
+    Optional<List<PlannedCall>> plan(Authorizable authorizable) {
+        return type.plan(authorizable, this);
+    }
+
+    private static boolean usesUserId(OperationType type) {
+        return type != OperationType.ADD_ORGANIZATION && type != OperationType.REMOVE_ORGANIZATION;
+    }
+
+    private static boolean usesOrgId(OperationType type) {
+        return type != OperationType.ADD_USER && type != OperationType.REMOVE_USER;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        Operation operation = (Operation) o;
+        return type == operation.type && Objects.equals(userId, operation.userId)
+            && Objects.equals(orgId, operation.orgId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, userId, orgId);
+    }
+
+    @Override
+    public String toString() {
+        return type + "{userId=" + userId + ", orgId=" + orgId + "}";
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Consecutive operations of the same type (and of the same organization, for per-organization
+ * types) which a gateway can apply with a single batch call of the Authorizable SPI.
+ */
+final class OperationBatch {
+
+    private final OperationType type;
+
+    private final List<Operation> operations;
+
+    private OperationBatch(OperationType type, List<Operation> operations) {
+        this.type = type;
+        this.operations = Collections.unmodifiableList(operations);
+    }
+
+    /**
+     * Splits operations into batches. Only neighbouring operations are merged, so batches are
+     * applied in the order the operations were requested.
+     */
+    public static List<OperationBatch> group(List<Operation> operations) {
+        List<OperationBatch> batches = new ArrayList<>();
+        List<Operation> current = new ArrayList<>();
+        for (Operation operation : operations) {
+            if (!current.isEmpty() && !sameBatch(current.get(0), operation)) {
+                batches.add(new OperationBatch(current.get(0).getType(), current));
+                current = new ArrayList<>();
+            }
+            current.add(operation);
+        }
+        if (!current.isEmpty()) {
+            batches.add(new OperationBatch(current.get(0).getType(), current));
+        }
+        return batches;
+    }
+
+    public OperationType getType() {
+        return type;
+    }
+
+    public List<Operation> getOperations() {
+        return operations;
+    }
+
+    void applyTo(Authorizable authorizable) throws AuthorizableGatewayException {
+        type.applyTo(authorizable, operations);
+    }
+
+    private static boolean sameBatch(Operation first, Operation next) {
+        return first.getType() == next.getType()
+            && (!first.getType().isBatchedPerOrganization()
+                || Objects.equals(first.getOrgId(), next.getOrgId()));
+    }
+}
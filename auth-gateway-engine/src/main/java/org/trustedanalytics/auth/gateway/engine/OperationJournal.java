@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Write-ahead log of operations accepted by Engine. An operation is journaled before it is
+ * dispatched, every gateway which completed it is marked, and the entry is closed once all
+ * gateway calls finished. Entries still open on startup were interrupted by a restart and are
+ * replayed on the gateways which did not complete them.
+ */
+interface OperationJournal {
+
+    /**
+     * Journal keeping nothing, used when no journal file is configured.
+     */
+    OperationJournal NONE = new OperationJournal() {
+
+        @Override
+        public long accept(List<Operation> operations) {
+            return 0;
+        }
+
+        @Override
+        public void complete(long entryId, String gatewayName) {
+        }
+
+        @Override
+        public void close(long entryId) {
+        }
+
+        @Override
+        public List<JournalEntry> unfinished() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    };
+
+    /**
+     * Durably records operations about to be dispatched.
+     *
+     * @return id of the new entry
+     */
+    long accept(List<Operation> operations);
+
+    void complete(long entryId, String gatewayName);
+
+    void close(long entryId);
+
+    /**
+     * @return entries left open when the journal was opened
+     */
+    List<JournalEntry> unfinished();
+
+    void shutdown();
+}
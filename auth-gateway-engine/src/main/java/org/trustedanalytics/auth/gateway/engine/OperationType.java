@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Provisioning operations Engine fans out to every gateway, one per Authorizable method.
+ */
+enum OperationType {
+
+    ADD_USER("adding user", false) {
+        @Override
+        void applyTo(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            authorizable.addUser(operation.getUserId());
+        }
+
+        @Override
+        void applyTo(Authorizable authorizable, List<Operation> batch)
+            throws AuthorizableGatewayException {
+            authorizable.addUsers(userIds(batch));
+        }
+
+        @Override
+        Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation) {
+            return authorizable.planAddUser(operation.getUserId());
+        }
+    },
+
+    ADD_ORGANIZATION("adding organization", false) {
+        @Override
+        void applyTo(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            authorizable.addOrganization(operation.getOrgId());
+        }
+
+        @Override
+        void applyTo(Authorizable authorizable, List<Operation> batch)
+            throws AuthorizableGatewayException {
+            authorizable.addOrganizations(orgIds(batch));
+        }
+
+        @Override
+        boolean isNoop(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            return authorizable.hasOrganization(operation.getOrgId()).orElse(false);
+        }
+
+        @Override
+        Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation) {
+            return authorizable.planAddOrganization(operation.getOrgId());
+        }
+    },
+
+    ADD_USER_TO_ORG("adding user to organization", true) {
+        @Override
+        void applyTo(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            authorizable.addUserToOrg(operation.getUserId(), operation.getOrgId());
+        }
+
+        @Override
+        void applyTo(Authorizable authorizable, List<Operation> batch)
+            throws AuthorizableGatewayException {
+            authorizable.addUsersToOrg(userIds(batch), batch.get(0).getOrgId());
+        }
+
+        @Override
+        boolean isNoop(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            return authorizable.hasUserInOrganization(operation.getUserId(), operation.getOrgId())
+                .orElse(false);
+        }
+
+        @Override
+        Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation) {
+            return authorizable.planAddUserToOrg(operation.getUserId(), operation.getOrgId());
+        }
+    },
+
+    REMOVE_USER("removing user", false) {
+        @Override
+        void applyTo(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            authorizable.removeUser(operation.getUserId());
+        }
+
+        @Override
+        void applyTo(Authorizable authorizable, List<Operation> batch)
+            throws AuthorizableGatewayException {
+            authorizable.removeUsers(userIds(batch));
+        }
+
+        @Override
+        Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation) {
+            return authorizable.planRemoveUser(operation.getUserId());
+        }
+    },
+
+    REMOVE_ORGANIZATION("removing organization", false) {
+        @Override
+        void applyTo(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            authorizable.removeOrganization(operation.getOrgId());
+        }
+
+        @Override
+        void applyTo(Authorizable authorizable, List<Operation> batch)
+            throws AuthorizableGatewayException {
+            authorizable.removeOrganizations(orgIds(batch));
+        }
+
+        @Override
+        boolean isNoop(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            return !authorizable.hasOrganization(operation.getOrgId()).orElse(true);
+        }
+
+        @Override
+        Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation) {
+            return authorizable.planRemoveOrganization(operation.getOrgId());
+        }
+    },
+
+    REMOVE_USER_FROM_ORG("removing user from organization", true) {
+        @Override
+        void applyTo(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            authorizable.removeUserFromOrg(operation.getUserId(), operation.getOrgId());
+        }
+
+        @Override
+        void applyTo(Authorizable authorizable, List<Operation> batch)
+            throws AuthorizableGatewayException {
+            authorizable.removeUsersFromOrg(userIds(batch), batch.get(0).getOrgId());
+        }
+
+        @Override
+        boolean isNoop(Authorizable authorizable, Operation operation)
+            throws AuthorizableGatewayException {
+            return !authorizable.hasUserInOrganization(operation.getUserId(), operation.getOrgId())
+                .orElse(true);
+        }
+
+        @Override
+        Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation) {
+            return authorizable.planRemoveUserFromOrg(operation.getUserId(),
+                operation.getOrgId());
+        }
+    };
+
+    private final String description;
+
+    // operations in a batch must share the organization
+    private final boolean batchedPerOrganization;
+
+    OperationType(String description, boolean batchedPerOrganization) {
+        this.description = description;
+        this.batchedPerOrganization = batchedPerOrganization;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getMetricName() {
+        return name().toLowerCase(Locale.ENGLISH);
+    }
+
+    public String getErrorMessage() {
+        return "Error " + description;
+    }
+
+    public boolean isBatchedPerOrganization() {
+        return batchedPerOrganization;
+    }
+
+    abstract void applyTo(Authorizable authorizable, Operation operation)
+        throws AuthorizableGatewayException;
+
+    /**
+     * @return whether applying the operation would change nothing in the gateway, according to
+     * its existence checks; false when the gateway cannot tell
+     */
+    boolean isNoop(Authorizable authorizable, Operation operation)
+        throws AuthorizableGatewayException {
+        return false;
+    }
+
+    /**
+     * @return backend calls the gateway would make to apply the operation, or empty if the
+     * gateway cannot tell
+     */
+    abstract Optional<List<PlannedCall>> plan(Authorizable authorizable, Operation operation);
+
+    /**
+     * Applies batch of operations of this type, see {@link OperationBatch}.
+     */
+    abstract void applyTo(Authorizable authorizable, List<Operation> batch)
+        throws AuthorizableGatewayException;
+
+    private static List<String> userIds(List<Operation> batch) {
+        return batch.stream().map(Operation::getUserId).collect(toList());
+    }
+
+    private static List<String> orgIds(List<Operation> batch) {
+        return batch.stream().map(Operation::getOrgId).collect(toList());
+    }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serializes operations per organization without blocking any thread: an operation starts only
+ * after all earlier operations on any of its organizations finished, while operations on
+ * different organizations run fully in parallel.
+ *
+ * Every organization keeps only the latest operation on it, which the next one waits for, so
+ * finished organizations are forgotten and the table stays as small as the number of
+ * organizations with operations in flight.
+ */
+class OrganizationOrdering {
+
+    private final Map<String, CompletableFuture<?>> latest = new HashMap<>();
+
+    /**
+     * Registers operation on given organizations. Registration of all organizations is atomic,
+     * so two operations on overlapping sets of organizations cannot wait for each other.
+     *
+     * @param done future completed once the operation finished
+     * @return future completed once the operation may start
+     */
+    public synchronized CompletableFuture<Void> enqueue(Collection<String> orgIds,
+        CompletableFuture<?> done) {
+        List<CompletableFuture<?>> previous = new ArrayList<>();
+        for (String orgId : orgIds) {
+            CompletableFuture<?> last = latest.put(orgId, done);
+            if (last != null && !last.isDone()) {
+                previous.add(last);
+            }
+        }
+        done.whenComplete((result, e) -> release(orgIds, done));
+        return CompletableFuture.allOf(previous.toArray(new CompletableFuture[previous.size()]));
+    }
+
+    /**
+     * @param done future the operation was registered with
+     * @return whether no other operation was registered on any of the organizations after the
+     * given one, so nothing would run between it and an operation joining it
+     */
+    public synchronized boolean isLatest(Collection<String> orgIds, CompletableFuture<?> done) {
+        return orgIds.stream().allMatch(orgId -> latest.get(orgId) == done);
+    }
+
+    /**
+     * @return number of organizations with operations in flight
+     */
+    public synchronized int size() {
+        return latest.size();
+    }
+
+    private synchronized void release(Collection<String> orgIds, CompletableFuture<?> done) {
+        orgIds.forEach(orgId -> latest.remove(orgId, done));
+    }
+}
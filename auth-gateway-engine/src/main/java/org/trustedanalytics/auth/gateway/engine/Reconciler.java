@@ -0,0 +1,245 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Brings every backend to the desired set of organizations and users.
+ *
+ * Reconciliations run in the background one at a time, with every gateway reconciled in parallel
+ * on threads of the reconciler, so they take neither request threads nor gateway executors.
+ * Actual state is read with the listing methods of {@link Authorizable}, one call for all
+ * organizations and one per desired organization for its users, and only missing (or, when
+ * pruning, extra) entries are written. Writes are rate-limited per gateway, so a large drift does
+ * not flood the backend, and take their turn on the organizations they change like operations
+ * dispatched by {@link Engine}, so they never interleave with them. Gateways which cannot list
+ * their state get every desired organization and user applied, as all operations are idempotent,
+ * and are never pruned.
+ */
+class Reconciler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Reconciler.class);
+
+    private final List<Authorizable> authorizables;
+
+    private final Engine engine;
+
+    private final EngineProperties properties;
+
+    // runs reconciliations one after another and waits for their gateways
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("reconciliation").setDaemon(true).build());
+
+    private final ExecutorService workers;
+
+    public Reconciler(List<Authorizable> authorizables, Engine engine,
+        EngineProperties properties) {
+        this.authorizables = authorizables;
+        this.engine = engine;
+        this.properties = properties;
+        this.workers = Executors.newFixedThreadPool(Math.max(authorizables.size(), 1),
+            new ThreadFactoryBuilder().setNameFormat("reconciliation-%d").setDaemon(true).build());
+    }
+
+    public void shutdown() {
+        coordinator.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    /**
+     * Starts reconciliation without waiting for it. A reconciliation started while another one
+     * runs is queued behind it.
+     *
+     * @param prune whether organizations and users existing in a backend but not desired should
+     * be removed
+     * @return future completed with the report once every gateway was reconciled or timed out
+     * @throws RejectedExecutionException if the reconciler was shut down
+     */
+    public CompletableFuture<ReconciliationReport> reconcile(DesiredState desired, boolean prune) {
+        return CompletableFuture.supplyAsync(() -> reconcileAll(desired, prune), coordinator);
+    }
+
+    private ReconciliationReport reconcileAll(DesiredState desired, boolean prune) {
+        Map<String, GatewayReconciliation> results = new LinkedHashMap<>();
+        Map<String, Future<?>> tasks = new LinkedHashMap<>();
+        for (Authorizable authorizable : authorizables) {
+            String name = authorizable.getName();
+            GatewayReconciliation result = new GatewayReconciliation();
+            results.put(name, result);
+            try {
+                tasks.put(name,
+                    workers.submit(() -> reconcile(authorizable, desired, prune, result)));
+            } catch (RejectedExecutionException e) {
+                result.error(name + " rejected reconciliation: reconciler shut down");
+            }
+        }
+
+        long deadline = System.nanoTime()
+            + TimeUnit.SECONDS.toNanos(properties.getReconciliation().getTimeout());
+        tasks.forEach((name, task) -> await(name, task, deadline, results.get(name)));
+        return new ReconciliationReport(results);
+    }
+
+    private void await(String name, Future<?> task, long deadline, GatewayReconciliation result) {
+        try {
+            task.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            task.cancel(true);
+            result.error(name + " timed out reconciliation");
+            LOGGER.warn(name + " timed out reconciliation");
+        } catch (ExecutionException e) {
+            result.error(name + " failed: " + e.getCause().getMessage());
+            LOGGER.error(name + " failed reconciliation", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.cancel(true);
+            result.error(name + " reconciliation interrupted");
+        }
+    }
+
+    private void reconcile(Authorizable authorizable, DesiredState desired, boolean prune,
+        GatewayReconciliation result) {
+        String name = authorizable.getName();
+        RateLimiter writes = RateLimiter.create(properties.getReconciliation().getRate());
+        Set<String> desiredOrgs = desired.getOrganizations().keySet();
+
+        Optional<Set<String>> actualOrgs;
+        try {
+            actualOrgs = authorizable.listOrganizations();
+        } catch (AuthorizableGatewayException e) {
+            result.error(name + " failed to list organizations: " + e.getMessage());
+            LOGGER.error(name + " failed to list organizations", e);
+            return;
+        }
+        if (!actualOrgs.isPresent()) {
+            result.notListed();
+        }
+
+        Set<String> missingOrgs = actualOrgs
+            .<Set<String>>map(orgs -> Sets.difference(desiredOrgs, orgs).immutableCopy())
+            .orElse(desiredOrgs);
+        boolean missingOrgsAdded = missingOrgs.isEmpty() || write(writes, missingOrgs.size(), missingOrgs,
+            () -> authorizable.addOrganizations(missingOrgs),
+            name + " failed to add organizations " + missingOrgs, result);
+        if (missingOrgsAdded) {
+            result.organizationsAdded(missingOrgs);
+        }
+
+        for (String orgId : desiredOrgs) {
+            if (Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            Set<String> desiredUsers = desired.getUsers(orgId);
+            if (missingOrgs.contains(orgId)) {
+                // a new organization has no users to compare with
+                if (missingOrgsAdded) {
+                    addUsers(authorizable, writes, desiredUsers, orgId, result);
+                }
+            } else {
+                reconcileUsers(authorizable, writes, desiredUsers, orgId, prune, result);
+            }
+        }
+
+        if (prune && actualOrgs.isPresent()) {
+            Set<String> extraOrgs = Sets.difference(actualOrgs.get(), desiredOrgs).immutableCopy();
+            if (!extraOrgs.isEmpty() && write(writes, extraOrgs.size(), extraOrgs,
+                () -> authorizable.removeOrganizations(extraOrgs),
+                name + " failed to remove organizations " + extraOrgs, result)) {
+                result.organizationsRemoved(extraOrgs);
+            }
+        }
+        LOGGER.info(name + " reconciled: added organizations " + result.getAddedOrganizations()
+            + ", removed organizations " + result.getRemovedOrganizations());
+    }
+
+    private void reconcileUsers(Authorizable authorizable, RateLimiter writes,
+        Set<String> desiredUsers, String orgId, boolean prune, GatewayReconciliation result) {
+        String name = authorizable.getName();
+        Optional<Set<String>> actualUsers;
+        try {
+            actualUsers = authorizable.listUsersInOrganization(orgId);
+        } catch (AuthorizableGatewayException e) {
+            result.error(name + " failed to list users of " + orgId + ": " + e.getMessage());
+            LOGGER.error(name + " failed to list users of " + orgId, e);
+            return;
+        }
+        if (!actualUsers.isPresent()) {
+            result.notListed();
+            addUsers(authorizable, writes, desiredUsers, orgId, result);
+            return;
+        }
+
+        addUsers(authorizable, writes, Sets.difference(desiredUsers, actualUsers.get())
+            .immutableCopy(), orgId, result);
+        if (prune) {
+            Set<String> extraUsers =
+                Sets.difference(actualUsers.get(), desiredUsers).immutableCopy();
+            if (!extraUsers.isEmpty() && write(writes, extraUsers.size(),
+                Collections.singleton(orgId),
+                () -> authorizable.removeUsersFromOrg(extraUsers, orgId),
+                name + " failed to remove users " + extraUsers + " from " + orgId, result)) {
+                result.usersRemoved(orgId, extraUsers);
+            }
+        }
+    }
+
+    private void addUsers(Authorizable authorizable, RateLimiter writes,
+        Set<String> userIds, String orgId, GatewayReconciliation result) {
+        if (!userIds.isEmpty() && write(writes, userIds.size(), Collections.singleton(orgId),
+            () -> authorizable.addUsersToOrg(userIds, orgId),
+            authorizable.getName() + " failed to add users " + userIds + " to " + orgId, result)) {
+            result.usersAdded(orgId, userIds);
+        }
+    }
+
+    /**
+     * @return whether the write succeeded; failures are recorded, so remaining organizations are
+     * still reconciled
+     */
+    private boolean write(RateLimiter writes, int count, Set<String> orgIds,
+        ThrowableAction action, String errorMessage, GatewayReconciliation result) {
+        writes.acquire(count);
+        try {
+            engine.runInTurn(orgIds, action, "reconciliation of " + orgIds);
+            return true;
+        } catch (AuthorizableGatewayException e) {
+            result.error(errorMessage + ": " + e.getMessage());
+            LOGGER.error(errorMessage, e);
+            return false;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Result of reconciling all gateways, keyed by gateway name.
+ */
+class ReconciliationReport {
+
+    private final ExecutionStatus status;
+
+    private final Map<String, GatewayReconciliation> gateways;
+
+    ReconciliationReport(Map<String, GatewayReconciliation> gateways) {
+        this.gateways = Collections.unmodifiableMap(gateways);
+        this.status = gateways.values().stream().allMatch(GatewayReconciliation::isSucceeded)
+            ? ExecutionStatus.SUCCEEDED : ExecutionStatus.FAILED;
+    }
+
+    public ExecutionStatus getStatus() {
+        return status;
+    }
+
+    public Map<String, GatewayReconciliation> getGateways() {
+        return gateways;
+    }
+
+    boolean isSucceeded() {
+        return status == ExecutionStatus.SUCCEEDED;
+    }
+}
@@ -43,7 +43,8 @@ public class SwaggerConfig {
     }
 
     private Predicate<String> orgsPaths() {
-        return or(regex("/organizations/.*"), regex("/users/.*"));
+        return or(regex("/organizations/.*"), regex("/users/.*"), regex("/jobs/.*"),
+                regex("/bulk"), regex("/reconciliation"), regex("/plan"));
     }
 
     private ApiInfo apiInfo() {
@@ -0,0 +1,77 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Access to virtual threads (Java 21+) for code compiled against Java 8. Everything is looked up
+ * reflectively, so the same jar runs on older JVMs where virtual threads are simply unavailable.
+ */
+final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return whether the running JVM supports virtual threads
+     */
+    static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return executor starting a new virtual thread per task, or empty if the running JVM does
+     * not support virtual threads
+     */
+    static Optional<ExecutorService> newThreadPerTaskExecutor(String namePrefix,
+        AtomicInteger activeThreads) {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class)
+                .invoke(builder, namePrefix, 0L);
+            ThreadFactory virtualThreads = (ThreadFactory) builderType.getMethod("factory")
+                .invoke(builder);
+
+            ThreadFactory countingThreads =
+                task -> virtualThreads.newThread(countActive(task, activeThreads));
+            return Optional.of((ExecutorService) Executors.class
+                .getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                .invoke(null, countingThreads));
+        } catch (ReflectiveOperationException e) {
+            return Optional.empty();
+        }
+    }
+
+    private static Runnable countActive(Runnable task, AtomicInteger activeThreads) {
+        return () -> {
+            activeThreads.incrementAndGet();
+            try {
+                task.run();
+            } finally {
+                activeThreads.decrementAndGet();
+            }
+        };
+    }
+}
@@ -30,10 +30,16 @@ public class WebApplicationConfig extends WebMvcConfigurerAdapter {
   @Autowired
   Supplier<String> tokenExtractor;
 
+  @Autowired
+  EngineProperties engineProperties;
+
   @Override
   public void addInterceptors(InterceptorRegistry registry) {
     LOGGER.info("Register access control interceptor");
-    registry.addInterceptor(new AdminControlInterceptor(tokenExtractor))
-        .addPathPatterns("/users/**", "/organizations/**");
+    EngineProperties.AuthorizationProperties authorization = engineProperties.getAuthorization();
+    registry.addInterceptor(new AdminControlInterceptor(tokenExtractor,
+        authorization.getCacheMaxSize(), authorization.getCacheTtl()))
+        .addPathPatterns("/users/**", "/organizations/**", "/jobs/**", "/bulk",
+            "/reconciliation", "/plan");
   }
 }
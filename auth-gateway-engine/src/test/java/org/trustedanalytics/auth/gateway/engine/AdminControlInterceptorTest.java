@@ -13,6 +13,10 @@
  */
 package org.trustedanalytics.auth.gateway.engine;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -84,4 +88,47 @@ public class AdminControlInterceptorTest {
     Assert.assertFalse(toTest.preHandle(httpRequest, httpResponse, new Object()));
   }
 
+  @Test
+  public void testPreHandle_expiredToken_decisionNotCached() throws Exception {
+    AdminControlInterceptor toTest = new AdminControlInterceptor(() -> UBER_ADMIN_TOKEN);
+    Assert.assertTrue(toTest.preHandle(httpRequest, httpResponse, new Object()));
+    Assert.assertEquals(0, toTest.cachedDecisions());
+  }
+
+  @Test
+  public void testPreHandle_validTokenReused_decisionCachedOnce() throws Exception {
+    String token = unsignedToken(
+        "{\"scope\":[\"cloud_controller.admin\"],\"exp\":4102444800}");
+    AdminControlInterceptor toTest = new AdminControlInterceptor(() -> token);
+    Assert.assertTrue(toTest.preHandle(httpRequest, httpResponse, new Object()));
+    Assert.assertTrue(toTest.preHandle(httpRequest, httpResponse, new Object()));
+    Assert.assertEquals(1, toTest.cachedDecisions());
+  }
+
+  @Test
+  public void testPreHandle_differentTokens_decidedSeparately() throws Exception {
+    String adminToken = unsignedToken("{\"scope\":[\"cloud_controller.admin\"]}");
+    String managerToken = unsignedToken("{\"scope\":[\"cloud_controller.write\"]}");
+    AtomicReference<String> token = new AtomicReference<>(adminToken);
+    AdminControlInterceptor toTest = new AdminControlInterceptor(token::get);
+    Assert.assertTrue(toTest.preHandle(httpRequest, httpResponse, new Object()));
+    token.set(managerToken);
+    Assert.assertFalse(toTest.preHandle(httpRequest, httpResponse, new Object()));
+    Assert.assertEquals(2, toTest.cachedDecisions());
+  }
+
+  @Test
+  public void testPreHandle_cacheDisabled_decisionNotCached() throws Exception {
+    String token = unsignedToken("{\"scope\":[\"cloud_controller.admin\"]}");
+    AdminControlInterceptor toTest = new AdminControlInterceptor(() -> token, 0, 300);
+    Assert.assertTrue(toTest.preHandle(httpRequest, httpResponse, new Object()));
+    Assert.assertEquals(0, toTest.cachedDecisions());
+  }
+
+  private static String unsignedToken(String claims) {
+    Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+    return encoder.encodeToString("{\"alg\":\"RS256\"}".getBytes(StandardCharsets.UTF_8)) + "."
+        + encoder.encodeToString(claims.getBytes(StandardCharsets.UTF_8)) + ".c2lnbmF0dXJl";
+  }
+
 }
\ No newline at end of file
@@ -0,0 +1,181 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.MetricRegistry;
+
+public class AdmissionControlTest {
+
+    private static final String GATEWAY1_NAME = "AUTH_1";
+    private static final String GATEWAY2_NAME = "AUTH_2";
+    private static final List<String> GATEWAY_NAMES = Arrays.asList(GATEWAY1_NAME, GATEWAY2_NAME);
+    private static final String ORG_ID = "test_org";
+
+    private EngineProperties properties;
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() {
+        properties = new EngineProperties();
+        properties.getAdmission().setMaxWait(0);
+        metricRegistry = new MetricRegistry();
+    }
+
+    @Test
+    public void admit_noRatesConfigured_everyRequestAdmitted() {
+        // given
+        AdmissionControl admissionControl = createAdmissionControl();
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            admissionControl.admit(addOrganization());
+        }
+
+        // then
+        assertThat(metricRegistry.counter("engine.admission.admitted").getCount(), equalTo(100L));
+    }
+
+    @Test
+    public void admit_operationRateExceeded_rejectedWithRetryAfter() {
+        // given
+        properties.getAdmission().getOperations().put("add_organization", 0.5);
+        AdmissionControl admissionControl = createAdmissionControl();
+        admissionControl.admit(addOrganization());
+
+        // when
+        try {
+            admissionControl.admit(addOrganization());
+            fail("request admitted over the rate");
+        } catch (AdmissionRejectedException e) {
+            // then
+            assertThat(e.getRetryAfterSeconds(), equalTo(2L));
+        }
+        assertThat(metricRegistry.counter("engine.admission.operation.add_organization.rejected")
+            .getCount(), equalTo(1L));
+        assertThat(metricRegistry.counter("engine.admission.admitted").getCount(), equalTo(1L));
+    }
+
+    @Test
+    public void admit_otherOperationTypeSaturated_admitted() {
+        // given
+        properties.getAdmission().getOperations().put("add_organization", 0.5);
+        AdmissionControl admissionControl = createAdmissionControl();
+        admissionControl.admit(addOrganization());
+
+        // when
+        admissionControl.admit(Collections.singletonList(Operation.removeOrganization(ORG_ID)));
+
+        // then
+        assertThat(metricRegistry.counter("engine.admission.admitted").getCount(), equalTo(2L));
+    }
+
+    @Test
+    public void admit_gatewayRateExceeded_rejected() {
+        // given
+        EngineProperties.GatewayProperties gatewayProperties = new EngineProperties.GatewayProperties();
+        gatewayProperties.setRate(1.0);
+        properties.getGateways().put(GATEWAY2_NAME, gatewayProperties);
+        AdmissionControl admissionControl = createAdmissionControl();
+        admissionControl.admit(addOrganization());
+
+        // when
+        try {
+            admissionControl.admit(Collections.singletonList(Operation.addUser("user")));
+            fail("request admitted over the rate");
+        } catch (AdmissionRejectedException e) {
+            // then
+            assertThat(e.getRetryAfterSeconds(), equalTo(1L));
+        }
+        assertThat(metricRegistry.counter("engine.admission.gateway.AUTH_2.rejected").getCount(),
+            equalTo(1L));
+    }
+
+    @Test
+    public void admit_permitsAvailableWithinMaxWait_admittedAfterWaiting() {
+        // given
+        properties.getAdmission().setMaxWait(1000);
+        properties.getAdmission().setGatewayRate(10);
+        AdmissionControl admissionControl = createAdmissionControl();
+        admissionControl.admit(addOrganization());
+
+        // when
+        admissionControl.admit(addOrganization());
+
+        // then
+        assertThat(metricRegistry.counter("engine.admission.admitted").getCount(), equalTo(2L));
+        assertThat(metricRegistry.timer("engine.admission.wait").getCount(), equalTo(2L));
+    }
+
+    @Test(expected = AdmissionRejectedException.class)
+    public void admit_tooManyRequestsWaiting_rejectedImmediately() throws Exception {
+        // given
+        properties.getAdmission().setMaxWait(1000);
+        properties.getAdmission().setMaxWaiting(1);
+        properties.getAdmission().setGatewayRate(1);
+        AdmissionControl admissionControl = createAdmissionControl();
+        admissionControl.admit(addOrganization());
+        ExecutorService waitingRequests = Executors.newSingleThreadExecutor();
+        CountDownLatch submitted = new CountDownLatch(1);
+        waitingRequests.submit(() -> {
+            submitted.countDown();
+            admissionControl.admit(addOrganization());
+        });
+        submitted.await(1, TimeUnit.SECONDS);
+        Thread.sleep(100);
+
+        // when
+        try {
+            admissionControl.admit(addOrganization());
+        } finally {
+            waitingRequests.shutdownNow();
+        }
+    }
+
+    @Test
+    public void admit_bulkLargerThanRate_admittedWhenIdle() {
+        // given
+        properties.getAdmission().setGatewayRate(1);
+        AdmissionControl admissionControl = createAdmissionControl();
+
+        // when
+        admissionControl.admit(Arrays.asList(Operation.addUser("user1"),
+            Operation.addUser("user2"), Operation.addUser("user3")));
+
+        // then
+        assertThat(metricRegistry.counter("engine.admission.admitted").getCount(), equalTo(1L));
+    }
+
+    private AdmissionControl createAdmissionControl() {
+        return new AdmissionControl(GATEWAY_NAMES, properties, metricRegistry);
+    }
+
+    private static List<Operation> addOrganization() {
+        return Collections.singletonList(Operation.addOrganization(ORG_ID));
+    }
+}
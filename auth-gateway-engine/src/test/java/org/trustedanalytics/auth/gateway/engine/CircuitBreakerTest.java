@@ -0,0 +1,182 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CircuitBreakerTest {
+
+    private static final String GATEWAY_NAME = "AUTH_1";
+    private static final long FAST_CALL_IN_MILLIS = 10;
+    private static final long SLOW_CALL_IN_MILLIS = 5000;
+
+    private EngineProperties.CircuitBreakerProperties properties;
+    private long now;
+
+    @Before
+    public void setUp() {
+        properties = new EngineProperties.CircuitBreakerProperties();
+        properties.setWindowSize(4);
+        properties.setMinimumCalls(4);
+        properties.setFailureRateThreshold(50);
+        properties.setSlowCallDuration(1000);
+        properties.setSlowCallRateThreshold(75);
+        properties.setOpenDuration(30);
+        properties.setHalfOpenCalls(2);
+    }
+
+    @Test
+    public void onFailure_fewerCallsThanMinimum_circuitStaysClosed() {
+        // given
+        CircuitBreaker breaker = createBreaker();
+
+        // when
+        record(breaker, true, true, true);
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+    }
+
+    @Test
+    public void onFailure_failureRateReached_circuitOpensAndRejectsCalls() {
+        // given
+        CircuitBreaker breaker = createBreaker();
+
+        // when
+        record(breaker, false, true, false, true);
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertThat(breaker.tryAcquire(), equalTo(false));
+        assertThat(breaker.remainingOpenMillis(), equalTo(30000L));
+    }
+
+    @Test
+    public void onSuccess_slowCallRateReached_circuitOpens() {
+        // given
+        CircuitBreaker breaker = createBreaker();
+
+        // when
+        breaker.onSuccess(FAST_CALL_IN_MILLIS);
+        breaker.onSuccess(SLOW_CALL_IN_MILLIS);
+        breaker.onSuccess(SLOW_CALL_IN_MILLIS);
+        breaker.onSuccess(SLOW_CALL_IN_MILLIS);
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void onFailure_oldFailuresLeftWindow_circuitStaysClosed() {
+        // given
+        CircuitBreaker breaker = createBreaker();
+        record(breaker, true, false, false);
+
+        // when
+        record(breaker, false, false, true);
+
+        // then
+        assertThat(breaker.getFailureRate(), equalTo(25.0));
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+    }
+
+    @Test
+    public void tryAcquire_openDurationElapsed_onlyProbeCallsPermitted() {
+        // given
+        CircuitBreaker breaker = createOpenBreaker();
+
+        // when
+        now += TimeUnit.SECONDS.toNanos(30);
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.HALF_OPEN));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+        assertThat(breaker.tryAcquire(), equalTo(true));
+        assertThat(breaker.tryAcquire(), equalTo(false));
+    }
+
+    @Test
+    public void onSuccess_allProbesSucceeded_circuitClosesWithEmptyWindow() {
+        // given
+        CircuitBreaker breaker = createOpenBreaker();
+        now += TimeUnit.SECONDS.toNanos(30);
+        breaker.tryAcquire();
+        breaker.tryAcquire();
+
+        // when
+        breaker.onSuccess(FAST_CALL_IN_MILLIS);
+        breaker.onSuccess(FAST_CALL_IN_MILLIS);
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.getFailureRate(), equalTo(0.0));
+    }
+
+    @Test
+    public void onFailure_probeFailed_circuitOpensAgain() {
+        // given
+        CircuitBreaker breaker = createOpenBreaker();
+        now += TimeUnit.SECONDS.toNanos(30);
+        breaker.tryAcquire();
+
+        // when
+        breaker.onFailure(FAST_CALL_IN_MILLIS);
+
+        // then
+        assertThat(breaker.getState(), equalTo(CircuitBreaker.State.OPEN));
+        assertThat(breaker.remainingOpenMillis(), equalTo(30000L));
+    }
+
+    @Test
+    public void release_probeCancelled_anotherProbePermitted() {
+        // given
+        CircuitBreaker breaker = createOpenBreaker();
+        now += TimeUnit.SECONDS.toNanos(30);
+        breaker.tryAcquire();
+        breaker.tryAcquire();
+
+        // when
+        breaker.release();
+
+        // then
+        assertThat(breaker.tryAcquire(), equalTo(true));
+    }
+
+    private CircuitBreaker createBreaker() {
+        return new CircuitBreaker(GATEWAY_NAME, properties, () -> now);
+    }
+
+    private CircuitBreaker createOpenBreaker() {
+        CircuitBreaker breaker = createBreaker();
+        record(breaker, true, true, true, true);
+        return breaker;
+    }
+
+    private static void record(CircuitBreaker breaker, boolean... failures) {
+        for (boolean failure : failures) {
+            if (failure) {
+                breaker.onFailure(FAST_CALL_IN_MILLIS);
+            } else {
+                breaker.onSuccess(FAST_CALL_IN_MILLIS);
+            }
+        }
+    }
+}
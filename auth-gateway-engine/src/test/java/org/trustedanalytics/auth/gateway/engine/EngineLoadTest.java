@@ -0,0 +1,168 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+
+import com.codahale.metrics.MetricRegistry;
+
+/**
+ * Fires many concurrent provisioning requests against a gateway that blocks for a fixed time,
+ * like every real gateway does on I/O, and checks how many calls are in flight at once.
+ */
+public class EngineLoadTest {
+
+    private static final int CONCURRENT_REQUESTS = 200;
+    private static final long CALL_DURATION_IN_MILLIS = 100;
+    private static final long ENGINE_TIMEOUT_IN_SECONDS = 60;
+    private static final int BOUNDED_POOL_SIZE = 10;
+
+    private ExecutorService requestThreads;
+    private BlockingAuthorizable authorizable;
+    private Engine engine;
+
+    @Before
+    public void setUp() {
+        requestThreads = Executors.newFixedThreadPool(CONCURRENT_REQUESTS);
+        authorizable = new BlockingAuthorizable();
+    }
+
+    @After
+    public void tearDown() {
+        requestThreads.shutdownNow();
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void addOrganization_virtualMode_concurrencyScalesWithRequestCount() throws Exception {
+        // given
+        assumeTrue(VirtualThreads.isSupported());
+        engine = createEngine(ExecutionMode.VIRTUAL);
+
+        // when
+        long elapsedMillis = fireConcurrentRequests();
+
+        // then
+        assertThat(authorizable.maxConcurrentCalls.get(), greaterThan(CONCURRENT_REQUESTS / 2));
+        assertThat(elapsedMillis,
+            lessThan(CALL_DURATION_IN_MILLIS * CONCURRENT_REQUESTS / BOUNDED_POOL_SIZE / 2));
+    }
+
+    @Test
+    public void addOrganization_boundedMode_concurrencyLimitedByPoolSize() throws Exception {
+        // given
+        engine = createEngine(ExecutionMode.BOUNDED);
+
+        // when
+        long elapsedMillis = fireConcurrentRequests();
+
+        // then
+        assertThat(authorizable.maxConcurrentCalls.get(), equalTo(BOUNDED_POOL_SIZE));
+        assertThat(elapsedMillis,
+            greaterThan(CALL_DURATION_IN_MILLIS * CONCURRENT_REQUESTS / BOUNDED_POOL_SIZE - 1));
+    }
+
+    private Engine createEngine(ExecutionMode mode) {
+        EngineProperties properties = new EngineProperties();
+        properties.getExecutor().setMode(mode);
+        properties.getExecutor().setPoolSize(BOUNDED_POOL_SIZE);
+        properties.getExecutor().setQueueCapacity(CONCURRENT_REQUESTS);
+        return new Engine(Collections.singletonList(authorizable), ENGINE_TIMEOUT_IN_SECONDS,
+            new GatewayExecutors(properties, new MetricRegistry()));
+    }
+
+    private long fireConcurrentRequests() throws Exception {
+        long start = System.nanoTime();
+        List<Future<?>> requests = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_REQUESTS; i++) {
+            String orgId = "org" + i;
+            requests.add(requestThreads.submit(() -> {
+                engine.addOrganization(orgId);
+                return null;
+            }));
+        }
+        for (Future<?> request : requests) {
+            request.get();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    private static class BlockingAuthorizable implements Authorizable {
+
+        private final AtomicInteger concurrentCalls = new AtomicInteger();
+
+        private final AtomicInteger maxConcurrentCalls = new AtomicInteger();
+
+        @Override
+        public void addOrganization(String orgId) throws AuthorizableGatewayException {
+            int current = concurrentCalls.incrementAndGet();
+            maxConcurrentCalls.accumulateAndGet(current, Math::max);
+            try {
+                Thread.sleep(CALL_DURATION_IN_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AuthorizableGatewayException("Interrupted", e);
+            } finally {
+                concurrentCalls.decrementAndGet();
+            }
+        }
+
+        @Override
+        public void addUser(String userId) throws AuthorizableGatewayException {
+        }
+
+        @Override
+        public void addUserToOrg(String userId, String orgId) throws AuthorizableGatewayException {
+        }
+
+        @Override
+        public void removeOrganization(String orgId) throws AuthorizableGatewayException {
+        }
+
+        @Override
+        public void removeUser(String userId) throws AuthorizableGatewayException {
+        }
+
+        @Override
+        public void removeUserFromOrg(String userId, String orgId)
+            throws AuthorizableGatewayException {
+        }
+
+        @Override
+        public String getName() {
+            return "blocking";
+        }
+    }
+}
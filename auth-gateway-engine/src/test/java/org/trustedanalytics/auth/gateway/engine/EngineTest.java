@@ -13,33 +13,59 @@
  */
 package org.trustedanalytics.auth.gateway.engine;
 
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThan;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.mockito.InOrder;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import com.codahale.metrics.MetricRegistry;
 
 public class EngineTest {
 
     private static final String USER_ID = "666";
+    private static final String OTHER_USER_ID = "667";
     private static final String ORG_ID = "897351";
     private static final String EXCEPTION_MESSAGE = "Something went wrong";
     private static final String AUTHORIZABLE1_NAME = "AUTH_1";
     private static final String AUTHORIZABLE2_NAME = "AUTH_2";
     private static final long ENGINE_TIMEOUT_IN_SECONDS = 1;
     private static final long LONG_CALL_DURATION_IN_SECONDS = 2;
+    private static final long RETRY_BACKOFF_IN_MILLIS = 10;
+    private static final String IDEMPOTENCY_KEY = "request-1";
 
     private Authorizable authorizableMock1;
     private Authorizable authorizableMock2;
@@ -340,6 +366,779 @@ public class EngineTest {
 
     }
 
+    @Test
+    public void executeAll_neighbouringOperations_batchMethodsInvokedInOrder()
+            throws AuthorizableGatewayException {
+        // given
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        engine.executeAll(Arrays.asList(Operation.addOrganization(ORG_ID),
+            Operation.addUserToOrg(USER_ID, ORG_ID), Operation.addUserToOrg(OTHER_USER_ID, ORG_ID)));
+
+        // then
+        for (Authorizable authorizable : listOfAuthorizables) {
+            InOrder inOrder = inOrder(authorizable);
+            inOrder.verify(authorizable).addOrganizations(Arrays.asList(ORG_ID));
+            inOrder.verify(authorizable).addUsersToOrg(Arrays.asList(USER_ID, OTHER_USER_ID), ORG_ID);
+        }
+    }
+
+    @Test
+    public void executeAll_exceptionFromAuthorizable_exceptionThrown()
+            throws AuthorizableGatewayException {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addUsersToOrg(Arrays.asList(USER_ID), ORG_ID);
+
+        // when
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // then
+        thrown.expect(AuthorizableGatewayException.class);
+        thrown.expectMessage("Error executing bulk operations");
+        thrown.expectMessage(AUTHORIZABLE1_NAME + " failed: " + EXCEPTION_MESSAGE);
+        engine.executeAll(Arrays.asList(Operation.addUserToOrg(USER_ID, ORG_ID)));
+    }
+
+    @Test
+    public void addOrganization_allAuthorizablesOk_durationAndSuccessRecorded()
+            throws AuthorizableGatewayException {
+        // given
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineWithMetrics(metricRegistry);
+
+        // when
+        engine.addOrganization(ORG_ID);
+
+        // then
+        assertThat(metricRegistry.timer("engine.gateway.AUTH_1.add_organization.duration").getCount(),
+            equalTo(1L));
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_1.add_organization.success").getCount(),
+            equalTo(1L));
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_2.add_organization.success").getCount(),
+            equalTo(1L));
+    }
+
+    @Test
+    public void addOrganization_exceptionFromAuthorizable_failureRecorded()
+            throws AuthorizableGatewayException {
+        // given
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineWithMetrics(metricRegistry);
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+
+        // when
+        try {
+            engine.addOrganization(ORG_ID);
+        } catch (AuthorizableGatewayException e) {
+        }
+
+        // then
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_1.add_organization.failure").getCount(),
+            equalTo(1L));
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_2.add_organization.success").getCount(),
+            equalTo(1L));
+    }
+
+    @Test
+    public void addOrganization_tooLongAuthorizableCall_timeoutRecorded()
+            throws AuthorizableGatewayException {
+        // given
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineWithMetrics(metricRegistry);
+        doAnswer(longAnswer()).when(authorizableMock1).addOrganization(ORG_ID);
+
+        // when
+        try {
+            engine.addOrganization(ORG_ID);
+        } catch (AuthorizableGatewayException e) {
+        }
+
+        // then
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_1.add_organization.timeout").getCount(),
+            equalTo(1L));
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_2.add_organization.timeout").getCount(),
+            equalTo(0L));
+    }
+
+    @Test
+    public void addOrganization_longerTimeoutForAuthorizable_longCallSucceeds()
+            throws AuthorizableGatewayException {
+        // given
+        EngineProperties properties = new EngineProperties();
+        properties.setTimeout(ENGINE_TIMEOUT_IN_SECONDS);
+        EngineProperties.GatewayProperties gatewayProperties = new EngineProperties.GatewayProperties();
+        gatewayProperties.setTimeout(LONG_CALL_DURATION_IN_SECONDS + 1);
+        properties.getGateways().put(AUTHORIZABLE1_NAME, gatewayProperties);
+        doAnswer(longAnswer()).when(authorizableMock1).addOrganization(ORG_ID);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = new Engine(listOfAuthorizables, properties,
+            new GatewayExecutors(properties, metricRegistry), new GatewayMetrics(metricRegistry));
+
+        // when
+        engine.addOrganization(ORG_ID);
+
+        // then
+        verify(authorizableMock1).addOrganization(ORG_ID);
+        verify(authorizableMock2).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void addOrganization_tooLongAuthorizableCall_callInterruptedAndGatewaysReported()
+            throws Exception {
+        // given
+        CountDownLatch interrupted = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            try {
+                Thread.sleep(LONG_CALL_DURATION_IN_SECONDS * 1000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return null;
+        }).when(authorizableMock1).addOrganization(ORG_ID);
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        String message = null;
+        try {
+            engine.addOrganization(ORG_ID);
+        } catch (AuthorizableGatewayException e) {
+            message = e.getMessage();
+        }
+
+        // then
+        assertThat(message, containsString(AUTHORIZABLE1_NAME + " timed out"));
+        assertThat(message, containsString("completed: [" + AUTHORIZABLE2_NAME + "]"));
+        assertThat(interrupted.await(1, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @Test
+    public void execute_oneAuthorizableFails_resultOfEveryGatewayReported()
+            throws AuthorizableGatewayException {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        assertThat(result.getStatus(), equalTo(ExecutionStatus.FAILED));
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.FAILED));
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getError(),
+            containsString(EXCEPTION_MESSAGE));
+        assertThat(result.getGateways().get(AUTHORIZABLE2_NAME).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+    }
+
+    @Test
+    public void execute_tooLongAuthorizableCall_timedOutWithDurationReported()
+            throws AuthorizableGatewayException {
+        // given
+        doAnswer(longAnswer()).when(authorizableMock1).addOrganization(ORG_ID);
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        GatewayResult timedOut = result.getGateways().get(AUTHORIZABLE1_NAME);
+        assertThat(timedOut.getStatus(), equalTo(GatewayStatus.TIMED_OUT));
+        assertThat(timedOut.getDurationMillis(),
+            greaterThanOrEqualTo(TimeUnit.SECONDS.toMillis(ENGINE_TIMEOUT_IN_SECONDS)));
+    }
+
+    @Test
+    public void execute_failFastAndOneAuthorizableFails_remainingCallsCancelled()
+            throws AuthorizableGatewayException {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+        doAnswer(longAnswer()).when(authorizableMock2).addOrganization(ORG_ID);
+        Engine engine = new Engine(listOfAuthorizables, LONG_CALL_DURATION_IN_SECONDS * 2);
+
+        // when
+        long start = System.nanoTime();
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.FAIL_FAST);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // then
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.FAILED));
+        assertThat(result.getGateways().get(AUTHORIZABLE2_NAME).getStatus(),
+            equalTo(GatewayStatus.CANCELLED));
+        assertThat(elapsedMillis,
+            lessThan(TimeUnit.SECONDS.toMillis(LONG_CALL_DURATION_IN_SECONDS)));
+    }
+
+    @Test
+    public void execute_authorizableFailsOnce_onlyFailedAuthorizableRetried()
+            throws AuthorizableGatewayException {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).doNothing()
+                .when(authorizableMock1).addOrganization(ORG_ID);
+        Engine engine = createEngineWithRetries(3);
+
+        // when
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        assertThat(result.getStatus(), equalTo(ExecutionStatus.SUCCEEDED));
+        verify(authorizableMock1, times(2)).addOrganization(ORG_ID);
+        verify(authorizableMock2, times(1)).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void execute_authorizableAlwaysFails_failedAfterMaxAttempts()
+            throws AuthorizableGatewayException {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+        Engine engine = createEngineWithRetries(3);
+
+        // when
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.FAILED));
+        verify(authorizableMock1, times(3)).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void execute_retriedWithSameIdempotencyKey_succeededAuthorizablesNotCalledAgain()
+            throws AuthorizableGatewayException {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).doNothing()
+                .when(authorizableMock1).addOrganization(ORG_ID);
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+        ExecutionResult failed = engine.execute(Operation.addOrganization(ORG_ID),
+            FailurePolicy.WAIT_FOR_ALL, IDEMPOTENCY_KEY);
+
+        // when
+        ExecutionResult retried = engine.execute(Operation.addOrganization(ORG_ID),
+            FailurePolicy.WAIT_FOR_ALL, IDEMPOTENCY_KEY);
+
+        // then
+        assertThat(failed.getStatus(), equalTo(ExecutionStatus.FAILED));
+        assertThat(retried.getStatus(), equalTo(ExecutionStatus.SUCCEEDED));
+        verify(authorizableMock1, times(2)).addOrganization(ORG_ID);
+        verify(authorizableMock2, times(1)).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void execute_noIdempotencyKey_allAuthorizablesCalledAgain()
+            throws AuthorizableGatewayException {
+        // given
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // when
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        verify(authorizableMock1, times(2)).addOrganization(ORG_ID);
+        verify(authorizableMock2, times(2)).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void execute_identicalOperationInFlight_authorizablesCalledOnce() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).when(authorizableMock1).addOrganization(ORG_ID);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineWithMetrics(metricRegistry);
+        ExecutorService requests = Executors.newFixedThreadPool(2);
+
+        // when
+        Future<ExecutionResult> first = requests.submit(
+            () -> engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL));
+        started.await(1, TimeUnit.SECONDS);
+        Future<ExecutionResult> duplicate = requests.submit(
+            () -> engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL));
+        while (metricRegistry.counter("engine.operation.add_organization.coalesced")
+            .getCount() == 0) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        // then
+        assertThat(first.get(1, TimeUnit.SECONDS).getStatus(), equalTo(ExecutionStatus.SUCCEEDED));
+        assertThat(duplicate.get(1, TimeUnit.SECONDS).getStatus(),
+            equalTo(ExecutionStatus.SUCCEEDED));
+        verify(authorizableMock1, times(1)).addOrganization(ORG_ID);
+        verify(authorizableMock2, times(1)).addOrganization(ORG_ID);
+        requests.shutdown();
+    }
+
+    @Test
+    public void dispatch_identicalOperationInFlightWithOtherPolicy_notJoined() throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).doNothing().when(authorizableMock1).addOrganization(ORG_ID);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineWithMetrics(metricRegistry);
+        Map<String, GatewayCall> failFast =
+            engine.dispatch(Operation.addOrganization(ORG_ID), FailurePolicy.FAIL_FAST, null);
+        started.await(1, TimeUnit.SECONDS);
+
+        // when
+        Map<String, GatewayCall> waitForAll =
+            engine.dispatch(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL, null);
+        release.countDown();
+
+        // then
+        assertThat(waitForAll == failFast, equalTo(false));
+        assertThat(waitForAll.get(AUTHORIZABLE1_NAME).result().get(1, TimeUnit.SECONDS)
+            .getStatus(), equalTo(GatewayStatus.SUCCEEDED));
+        assertThat(metricRegistry.counter("engine.operation.add_organization.coalesced")
+            .getCount(), equalTo(0L));
+        verify(authorizableMock1, times(2)).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void dispatch_identicalOperationInFlightFollowedByOther_notJoinedAndRunLast()
+            throws Exception {
+        // given
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            started.countDown();
+            release.await();
+            return null;
+        }).doNothing().when(authorizableMock1).addOrganization(ORG_ID);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineWithMetrics(metricRegistry);
+        engine.dispatch(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL, null);
+        started.await(1, TimeUnit.SECONDS);
+        engine.dispatch(Operation.removeOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL, null);
+
+        // when
+        Map<String, GatewayCall> last =
+            engine.dispatch(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL, null);
+        release.countDown();
+
+        // then
+        assertThat(last.get(AUTHORIZABLE1_NAME).result().get(1, TimeUnit.SECONDS).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+        assertThat(metricRegistry.counter("engine.operation.add_organization.coalesced")
+            .getCount(), equalTo(0L));
+        InOrder order = inOrder(authorizableMock1);
+        order.verify(authorizableMock1).addOrganization(ORG_ID);
+        order.verify(authorizableMock1).removeOrganization(ORG_ID);
+        order.verify(authorizableMock1).addOrganization(ORG_ID);
+    }
+
+    @Test
+    public void replayUnfinished_entryCompletedByOneAuthorizable_onlyOtherAuthorizableCalled()
+            throws Exception {
+        // given
+        JournalEntry entry =
+            new JournalEntry(1, Collections.singletonList(Operation.addOrganization(ORG_ID)));
+        entry.complete(AUTHORIZABLE1_NAME);
+        OperationJournal journal = mock(OperationJournal.class);
+        when(journal.unfinished()).thenReturn(Collections.singletonList(entry));
+        when(journal.accept(entry.getOperations())).thenReturn(2L);
+        EngineProperties properties = new EngineProperties();
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = new Engine(listOfAuthorizables, properties,
+            new GatewayExecutors(properties, metricRegistry), new GatewayMetrics(metricRegistry),
+            journal);
+
+        // when
+        int replayed = engine.replayUnfinished();
+
+        // then
+        assertThat(replayed, equalTo(1));
+        verify(authorizableMock2, timeout(1000)).addOrganization(ORG_ID);
+        verify(journal, timeout(1000)).close(2L);
+        verify(authorizableMock1, never()).addOrganization(ORG_ID);
+        verify(journal).close(1L);
+    }
+
+    @Test
+    public void addOrganization_organizationAlreadyProvisioned_writeSkipped()
+            throws AuthorizableGatewayException {
+        // given
+        when(authorizableMock1.hasOrganization(ORG_ID)).thenReturn(Optional.of(true));
+        when(authorizableMock2.hasOrganization(ORG_ID)).thenReturn(Optional.empty());
+        MetricRegistry metricRegistry = new MetricRegistry();
+        Engine engine = createEngineSkippingNoopWrites(metricRegistry);
+
+        // when
+        engine.addOrganization(ORG_ID);
+
+        // then
+        verify(authorizableMock1, never()).addOrganization(ORG_ID);
+        verify(authorizableMock2).addOrganization(ORG_ID);
+        assertThat(metricRegistry.counter("engine.gateway.AUTH_1.add_organization.noop").getCount(),
+            equalTo(1L));
+    }
+
+    @Test
+    public void removeUserFromOrg_userNotInOrganization_writeSkipped()
+            throws AuthorizableGatewayException {
+        // given
+        when(authorizableMock1.hasUserInOrganization(USER_ID, ORG_ID))
+            .thenReturn(Optional.of(false));
+        when(authorizableMock2.hasUserInOrganization(USER_ID, ORG_ID))
+            .thenReturn(Optional.of(true));
+        Engine engine = createEngineSkippingNoopWrites(new MetricRegistry());
+
+        // when
+        engine.removeUserFromOrg(USER_ID, ORG_ID);
+
+        // then
+        verify(authorizableMock1, never()).removeUserFromOrg(USER_ID, ORG_ID);
+        verify(authorizableMock2).removeUserFromOrg(USER_ID, ORG_ID);
+    }
+
+    @Test
+    public void plan_authorizablesDescribeCalls_callsCountedAndNothingApplied()
+            throws AuthorizableGatewayException {
+        // given
+        PlannedCall mkdir = PlannedCall.of("mkdirs", "/org/" + ORG_ID);
+        PlannedCall chown = PlannedCall.of("setOwner", "/org/" + ORG_ID, ORG_ID);
+        PlannedCall acl = PlannedCall.of("setACL", ORG_ID, USER_ID);
+        when(authorizableMock1.planAddOrganization(ORG_ID))
+            .thenReturn(Optional.of(Arrays.asList(mkdir, chown)));
+        when(authorizableMock1.planAddUserToOrg(USER_ID, ORG_ID))
+            .thenReturn(Optional.of(Collections.singletonList(acl)));
+        when(authorizableMock2.planAddOrganization(ORG_ID)).thenReturn(Optional.empty());
+        when(authorizableMock2.planAddUserToOrg(USER_ID, ORG_ID))
+            .thenReturn(Optional.of(Collections.emptyList()));
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        ExecutionPlan plan = engine.plan(Arrays.asList(Operation.addOrganization(ORG_ID),
+            Operation.addUserToOrg(USER_ID, ORG_ID)), true);
+
+        // then
+        assertThat(plan.isSucceeded(), equalTo(true));
+        assertThat(plan.getEstimatedCalls(), equalTo(3L));
+        assertThat(plan.getGateways().get(AUTHORIZABLE1_NAME).getCalls(),
+            equalTo(Arrays.asList(mkdir, chown, acl)));
+        assertThat(plan.getGateways().get(AUTHORIZABLE2_NAME).getUnplannedOperations(),
+            equalTo(1));
+        assertThat(plan.getGateways().get(AUTHORIZABLE1_NAME).getEstimatedMillis(), nullValue());
+        verify(authorizableMock1, never()).addOrganization(ORG_ID);
+        verify(authorizableMock1, never()).addUserToOrg(USER_ID, ORG_ID);
+    }
+
+    @Test
+    public void plan_detailsNotRequested_callsOnlyCounted() {
+        // given
+        when(authorizableMock1.planRemoveOrganization(ORG_ID)).thenReturn(
+            Optional.of(Collections.singletonList(PlannedCall.of("delete", "/org/" + ORG_ID))));
+        when(authorizableMock2.planRemoveOrganization(ORG_ID)).thenReturn(Optional.empty());
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        ExecutionPlan plan =
+            engine.plan(Collections.singletonList(Operation.removeOrganization(ORG_ID)), false);
+
+        // then
+        assertThat(plan.getGateways().get(AUTHORIZABLE1_NAME).getEstimatedCalls(), equalTo(1L));
+        assertThat(plan.getGateways().get(AUTHORIZABLE1_NAME).getCalls(), nullValue());
+    }
+
+    @Test
+    public void plan_operationCalledBefore_durationEstimatedFromMetrics() {
+        // given
+        when(authorizableMock1.planAddOrganization(ORG_ID))
+            .thenReturn(Optional.of(Collections.emptyList()));
+        when(authorizableMock2.planAddOrganization(ORG_ID))
+            .thenReturn(Optional.of(Collections.emptyList()));
+        MetricRegistry metricRegistry = new MetricRegistry();
+        metricRegistry.timer("engine.gateway.AUTH_1.add_organization.duration")
+            .update(40, TimeUnit.MILLISECONDS);
+        Engine engine = createEngineWithMetrics(metricRegistry);
+
+        // when
+        ExecutionPlan plan =
+            engine.plan(Collections.singletonList(Operation.addOrganization(ORG_ID)), true);
+
+        // then
+        assertThat(plan.getGateways().get(AUTHORIZABLE1_NAME).getEstimatedMillis(), equalTo(40L));
+        assertThat(plan.getGateways().get(AUTHORIZABLE2_NAME).getEstimatedMillis(), nullValue());
+    }
+
+    @Test
+    public void plan_authorizableFailsToPlan_errorReported() {
+        // given
+        when(authorizableMock1.planAddUser(USER_ID))
+            .thenThrow(new IllegalStateException(EXCEPTION_MESSAGE));
+        when(authorizableMock2.planAddUser(USER_ID))
+            .thenReturn(Optional.of(Collections.emptyList()));
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+
+        // when
+        ExecutionPlan plan =
+            engine.plan(Collections.singletonList(Operation.addUser(USER_ID)), true);
+
+        // then
+        assertThat(plan.isSucceeded(), equalTo(false));
+        assertThat(plan.getGateways().get(AUTHORIZABLE1_NAME).getError(),
+            containsString(EXCEPTION_MESSAGE));
+        assertThat(plan.getGateways().get(AUTHORIZABLE2_NAME).isSucceeded(), equalTo(true));
+    }
+
+    @Test
+    public void execute_circuitOpen_gatewayNotCalled() throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+        CircuitBreakers circuitBreakers = createCircuitBreakers(false);
+        Engine engine = createEngineWithCircuitBreakers(circuitBreakers);
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.OPEN);
+
+        // when
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        verify(authorizableMock1, times(1)).addOrganization(ORG_ID);
+        verify(authorizableMock2, times(2)).addOrganization(ORG_ID);
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getError(),
+            containsString("circuit open, not called"));
+        assertThat(result.getGateways().get(AUTHORIZABLE2_NAME).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+    }
+
+    @Test
+    public void execute_circuitOpenWithReplay_callDeferredAndReplayedWhenProbed()
+            throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addUser(USER_ID);
+        CircuitBreakers circuitBreakers = createCircuitBreakers(true);
+        Engine engine = createEngineWithCircuitBreakers(circuitBreakers);
+        engine.execute(Operation.addUser(USER_ID), FailurePolicy.WAIT_FOR_ALL);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.OPEN);
+
+        // when
+        ExecutionResult result =
+            engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getError(),
+            containsString("circuit open, deferred for replay"));
+        verify(authorizableMock1, timeout(3000)).addOrganization(ORG_ID);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void execute_circuitOpenWithReplay_journalEntryClosedOnlyAfterReplay()
+            throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addUser(USER_ID);
+        OperationJournal journal = mock(OperationJournal.class);
+        when(journal.accept(Collections.singletonList(Operation.addOrganization(ORG_ID))))
+            .thenReturn(7L);
+        CircuitBreakers circuitBreakers = createCircuitBreakers(true);
+        Engine engine = createEngineWithCircuitBreakers(circuitBreakers, journal);
+        engine.execute(Operation.addUser(USER_ID), FailurePolicy.WAIT_FOR_ALL);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.OPEN);
+
+        // when
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        verify(journal, never()).close(7L);
+        verify(authorizableMock1, timeout(3000)).addOrganization(ORG_ID);
+        verify(journal, timeout(1000)).complete(7L, AUTHORIZABLE1_NAME);
+        verify(journal, timeout(1000)).close(7L);
+    }
+
+    @Test
+    public void dispatch_callDeferredOnOrganization_laterOperationRunsAfterReplay()
+            throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addUser(USER_ID);
+        CircuitBreakers circuitBreakers = createCircuitBreakers(true);
+        Engine engine = createEngineWithCircuitBreakers(circuitBreakers);
+        engine.execute(Operation.addUser(USER_ID), FailurePolicy.WAIT_FOR_ALL);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.OPEN);
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // when
+        Map<String, GatewayCall> calls = engine.dispatch(Operation.removeOrganization(ORG_ID),
+            FailurePolicy.WAIT_FOR_ALL, null);
+
+        // then
+        assertThat(calls.get(AUTHORIZABLE1_NAME).result().get(3, TimeUnit.SECONDS).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+        InOrder order = inOrder(authorizableMock1);
+        order.verify(authorizableMock1).addOrganization(ORG_ID);
+        order.verify(authorizableMock1).removeOrganization(ORG_ID);
+    }
+
+    @Test
+    public void execute_earlierOperationOnOrganizationNeverReplayed_callsTimedOutWhileWaiting()
+            throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addUser(USER_ID);
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+        CircuitBreakers circuitBreakers = createCircuitBreakers(true);
+        Engine engine = createEngineWithCircuitBreakers(circuitBreakers);
+        engine.execute(Operation.addUser(USER_ID), FailurePolicy.WAIT_FOR_ALL);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.OPEN);
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // when
+        long start = System.nanoTime();
+        ExecutionResult result =
+            engine.execute(Operation.removeOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // then
+        assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start),
+            lessThan(LONG_CALL_DURATION_IN_SECONDS));
+        assertThat(result.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.TIMED_OUT));
+        assertThat(result.getGateways().get(AUTHORIZABLE2_NAME).getStatus(),
+            equalTo(GatewayStatus.TIMED_OUT));
+        verify(authorizableMock1, never()).removeOrganization(ORG_ID);
+    }
+
+    @Test
+    public void dispatch_replayOfEarlierOperationFailsPermanently_laterOperationCompleted()
+            throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addUser(USER_ID);
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+                .addOrganization(ORG_ID);
+        OperationJournal journal = mock(OperationJournal.class);
+        when(journal.accept(Collections.singletonList(Operation.addOrganization(ORG_ID))))
+            .thenReturn(7L);
+        CircuitBreakers circuitBreakers = createCircuitBreakers(true, 1);
+        Engine engine = createEngineWithCircuitBreakers(circuitBreakers, journal);
+        engine.execute(Operation.addUser(USER_ID), FailurePolicy.WAIT_FOR_ALL);
+        awaitCircuit(circuitBreakers, CircuitBreaker.State.OPEN);
+        engine.execute(Operation.addOrganization(ORG_ID), FailurePolicy.WAIT_FOR_ALL);
+
+        // when
+        Map<String, GatewayCall> calls = engine.dispatch(Operation.removeOrganization(ORG_ID),
+            FailurePolicy.WAIT_FOR_ALL, null);
+
+        // then
+        assertThat(calls.get(AUTHORIZABLE2_NAME).result().get(5, TimeUnit.SECONDS).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+        verify(authorizableMock1, timeout(5000)).removeOrganization(ORG_ID);
+        verify(journal, never()).complete(7L, AUTHORIZABLE1_NAME);
+        verify(journal, never()).close(7L);
+    }
+
+    @Test
+    public void dispatch_engineShutDown_callsFailedWithoutCallingGateways()
+            throws AuthorizableGatewayException {
+        // given
+        Engine engine = new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS);
+        engine.shutdown();
+
+        // when
+        Map<String, GatewayCall> calls =
+            engine.dispatch(Operation.addUser(USER_ID), FailurePolicy.WAIT_FOR_ALL, null);
+
+        // then
+        GatewayResult result = calls.get(AUTHORIZABLE1_NAME).result().getNow(null);
+        assertThat(result.getStatus(), equalTo(GatewayStatus.FAILED));
+        assertThat(result.getError(), containsString("engine shut down"));
+        verify(authorizableMock1, never()).addUser(USER_ID);
+    }
+
+    private CircuitBreakers createCircuitBreakers(boolean replay) {
+        return createCircuitBreakers(replay, new EngineProperties().getCircuitBreaker()
+            .getMaxReplayAttempts());
+    }
+
+    private CircuitBreakers createCircuitBreakers(boolean replay, int maxReplayAttempts) {
+        EngineProperties properties = new EngineProperties();
+        properties.getCircuitBreaker().setMaxReplayAttempts(maxReplayAttempts);
+        properties.getCircuitBreaker().setEnabled(true);
+        properties.getCircuitBreaker().setWindowSize(1);
+        properties.getCircuitBreaker().setMinimumCalls(1);
+        properties.getCircuitBreaker().setHalfOpenCalls(1);
+        properties.getCircuitBreaker().setOpenDuration(1);
+        properties.getCircuitBreaker().setReplay(replay);
+        return new CircuitBreakers(properties);
+    }
+
+    private Engine createEngineWithCircuitBreakers(CircuitBreakers circuitBreakers) {
+        return createEngineWithCircuitBreakers(circuitBreakers, OperationJournal.NONE);
+    }
+
+    private Engine createEngineWithCircuitBreakers(CircuitBreakers circuitBreakers,
+            OperationJournal journal) {
+        EngineProperties properties = new EngineProperties();
+        properties.setTimeout(ENGINE_TIMEOUT_IN_SECONDS);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        return new Engine(listOfAuthorizables, properties,
+            new GatewayExecutors(properties, metricRegistry), new GatewayMetrics(metricRegistry),
+            journal, circuitBreakers);
+    }
+
+    /**
+     * Outcomes are recorded once the call completed, so right after a request returned the
+     * circuit may not have changed yet.
+     */
+    private void awaitCircuit(CircuitBreakers circuitBreakers, CircuitBreaker.State state)
+            throws InterruptedException {
+        CircuitBreaker breaker = circuitBreakers.forGateway(AUTHORIZABLE1_NAME).get();
+        for (int i = 0; i < 100 && breaker.getState() != state; i++) {
+            Thread.sleep(20);
+        }
+        assertThat(breaker.getState(), equalTo(state));
+    }
+
+    private Engine createEngineSkippingNoopWrites(MetricRegistry metricRegistry) {
+        EngineProperties properties = new EngineProperties();
+        properties.setTimeout(ENGINE_TIMEOUT_IN_SECONDS);
+        properties.setSkipNoopWrites(true);
+        return new Engine(listOfAuthorizables, properties,
+            new GatewayExecutors(properties, metricRegistry), new GatewayMetrics(metricRegistry));
+    }
+
+    private Engine createEngineWithRetries(int maxAttempts) {
+        EngineProperties properties = new EngineProperties();
+        properties.setTimeout(ENGINE_TIMEOUT_IN_SECONDS);
+        properties.getRetry().setMaxAttempts(maxAttempts);
+        properties.getRetry().setInitialBackoff(RETRY_BACKOFF_IN_MILLIS);
+        MetricRegistry metricRegistry = new MetricRegistry();
+        return new Engine(listOfAuthorizables, properties,
+            new GatewayExecutors(properties, metricRegistry), new GatewayMetrics(metricRegistry));
+    }
+
+    private Engine createEngineWithMetrics(MetricRegistry metricRegistry) {
+        return new Engine(listOfAuthorizables, ENGINE_TIMEOUT_IN_SECONDS,
+            new GatewayExecutors(new EngineProperties(), metricRegistry),
+            new GatewayMetrics(metricRegistry));
+    }
+
     private List<Authorizable> prepareAuthorizablesList(Authorizable... authorizables) {
         List<Authorizable> list = new LinkedList<>();
 
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileOperationJournalTest {
+
+    private static final String USER_ID = "666";
+    private static final String ORG_ID = "897351 with spaces";
+    private static final String GATEWAY1_NAME = "AUTH_1";
+    private static final String GATEWAY2_NAME = "AUTH_2";
+    private static final long MAX_SIZE = 1024 * 1024;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private Path path;
+
+    @Before
+    public void setUp() {
+        path = folder.getRoot().toPath().resolve("journal");
+    }
+
+    @Test
+    public void unfinished_entryNotClosedBeforeRestart_entryWithCompletedGatewaysReturned()
+        throws IOException {
+        // given
+        List<Operation> operations = Arrays.asList(Operation.addOrganization(ORG_ID),
+            Operation.addUserToOrg(USER_ID, ORG_ID));
+        FileOperationJournal journal = new FileOperationJournal(path, MAX_SIZE);
+        long entryId = journal.accept(operations);
+        journal.complete(entryId, GATEWAY1_NAME);
+
+        // when
+        List<JournalEntry> unfinished = new FileOperationJournal(path, MAX_SIZE).unfinished();
+
+        // then
+        assertThat(unfinished.size(), equalTo(1));
+        assertThat(unfinished.get(0).getOperations(), equalTo(operations));
+        assertThat(unfinished.get(0).getCompleted(),
+            equalTo(Collections.singleton(GATEWAY1_NAME)));
+    }
+
+    @Test
+    public void unfinished_entryClosedBeforeRestart_nothingReturned() throws IOException {
+        // given
+        FileOperationJournal journal = new FileOperationJournal(path, MAX_SIZE);
+        long entryId = journal.accept(Collections.singletonList(Operation.addUser(USER_ID)));
+        journal.complete(entryId, GATEWAY1_NAME);
+        journal.complete(entryId, GATEWAY2_NAME);
+        journal.close(entryId);
+
+        // when
+        List<JournalEntry> unfinished = new FileOperationJournal(path, MAX_SIZE).unfinished();
+
+        // then
+        assertThat(unfinished.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void unfinished_recordTornByCrash_recordIgnored() throws IOException {
+        // given
+        new FileOperationJournal(path, MAX_SIZE).accept(
+            Collections.singletonList(Operation.addOrganization(ORG_ID)));
+        Files.write(path, "A 2 ADD_ORGANIZATION,-,ODk3".getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.APPEND);
+
+        // when
+        List<JournalEntry> unfinished = new FileOperationJournal(path, MAX_SIZE).unfinished();
+
+        // then
+        assertThat(unfinished.size(), equalTo(1));
+        assertThat(unfinished.get(0).getOperations(),
+            equalTo(Collections.singletonList(Operation.addOrganization(ORG_ID))));
+    }
+
+    @Test
+    public void close_journalOverMaxSize_journalCompactedToOpenEntries() throws IOException {
+        // given
+        FileOperationJournal journal = new FileOperationJournal(path, 1);
+        long open = journal.accept(Collections.singletonList(Operation.addOrganization(ORG_ID)));
+        long closed = journal.accept(Collections.singletonList(Operation.addUser(USER_ID)));
+
+        // when
+        journal.close(closed);
+
+        // then
+        List<String> records = Files.readAllLines(path, StandardCharsets.UTF_8);
+        assertThat(records.size(), equalTo(1));
+        assertThat(new FileOperationJournal(path, MAX_SIZE).unfinished().get(0).getId(),
+            equalTo(open));
+    }
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assume.assumeFalse;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+public class GatewayExecutorsTest {
+
+    private static final String GATEWAY1_NAME = "AUTH_1";
+    private static final String GATEWAY2_NAME = "AUTH_2";
+
+    private EngineProperties properties;
+    private MetricRegistry metricRegistry;
+    private GatewayExecutors executors;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        properties = new EngineProperties();
+        metricRegistry = new MetricRegistry();
+        executors = new GatewayExecutors(properties, metricRegistry);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executors.shutdown();
+    }
+
+    @Test
+    public void forGateway_sameGateway_sameExecutorReturned() {
+        assertThat(executors.forGateway(GATEWAY1_NAME),
+            sameInstance(executors.forGateway(GATEWAY1_NAME)));
+    }
+
+    @Test
+    public void forGateway_differentGateways_separateExecutorsReturned() {
+        assertThat(executors.forGateway(GATEWAY1_NAME),
+            not(sameInstance(executors.forGateway(GATEWAY2_NAME))));
+    }
+
+    @Test
+    public void forGateway_executorCreated_queueAndActiveGaugesRegistered()
+        throws InterruptedException {
+        // given
+        properties.getExecutor().setPoolSize(1);
+        Executor executor = executors.forGateway(GATEWAY1_NAME);
+        CountDownLatch started = new CountDownLatch(1);
+
+        // when
+        executor.execute(blockingTask(started));
+        executor.execute(blockingTask(new CountDownLatch(1)));
+        started.await(1, TimeUnit.SECONDS);
+
+        // then
+        assertThat(gaugeValue("engine.executor.AUTH_1.active"), equalTo(1));
+        assertThat(gaugeValue("engine.executor.AUTH_1.queue"), equalTo(1));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void forGateway_queueFull_taskRejected() {
+        // given
+        EngineProperties.GatewayProperties gatewayProperties = new EngineProperties.GatewayProperties();
+        gatewayProperties.setPoolSize(1);
+        gatewayProperties.setQueueCapacity(1);
+        properties.getGateways().put(GATEWAY1_NAME, gatewayProperties);
+        Executor executor = executors.forGateway(GATEWAY1_NAME);
+
+        // when
+        executor.execute(blockingTask(new CountDownLatch(1)));
+        executor.execute(blockingTask(new CountDownLatch(1)));
+        executor.execute(blockingTask(new CountDownLatch(1)));
+    }
+
+    @Test(expected = RejectedExecutionException.class)
+    public void forGateway_virtualModeWithoutVirtualThreads_boundedExecutorCreated() {
+        // given
+        assumeFalse(VirtualThreads.isSupported());
+        properties.getExecutor().setMode(ExecutionMode.VIRTUAL);
+        properties.getExecutor().setPoolSize(1);
+        properties.getExecutor().setQueueCapacity(1);
+        Executor executor = executors.forGateway(GATEWAY1_NAME);
+
+        // when
+        executor.execute(blockingTask(new CountDownLatch(1)));
+        executor.execute(blockingTask(new CountDownLatch(1)));
+        executor.execute(blockingTask(new CountDownLatch(1)));
+    }
+
+    @Test
+    public void forGateway_otherGatewaySaturated_taskStillExecuted() throws InterruptedException {
+        // given
+        EngineProperties.GatewayProperties gatewayProperties = new EngineProperties.GatewayProperties();
+        gatewayProperties.setPoolSize(1);
+        gatewayProperties.setQueueCapacity(1);
+        properties.getGateways().put(GATEWAY1_NAME, gatewayProperties);
+        executors.forGateway(GATEWAY1_NAME).execute(blockingTask(new CountDownLatch(1)));
+        executors.forGateway(GATEWAY1_NAME).execute(blockingTask(new CountDownLatch(1)));
+        CountDownLatch executed = new CountDownLatch(1);
+
+        // when
+        executors.forGateway(GATEWAY2_NAME).execute(executed::countDown);
+
+        // then
+        assertThat(executed.await(1, TimeUnit.SECONDS), equalTo(true));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Integer gaugeValue(String name) {
+        return ((Gauge<Integer>) metricRegistry.getGauges().get(name)).getValue();
+    }
+
+    private Runnable blockingTask(CountDownLatch started) {
+        return () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+    }
+}
@@ -0,0 +1,212 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class JobRegistryTest {
+
+    private static final String ORG_ID = "897351";
+    private static final String EXCEPTION_MESSAGE = "Something went wrong";
+    private static final String AUTHORIZABLE1_NAME = "AUTH_1";
+    private static final String AUTHORIZABLE2_NAME = "AUTH_2";
+    private static final long ENGINE_TIMEOUT_IN_SECONDS = 1;
+    private static final long RETENTION_IN_SECONDS = 60;
+    private static final long MAX_JOBS = 10;
+
+    private Authorizable authorizableMock1;
+    private Authorizable authorizableMock2;
+    private Engine engine;
+    private Reconciler reconciler;
+    private JobRegistry jobRegistry;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() {
+        authorizableMock1 = mock(Authorizable.class);
+        when(authorizableMock1.getName()).thenReturn(AUTHORIZABLE1_NAME);
+        authorizableMock2 = mock(Authorizable.class);
+        when(authorizableMock2.getName()).thenReturn(AUTHORIZABLE2_NAME);
+
+        engine = new Engine(Arrays.asList(authorizableMock1, authorizableMock2),
+            ENGINE_TIMEOUT_IN_SECONDS);
+        reconciler = new Reconciler(Arrays.asList(authorizableMock1, authorizableMock2), engine,
+            new EngineProperties());
+        jobRegistry = new JobRegistry(engine, reconciler, RETENTION_IN_SECONDS, MAX_JOBS);
+        release = new CountDownLatch(1);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        reconciler.shutdown();
+        engine.shutdown();
+    }
+
+    @Test
+    public void submit_allAuthorizablesOk_jobSucceeded() throws Exception {
+        // when
+        Job job = submitAddOrganization(ORG_ID);
+        job.completion().get(1, TimeUnit.SECONDS);
+
+        // then
+        verify(authorizableMock1).addOrganization(ORG_ID);
+        verify(authorizableMock2).addOrganization(ORG_ID);
+        assertThat(job.getStatus(), equalTo(ExecutionStatus.SUCCEEDED));
+        assertThat(job.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+        assertThat(job.getGateways().get(AUTHORIZABLE2_NAME).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+    }
+
+    @Test
+    public void submit_exceptionFromAuthorizable_jobFailedWithGatewayError() throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException(EXCEPTION_MESSAGE)).when(authorizableMock1)
+            .addOrganization(ORG_ID);
+
+        // when
+        Job job = submitAddOrganization(ORG_ID);
+        job.completion().get(1, TimeUnit.SECONDS);
+
+        // then
+        assertThat(job.getStatus(), equalTo(ExecutionStatus.FAILED));
+        assertThat(job.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.FAILED));
+        assertThat(job.getGateways().get(AUTHORIZABLE1_NAME).getError(),
+            containsString(EXCEPTION_MESSAGE));
+        assertThat(job.getGateways().get(AUTHORIZABLE2_NAME).getStatus(),
+            equalTo(GatewayStatus.SUCCEEDED));
+    }
+
+    @Test
+    public void submit_authorizableStillRunning_jobRunningAndReturnedImmediately()
+        throws Exception {
+        // given
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(authorizableMock1).addOrganization(ORG_ID);
+
+        // when
+        Job job = submitAddOrganization(ORG_ID);
+
+        // then
+        assertThat(job.getStatus(), equalTo(ExecutionStatus.RUNNING));
+        assertThat(job.getGateways().get(AUTHORIZABLE1_NAME).getStatus(),
+            equalTo(GatewayStatus.RUNNING));
+        assertThat(jobRegistry.get(job.getId()).get(), equalTo(job));
+    }
+
+    @Test
+    public void submitReconciliation_organizationMissing_jobSucceededWithReport()
+        throws Exception {
+        // given
+        when(authorizableMock1.listOrganizations()).thenReturn(Optional.of(ImmutableSet.of()));
+        when(authorizableMock2.listOrganizations())
+            .thenReturn(Optional.of(ImmutableSet.of(ORG_ID)));
+        when(authorizableMock2.listUsersInOrganization(ORG_ID))
+            .thenReturn(Optional.of(ImmutableSet.of()));
+
+        // when
+        Job job = jobRegistry.submitReconciliation(
+            new DesiredState(ImmutableMap.of(ORG_ID, Collections.emptyList())), false);
+        job.completion().get(1, TimeUnit.SECONDS);
+
+        // then
+        verify(authorizableMock1).addOrganizations(ImmutableSet.of(ORG_ID));
+        assertThat(job.getStatus(), equalTo(ExecutionStatus.SUCCEEDED));
+        assertThat(job.getReconciliation().getGateways().get(AUTHORIZABLE1_NAME)
+            .getAddedOrganizations(), equalTo(Collections.singleton(ORG_ID)));
+        assertThat(jobRegistry.get(job.getId()).get(), equalTo(job));
+    }
+
+    @Test
+    public void get_unknownJob_emptyReturned() {
+        assertThat(jobRegistry.get("unknown").isPresent(), equalTo(false));
+    }
+
+    @Test
+    public void get_moreJobsThanMaxSize_oldestJobEvicted() throws Exception {
+        // given
+        Job oldest = submitAddOrganization(ORG_ID);
+        oldest.completion().get(1, TimeUnit.SECONDS);
+
+        // when
+        for (int i = 0; i < MAX_JOBS * 10; i++) {
+            submitAddOrganization(ORG_ID + i).completion().get(1, TimeUnit.SECONDS);
+        }
+
+        // then
+        assertThat(jobRegistry.get(oldest.getId()).isPresent(), equalTo(false));
+    }
+
+    @Test
+    public void submit_maxSizeJobsRunning_runningJobsKeptAndNewJobRejected() throws Exception {
+        // given
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(authorizableMock1).addOrganization(anyString());
+        Job first = submitAddOrganization(ORG_ID);
+        for (int i = 1; i < MAX_JOBS; i++) {
+            submitAddOrganization(ORG_ID + i);
+        }
+
+        // when
+        try {
+            submitAddOrganization(ORG_ID + MAX_JOBS);
+            fail("AdmissionRejectedException expected");
+        } catch (AdmissionRejectedException e) {
+            // then
+            assertThat(jobRegistry.get(first.getId()).get().getStatus(),
+                equalTo(ExecutionStatus.RUNNING));
+            verify(authorizableMock1, never()).addOrganization(ORG_ID + MAX_JOBS);
+        }
+        release.countDown();
+        first.completion().get(1, TimeUnit.SECONDS);
+        assertThat(submitAddOrganization(ORG_ID + MAX_JOBS), notNullValue());
+    }
+
+    private Job submitAddOrganization(String orgId) {
+        return jobRegistry.submit(Operation.addOrganization(orgId), FailurePolicy.WAIT_FOR_ALL,
+            null);
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class OperationBatchTest {
+
+    private static final String USER1_ID = "666";
+    private static final String USER2_ID = "667";
+    private static final String ORG1_ID = "897351";
+    private static final String ORG2_ID = "897352";
+
+    @Test
+    public void group_sameTypeAndOrganization_mergedIntoOneBatch() {
+        // when
+        List<OperationBatch> batches = OperationBatch.group(Arrays.asList(
+            Operation.addUserToOrg(USER1_ID, ORG1_ID), Operation.addUserToOrg(USER2_ID, ORG1_ID)));
+
+        // then
+        assertThat(batches.size(), equalTo(1));
+        assertThat(batches.get(0).getOperations().size(), equalTo(2));
+    }
+
+    @Test
+    public void group_differentOrganizations_splitPerOrganization() {
+        // when
+        List<OperationBatch> batches = OperationBatch.group(Arrays.asList(
+            Operation.addUserToOrg(USER1_ID, ORG1_ID), Operation.addUserToOrg(USER1_ID, ORG2_ID)));
+
+        // then
+        assertThat(batches.size(), equalTo(2));
+    }
+
+    @Test
+    public void group_organizationsOfSameType_mergedAcrossOrganizations() {
+        // when
+        List<OperationBatch> batches = OperationBatch.group(Arrays.asList(
+            Operation.addOrganization(ORG1_ID), Operation.addOrganization(ORG2_ID)));
+
+        // then
+        assertThat(batches.size(), equalTo(1));
+    }
+
+    @Test
+    public void group_interleavedTypes_orderPreserved() {
+        // when
+        List<OperationBatch> batches = OperationBatch.group(Arrays.asList(
+            Operation.addUserToOrg(USER1_ID, ORG1_ID), Operation.removeOrganization(ORG1_ID),
+            Operation.addUserToOrg(USER2_ID, ORG1_ID)));
+
+        // then
+        assertThat(batches.size(), equalTo(3));
+        assertThat(batches.get(0).getType(), equalTo(OperationType.ADD_USER_TO_ORG));
+        assertThat(batches.get(1).getType(), equalTo(OperationType.REMOVE_ORGANIZATION));
+        assertThat(batches.get(2).getType(), equalTo(OperationType.ADD_USER_TO_ORG));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void of_missingOrganization_exceptionThrown() {
+        Operation.of(OperationType.ADD_USER_TO_ORG, USER1_ID, null);
+    }
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class OrganizationOrderingTest {
+
+    private static final String ORG1_ID = "897351";
+    private static final String ORG2_ID = "897352";
+
+    private OrganizationOrdering ordering;
+
+    @Before
+    public void setUp() {
+        ordering = new OrganizationOrdering();
+    }
+
+    @Test
+    public void enqueue_noEarlierOperation_mayStartImmediately() {
+        // when
+        CompletableFuture<Void> turn =
+            ordering.enqueue(Collections.singleton(ORG1_ID), new CompletableFuture<>());
+
+        // then
+        assertThat(turn.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void enqueue_earlierOperationOnSameOrganization_startsAfterItFinished() {
+        // given
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        ordering.enqueue(Collections.singleton(ORG1_ID), first);
+
+        // when
+        CompletableFuture<Void> turn =
+            ordering.enqueue(Collections.singleton(ORG1_ID), new CompletableFuture<>());
+
+        // then
+        assertThat(turn.isDone(), equalTo(false));
+        first.complete(null);
+        assertThat(turn.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void enqueue_earlierOperationOnOtherOrganization_mayStartImmediately() {
+        // given
+        ordering.enqueue(Collections.singleton(ORG1_ID), new CompletableFuture<>());
+
+        // when
+        CompletableFuture<Void> turn =
+            ordering.enqueue(Collections.singleton(ORG2_ID), new CompletableFuture<>());
+
+        // then
+        assertThat(turn.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void enqueue_bulkOverlappingEarlierOperations_startsAfterAllOfThemFinished() {
+        // given
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        CompletableFuture<Void> second = new CompletableFuture<>();
+        ordering.enqueue(Collections.singleton(ORG1_ID), first);
+        ordering.enqueue(Collections.singleton(ORG2_ID), second);
+
+        // when
+        CompletableFuture<Void> turn =
+            ordering.enqueue(Arrays.asList(ORG1_ID, ORG2_ID), new CompletableFuture<>());
+
+        // then
+        first.complete(null);
+        assertThat(turn.isDone(), equalTo(false));
+        second.complete(null);
+        assertThat(turn.isDone(), equalTo(true));
+    }
+
+    @Test
+    public void isLatest_laterOperationOnSameOrganization_falseReturned() {
+        // given
+        CompletableFuture<Void> first = new CompletableFuture<>();
+        ordering.enqueue(Collections.singleton(ORG1_ID), first);
+        assertThat(ordering.isLatest(Collections.singleton(ORG1_ID), first), equalTo(true));
+
+        // when
+        ordering.enqueue(Collections.singleton(ORG1_ID), new CompletableFuture<>());
+
+        // then
+        assertThat(ordering.isLatest(Collections.singleton(ORG1_ID), first), equalTo(false));
+    }
+
+    @Test
+    public void enqueue_operationFinished_organizationForgotten() {
+        // given
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        ordering.enqueue(Arrays.asList(ORG1_ID, ORG2_ID), done);
+
+        // when
+        done.complete(null);
+
+        // then
+        assertThat(ordering.size(), equalTo(0));
+    }
+}
@@ -0,0 +1,238 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.engine;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+public class ReconcilerTest {
+
+    private static final String ORG1_ID = "897351";
+    private static final String ORG2_ID = "897352";
+    private static final String ORG3_ID = "897353";
+    private static final String USER1_ID = "666";
+    private static final String USER2_ID = "667";
+    private static final String AUTHORIZABLE1_NAME = "AUTH_1";
+    private static final String AUTHORIZABLE2_NAME = "AUTH_2";
+    private static final long ENGINE_TIMEOUT_IN_SECONDS = 5;
+
+    private Authorizable authorizableMock1;
+    private Authorizable authorizableMock2;
+    private Engine engine;
+    private Reconciler reconciler;
+    private DesiredState desiredState;
+    private CountDownLatch release;
+
+    @Before
+    public void setUp() throws AuthorizableGatewayException {
+        authorizableMock1 = mock(Authorizable.class);
+        when(authorizableMock1.getName()).thenReturn(AUTHORIZABLE1_NAME);
+        authorizableMock2 = mock(Authorizable.class);
+        when(authorizableMock2.getName()).thenReturn(AUTHORIZABLE2_NAME);
+        when(authorizableMock2.listOrganizations()).thenReturn(Optional.empty());
+        when(authorizableMock2.listUsersInOrganization(anyString())).thenReturn(Optional.empty());
+
+        engine = new Engine(Arrays.asList(authorizableMock1, authorizableMock2),
+            ENGINE_TIMEOUT_IN_SECONDS);
+        reconciler = new Reconciler(Arrays.asList(authorizableMock1, authorizableMock2), engine,
+            new EngineProperties());
+        release = new CountDownLatch(1);
+        desiredState = new DesiredState(ImmutableMap.of(ORG1_ID, Arrays.asList(USER1_ID, USER2_ID),
+            ORG2_ID, Collections.singletonList(USER1_ID)));
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        reconciler.shutdown();
+        engine.shutdown();
+    }
+
+    @Test
+    public void reconcile_organizationMissing_onlyMissingOrganizationAndItsUsersAdded()
+        throws Exception {
+        // given
+        when(authorizableMock1.listOrganizations())
+            .thenReturn(Optional.of(ImmutableSet.of(ORG1_ID)));
+        when(authorizableMock1.listUsersInOrganization(ORG1_ID))
+            .thenReturn(Optional.of(ImmutableSet.of(USER1_ID, USER2_ID)));
+
+        // when
+        ReconciliationReport report = reconcile(desiredState, false);
+
+        // then
+        verify(authorizableMock1).addOrganizations(ImmutableSet.of(ORG2_ID));
+        verify(authorizableMock1).addUsersToOrg(ImmutableSet.of(USER1_ID), ORG2_ID);
+        verify(authorizableMock1, never())
+            .addUsersToOrg(anyCollectionOf(String.class), eq(ORG1_ID));
+        verify(authorizableMock1, never()).listUsersInOrganization(ORG2_ID);
+        assertThat(report.isSucceeded(), equalTo(true));
+        assertThat(report.getGateways().get(AUTHORIZABLE1_NAME).getAddedOrganizations(),
+            equalTo(Collections.singleton(ORG2_ID)));
+    }
+
+    @Test
+    public void reconcile_userMissing_onlyMissingUserAdded() throws Exception {
+        // given
+        when(authorizableMock1.listOrganizations())
+            .thenReturn(Optional.of(ImmutableSet.of(ORG1_ID, ORG2_ID)));
+        when(authorizableMock1.listUsersInOrganization(ORG1_ID))
+            .thenReturn(Optional.of(ImmutableSet.of(USER1_ID)));
+        when(authorizableMock1.listUsersInOrganization(ORG2_ID))
+            .thenReturn(Optional.of(ImmutableSet.of(USER1_ID)));
+
+        // when
+        ReconciliationReport report = reconcile(desiredState, false);
+
+        // then
+        verify(authorizableMock1, never()).addOrganizations(anyCollectionOf(String.class));
+        verify(authorizableMock1).addUsersToOrg(ImmutableSet.of(USER2_ID), ORG1_ID);
+        assertThat(report.getGateways().get(AUTHORIZABLE1_NAME).getAddedUsers(),
+            equalTo(ImmutableMap.of(ORG1_ID, ImmutableSet.of(USER2_ID))));
+    }
+
+    @Test
+    public void reconcile_extraEntriesWithoutPrune_nothingRemoved()
+        throws Exception {
+        // given
+        when(authorizableMock1.listOrganizations())
+            .thenReturn(Optional.of(ImmutableSet.of(ORG1_ID, ORG2_ID, ORG3_ID)));
+        when(authorizableMock1.listUsersInOrganization(anyString()))
+            .thenReturn(Optional.of(ImmutableSet.of(USER1_ID, USER2_ID)));
+
+        // when
+        reconcile(desiredState, false);
+
+        // then
+        verify(authorizableMock1, never()).removeOrganizations(anyCollectionOf(String.class));
+        verify(authorizableMock1, never()).removeUsersFromOrg(anyCollectionOf(String.class), any());
+    }
+
+    @Test
+    public void reconcile_extraEntriesWithPrune_extraOrganizationsAndUsersRemoved()
+        throws Exception {
+        // given
+        when(authorizableMock1.listOrganizations())
+            .thenReturn(Optional.of(ImmutableSet.of(ORG1_ID, ORG2_ID, ORG3_ID)));
+        when(authorizableMock1.listUsersInOrganization(anyString()))
+            .thenReturn(Optional.of(ImmutableSet.of(USER1_ID, USER2_ID)));
+
+        // when
+        ReconciliationReport report = reconcile(desiredState, true);
+
+        // then
+        verify(authorizableMock1).removeOrganizations(ImmutableSet.of(ORG3_ID));
+        verify(authorizableMock1).removeUsersFromOrg(ImmutableSet.of(USER2_ID), ORG2_ID);
+        verify(authorizableMock1, never()).listUsersInOrganization(ORG3_ID);
+        assertThat(report.getGateways().get(AUTHORIZABLE1_NAME).getRemovedOrganizations(),
+            equalTo(Collections.singleton(ORG3_ID)));
+    }
+
+    @Test
+    public void reconcile_gatewayCannotList_allDesiredEntriesAddedAndNothingRemoved()
+        throws Exception {
+        // when
+        ReconciliationReport report = reconcile(desiredState, true);
+
+        // then
+        verify(authorizableMock2).addOrganizations(ImmutableSet.of(ORG1_ID, ORG2_ID));
+        verify(authorizableMock2).addUsersToOrg(ImmutableSet.of(USER1_ID, USER2_ID), ORG1_ID);
+        verify(authorizableMock2).addUsersToOrg(ImmutableSet.of(USER1_ID), ORG2_ID);
+        verify(authorizableMock2, never()).removeOrganizations(anyCollectionOf(String.class));
+        assertThat(report.getGateways().get(AUTHORIZABLE2_NAME).isListed(), equalTo(false));
+    }
+
+    @Test
+    public void reconcile_oneGatewayFails_otherGatewayReconciledAndFailureReported()
+        throws Exception {
+        // given
+        doThrow(new AuthorizableGatewayException("Something went wrong"))
+            .when(authorizableMock1).listOrganizations();
+
+        // when
+        ReconciliationReport report = reconcile(desiredState, false);
+
+        // then
+        verify(authorizableMock2).addOrganizations(ImmutableSet.of(ORG1_ID, ORG2_ID));
+        assertThat(report.isSucceeded(), equalTo(false));
+        assertThat(report.getGateways().get(AUTHORIZABLE1_NAME).getErrors().get(0),
+            containsString("Something went wrong"));
+        assertThat(report.getGateways().get(AUTHORIZABLE2_NAME).isSucceeded(), equalTo(true));
+    }
+
+    @Test
+    public void reconcile_operationOnOrganizationInFlight_writeWaitsForOperation()
+        throws Exception {
+        // given
+        doAnswer(invocation -> {
+            release.await();
+            return null;
+        }).when(authorizableMock1).removeOrganization(ORG2_ID);
+        when(authorizableMock1.listOrganizations())
+            .thenReturn(Optional.of(ImmutableSet.of(ORG1_ID)));
+        when(authorizableMock1.listUsersInOrganization(ORG1_ID))
+            .thenReturn(Optional.of(ImmutableSet.of(USER1_ID, USER2_ID)));
+        engine.dispatch(Operation.removeOrganization(ORG2_ID), FailurePolicy.WAIT_FOR_ALL, null);
+
+        // when
+        CompletableFuture<ReconciliationReport> report = reconciler.reconcile(desiredState, false);
+
+        // then
+        try {
+            report.get(200, TimeUnit.MILLISECONDS);
+            fail("reconciliation should wait for removal of " + ORG2_ID);
+        } catch (TimeoutException e) {
+            release.countDown();
+        }
+        assertThat(report.get(1, TimeUnit.SECONDS).isSucceeded(), equalTo(true));
+        InOrder order = inOrder(authorizableMock1);
+        order.verify(authorizableMock1).removeOrganization(ORG2_ID);
+        order.verify(authorizableMock1).addOrganizations(ImmutableSet.of(ORG2_ID));
+    }
+
+    private ReconciliationReport reconcile(DesiredState desired, boolean prune) throws Exception {
+        return reconciler.reconcile(desired, prune).get(1, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cloudera Manager API of a single cluster, keeping the YARN scheduled allocations in memory.
+ * Pools refresh commands finish at once.
+ */
+class ClouderaManagerStub extends StubServer {
+
+    private static final String CLUSTER = "cluster";
+
+    private static final String YARN_SCHEDULED_ALLOCATIONS = "yarn_fs_scheduled_allocations";
+
+    private static final String INITIAL_ALLOCATIONS = "{\"queuePlacementRules\":["
+        + "{\"create\":false,\"name\":\"specified\"},{\"create\":false,\"name\":\"user\"},"
+        + "{\"create\":false,\"name\":\"reject\"}],\"users\":[],\"queues\":[{\"queues\":["
+        + "{\"queues\":[],\"aclAdministerApps\":\"*\",\"aclSubmitApps\":\"*\","
+        + "\"schedulingPolicy\":\"fair\","
+        + "\"schedulablePropertiesList\":[{\"weight\":1,\"scheduleName\":\"default\"}],"
+        + "\"name\":\"default\"}],"
+        + "\"aclAdministerApps\":\"*\",\"aclSubmitApps\":\"*\",\"schedulingPolicy\":\"drf\","
+        + "\"schedulablePropertiesList\":[{\"weight\":1,\"scheduleName\":\"default\"}],"
+        + "\"name\":\"root\"}],\"defaultQueueSchedulingPolicy\":\"drf\"}";
+
+    private final AtomicLong commandIds = new AtomicLong();
+
+    private volatile String allocations = INITIAL_ALLOCATIONS;
+
+    ClouderaManagerStub(int port, long latencyInMillis) throws IOException {
+        super("cloudera-manager", port, latencyInMillis);
+    }
+
+    /**
+     * Paths are /api/v11/clusters, /api/v11/clusters/{cluster}/services/{service}/config and
+     * /api/v11/clusters/{cluster}/commands[/poolsRefresh].
+     */
+    @Override
+    protected Response respond(String method, List<String> path, byte[] body) throws IOException {
+        List<String> resource = path.size() > 2 ? path.subList(2, path.size()) : path;
+        if (resource.isEmpty()) {
+            return Response.notFound();
+        }
+        if (resource.size() == 1 && "GET".equals(method)) {
+            return Response.ok(items(ImmutableMap.of("name", CLUSTER)));
+        }
+        String last = resource.get(resource.size() - 1);
+        if ("config".equals(last)) {
+            if ("PUT".equals(method)) {
+                allocations = objectMapper.readTree(body).get("items").get(0).get("value").asText();
+                return Response.ok(items());
+            }
+            return Response.ok(items(
+                ImmutableMap.of("name", YARN_SCHEDULED_ALLOCATIONS, "value", allocations)));
+        }
+        if ("poolsRefresh".equals(last)) {
+            return Response.ok(ImmutableMap.of("id", commandIds.incrementAndGet(), "name",
+                "PoolsRefresh", "active", true));
+        }
+        if ("commands".equals(last)) {
+            return Response.ok(items());
+        }
+        return Response.notFound();
+    }
+
+    private static ImmutableMap<String, Object> items(Object... items) {
+        return ImmutableMap.of("items", ImmutableList.copyOf(items));
+    }
+}
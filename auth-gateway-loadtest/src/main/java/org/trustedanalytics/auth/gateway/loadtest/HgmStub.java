@@ -0,0 +1,70 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Group mapping service keeping groups and their members in memory.
+ */
+class HgmStub extends StubServer {
+
+    private static final String GROUPS = "groups";
+
+    private static final String USERS = "users";
+
+    private final Map<String, Set<String>> groups = new ConcurrentHashMap<>();
+
+    HgmStub(int port, long latencyInMillis) throws IOException {
+        super("hgm", port, latencyInMillis);
+    }
+
+    @Override
+    protected Response respond(String method, List<String> path, byte[] body) throws IOException {
+        if (path.isEmpty() || !GROUPS.equals(path.get(0))) {
+            return Response.notFound();
+        }
+        if (path.size() == 1 && "GET".equals(method)) {
+            return Response.ok(groups.keySet());
+        }
+        String group = path.get(1);
+        if (path.size() == 2 && "DELETE".equals(method)) {
+            groups.remove(group);
+            return Response.ok();
+        }
+        if (path.size() == 3 && USERS.equals(path.get(2))) {
+            if ("GET".equals(method)) {
+                Set<String> members = groups.get(group);
+                return members == null ? Response.notFound() : Response.ok(members);
+            }
+            if ("POST".equals(method)) {
+                JsonNode user = objectMapper.readTree(body);
+                groups.computeIfAbsent(group, key -> ConcurrentHashMap.newKeySet())
+                    .add(user.get("username").asText());
+                return Response.ok();
+            }
+        }
+        if (path.size() == 4 && USERS.equals(path.get(2)) && "DELETE".equals(method)) {
+            groups.getOrDefault(group, ConcurrentHashMap.newKeySet()).remove(path.get(3));
+            return Response.ok();
+        }
+        return Response.notFound();
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.UniformReservoir;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.jose4j.jws.AlgorithmIdentifiers;
+import org.jose4j.jws.JsonWebSignature;
+import org.jose4j.jwt.JwtClaims;
+import org.jose4j.keys.HmacKey;
+import org.jose4j.lang.JoseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Provisions organizations through the REST API of the engine, the given number at a time: every
+ * organization is added, its users are added to it, then users and organization are removed.
+ * Latency of every operation is recorded overall, from sending the request until the response
+ * arrived, and for every provider as reported in the response. Requests carry a token signed
+ * with the key the resource server of the load test verifies, with the admin scope.
+ */
+@Component
+@Profile("loadtest")
+class LoadDriver implements CommandLineRunner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LoadDriver.class);
+
+    private static final String OVERALL = "overall";
+
+    private static final String SUCCEEDED = "SUCCEEDED";
+
+    private static final String ADMIN_SCOPE = "cloud_controller.admin";
+
+    private static final String ORGANIZATION = "/organizations/{orgId}";
+
+    private static final String USER = "/users/{userId}";
+
+    private static final String ORGANIZATION_USER = "/organizations/{orgId}/users/{userId}";
+
+    @Autowired
+    private LoadTestProperties properties;
+
+    private final RestTemplate restTemplate = new RestTemplate();
+
+    private HttpEntity<Void> request;
+
+    // keyed by provider name, or "overall", and operation
+    private final Map<String, Latency> latencies = new ConcurrentSkipListMap<>();
+
+    LoadDriver() {
+        // failed operations answer 500 with the result of every provider, which is recorded
+        restTemplate.setErrorHandler(new KeepErrorResponses());
+    }
+
+    @Override
+    public void run(String... args) throws Exception {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.AUTHORIZATION, "Bearer " + adminToken());
+        request = new HttpEntity<>(headers);
+
+        LOGGER.info(String.format("Provisioning %d organizations with %d users each, %d at a time",
+            properties.getOrganizations(), properties.getUsersPerOrganization(),
+            properties.getConcurrency()));
+        ExecutorService workers = Executors.newFixedThreadPool(properties.getConcurrency(),
+            new ThreadFactoryBuilder().setNameFormat("load-%d").setDaemon(true).build());
+        long start = System.nanoTime();
+        try {
+            List<Future<Void>> organizations = new ArrayList<>();
+            for (int i = 0; i < properties.getOrganizations(); i++) {
+                organizations.add(workers.submit(this::provisionOrganization));
+            }
+            for (Future<Void> organization : organizations) {
+                organization.get();
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        report(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+
+    private Void provisionOrganization() {
+        String orgId = UUID.randomUUID().toString();
+        List<String> userIds = new ArrayList<>();
+        for (int i = 0; i < properties.getUsersPerOrganization(); i++) {
+            userIds.add(UUID.randomUUID().toString());
+        }
+
+        execute("add_organization", HttpMethod.PUT, ORGANIZATION, orgId);
+        for (String userId : userIds) {
+            execute("add_user", HttpMethod.PUT, USER, userId);
+            execute("add_user_to_org", HttpMethod.PUT, ORGANIZATION_USER, orgId, userId);
+        }
+        for (String userId : userIds) {
+            execute("remove_user_from_org", HttpMethod.DELETE, ORGANIZATION_USER, orgId, userId);
+            execute("remove_user", HttpMethod.DELETE, USER, userId);
+        }
+        execute("remove_organization", HttpMethod.DELETE, ORGANIZATION, orgId);
+        return null;
+    }
+
+    private void execute(String operationName, HttpMethod method, String path,
+        Object... uriVariables) {
+        long start = System.nanoTime();
+        try {
+            ExecutionResponse result = restTemplate.exchange(
+                "http://localhost:" + properties.getPort() + path, method, request,
+                ExecutionResponse.class, uriVariables).getBody();
+            if (result == null) {
+                LOGGER.warn(operationName + " " + path + " answered without a result");
+                latency(OVERALL, operationName).record(millisSince(start), false);
+                return;
+            }
+            latency(OVERALL, operationName).record(millisSince(start),
+                SUCCEEDED.equals(result.getStatus()));
+            result.getGateways().forEach((gatewayName, gatewayResult) ->
+                latency(gatewayName, operationName).record(gatewayResult.getDurationMillis(),
+                    SUCCEEDED.equals(gatewayResult.getStatus())));
+        } catch (RestClientException e) {
+            // e.g. 429 from admission control, whose body is not a result
+            LOGGER.warn(operationName + " " + path + " failed", e);
+            latency(OVERALL, operationName).record(millisSince(start), false);
+        }
+    }
+
+    private String adminToken() throws JoseException {
+        JwtClaims claims = new JwtClaims();
+        claims.setStringListClaim("scope", ADMIN_SCOPE);
+        claims.setStringListClaim("aud", properties.getResourceId());
+        claims.setClaim("client_id", "loadtest");
+        claims.setIssuedAtToNow();
+        claims.setExpirationTimeMinutesInTheFuture(TimeUnit.DAYS.toMinutes(1));
+
+        JsonWebSignature signature = new JsonWebSignature();
+        signature.setPayload(claims.toJson());
+        signature.setAlgorithmHeaderValue(AlgorithmIdentifiers.HMAC_SHA256);
+        signature.setKey(new HmacKey(properties.getSigningKey().getBytes(StandardCharsets.UTF_8)));
+        return signature.getCompactSerialization();
+    }
+
+    private Latency latency(String name, String operationName) {
+        return latencies.computeIfAbsent(name + " " + operationName, key -> new Latency());
+    }
+
+    private void report(long elapsedMillis) {
+        long operations = latencies.entrySet().stream()
+            .filter(latency -> latency.getKey().startsWith(OVERALL + " "))
+            .mapToLong(latency -> latency.getValue().histogram.getCount())
+            .sum();
+        LOGGER.info(String.format("%d operations in %d ms, %.1f operations/s", operations,
+            elapsedMillis, operations * 1000.0 / Math.max(elapsedMillis, 1)));
+        LOGGER.info(String.format("%-40s %8s %8s %8s %8s %8s %8s", "provider operation [ms]",
+            "count", "failed", "p50", "p95", "p99", "max"));
+        latencies.forEach((name, latency) -> {
+            Snapshot snapshot = latency.histogram.getSnapshot();
+            LOGGER.info(String.format("%-40s %8d %8d %8.0f %8.0f %8.0f %8d", name,
+                latency.histogram.getCount(), latency.failures.get(), snapshot.getMedian(),
+                snapshot.get95thPercentile(), snapshot.get99thPercentile(), snapshot.getMax()));
+        });
+    }
+
+    private static long millisSince(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static class Latency {
+
+        // uniform sample over the whole run, not biased to recent calls
+        private final Histogram histogram = new Histogram(new UniformReservoir());
+
+        private final AtomicLong failures = new AtomicLong();
+
+        void record(long millis, boolean succeeded) {
+            histogram.update(millis);
+            if (!succeeded) {
+                failures.incrementAndGet();
+            }
+        }
+    }
+
+    private static class KeepErrorResponses extends DefaultResponseErrorHandler {
+
+        @Override
+        public boolean hasError(ClientHttpResponse response) {
+            return false;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class ExecutionResponse {
+
+        private String status;
+
+        private Map<String, GatewayResponse> gateways = Collections.emptyMap();
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public Map<String, GatewayResponse> getGateways() {
+            return gateways;
+        }
+
+        public void setGateways(Map<String, GatewayResponse> gateways) {
+            this.gateways = gateways;
+        }
+    }
+
+    @JsonIgnoreProperties(ignoreUnknown = true)
+    static class GatewayResponse {
+
+        private String status;
+
+        private long durationMillis;
+
+        public String getStatus() {
+            return status;
+        }
+
+        public void setStatus(String status) {
+            this.status = status;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public void setDurationMillis(long durationMillis) {
+            this.durationMillis = durationMillis;
+        }
+    }
+}
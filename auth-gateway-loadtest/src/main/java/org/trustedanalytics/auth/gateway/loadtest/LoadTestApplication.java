@@ -0,0 +1,54 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cloud.security.oauth2.resource.EnableOAuth2Resource;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
+
+/**
+ * Runs the engine with every provider talking to an in-process stand-in of its backend, drives
+ * the workload configured in loadtest.yml through its REST API and logs latency percentiles per
+ * provider and overall. Token checks and admission control take part as in production; tokens
+ * are signed with a local key instead of by UAA.
+ *
+ * Stand-in beans are imported after the scanned provider configurations, so they replace beans
+ * of the same name, like the connection of the HBase provider.
+ */
+@Configuration
+@EnableAutoConfiguration
+@EnableConfigurationProperties(LoadTestProperties.class)
+@ComponentScan(basePackages = "org.trustedanalytics.auth.gateway",
+    excludeFilters = @ComponentScan.Filter(type = FilterType.REGEX, pattern = {
+        "org\\.trustedanalytics\\.auth\\.gateway\\.Application",
+        "org\\.trustedanalytics\\.auth\\.gateway\\.engine\\.SwaggerConfig",
+        "org\\.trustedanalytics\\.auth\\.gateway\\.loadtest\\..*"}))
+@EnableOAuth2Resource
+@EnableWebSecurity
+@Import({StandInConfiguration.class, LoadDriver.class})
+public class LoadTestApplication {
+
+    public static void main(String[] args) {
+        new SpringApplicationBuilder(LoadTestApplication.class)
+            .properties("spring.config.name=loadtest")
+            .run(args)
+            .close();
+    }
+}
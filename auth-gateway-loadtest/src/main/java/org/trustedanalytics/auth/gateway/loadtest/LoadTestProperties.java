@@ -0,0 +1,118 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+@ConfigurationProperties("loadtest")
+public class LoadTestProperties {
+
+    // organizations created, filled with users and removed during the test
+    private int organizations = 100;
+
+    // users added to and removed with every organization
+    private int usersPerOrganization = 5;
+
+    // organizations provisioned at the same time
+    private int concurrency = 8;
+
+    // milliseconds every request to the HGM and Cloudera Manager stand-ins takes
+    private long stubLatency = 0;
+
+    private int hgmPort = 18081;
+
+    private int clouderaManagerPort = 18082;
+
+    // port of the REST API of the engine under test
+    private int port = 18080;
+
+    // resource id the tokens of the load test are issued for, as in spring.oauth2.resource.id
+    private String resourceId = "cloud_controller";
+
+    // key the tokens of the load test are signed with (HMAC, at least 32 bytes), also set as
+    // spring.oauth2.resource.jwt.keyValue, so no UAA is needed
+    private String signingKey = "loadtest-signing-key-not-for-production";
+
+    public int getOrganizations() {
+        return organizations;
+    }
+
+    public void setOrganizations(int organizations) {
+        this.organizations = organizations;
+    }
+
+    public int getUsersPerOrganization() {
+        return usersPerOrganization;
+    }
+
+    public void setUsersPerOrganization(int usersPerOrganization) {
+        this.usersPerOrganization = usersPerOrganization;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(int concurrency) {
+        this.concurrency = concurrency;
+    }
+
+    public long getStubLatency() {
+        return stubLatency;
+    }
+
+    public void setStubLatency(long stubLatency) {
+        this.stubLatency = stubLatency;
+    }
+
+    public int getHgmPort() {
+        return hgmPort;
+    }
+
+    public void setHgmPort(int hgmPort) {
+        this.hgmPort = hgmPort;
+    }
+
+    public int getClouderaManagerPort() {
+        return clouderaManagerPort;
+    }
+
+    public void setClouderaManagerPort(int clouderaManagerPort) {
+        this.clouderaManagerPort = clouderaManagerPort;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    public String getResourceId() {
+        return resourceId;
+    }
+
+    public void setResourceId(String resourceId) {
+        this.resourceId = resourceId;
+    }
+
+    public String getSigningKey() {
+        return signingKey;
+    }
+
+    public void setSigningKey(String signingKey) {
+        this.signingKey = signingKey;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.apache.curator.test.TestingServer;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.hbase.HBaseConfiguration;
+import org.apache.hadoop.hbase.HBaseTestingUtility;
+import org.apache.hadoop.hbase.client.Connection;
+import org.apache.hadoop.hdfs.DFSConfigKeys;
+import org.apache.hadoop.security.UserGroupInformation;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.trustedanalytics.auth.gateway.hbase.kerberos.KerberosHbaseProperties;
+import org.trustedanalytics.auth.gateway.hdfs.kerberos.KerberosProperties;
+import org.trustedanalytics.auth.gateway.spi.Authorizable;
+import org.trustedanalytics.auth.gateway.zookeeper.ZookeeperGateway;
+import org.trustedanalytics.auth.gateway.zookeeper.client.KerberoslessZookeeperClient;
+
+import java.io.IOException;
+
+/**
+ * Backends of the providers: one HBase mini cluster, whose mini DFS also serves the HDFS
+ * provider, a ZooKeeper testing server, and HTTP stubs of the group mapping service and
+ * Cloudera Manager. Kerberos is off everywhere.
+ */
+@Configuration
+public class StandInConfiguration {
+
+    private static final String HDFS_USER = "super";
+
+    private static final String TECHNICAL_USER = "cf";
+
+    private static final String ZOOKEEPER_ROOT_NODE = "/org";
+
+    @Bean(destroyMethod = "shutdownMiniCluster")
+    public HBaseTestingUtility getHBaseTestingUtility() throws Exception {
+        org.apache.hadoop.conf.Configuration configuration = HBaseConfiguration.create();
+        configuration.setBoolean(DFSConfigKeys.DFS_PERMISSIONS_ENABLED_KEY, true);
+        configuration.setBoolean(DFSConfigKeys.DFS_NAMENODE_ACLS_ENABLED_KEY, true);
+        configuration.set("hbase.security.authorization", "true");
+        configuration.set("hbase.coprocessor.master.classes",
+            "org.apache.hadoop.hbase.security.access.AccessController");
+        configuration.set("hbase.coprocessor.region.classes",
+            "org.apache.hadoop.hbase.security.token.TokenProvider,"
+                + "org.apache.hadoop.hbase.security.access.AccessController");
+        configuration.set("hbase.superuser", System.getProperty("user.name"));
+
+        HBaseTestingUtility utility = new HBaseTestingUtility(configuration);
+        utility.startMiniCluster();
+        return utility;
+    }
+
+    /**
+     * Replaces the connection of the HBase provider, which reads the cluster configuration from
+     * the environment.
+     */
+    @Bean
+    public Connection getHBaseConnection(HBaseTestingUtility utility) throws IOException {
+        return utility.getConnection();
+    }
+
+    @Bean
+    public KerberosHbaseProperties getKerberosHbaseProperties() {
+        return new KerberosHbaseProperties("kdc", "krealm");
+    }
+
+    @Bean
+    public org.apache.hadoop.conf.Configuration getHdfsConfiguration(HBaseTestingUtility utility)
+        throws IOException {
+        UserGroupInformation.createUserForTesting(TECHNICAL_USER, new String[] {TECHNICAL_USER});
+        UserGroupInformation.createUserForTesting(HDFS_USER, new String[] {"supergroup"});
+        FileSystem fileSystem = utility.getDFSCluster().getFileSystem();
+        fileSystem.mkdirs(new Path("/org"));
+        return utility.getDFSCluster().getConfiguration(0);
+    }
+
+    @Bean
+    public KerberosProperties getKerberosProperties() {
+        return new KerberosProperties("kdc", "krealm", TECHNICAL_USER, HDFS_USER, "");
+    }
+
+    @Bean(destroyMethod = "close")
+    public TestingServer getZookeeperTestingServer() throws Exception {
+        return new TestingServer();
+    }
+
+    @Bean(destroyMethod = "close")
+    public CuratorFramework getCuratorFramework(TestingServer testingServer) throws Exception {
+        CuratorFramework curator = CuratorFrameworkFactory.newClient(
+            testingServer.getConnectString(), new ExponentialBackoffRetry(1000, 3));
+        curator.start();
+        curator.create().creatingParentsIfNeeded().forPath(ZOOKEEPER_ROOT_NODE);
+        return curator;
+    }
+
+    @Bean
+    public Authorizable zookeeperGateway(CuratorFramework curator) {
+        return new ZookeeperGateway(new KerberoslessZookeeperClient(curator, ZOOKEEPER_ROOT_NODE),
+            HDFS_USER);
+    }
+
+    @Bean(destroyMethod = "close")
+    public HgmStub getHgmStub(LoadTestProperties properties) throws IOException {
+        return new HgmStub(properties.getHgmPort(), properties.getStubLatency());
+    }
+
+    @Bean(destroyMethod = "close")
+    public ClouderaManagerStub getClouderaManagerStub(LoadTestProperties properties)
+        throws IOException {
+        return new ClouderaManagerStub(properties.getClouderaManagerPort(),
+            properties.getStubLatency());
+    }
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.base.Splitter;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory stand-in of an HTTP backend answering JSON, every request taking at least the given
+ * latency.
+ */
+abstract class StubServer implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StubServer.class);
+
+    protected final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final HttpServer server;
+
+    private final ExecutorService executor;
+
+    private final long latencyInMillis;
+
+    protected StubServer(String name, int port, long latencyInMillis) throws IOException {
+        this.latencyInMillis = latencyInMillis;
+        executor = Executors.newCachedThreadPool(
+            new ThreadFactoryBuilder().setNameFormat(name + "-stub-%d").setDaemon(true).build());
+        server = HttpServer.create(new InetSocketAddress("localhost", port), 0);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+        LOGGER.info(String.format("%s stub listening on port %d", name, port));
+    }
+
+    /**
+     * @param path segments of the request path
+     * @return response to the request
+     */
+    protected abstract Response respond(String method, List<String> path, byte[] body)
+        throws IOException;
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (latencyInMillis > 0) {
+                TimeUnit.MILLISECONDS.sleep(latencyInMillis);
+            }
+            Response response = respond(exchange.getRequestMethod(),
+                Splitter.on('/').omitEmptyStrings().splitToList(exchange.getRequestURI().getPath()),
+                ByteStreams.toByteArray(exchange.getRequestBody()));
+            if (response.body == null) {
+                exchange.sendResponseHeaders(response.status, -1);
+                return;
+            }
+            byte[] body = objectMapper.writeValueAsBytes(response.body);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(response.status, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            LOGGER.error("Stub failed to handle " + exchange.getRequestURI(), e);
+            exchange.sendResponseHeaders(HttpURLConnection.HTTP_INTERNAL_ERROR, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    protected static final class Response {
+
+        private final int status;
+
+        private final Object body;
+
+        private Response(int status, Object body) {
+            this.status = status;
+            this.body = body;
+        }
+
+        static Response ok() {
+            return new Response(HttpURLConnection.HTTP_OK, null);
+        }
+
+        static Response ok(Object body) {
+            return new Response(HttpURLConnection.HTTP_OK, body);
+        }
+
+        static Response notFound() {
+            return new Response(HttpURLConnection.HTTP_NOT_FOUND, null);
+        }
+    }
+}
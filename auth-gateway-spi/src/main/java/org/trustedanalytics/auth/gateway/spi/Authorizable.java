@@ -15,11 +15,35 @@ package org.trustedanalytics.auth.gateway.spi;
 
 import com.google.common.annotations.Beta;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * Authorizable interface stands for single gateway to be called by auth-gateway-engine.
  *
  * Engine will call all found Authorizables in parallel and it is possible that Engine will
  * sometimes retry its calls. That's why all operations from this interface should be idempotent.
+ *
+ * Batch methods are used by Engine for bulk requests. Their default implementations call the
+ * single-item methods one by one and stop on the first failure, which is safe to retry as
+ * operations are idempotent. Gateways that can apply a whole batch with fewer backend round trips
+ * should override them.
+ *
+ * Listing methods are used by Engine to reconcile backends with the desired set of organizations
+ * and users. Gateways that can read their state in bulk should override them; by default nothing
+ * is listed and reconciliation applies every desired organization and user.
+ *
+ * Existence checks let Engine skip writes which would change nothing. They should cost a single
+ * targeted read, never a scan of all organizations, and answer empty whenever the state cannot be
+ * told cheaply or is only partially provisioned; by default nothing is known and every write is
+ * made.
+ *
+ * Planning methods describe the backend calls an operation would make, without making any of
+ * them and without reading the backend, so plans can be computed for many operations at once.
+ * A plan assumes the worst case, i.e. nothing of an added entity exists yet and everything of a
+ * removed one does. By default no plan is known.
  */
 @Beta
 public interface Authorizable {
@@ -37,4 +61,104 @@ public interface Authorizable {
     void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException;
 
     String getName();
+
+    default void addOrganizations(Collection<String> orgIds) throws AuthorizableGatewayException {
+        for (String orgId : orgIds) {
+            addOrganization(orgId);
+        }
+    }
+
+    default void addUsers(Collection<String> userIds) throws AuthorizableGatewayException {
+        for (String userId : userIds) {
+            addUser(userId);
+        }
+    }
+
+    default void addUsersToOrg(Collection<String> userIds, String orgId)
+        throws AuthorizableGatewayException {
+        for (String userId : userIds) {
+            addUserToOrg(userId, orgId);
+        }
+    }
+
+    default void removeOrganizations(Collection<String> orgIds)
+        throws AuthorizableGatewayException {
+        for (String orgId : orgIds) {
+            removeOrganization(orgId);
+        }
+    }
+
+    default void removeUsers(Collection<String> userIds) throws AuthorizableGatewayException {
+        for (String userId : userIds) {
+            removeUser(userId);
+        }
+    }
+
+    default void removeUsersFromOrg(Collection<String> userIds, String orgId)
+        throws AuthorizableGatewayException {
+        for (String userId : userIds) {
+            removeUserFromOrg(userId, orgId);
+        }
+    }
+
+    /**
+     * @return ids of all organizations existing in the backend, read with as few backend calls as
+     * possible, or empty if the gateway cannot list them
+     */
+    default Optional<Set<String>> listOrganizations() throws AuthorizableGatewayException {
+        return Optional.empty();
+    }
+
+    /**
+     * @return ids of users of given organization existing in the backend, or empty if the gateway
+     * cannot list them
+     */
+    default Optional<Set<String>> listUsersInOrganization(String orgId)
+        throws AuthorizableGatewayException {
+        return Optional.empty();
+    }
+
+    /**
+     * @return true if the organization is fully provisioned, so adding it changes nothing, false
+     * if nothing of it exists, so removing it changes nothing, or empty if unknown
+     */
+    default Optional<Boolean> hasOrganization(String orgId) throws AuthorizableGatewayException {
+        return Optional.empty();
+    }
+
+    /**
+     * @return true if the user is fully added to the organization, false if not added at all, or
+     * empty if unknown, see {@link #hasOrganization(String)}
+     */
+    default Optional<Boolean> hasUserInOrganization(String userId, String orgId)
+        throws AuthorizableGatewayException {
+        return Optional.empty();
+    }
+
+    /**
+     * @return backend calls adding the organization would make, or empty if unknown
+     */
+    default Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+        return Optional.empty();
+    }
+
+    default Optional<List<PlannedCall>> planAddUser(String userId) {
+        return Optional.empty();
+    }
+
+    default Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+        return Optional.empty();
+    }
+
+    default Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+        return Optional.empty();
+    }
+
+    default Optional<List<PlannedCall>> planRemoveUser(String userId) {
+        return Optional.empty();
+    }
+
+    default Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+        return Optional.empty();
+    }
 }
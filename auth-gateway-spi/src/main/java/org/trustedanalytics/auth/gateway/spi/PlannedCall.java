@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.spi;
+
+import java.util.Objects;
+
+/**
+ * Single backend round trip a gateway would make to apply an operation, e.g. creating one
+ * directory or granting one role. Reported by the planning methods of {@link Authorizable}, so
+ * the number of planned calls estimates the load an operation puts on the backend.
+ */
+public final class PlannedCall {
+
+    private final String action;
+
+    private final String target;
+
+    private final String detail;
+
+    private PlannedCall(String action, String target, String detail) {
+        this.action = action;
+        this.target = target;
+        this.detail = detail;
+    }
+
+    /**
+     * @param action backend call, e.g. "mkdirs" or "create_sentry_role"
+     * @param target resource the call is made on, e.g. path of a directory or name of a role
+     */
+    public static PlannedCall of(String action, String target) {
+        return new PlannedCall(action, target, null);
+    }
+
+    /**
+     * @param detail what is set on the target, e.g. permission or ACL entries
+     */
+    public static PlannedCall of(String action, String target, String detail) {
+        return new PlannedCall(action, target, detail);
+    }
+
+    public String getAction() {
+        return action;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getDetail() {
+        return detail;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PlannedCall call = (PlannedCall) o;
+        return action.equals(call.action) && target.equals(call.target)
+            && Objects.equals(detail, call.detail);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(action, target, detail);
+    }
+
+    @Override
+    public String toString() {
+        return action + " " + target + (detail == null ? "" : " " + detail);
+    }
+}
@@ -19,20 +19,30 @@ import org.trustedanalytics.auth.gateway.hgm.utils.ApiEndpoints;
 import org.trustedanalytics.auth.gateway.hgm.utils.Qualifiers;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.util.UriTemplate;
 
-import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Configuration
 @Profile({Qualifiers.HTTPS, Qualifiers.KERBEROS})
@@ -55,60 +65,116 @@ public class HgmGateway implements Authorizable {
 
   @Override
   public void addOrganization(String orgId) throws AuthorizableGatewayException {
-    LOGGER.debug(String.format("Create organization %s", orgId));
-    try {
-      if (!getGroups().contains(orgId)) {
+    // a single group is looked up directly instead of downloading all of them
+    if (groupExists(orgId, String.format("Can't add organization: %s", orgId))) {
+      return;
+    }
+    addOrganizations(Collections.singletonList(orgId), Collections.emptySet());
+  }
+
+  @Override
+  public void addOrganizations(Collection<String> orgIds) throws AuthorizableGatewayException {
+    addOrganizations(orgIds, getGroups(String.format("Can't add organization: %s", orgIds)));
+  }
+
+  private void addOrganizations(Collection<String> orgIds, Set<String> groups)
+      throws AuthorizableGatewayException {
+    LOGGER.debug(String.format("Create organizations %s", orgIds));
+    for (String orgId : orgIds) {
+      if (groups.contains(orgId)) {
+        continue;
+      }
+      try {
         restTemplate.postForObject(createUrl(ApiEndpoints.USERS),
             new User(orgId.concat(ADMIN_POSTFIX)), String.class, orgId);
         restTemplate.postForObject(createUrl(ApiEndpoints.USERS),
             new User(orgId.concat(ADMIN_POSTFIX).concat(TECH_GROUP_POSTFIX)), String.class,
             orgId.concat(TECH_GROUP_POSTFIX));
+      } catch (RestClientException e) {
+        throw new AuthorizableGatewayException(String.format("Can't add organization: %s", orgId),
+            e);
       }
-    } catch (RestClientException e) {
-      throw new AuthorizableGatewayException(String.format("Can't add organization: %s", orgId), e);
     }
   }
 
   @Override
   public void addUserToOrg(String userId, String orgId) throws AuthorizableGatewayException {
-    LOGGER.debug(String.format("Adding user %s to group %s", userId, orgId));
-    try {
-      if (!getUsersFromGroup(orgId).contains(userId)) {
+    addUsersToOrg(Collections.singletonList(userId), orgId);
+  }
+
+  @Override
+  public void addUsersToOrg(Collection<String> userIds, String orgId)
+      throws AuthorizableGatewayException {
+    LOGGER.debug(String.format("Adding users %s to group %s", userIds, orgId));
+    Set<String> members =
+        getUsersFromGroup(orgId, String.format("Can't add user: %s", userIds));
+    for (String userId : userIds) {
+      if (members.contains(userId)) {
+        LOGGER.warn(String.format("Trying to add existing user %s in group %s", userId, orgId));
+        continue;
+      }
+      try {
         restTemplate.postForObject(createUrl(ApiEndpoints.USERS), new User(userId), String.class,
             orgId);
-      } else {
-        LOGGER.warn(String.format("Trying to add existing user %s in group %s", userId, orgId));
+      } catch (RestClientException e) {
+        throw new AuthorizableGatewayException(String.format("Can't add user: %s", userId), e);
       }
-    } catch (RestClientException e) {
-      throw new AuthorizableGatewayException(String.format("Can't add user: %s", userId), e);
     }
   }
 
   @Override
   public void removeOrganization(String orgId) throws AuthorizableGatewayException {
-    LOGGER.debug(String.format("Deleting group %s", orgId));
-    try {
-      if (getGroups().contains(orgId)) {
+    String errorMessage = String.format("Can't remove organization: %s", orgId);
+    if (groupExists(orgId, errorMessage)) {
+      removeOrganizations(Collections.singletonList(orgId), Collections.singleton(orgId));
+    }
+  }
+
+  @Override
+  public void removeOrganizations(Collection<String> orgIds) throws AuthorizableGatewayException {
+    removeOrganizations(orgIds,
+        getGroups(String.format("Can't remove organization: %s", orgIds)));
+  }
+
+  private void removeOrganizations(Collection<String> orgIds, Set<String> groups)
+      throws AuthorizableGatewayException {
+    LOGGER.debug(String.format("Deleting groups %s", orgIds));
+    for (String orgId : orgIds) {
+      if (!groups.contains(orgId)) {
+        continue;
+      }
+      try {
         restTemplate.delete(createUrl(ApiEndpoints.GROUP), orgId);
         restTemplate.delete(createUrl(ApiEndpoints.GROUP), orgId.concat(TECH_GROUP_POSTFIX));
+      } catch (RestClientException e) {
+        throw new AuthorizableGatewayException(
+            String.format("Can't remove organization: %s", orgId), e);
       }
-    } catch (RestClientException e) {
-      throw new AuthorizableGatewayException(String.format("Can't remove organization: %s", orgId),
-          e);
     }
   }
 
   @Override
   public void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException {
-    LOGGER.debug(String.format("Deleting user %s from group %s", userId, orgId));
-    try {
-      if (getUsersFromGroup(orgId).contains(userId)) {
+    removeUsersFromOrg(Collections.singletonList(userId), orgId);
+  }
+
+  @Override
+  public void removeUsersFromOrg(Collection<String> userIds, String orgId)
+      throws AuthorizableGatewayException {
+    LOGGER.debug(String.format("Deleting users %s from group %s", userIds, orgId));
+    Set<String> members = getUsersFromGroup(orgId,
+        String.format("Can't remove user: %s from org: %s", userIds, orgId));
+    for (String userId : userIds) {
+      if (!members.contains(userId)) {
+        continue;
+      }
+      try {
         restTemplate.delete(createUrl(ApiEndpoints.USER),
             ImmutableMap.of("user", userId, "group", orgId));
+      } catch (RestClientException e) {
+        throw new AuthorizableGatewayException(String.format("Can't remove user: %s from org: %s",
+            userId, orgId), e);
       }
-    } catch (RestClientException e) {
-      throw new AuthorizableGatewayException(String.format("Can't remove user: %s from org: %s",
-          userId, orgId), e);
     }
   }
 
@@ -118,6 +184,85 @@ public class HgmGateway implements Authorizable {
   @Override
   public void removeUser(String userId) throws AuthorizableGatewayException {}
 
+  /**
+   * Organization group is created before and removed before its technical group, so the
+   * organization is complete when both exist and gone when neither does.
+   */
+  @Override
+  public Optional<Boolean> hasOrganization(String orgId) throws AuthorizableGatewayException {
+    String errorMessage = String.format("Can't check organization: %s", orgId);
+    boolean group = groupExists(orgId, errorMessage);
+    boolean techGroup = groupExists(orgId.concat(TECH_GROUP_POSTFIX), errorMessage);
+    return group == techGroup ? Optional.of(group) : Optional.empty();
+  }
+
+  @Override
+  public Optional<Boolean> hasUserInOrganization(String userId, String orgId)
+      throws AuthorizableGatewayException {
+    return Optional.of(findMembers(orgId,
+        String.format("Can't check user: %s in org: %s", userId, orgId)).contains(userId));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+    String orgAdmin = orgId.concat(ADMIN_POSTFIX);
+    return Optional.of(ImmutableList.of(
+        PlannedCall.of("GET", endpoint(ApiEndpoints.USERS, orgId)),
+        PlannedCall.of("GET", ApiEndpoints.GROUPS),
+        PlannedCall.of("POST", endpoint(ApiEndpoints.USERS, orgId), orgAdmin),
+        PlannedCall.of("POST", endpoint(ApiEndpoints.USERS, orgId.concat(TECH_GROUP_POSTFIX)),
+            orgAdmin.concat(TECH_GROUP_POSTFIX))));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+    return Optional.of(ImmutableList.of(
+        PlannedCall.of("GET", endpoint(ApiEndpoints.USERS, orgId)),
+        PlannedCall.of("DELETE", endpoint(ApiEndpoints.GROUP, orgId)),
+        PlannedCall.of("DELETE", endpoint(ApiEndpoints.GROUP, orgId.concat(TECH_GROUP_POSTFIX)))));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+    return Optional.of(ImmutableList.of(
+        PlannedCall.of("GET", endpoint(ApiEndpoints.USERS, orgId)),
+        PlannedCall.of("POST", endpoint(ApiEndpoints.USERS, orgId), userId)));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+    return Optional.of(ImmutableList.of(
+        PlannedCall.of("GET", endpoint(ApiEndpoints.USERS, orgId)),
+        PlannedCall.of("DELETE", endpoint(ApiEndpoints.USER, orgId, userId))));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUser(String userId) {
+    return Optional.of(ImmutableList.of());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+    return Optional.of(ImmutableList.of());
+  }
+
+  @Override
+  public Optional<Set<String>> listOrganizations() throws AuthorizableGatewayException {
+    return Optional.of(getGroups("Can't list organizations").stream()
+        .filter(group -> !group.endsWith(TECH_GROUP_POSTFIX))
+        .collect(Collectors.toSet()));
+  }
+
+  @Override
+  public Optional<Set<String>> listUsersInOrganization(String orgId)
+      throws AuthorizableGatewayException {
+    String orgAdmin = orgId.concat(ADMIN_POSTFIX);
+    return Optional.of(getUsersFromGroup(orgId,
+        String.format("Can't list users of organization: %s", orgId)).stream()
+        .filter(user -> !user.equals(orgAdmin))
+        .collect(Collectors.toSet()));
+  }
+
   @Override
   public String getName() {
     return NAME;
@@ -127,13 +272,66 @@ public class HgmGateway implements Authorizable {
     return groupMappingServiceUrl.concat(endpoint);
   }
 
-  private List<String> getUsersFromGroup(String orgId) {
-    return Arrays.asList(restTemplate.getForObject(createUrl(ApiEndpoints.USERS), String[].class,
-        orgId));
+  private static String endpoint(String endpoint, Object... uriVariables) {
+    return new UriTemplate(endpoint).expand(uriVariables).toString();
   }
 
-  private List<String> getGroups() throws AuthorizableGatewayException {
-    return Arrays.asList(restTemplate.getForObject(createUrl(ApiEndpoints.GROUPS), String[].class));
+  private Set<String> getUsersFromGroup(String orgId, String errorMessage)
+      throws AuthorizableGatewayException {
+    try {
+      return ImmutableSet.copyOf(restTemplate.getForObject(createUrl(ApiEndpoints.USERS),
+          String[].class, orgId));
+    } catch (RestClientException e) {
+      throw new AuthorizableGatewayException(errorMessage, e);
+    }
+  }
+
+  /**
+   * Looks up members of the group, which is a single call for an existing group. The service
+   * answers 404 for a group without members as well as for a missing one, so on 404 the group is
+   * looked up in the list of all groups.
+   */
+  private boolean groupExists(String group, String errorMessage)
+      throws AuthorizableGatewayException {
+    try {
+      restTemplate.getForObject(createUrl(ApiEndpoints.USERS), String[].class, group);
+      return true;
+    } catch (HttpClientErrorException e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+        return getGroups(errorMessage).contains(group);
+      }
+      throw new AuthorizableGatewayException(errorMessage, e);
+    } catch (RestClientException e) {
+      throw new AuthorizableGatewayException(errorMessage, e);
+    }
+  }
+
+  /**
+   * @return members of the group, or empty set if there is no such group
+   */
+  private Set<String> findMembers(String group, String errorMessage)
+      throws AuthorizableGatewayException {
+    try {
+      String[] members =
+          restTemplate.getForObject(createUrl(ApiEndpoints.USERS), String[].class, group);
+      return members == null ? Collections.emptySet() : ImmutableSet.copyOf(members);
+    } catch (HttpClientErrorException e) {
+      if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+        return Collections.emptySet();
+      }
+      throw new AuthorizableGatewayException(errorMessage, e);
+    } catch (RestClientException e) {
+      throw new AuthorizableGatewayException(errorMessage, e);
+    }
+  }
+
+  private Set<String> getGroups(String errorMessage) throws AuthorizableGatewayException {
+    try {
+      return ImmutableSet.copyOf(restTemplate.getForObject(createUrl(ApiEndpoints.GROUPS),
+          String[].class));
+    } catch (RestClientException e) {
+      throw new AuthorizableGatewayException(errorMessage, e);
+    }
   }
 
   @VisibleForTesting
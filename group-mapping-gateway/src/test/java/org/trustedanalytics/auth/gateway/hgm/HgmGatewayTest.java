@@ -13,6 +13,8 @@
  */
 package org.trustedanalytics.auth.gateway.hgm;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
@@ -23,12 +25,19 @@ import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 import org.trustedanalytics.auth.gateway.hgm.entity.User;
 import org.trustedanalytics.auth.gateway.hgm.utils.ApiEndpoints;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Optional;
 
 @RunWith(MockitoJUnitRunner.class)
 public class HgmGatewayTest {
@@ -45,6 +54,10 @@ public class HgmGatewayTest {
 
   private static final String ORG_ADMIN = "test_org_id_admin";
 
+  private static final String OTHER_ORG_ID = "other_org_id";
+
+  private static final String OTHER_USER_ID = "other_user_id";
+
   private static final String HGM_TEST_URL = "http://test_url.domain";
 
   @Before
@@ -55,21 +68,50 @@ public class HgmGatewayTest {
   @Test
   public void addOrganization_hadoopGroupMappingServiceCalled_creationSuccess()
       throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
     when(restTemplate.getForObject(
         eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
-        .thenReturn(new String []{});
+        .thenReturn(new String []{OTHER_ORG_ID});
     hgmGateway.addOrganization(ORG_ID);
     verify(restTemplate).postForObject(eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)),
         eq(new User(ORG_ADMIN)), eq(String.class), eq(ORG_ID));
   }
 
+  @Test
+  public void addOrganization_groupWithoutMembers_notCreatedAgain()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
+        .thenReturn(new String []{ORG_ID, OTHER_ORG_ID});
+    hgmGateway.addOrganization(ORG_ID);
+    verify(restTemplate, never()).postForObject(any(), any(), any());
+  }
+
+  @Test
+  public void addOrganization_emptyMemberList_notCreatedAgainWithoutListingGroups()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenReturn(new String []{});
+    hgmGateway.addOrganization(ORG_ID);
+    verify(restTemplate, never()).getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class));
+    verify(restTemplate, never()).postForObject(any(), any(), any());
+  }
+
   @Test
   public void addOrganization_hadoopGroupMappingServiceCalled_alreadyExsits()
       throws AuthorizableGatewayException {
     when(restTemplate.getForObject(
-      eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
-      .thenReturn(new String []{ORG_ID});
+      eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+      .thenReturn(new String []{ORG_ADMIN});
     hgmGateway.addOrganization(ORG_ID);
+    verify(restTemplate, never()).postForObject(any(), any(), any());
   }
 
   @Test
@@ -117,8 +159,8 @@ public class HgmGatewayTest {
   public void removeOrganization_hadoopGroupMappingServiceCalled_deletionSuccess()
       throws AuthorizableGatewayException {
     when(restTemplate.getForObject(
-        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
-        .thenReturn(new String []{ORG_ID});
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenReturn(new String []{ORG_ADMIN});
     hgmGateway.removeOrganization(ORG_ID);
     verify(restTemplate).delete(eq(HGM_TEST_URL.concat(ApiEndpoints.GROUP)), eq(ORG_ID));
   }
@@ -126,10 +168,133 @@ public class HgmGatewayTest {
   @Test
   public void removeOrganization_hadoopGroupMappingServiceCalled_organizationNotExists()
       throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
     when(restTemplate.getForObject(
         eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
-        .thenReturn(new String []{ORG_ID});
+        .thenReturn(new String []{OTHER_ORG_ID});
     hgmGateway.removeOrganization(ORG_ID);
+    verify(restTemplate, never()).delete(eq(HGM_TEST_URL.concat(ApiEndpoints.GROUP)), eq(ORG_ID));
+  }
+
+  @Test
+  public void addOrganizations_hadoopGroupMappingServiceCalled_groupsListedOnce()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
+        .thenReturn(new String []{OTHER_ORG_ID});
+    hgmGateway.addOrganizations(Arrays.asList(ORG_ID, OTHER_ORG_ID));
+    verify(restTemplate, times(1)).getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class));
+    verify(restTemplate).postForObject(eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)),
+        eq(new User(ORG_ADMIN)), eq(String.class), eq(ORG_ID));
+    verify(restTemplate, never()).postForObject(anyString(), any(User.class), eq(String.class),
+        eq(OTHER_ORG_ID));
+  }
+
+  @Test
+  public void addUsersToOrg_hadoopGroupMappingServiceCalled_membersListedOnce()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class),  eq(ORG_ID)))
+        .thenReturn(new String []{OTHER_USER_ID});
+    hgmGateway.addUsersToOrg(Arrays.asList(USER_ID, OTHER_USER_ID), ORG_ID);
+    verify(restTemplate, times(1)).getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class),  eq(ORG_ID));
+    verify(restTemplate).postForObject(eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)),
+        eq(new User(USER_ID)), eq(String.class), eq(ORG_ID));
+    verify(restTemplate, never()).postForObject(anyString(), eq(new User(OTHER_USER_ID)),
+        eq(String.class), eq(ORG_ID));
+  }
+
+  @Test
+  public void removeUsersFromOrg_hadoopGroupMappingServiceCalled_membersListedOnce()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class),  eq(ORG_ID)))
+        .thenReturn(new String []{USER_ID, OTHER_USER_ID});
+    hgmGateway.removeUsersFromOrg(Arrays.asList(USER_ID, OTHER_USER_ID), ORG_ID);
+    verify(restTemplate, times(1)).getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class),  eq(ORG_ID));
+    verify(restTemplate).delete(eq(HGM_TEST_URL.concat(ApiEndpoints.USER)),
+        eq(ImmutableMap.of("user", USER_ID, "group", ORG_ID)));
+    verify(restTemplate).delete(eq(HGM_TEST_URL.concat(ApiEndpoints.USER)),
+        eq(ImmutableMap.of("user", OTHER_USER_ID, "group", ORG_ID)));
+  }
+
+  @Test
+  public void listOrganizations_technicalGroupsExist_onlyOrganizationsReturned()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
+        .thenReturn(new String []{ORG_ID, ORG_ID.concat("_sys"), OTHER_ORG_ID});
+    assertThat(hgmGateway.listOrganizations(),
+        equalTo(Optional.of(ImmutableSet.of(ORG_ID, OTHER_ORG_ID))));
+  }
+
+  @Test
+  public void listUsersInOrganization_orgAdminIsMember_onlyUsersReturned()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class),  eq(ORG_ID)))
+        .thenReturn(new String []{ORG_ADMIN, USER_ID, OTHER_USER_ID});
+    assertThat(hgmGateway.listUsersInOrganization(ORG_ID),
+        equalTo(Optional.of(ImmutableSet.of(USER_ID, OTHER_USER_ID))));
+  }
+
+  @Test
+  public void hasOrganization_bothGroupsExist_trueReturned() throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenReturn(new String []{ORG_ADMIN});
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID + "_sys")))
+        .thenReturn(new String []{ORG_ADMIN + "_sys"});
+    assertThat(hgmGateway.hasOrganization(ORG_ID), equalTo(Optional.of(true)));
+  }
+
+  @Test
+  public void hasOrganization_onlyOrganizationGroupExists_unknownReturned()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenReturn(new String []{ORG_ADMIN});
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID + "_sys")))
+        .thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.GROUPS)), eq(String[].class)))
+        .thenReturn(new String []{ORG_ID});
+    assertThat(hgmGateway.hasOrganization(ORG_ID), equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void hasUserInOrganization_userIsMember_trueReturned()
+      throws AuthorizableGatewayException {
+    when(restTemplate.getForObject(
+        eq(HGM_TEST_URL.concat(ApiEndpoints.USERS)), eq(String[].class), eq(ORG_ID)))
+        .thenReturn(new String []{ORG_ADMIN, USER_ID});
+    assertThat(hgmGateway.hasUserInOrganization(USER_ID, ORG_ID), equalTo(Optional.of(true)));
+    assertThat(hgmGateway.hasUserInOrganization(OTHER_USER_ID, ORG_ID),
+        equalTo(Optional.of(false)));
   }
 
+  @Test
+  public void planAddOrganization_groupLookupAndBothGroupsPlanned_serviceNotCalled() {
+    assertThat(hgmGateway.planAddOrganization(ORG_ID), equalTo(Optional.of(Arrays.asList(
+        PlannedCall.of("GET", "/groups/test_org_id/users"),
+        PlannedCall.of("GET", "/groups"),
+        PlannedCall.of("POST", "/groups/test_org_id/users", ORG_ADMIN),
+        PlannedCall.of("POST", "/groups/test_org_id_sys/users", ORG_ADMIN + "_sys")))));
+    verifyZeroInteractions(restTemplate);
+  }
+
+  @Test
+  public void planRemoveUserFromOrg_memberLookupAndDeletePlanned_serviceNotCalled() {
+    assertThat(hgmGateway.planRemoveUserFromOrg(USER_ID, ORG_ID),
+        equalTo(Optional.of(Arrays.asList(PlannedCall.of("GET", "/groups/test_org_id/users"),
+            PlannedCall.of("DELETE", "/groups/test_org_id/users/test_user_id")))));
+    verifyZeroInteractions(restTemplate);
+  }
 }
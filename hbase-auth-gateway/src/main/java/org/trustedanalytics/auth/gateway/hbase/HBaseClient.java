@@ -15,10 +15,14 @@
 package org.trustedanalytics.auth.gateway.hbase;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.apache.hadoop.hbase.HConstants;
 import org.apache.hadoop.hbase.NamespaceDescriptor;
+import org.apache.hadoop.hbase.NamespaceNotFoundException;
 import org.apache.hadoop.hbase.client.Connection;
 import org.apache.hadoop.hbase.client.Table;
 import org.apache.hadoop.hbase.protobuf.ProtobufUtil;
@@ -46,13 +50,21 @@ public class HBaseClient {
         connection.getAdmin().createNamespace(descriptor);
     }
 
-    public boolean checkNamespaceExists(String name) throws IOException{
-        for(NamespaceDescriptor namespace:connection.getAdmin().listNamespaceDescriptors())
-        {
-            if(namespace.getName().equals(name))
-                return true;
+    /**
+     * Looks the namespace up by name instead of listing all namespaces.
+     */
+    public boolean checkNamespaceExists(String name) throws IOException {
+        try {
+            connection.getAdmin().getNamespaceDescriptor(name);
+            return true;
+        } catch (NamespaceNotFoundException e) {
+            return false;
         }
-        return false;
+    }
+
+    public List<String> listNamespaceNames() throws IOException {
+        return Arrays.stream(connection.getAdmin().listNamespaceDescriptors())
+            .map(NamespaceDescriptor::getName).collect(Collectors.toList());
     }
 
     public void grandPremisionOnNamespace(String user, String namespace, Permission.Action permission) throws IOException, ServiceException {
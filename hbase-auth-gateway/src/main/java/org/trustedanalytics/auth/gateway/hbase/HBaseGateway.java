@@ -15,6 +15,13 @@
 package org.trustedanalytics.auth.gateway.hbase;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 import org.apache.hadoop.hbase.NamespaceNotFoundException;
 import org.apache.hadoop.hbase.client.Connection;
@@ -26,7 +33,10 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.protobuf.ServiceException;
 
 @Profile("hbase-auth-gateway")
@@ -35,6 +45,10 @@ public class HBaseGateway implements Authorizable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(HBaseGateway.class);
 
+    // namespace of an organization is its GUID without dashes
+    private static final Pattern ORG_NAMESPACE =
+        Pattern.compile("([0-9a-f]{8})([0-9a-f]{4})([0-9a-f]{4})([0-9a-f]{4})([0-9a-f]{12})");
+
     @Autowired
     private Connection connection;
 
@@ -86,6 +100,83 @@ public class HBaseGateway implements Authorizable {
         // no-operation
     }
 
+    /**
+     * Only absence of the namespace is reported, as checking the group grant on an existing one
+     * would cost a scan of the ACL table.
+     */
+    @Override
+    public Optional<Boolean> hasOrganization(String orgId) throws AuthorizableGatewayException {
+        HBaseClient hBaseClient = HBaseClient.getNewInstance(connection);
+        try {
+            return hBaseClient.checkNamespaceExists(orgId.replace("-", "")) ? Optional.empty()
+                : Optional.of(false);
+        } catch (IOException e) {
+            throw new AuthorizableGatewayException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+        String namespaceName = orgId.replace("-", "");
+        return Optional.of(ImmutableList.of(
+            PlannedCall.of("getNamespaceDescriptor", namespaceName),
+            PlannedCall.of("createNamespace", namespaceName),
+            PlannedCall.of("grant", namespaceName, "@" + orgId + ":" + Permission.Action.CREATE)));
+    }
+
+    /**
+     * Tables of the namespace are disabled and deleted with one call each, the number of calls
+     * HBase master makes for them depends on the number of tables.
+     */
+    @Override
+    public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+        String namespaceName = orgId.replace("-", "");
+        String allNamespaceTables = namespaceName.concat(":.*");
+        return Optional.of(ImmutableList.of(
+            PlannedCall.of("disableTables", allNamespaceTables),
+            PlannedCall.of("deleteTables", allNamespaceTables),
+            PlannedCall.of("deleteNamespace", namespaceName)));
+    }
+
+    @Override
+    public Optional<List<PlannedCall>> planAddUser(String userId) {
+        return Optional.of(Collections.emptyList());
+    }
+
+    @Override
+    public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+        return Optional.of(Collections.emptyList());
+    }
+
+    @Override
+    public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+        return Optional.of(Collections.emptyList());
+    }
+
+    @Override
+    public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+        return Optional.of(Collections.emptyList());
+    }
+
+    /**
+     * Lists namespaces created for organizations. Namespaces not derived from an organization GUID,
+     * like "default" or "hbase", are not managed by this gateway and are left out.
+     */
+    @Override
+    public Optional<Set<String>> listOrganizations() throws AuthorizableGatewayException {
+        HBaseClient hBaseClient = HBaseClient.getNewInstance(connection);
+        try {
+            return Optional.of(hBaseClient.listNamespaceNames().stream()
+                .map(ORG_NAMESPACE::matcher)
+                .filter(Matcher::matches)
+                .map(namespace -> Joiner.on("-").join(namespace.group(1), namespace.group(2),
+                    namespace.group(3), namespace.group(4), namespace.group(5)))
+                .collect(Collectors.toSet()));
+        } catch (IOException e) {
+            throw new AuthorizableGatewayException(e.getMessage(), e);
+        }
+    }
+
     @Override
     public String getName() {
         return "hbase";
@@ -14,10 +14,14 @@
 
 package org.trustedanalytics.auth.gateway.hbase;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.powermock.api.mockito.PowerMockito.doReturn;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Optional;
 
 import org.apache.hadoop.hbase.NamespaceExistException;
 import org.apache.hadoop.hbase.NamespaceNotFoundException;
@@ -33,7 +37,9 @@ import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
+import com.google.common.collect.ImmutableSet;
 import com.google.protobuf.ServiceException;
 
 @RunWith(PowerMockRunner.class)
@@ -115,4 +121,46 @@ public class HBaseGatewayTest {
     hBaseGateway.removeOrganization(ORG);
   }
 
+  @Test
+  public void hasOrganization_namespaceNotExists_falseReturned()
+      throws AuthorizableGatewayException, IOException {
+    doReturn(false).when(hBaseClient).checkNamespaceExists(ORG_NAMESPACE);
+
+    assertThat(hBaseGateway.hasOrganization(ORG), equalTo(Optional.of(false)));
+  }
+
+  @Test
+  public void hasOrganization_namespaceExists_unknownReturned()
+      throws AuthorizableGatewayException, IOException {
+    doReturn(true).when(hBaseClient).checkNamespaceExists(ORG_NAMESPACE);
+
+    assertThat(hBaseGateway.hasOrganization(ORG), equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void listOrganizations_systemNamespacesExist_onlyOrganizationGuidsReturned()
+      throws AuthorizableGatewayException, IOException {
+    doReturn(Arrays.asList("default", "hbase", "aa54947728994889b8a204930909ad67"))
+        .when(hBaseClient).listNamespaceNames();
+
+    assertThat(hBaseGateway.listOrganizations(),
+        equalTo(Optional.of(ImmutableSet.of("aa549477-2899-4889-b8a2-04930909ad67"))));
+  }
+
+  @Test(expected = AuthorizableGatewayException.class)
+  public void listOrganizations_listNamespacesThrowIOException()
+      throws AuthorizableGatewayException, IOException {
+    doThrow(new IOException()).when(hBaseClient).listNamespaceNames();
+
+    hBaseGateway.listOrganizations();
+  }
+
+  @Test
+  public void planAddOrganization_namespaceAndGrantPlanned_hbaseNotCalled() {
+    assertThat(hBaseGateway.planAddOrganization(ORG), equalTo(Optional.of(Arrays.asList(
+        PlannedCall.of("getNamespaceDescriptor", ORG_NAMESPACE),
+        PlannedCall.of("createNamespace", ORG_NAMESPACE),
+        PlannedCall.of("grant", ORG_NAMESPACE, ORG_GROUP + ":CREATE")))));
+    Mockito.verifyZeroInteractions(connection, hBaseClient);
+  }
 }
@@ -0,0 +1,121 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.FsPermission;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Directories to create, grouped in levels. Directories of one level do not depend on each other
+ * and can be created concurrently, a level is started when the previous one is complete.
+ */
+final class DirectoryTree {
+
+  private final List<List<Directory>> levels;
+
+  private DirectoryTree(List<List<Directory>> levels) {
+    this.levels = levels;
+  }
+
+  public List<List<Directory>> getLevels() {
+    return levels;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  static final class Builder {
+
+    private final ImmutableList.Builder<List<Directory>> levels = ImmutableList.builder();
+
+    private Builder() {
+    }
+
+    public Builder level(Directory... directories) {
+      return level(Arrays.asList(directories));
+    }
+
+    public Builder level(List<Directory> directories) {
+      Preconditions.checkArgument(!directories.isEmpty(), "Level cannot be empty");
+      levels.add(ImmutableList.copyOf(directories));
+      return this;
+    }
+
+    public DirectoryTree build() {
+      return new DirectoryTree(levels.build());
+    }
+  }
+
+  static final class Directory {
+
+    private final Path path;
+
+    private final String user;
+
+    private final String group;
+
+    private final FsPermission permission;
+
+    private final List<AclEntry> aclEntries;
+
+    private Directory(Path path, String user, String group, FsPermission permission,
+        List<AclEntry> aclEntries) {
+      this.path = path;
+      this.user = user;
+      this.group = group;
+      this.permission = permission;
+      this.aclEntries = aclEntries;
+    }
+
+    public static Directory of(Path path, String user, String group, FsPermission permission) {
+      return new Directory(path, user, group, permission, ImmutableList.of());
+    }
+
+    public static Directory of(Path path, String user, String group, FsPermission permission,
+        List<AclEntry> aclEntries) {
+      return new Directory(path, user, group, permission, aclEntries);
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public String getUser() {
+      return user;
+    }
+
+    public String getGroup() {
+      return group;
+    }
+
+    public FsPermission getPermission() {
+      return permission;
+    }
+
+    /**
+     * @return ACL entries added to the directory, empty if it has no ACL
+     */
+    public List<AclEntry> getAclEntries() {
+      return aclEntries;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import org.apache.hadoop.fs.permission.AclEntryType;
 import org.apache.hadoop.fs.permission.FsAction;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
 
 final class HdfsAclBuilder {
 
@@ -65,7 +66,7 @@ final class HdfsAclBuilder {
 
   public List<AclEntry> build() {
     Preconditions.checkArgument(!this.aclEntryList.isEmpty(), "Created Entry list cannot be null");
-    return this.aclEntryList;
+    return ImmutableList.copyOf(this.aclEntryList);
   }
 
   private AclEntry getNamedAclEntry(String user, FsAction action, AclEntryType aclEntryType) {
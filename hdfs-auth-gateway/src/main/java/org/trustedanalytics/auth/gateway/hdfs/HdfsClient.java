@@ -13,22 +13,36 @@
  */
 package org.trustedanalytics.auth.gateway.hdfs;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.AclEntryScope;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import com.google.common.collect.ImmutableList;
 
 public class HdfsClient {
 
   private static final Logger LOGGER = LoggerFactory.getLogger(HdfsClient.class);
 
+  private static final String TEMPORARY_SUFFIX = "._CREATING_";
+
   private final FileSystem fileSystem;
 
+  private final AtomicInteger calls = new AtomicInteger();
+
   private HdfsClient(FileSystem fs) {
     this.fileSystem = fs;
   }
@@ -37,32 +51,284 @@ public class HdfsClient {
     return new HdfsClient(fs);
   }
 
+  /**
+   * Reads the status of the directory first, so an existing directory costs a single call and
+   * gets its permission and owner set only where they differ from the requested ones. A missing
+   * directory is created and gets both set, as umask may have narrowed the permission.
+   */
   public void createDirectory(Path path, String user, String group, FsPermission permission)
       throws IOException {
-    if (!fileSystem.exists(path)) {
-      fileSystem.mkdirs(path);
+    createDirectory(path, getStatus(path), user, group, permission);
+  }
+
+  /**
+   * Same as {@link #createDirectory(Path, String, String, FsPermission)}, then adds the ACL
+   * entries. If the directory already has an ACL, the entries are added only when some of them
+   * are missing from it, e.g. after a crash between mkdirs and modifyAclEntries or after the ACL
+   * was changed by hand.
+   */
+  public void createDirectoryWithAcl(Path path, String user, String group, FsPermission permission,
+      List<AclEntry> aclEntries) throws IOException {
+    createDirectoryWithAcl(path, getStatus(path), user, group, permission, aclEntries);
+  }
+
+  /**
+   * Creates the directory under a temporary name next to it and renames it into place once its
+   * permission, owner and ACL are set, so the directory never exists with other ones, even after
+   * a crash. A directory left under the temporary name is reused, an existing directory is
+   * brought to the requested state in place. Concurrent creations of the same path are not
+   * supported, as a directory renamed onto an existing one would be moved into it.
+   *
+   * @param aclEntries ACL entries added to the directory, empty if it has no ACL
+   */
+  public void createDirectoryAtomically(Path path, String user, String group,
+      FsPermission permission, List<AclEntry> aclEntries) throws IOException {
+    FileStatus status = getStatus(path);
+    if (status != null) {
+      createDirectory(path, status, user, group, permission, aclEntries);
+      return;
+    }
+
+    Path temporary = getTemporaryPath(path);
+    createDirectory(temporary, getStatus(temporary), user, group, permission, aclEntries);
+    calls.incrementAndGet();
+    if (!fileSystem.rename(temporary, path)) {
+      throw new IOException(String.format("Can't rename directory: %s to: %s", temporary, path));
+    }
+  }
+
+  /**
+   * @return number of NameNode calls made by this client
+   */
+  public int getCallCount() {
+    return calls.get();
+  }
+
+  private void createDirectoryWithAcl(Path path, FileStatus status, String user, String group,
+      FsPermission permission, List<AclEntry> aclEntries) throws IOException {
+    createDirectory(path, status, user, group, permission);
+    if (status == null || !status.getPermission().getAclBit()) {
+      setACLForDirectory(path, aclEntries);
+      return;
+    }
+
+    FsPermission actual =
+        permissionDiffers(status.getPermission(), permission) ? permission : status.getPermission();
+    calls.incrementAndGet();
+    List<AclEntry> existing = fileSystem.getAclStatus(path).getEntries();
+    if (aclEntries.stream().allMatch(entry -> hasAclEntry(actual, existing, entry))) {
+      return;
+    }
+    LOGGER.warn(String.format("Path has ACL with missing entries, adding them: %s", path));
+    // every entry is passed, so the mask is the requested one and not recomputed by NameNode
+    setACLForDirectory(path, aclEntries);
+  }
+
+  private void createDirectory(Path path, FileStatus status, String user, String group,
+      FsPermission permission, List<AclEntry> aclEntries) throws IOException {
+    if (aclEntries.isEmpty()) {
+      createDirectory(path, status, user, group, permission);
+    } else {
+      createDirectoryWithAcl(path, status, user, group, permission, aclEntries);
+    }
+  }
+
+  private static Path getTemporaryPath(Path path) {
+    return new Path(path.getParent(), path.getName() + TEMPORARY_SUFFIX);
+  }
+
+  /**
+   * @return status of the path, or null if it does not exist
+   */
+  private FileStatus getStatus(Path path) throws IOException {
+    calls.incrementAndGet();
+    try {
+      return fileSystem.getFileStatus(path);
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @param status status of the path read before, null if it does not exist
+   */
+  private void createDirectory(Path path, FileStatus status, String user, String group,
+      FsPermission permission) throws IOException {
+    if (status == null) {
+      calls.addAndGet(3);
+      fileSystem.mkdirs(path, permission);
       fileSystem.setPermission(path, permission);
       fileSystem.setOwner(path, user, group);
-    } else {
-      LOGGER.warn(String.format("Path already exists: %s", path));
+      return;
+    }
+    if (!status.isDirectory()) {
+      throw new IOException(String.format("Not a directory: %s", path));
+    }
+
+    if (permissionDiffers(status.getPermission(), permission)) {
+      calls.incrementAndGet();
+      fileSystem.setPermission(path, permission);
+    }
+    if (!user.equals(status.getOwner()) || !group.equals(status.getGroup())) {
+      calls.incrementAndGet();
+      fileSystem.setOwner(path, user, group);
+    }
+  }
+
+  /**
+   * Group bits of a directory with an ACL hold the ACL mask, so they are not compared then.
+   */
+  private static boolean permissionDiffers(FsPermission actual, FsPermission requested) {
+    return actual.getUserAction() != requested.getUserAction()
+        || actual.getOtherAction() != requested.getOtherAction()
+        || !actual.getAclBit() && actual.getGroupAction() != requested.getGroupAction();
+  }
+
+  /**
+   * Owner, mask and other entries of an access ACL are kept in the permission bits and not
+   * listed by getAclStatus, so they are compared with the permission.
+   */
+  private static boolean hasAclEntry(FsPermission permission, List<AclEntry> existing,
+      AclEntry entry) {
+    if (entry.getScope() == AclEntryScope.ACCESS && entry.getName() == null) {
+      switch (entry.getType()) {
+        case USER:
+          return permission.getUserAction() == entry.getPermission();
+        case MASK:
+          return permission.getGroupAction() == entry.getPermission();
+        case OTHER:
+          return permission.getOtherAction() == entry.getPermission();
+        default:
+          break;
+      }
     }
+    return existing.contains(entry);
+  }
+
+  /**
+   * @return NameNode calls of {@link #createDirectory(Path, String, String, FsPermission)} on a
+   * missing directory
+   */
+  public static List<PlannedCall> planCreateDirectory(Path path, String user, String group,
+      FsPermission permission) {
+    String target = path.toString();
+    return ImmutableList.of(PlannedCall.of("getFileStatus", target),
+        PlannedCall.of("mkdirs", target),
+        PlannedCall.of("setPermission", target, permission.toString()),
+        PlannedCall.of("setOwner", target, user + ":" + group));
+  }
+
+  public static List<PlannedCall> planCreateDirectoryWithAcl(Path path, String user, String group,
+      FsPermission permission, List<AclEntry> aclEntries) {
+    return ImmutableList.<PlannedCall>builder()
+        .addAll(planCreateDirectory(path, user, group, permission))
+        .add(PlannedCall.of("modifyAclEntries", path.toString(), aclEntries.stream()
+            .map(AclEntry::toString).collect(Collectors.joining(","))))
+        .build();
+  }
+
+  /**
+   * @return NameNode calls of
+   * {@link #createDirectoryAtomically(Path, String, String, FsPermission, List)} on a missing
+   * directory
+   */
+  public static List<PlannedCall> planCreateDirectoryAtomically(Path path, String user,
+      String group, FsPermission permission, List<AclEntry> aclEntries) {
+    Path temporary = getTemporaryPath(path);
+    return ImmutableList.<PlannedCall>builder()
+        .add(PlannedCall.of("getFileStatus", path.toString()))
+        .addAll(aclEntries.isEmpty()
+            ? planCreateDirectory(temporary, user, group, permission)
+            : planCreateDirectoryWithAcl(temporary, user, group, permission, aclEntries))
+        .add(PlannedCall.of("rename", temporary.toString(), path.toString()))
+        .build();
+  }
+
+  /**
+   * @return NameNode calls of {@link #deleteDirectory(Path)} on an existing directory
+   */
+  public static List<PlannedCall> planDeleteDirectory(Path path) {
+    String target = path.toString();
+    return ImmutableList.of(PlannedCall.of("exists", target),
+        PlannedCall.of("delete", target, "recursive"));
+  }
+
+  /**
+   * @return NameNode calls of {@link #moveDirectory(Path, Path, FsPermission)} on an existing
+   * directory
+   */
+  public static List<PlannedCall> planMoveDirectory(Path path, Path targetParent) {
+    String target = path.toString();
+    return ImmutableList.of(PlannedCall.of("exists", target),
+        PlannedCall.of("mkdirs", targetParent.toString()),
+        PlannedCall.of("rename", target, targetParent.toString()));
   }
 
-  public void createDirectoryWithAcl(Path path, String user, String group, FsPermission permission, List<AclEntry> aclEntries)
+  /**
+   * Moves the directory to the target path with a single rename, whatever the size of the tree,
+   * creating the parent of the target with given permission if needed.
+   */
+  public void moveDirectory(Path path, Path target, FsPermission parentPermission)
       throws IOException {
-    createDirectory(path, user, group, permission);
-    setACLForDirectory(path, aclEntries);
+    if (!exists(path)) {
+      LOGGER.warn(String.format("Directory under: %s not exists.", path));
+      return;
+    }
+    calls.addAndGet(2);
+    fileSystem.mkdirs(target.getParent(), parentPermission);
+    if (!fileSystem.rename(path, target)) {
+      throw new IOException(String.format("Can't move directory: %s to: %s", path, target));
+    }
+  }
+
+  /**
+   * Deletes the path and everything under it with a single call, without checking it exists.
+   *
+   * @return false if there was nothing to delete
+   */
+  public boolean deleteRecursively(Path path) throws IOException {
+    calls.incrementAndGet();
+    return fileSystem.delete(path, true);
   }
 
   public void deleteDirectory(Path path) throws IOException {
-    if (fileSystem.exists(path)) {
+    if (exists(path)) {
+      calls.incrementAndGet();
       fileSystem.delete(path, true);
     } else {
       LOGGER.warn(String.format("Directory under: %s not exists.", path));
     }
   }
 
+  public boolean exists(Path path) throws IOException {
+    calls.incrementAndGet();
+    return fileSystem.exists(path);
+  }
+
+  /**
+   * @return names of directories directly under given path, listed with a single call, or empty
+   * list if the path does not exist
+   */
+  public List<String> listDirectoryNames(Path path) throws IOException {
+    return listDirectory(path).stream().filter(FileStatus::isDirectory)
+        .map(status -> status.getPath().getName()).collect(Collectors.toList());
+  }
+
+  /**
+   * @return statuses of files and directories directly under given path, listed with a single
+   * call, or empty list if the path does not exist
+   */
+  public List<FileStatus> listDirectory(Path path) throws IOException {
+    calls.incrementAndGet();
+    try {
+      return Arrays.asList(fileSystem.listStatus(path));
+    } catch (FileNotFoundException e) {
+      return Collections.emptyList();
+    }
+  }
+
   public void setACLForDirectory(Path path, List<AclEntry> aclEntries) throws IOException {
+    calls.incrementAndGet();
     fileSystem.modifyAclEntries(path, aclEntries);
   }
 }
@@ -13,26 +13,44 @@
  */
 package org.trustedanalytics.auth.gateway.hdfs;
 
+import org.trustedanalytics.auth.gateway.hdfs.DirectoryTree.Directory;
 import org.trustedanalytics.auth.gateway.hdfs.config.ExternalConfiguration;
 import org.trustedanalytics.auth.gateway.hdfs.config.FileSystemProvider;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties;
 import org.trustedanalytics.auth.gateway.hdfs.kerberos.KerberosProperties;
 import org.trustedanalytics.auth.gateway.hdfs.utils.PathCreator;
 import org.trustedanalytics.auth.gateway.hdfs.utils.Qualifiers;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.annotations.VisibleForTesting;
-import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-import org.apache.hadoop.fs.permission.AclEntry;
-import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 @Profile(Qualifiers.HDFS)
 @Configuration
@@ -40,9 +58,7 @@ public class HdfsGateway implements Authorizable {
 
   private static final String NAME = "hdfs";
 
-  private static final String ADMIN_POSTFIX = "_admin";
-
-  private static final String SYS_GROUP_POSTFIX = "_sys";
+  private static final String METRIC_PREFIX = "hdfs.namenode";
 
   @Autowired
   private KerberosProperties krbProperties;
@@ -56,43 +72,48 @@ public class HdfsGateway implements Authorizable {
   @Autowired
   private FileSystemProvider fileSystemProvider;
 
+  @Autowired
+  private MetricRegistry metricRegistry;
+
+  @Autowired
+  private HdfsLayoutProperties layoutProperties;
+
+  private OrganizationLayout layout;
+
+  private ExecutorService directoryExecutor;
+
+  // null unless removed organizations go to the trash
+  private OrganizationTrash trash;
+
   @Override
   public void addOrganization(String orgId) throws AuthorizableGatewayException {
-    FsPermission usrAllGroupAll = HdfsPermission.USER_ALL_GROUP_ALL.getPermission();
-    FsPermission usrAllGroupExec = HdfsPermission.USER_ALL_GROUP_EXECUTE.getPermission();
-    List<AclEntry> defaultWithKrbTechUserExec =
-        getDefaultAclWithKrbTechUserAction(FsAction.EXECUTE, FsAction.EXECUTE, orgId.concat(SYS_GROUP_POSTFIX));
-    List<AclEntry> defaultWithTechUserAll =
-        getDefaultAclWithKrbTechUserAction(FsAction.ALL, FsAction.ALL, orgId.concat(SYS_GROUP_POSTFIX));
-    String orgAdmin = orgId.concat(ADMIN_POSTFIX);
-
+    DirectoryTree tree = getOrganizationTree(orgId);
+    Path marker = layout.getMarkerPath(paths.getOrgPath(orgId), orgId);
     try {
-      HdfsClient hdfsClient = HdfsClient.getNewInstance(fileSystemProvider.getFileSystem());
-
-      hdfsClient.createDirectoryWithAcl(paths.getOrgPath(orgId), orgAdmin, orgId, usrAllGroupExec,
-          defaultWithKrbTechUserExec);
-      hdfsClient
-          .createDirectoryWithAcl(paths.getBrokerPath(orgId), orgAdmin, orgId, usrAllGroupExec,
-              defaultWithKrbTechUserExec);
-      hdfsClient
-          .createDirectoryWithAcl(paths.getUserspacePath(orgId), orgAdmin, orgId, usrAllGroupExec,
-              defaultWithTechUserAll);
-
-      hdfsClient.createDirectory(paths.getOozieJobsPath(orgId), orgAdmin, orgId, usrAllGroupAll);
-      hdfsClient.createDirectory(paths.getSqoopImportsPath(orgId), orgAdmin, orgId, usrAllGroupAll);
-      hdfsClient.createDirectory(paths.getUsersPath(orgId), orgAdmin, orgId, usrAllGroupExec);
-      hdfsClient.createDirectory(paths.getTmpPath(orgId), orgAdmin, orgId, usrAllGroupAll);
-      hdfsClient.createDirectory(paths.getAppPath(orgId), orgAdmin, orgId, usrAllGroupExec);
+      withClient("addOrganization", hdfsClient -> {
+        createDirectories(hdfsClient, tree, marker);
+        return null;
+      });
     } catch (IOException e) {
       throw new AuthorizableGatewayException(String.format("Can't add organization: %s", orgId), e);
     }
   }
 
+  /**
+   * With {@code hdfs.trashEnabled} the organization directory is moved to the trash and deleted
+   * in the background, so removal takes the same time whatever the amount of data.
+   */
   @Override
   public void removeOrganization(String orgId) throws AuthorizableGatewayException {
     try {
-      HdfsClient hdfsClient = HdfsClient.getNewInstance(fileSystemProvider.getFileSystem());
-      hdfsClient.deleteDirectory(paths.getOrgPath(orgId));
+      withClient("removeOrganization", hdfsClient -> {
+        if (trash != null) {
+          trash.moveToTrash(hdfsClient, paths.getOrgPath(orgId), orgId);
+        } else {
+          hdfsClient.deleteDirectory(paths.getOrgPath(orgId));
+        }
+        return null;
+      });
     } catch (IOException e) {
       throw new AuthorizableGatewayException(String.format("Can't remove organization: %s", orgId),
           e);
@@ -102,13 +123,16 @@ public class HdfsGateway implements Authorizable {
   @Override
   public void addUserToOrg(String userId, String orgId) throws AuthorizableGatewayException {
     try {
-      final HdfsClient hdfsClient = HdfsClient.getNewInstance(fileSystemProvider.getFileSystem());
-      hdfsClient.createDirectory(paths.getUserPath(orgId, userId), userId, orgId,
-          HdfsPermission.USER_ALL.getPermission());
+      withClient("addUserToOrg", hdfsClient -> {
+        hdfsClient.createDirectory(paths.getUserPath(orgId, userId), userId, orgId,
+            HdfsPermission.USER_ALL.getPermission());
 
-      // user home directory is required by hadoop components (e.g. oozie) to store temporary files
-      hdfsClient.createDirectory(paths.getUserHomePath(userId), userId, orgId,
-          HdfsPermission.USER_ALL.getPermission());
+        // user home directory is required by hadoop components (e.g. oozie) to store temporary
+        // files
+        hdfsClient.createDirectory(paths.getUserHomePath(userId), userId, orgId,
+            HdfsPermission.USER_ALL.getPermission());
+        return null;
+      });
     } catch (IOException e) {
       throw new AuthorizableGatewayException(String.format("Can't add user: %s", userId), e);
     }
@@ -117,8 +141,10 @@ public class HdfsGateway implements Authorizable {
   @Override
   public void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException {
     try {
-      HdfsClient hdfsClient = HdfsClient.getNewInstance(fileSystemProvider.getFileSystem());
-      hdfsClient.deleteDirectory(paths.getUserPath(orgId, userId));
+      withClient("removeUserFromOrg", hdfsClient -> {
+        hdfsClient.deleteDirectory(paths.getUserPath(orgId, userId));
+        return null;
+      });
     } catch (IOException e) {
       throw new AuthorizableGatewayException(
           String.format("Can't remove user: %s from org: %s", userId, orgId), e);
@@ -133,18 +159,268 @@ public class HdfsGateway implements Authorizable {
   public void removeUser(String userId) throws AuthorizableGatewayException {
   }
 
+  @Override
+  public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+    ImmutableList.Builder<PlannedCall> plan = ImmutableList.builder();
+    Path marker = layout.getMarkerPath(paths.getOrgPath(orgId), orgId);
+    getOrganizationTree(orgId).getLevels().forEach(level -> level.forEach(directory -> plan
+        .addAll(planCreateDirectory(directory, marker))));
+    return Optional.of(plan.build());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+    if (trash != null) {
+      return Optional
+          .of(HdfsClient.planMoveDirectory(paths.getOrgPath(orgId), trash.getTrashPath()));
+    }
+    return Optional.of(HdfsClient.planDeleteDirectory(paths.getOrgPath(orgId)));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+    FsPermission userAll = HdfsPermission.USER_ALL.getPermission();
+    return Optional.of(ImmutableList.<PlannedCall>builder()
+        .addAll(HdfsClient.planCreateDirectory(paths.getUserPath(orgId, userId), userId, orgId,
+            userAll))
+        .addAll(HdfsClient.planCreateDirectory(paths.getUserHomePath(userId), userId, orgId,
+            userAll))
+        .build());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+    return Optional.of(HdfsClient.planDeleteDirectory(paths.getUserPath(orgId, userId)));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUser(String userId) {
+    return Optional.of(ImmutableList.of());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+    return Optional.of(ImmutableList.of());
+  }
+
+  /**
+   * The marker directory of the layout is created after all others and renamed into place only
+   * when its owner, permission and ACL are set, so its existence means the whole tree is in
+   * place.
+   */
+  @Override
+  public Optional<Boolean> hasOrganization(String orgId) throws AuthorizableGatewayException {
+    try {
+      return withClient("hasOrganization", hdfsClient -> {
+        if (hdfsClient.exists(layout.getMarkerPath(paths.getOrgPath(orgId), orgId))) {
+          return Optional.of(true);
+        }
+        return hdfsClient.exists(paths.getOrgPath(orgId)) ? Optional.empty() : Optional.of(false);
+      });
+    } catch (IOException e) {
+      throw new AuthorizableGatewayException(
+          String.format("Can't check organization: %s", orgId), e);
+    }
+  }
+
+  @Override
+  public Optional<Boolean> hasUserInOrganization(String userId, String orgId)
+      throws AuthorizableGatewayException {
+    try {
+      return withClient("hasUserInOrganization", hdfsClient -> {
+        if (!hdfsClient.exists(paths.getUserPath(orgId, userId))) {
+          return Optional.of(false);
+        }
+        return hdfsClient.exists(paths.getUserHomePath(userId)) ? Optional.of(true)
+            : Optional.empty();
+      });
+    } catch (IOException e) {
+      throw new AuthorizableGatewayException(
+          String.format("Can't check user: %s in org: %s", userId, orgId), e);
+    }
+  }
+
+  @Override
+  public Optional<Set<String>> listOrganizations() throws AuthorizableGatewayException {
+    try {
+      return withClient("listOrganizations", hdfsClient -> Optional
+          .of(ImmutableSet.copyOf(hdfsClient.listDirectoryNames(paths.getOrgsPath()))));
+    } catch (IOException e) {
+      throw new AuthorizableGatewayException("Can't list organizations", e);
+    }
+  }
+
+  @Override
+  public Optional<Set<String>> listUsersInOrganization(String orgId)
+      throws AuthorizableGatewayException {
+    try {
+      return withClient("listUsersInOrganization", hdfsClient -> Optional
+          .of(ImmutableSet.copyOf(hdfsClient.listDirectoryNames(paths.getUsersPath(orgId)))));
+    } catch (IOException e) {
+      throw new AuthorizableGatewayException(
+          String.format("Can't list users of organization: %s", orgId), e);
+    }
+  }
+
   @Override
   public String getName() {
     return NAME;
   }
 
+  /**
+   * Compiles the organization layout once, so an invalid one fails the startup.
+   */
+  @PostConstruct
+  public void compileLayout() {
+    Map<String, String> variables = new HashMap<>();
+    variables.put("hiveUser", config.getHiveUser());
+    variables.put("arcadiaUser", config.getArcadiaUser());
+    variables.put("vcapUser", config.getVcapUser());
+    variables.put("technicalUser", krbProperties.getTechnicalPrincipal());
+    layout = OrganizationLayout.compile(layoutProperties, variables);
+  }
+
+  /**
+   * Starts the purger of removed organizations when {@code hdfs.trashEnabled} is set. The trash
+   * must be outside of the organizations directory, where it would be listed as an organization,
+   * and must not contain it, e.g. {@code /}, or the purger would delete live organizations.
+   */
+  @PostConstruct
+  public synchronized void startTrash() {
+    if (!config.isTrashEnabled() || trash != null) {
+      return;
+    }
+    Path trashPath = new Path(config.getTrashPath());
+    String trashDir = trashPath.toUri().getPath();
+    String orgsDir = new Path(paths.getOrgsPath()).toUri().getPath();
+    if (!trashPath.isAbsolute() || isSameOrBelow(trashDir, orgsDir)
+        || isSameOrBelow(orgsDir, trashDir)) {
+      throw new IllegalArgumentException(String.format(
+          "Invalid hdfs.trashPath: %s must be absolute, outside of %s and not containing it",
+          trashPath, paths.getOrgsPath()));
+    }
+    trash = new OrganizationTrash(trashPath, config.getPurgeRate(), fileSystemProvider,
+        metricRegistry);
+    trash.start(config.getPurgeInterval());
+  }
+
+  private static boolean isSameOrBelow(String path, String directory) {
+    return path.equals(directory) || path.startsWith(
+        directory.endsWith(Path.SEPARATOR) ? directory : directory + Path.SEPARATOR);
+  }
+
   @VisibleForTesting
-  List<AclEntry> getDefaultAclWithKrbTechUserAction(FsAction groupAction, FsAction techUserAction, String sysOrg) {
-    return HdfsAclBuilder.newInstanceWithDefaultEntries(groupAction).withUsersAclEntry(
-        ImmutableMap.of(config.getArcadiaUser(), FsAction.EXECUTE,
-                        config.getHiveUser(), FsAction.EXECUTE,
-                        config.getVcapUser(), FsAction.EXECUTE))
-        .withUserAclEntry(krbProperties.getTechnicalPrincipal(), techUserAction)
-        .withGroupAclEntry(sysOrg, FsAction.EXECUTE).build();
+  DirectoryTree getOrganizationTree(String orgId) {
+    return layout.resolve(paths.getOrgPath(orgId), orgId);
+  }
+
+  /**
+   * Creates the tree level by level. Directories of a level are created concurrently on the
+   * directory pool of {@code hdfs.directoryThreads} threads; when one of them fails the others
+   * are still awaited and the next levels are not started.
+   */
+  private void createDirectories(HdfsClient hdfsClient, DirectoryTree tree, Path marker)
+      throws IOException {
+    for (List<Directory> level : tree.getLevels()) {
+      if (level.size() == 1 || config.getDirectoryThreads() <= 1) {
+        for (Directory directory : level) {
+          createDirectory(hdfsClient, directory, marker);
+        }
+      } else {
+        ExecutorService executor = getDirectoryExecutor();
+        List<Future<?>> futures = level.stream()
+            .map(directory -> executor.submit(() -> {
+              createDirectory(hdfsClient, directory, marker);
+              return null;
+            }))
+            .collect(Collectors.toList());
+        awaitAll(futures);
+      }
+    }
+  }
+
+  private void createDirectory(HdfsClient hdfsClient, Directory directory, Path marker)
+      throws IOException {
+    if (directory.getPath().equals(marker)) {
+      hdfsClient.createDirectoryAtomically(directory.getPath(), directory.getUser(),
+          directory.getGroup(), directory.getPermission(), directory.getAclEntries());
+    } else if (directory.getAclEntries().isEmpty()) {
+      hdfsClient.createDirectory(directory.getPath(), directory.getUser(), directory.getGroup(),
+          directory.getPermission());
+    } else {
+      hdfsClient.createDirectoryWithAcl(directory.getPath(), directory.getUser(),
+          directory.getGroup(), directory.getPermission(), directory.getAclEntries());
+    }
+  }
+
+  private static List<PlannedCall> planCreateDirectory(Directory directory, Path marker) {
+    if (directory.getPath().equals(marker)) {
+      return HdfsClient.planCreateDirectoryAtomically(directory.getPath(), directory.getUser(),
+          directory.getGroup(), directory.getPermission(), directory.getAclEntries());
+    }
+    return directory.getAclEntries().isEmpty()
+        ? HdfsClient.planCreateDirectory(directory.getPath(), directory.getUser(),
+            directory.getGroup(), directory.getPermission())
+        : HdfsClient.planCreateDirectoryWithAcl(directory.getPath(), directory.getUser(),
+            directory.getGroup(), directory.getPermission(), directory.getAclEntries());
+  }
+
+  private static void awaitAll(List<Future<?>> futures) throws IOException {
+    IOException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        futures.forEach(f -> f.cancel(true));
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted while creating directories");
+      } catch (ExecutionException e) {
+        if (failure == null) {
+          failure = e.getCause() instanceof IOException ? (IOException) e.getCause()
+              : new IOException(e.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private synchronized ExecutorService getDirectoryExecutor() {
+    if (directoryExecutor == null) {
+      directoryExecutor = Executors.newFixedThreadPool(config.getDirectoryThreads(),
+          new ThreadFactoryBuilder().setNameFormat("hdfs-directories-%d").setDaemon(true)
+              .build());
+    }
+    return directoryExecutor;
+  }
+
+  @PreDestroy
+  public synchronized void shutdown() {
+    if (directoryExecutor != null) {
+      directoryExecutor.shutdownNow();
+    }
+    if (trash != null) {
+      trash.shutdown();
+    }
+  }
+
+  /**
+   * Runs the operation on a new client and records the number of NameNode calls it made in the
+   * "hdfs.namenode.{operation}.calls" histogram.
+   */
+  private <T> T withClient(String operationName, HdfsOperation<T> operation) throws IOException {
+    HdfsClient hdfsClient = HdfsClient.getNewInstance(fileSystemProvider.getFileSystem());
+    try {
+      return operation.apply(hdfsClient);
+    } finally {
+      metricRegistry.histogram(MetricRegistry.name(METRIC_PREFIX, operationName, "calls"))
+          .update(hdfsClient.getCallCount());
+    }
+  }
+
+  @FunctionalInterface
+  private interface HdfsOperation<T> {
+    T apply(HdfsClient hdfsClient) throws IOException;
   }
 }
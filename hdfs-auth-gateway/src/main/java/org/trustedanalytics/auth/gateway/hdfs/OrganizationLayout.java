@@ -0,0 +1,353 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.trustedanalytics.auth.gateway.hdfs.DirectoryTree.Directory;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties.DirectoryProperties;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+
+/**
+ * Organization directory layout compiled from {@link HdfsLayoutProperties}. Placeholders other
+ * than {org}, permissions and ACL entries are resolved and validated once, so resolving the
+ * layout for an organization only puts its name into the templates.
+ *
+ * Directories are grouped in levels by the directories above them, the marker directory is the
+ * only one in the last level.
+ */
+final class OrganizationLayout {
+
+  private static final String ORG = "org";
+
+  private static final Pattern PLACEHOLDER = Pattern.compile("\\{([^}]*)\\}");
+
+  private final List<List<CompiledDirectory>> levels;
+
+  private final CompiledDirectory marker;
+
+  private OrganizationLayout(List<List<CompiledDirectory>> levels, CompiledDirectory marker) {
+    this.levels = levels;
+    this.marker = marker;
+  }
+
+  /**
+   * @param variables values of placeholders other than {org}, null values are taken as empty
+   * @throws IllegalArgumentException if the layout is not valid
+   */
+  public static OrganizationLayout compile(HdfsLayoutProperties properties,
+      Map<String, String> variables) {
+    Map<String, List<String>> acls = properties.getEffectiveAcls();
+    List<DirectoryProperties> directories = properties.getEffectiveDirectories();
+
+    Map<String, AclTemplate> compiledAcls = new HashMap<>();
+    List<CompiledDirectory> compiled = new ArrayList<>();
+    for (DirectoryProperties directory : directories) {
+      String path = normalize(Strings.nullToEmpty(directory.getPath()));
+      if (compiled.stream().anyMatch(other -> other.path.equals(path))) {
+        throw invalid("directory %s is defined twice", path);
+      }
+      compiled.add(new CompiledDirectory(path, directory.isMarker(),
+          Template.compile(path, variables), Template.compile(directory.getOwner(), variables),
+          Template.compile(directory.getGroup(), variables),
+          parsePermission(directory.getPermission()),
+          compileAcl(directory.getAcl(), acls, compiledAcls, variables)));
+    }
+
+    if (compiled.stream().noneMatch(directory -> directory.path.isEmpty())) {
+      throw invalid("organization directory (empty path) is missing");
+    }
+    List<CompiledDirectory> markers =
+        compiled.stream().filter(directory -> directory.marker).collect(Collectors.toList());
+    if (markers.size() != 1) {
+      throw invalid("exactly one marker directory is required, found %d", markers.size());
+    }
+    CompiledDirectory marker = markers.get(0);
+    compiled.stream().filter(directory -> isAncestor(marker.path, directory.path)).findAny()
+        .ifPresent(directory -> {
+          throw invalid("directory %s is inside marker directory %s", directory.path,
+              marker.path);
+        });
+
+    return new OrganizationLayout(group(compiled, marker), marker);
+  }
+
+  /**
+   * @param organizationPath directory of the organization, paths of the layout are relative to
+   */
+  public DirectoryTree resolve(Path organizationPath, String orgId) {
+    DirectoryTree.Builder tree = DirectoryTree.builder();
+    for (List<CompiledDirectory> level : levels) {
+      tree.level(level.stream().map(directory -> directory.resolve(organizationPath, orgId))
+          .collect(Collectors.toList()));
+    }
+    return tree.build();
+  }
+
+  /**
+   * @return directory which exists only when the whole layout is in place
+   */
+  public Path getMarkerPath(Path organizationPath, String orgId) {
+    return marker.resolvePath(organizationPath, orgId);
+  }
+
+  private static List<List<CompiledDirectory>> group(List<CompiledDirectory> directories,
+      CompiledDirectory marker) {
+    Map<String, Integer> depths = new HashMap<>();
+    List<List<CompiledDirectory>> levels = new ArrayList<>();
+    for (CompiledDirectory directory : directories) {
+      if (directory != marker) {
+        int depth = depth(directory.path, directories, depths);
+        while (levels.size() <= depth) {
+          levels.add(new ArrayList<>());
+        }
+        levels.get(depth).add(directory);
+      }
+    }
+    levels.add(ImmutableList.of(marker));
+    return ImmutableList.copyOf(levels.stream().filter(level -> !level.isEmpty())
+        .<List<CompiledDirectory>>map(ImmutableList::copyOf).collect(Collectors.toList()));
+  }
+
+  /**
+   * @return 0 for a directory without any layout directory above it, otherwise one more than the
+   * depth of the closest one
+   */
+  private static int depth(String path, List<CompiledDirectory> directories,
+      Map<String, Integer> depths) {
+    Integer known = depths.get(path);
+    if (known != null) {
+      return known;
+    }
+    Optional<String> parent = directories.stream().map(directory -> directory.path)
+        .filter(other -> isAncestor(other, path))
+        .max((first, second) -> Integer.compare(first.length(), second.length()));
+    int depth = parent.map(other -> depth(other, directories, depths) + 1).orElse(0);
+    depths.put(path, depth);
+    return depth;
+  }
+
+  private static boolean isAncestor(String ancestor, String path) {
+    return !ancestor.equals(path) && (ancestor.isEmpty() || path.startsWith(ancestor + "/"));
+  }
+
+  private static String normalize(String path) {
+    String trimmed = path.replaceAll("^/+|/+$", "");
+    for (String segment : trimmed.split("/")) {
+      if (!trimmed.isEmpty() && (segment.isEmpty() || ".".equals(segment)
+          || "..".equals(segment))) {
+        throw invalid("path %s must be relative to the organization directory", path);
+      }
+    }
+    return trimmed;
+  }
+
+  private static FsPermission parsePermission(String permission) {
+    try {
+      short mode = Short.parseShort(Strings.nullToEmpty(permission), 8);
+      if (mode < 0 || mode > 01777) {
+        throw invalid("permission %s is out of range", permission);
+      }
+      return new FsPermission(mode);
+    } catch (NumberFormatException e) {
+      throw invalid("permission %s is not octal", permission);
+    }
+  }
+
+  /**
+   * @return ACL of the given name, compiled once for all directories referring to it, or null if
+   * the name is empty
+   */
+  private static AclTemplate compileAcl(String name, Map<String, List<String>> acls,
+      Map<String, AclTemplate> compiledAcls, Map<String, String> variables) {
+    if (Strings.isNullOrEmpty(name)) {
+      return null;
+    }
+    List<String> entries = acls.get(name);
+    if (entries == null || entries.isEmpty()) {
+      throw invalid("ACL %s is not defined", name);
+    }
+    return compiledAcls.computeIfAbsent(name, key -> AclTemplate.compile(entries, variables));
+  }
+
+  private static IllegalArgumentException invalid(String format, Object... args) {
+    return new IllegalArgumentException("Invalid hdfs.layout: " + String.format(format, args));
+  }
+
+  /**
+   * Text with all placeholders but {org} replaced, kept as the parts between occurrences of
+   * {org}.
+   */
+  private static final class Template {
+
+    private final String[] parts;
+
+    private Template(String[] parts) {
+      this.parts = parts;
+    }
+
+    static Template compile(String text, Map<String, String> variables) {
+      Matcher matcher = PLACEHOLDER.matcher(Strings.nullToEmpty(text));
+      StringBuffer replaced = new StringBuffer();
+      while (matcher.find()) {
+        String name = matcher.group(1);
+        String value;
+        if (ORG.equals(name)) {
+          value = matcher.group();
+        } else if (variables.containsKey(name)) {
+          value = Strings.nullToEmpty(variables.get(name));
+        } else {
+          throw invalid("unknown placeholder %s in %s", matcher.group(), text);
+        }
+        matcher.appendReplacement(replaced, Matcher.quoteReplacement(value));
+      }
+      matcher.appendTail(replaced);
+      return new Template(replaced.toString().split(Pattern.quote("{" + ORG + "}"), -1));
+    }
+
+    String resolve(String orgId) {
+      return parts.length == 1 ? parts[0] : String.join(orgId, parts);
+    }
+  }
+
+  /**
+   * ACL compiled once. Entries which do not refer to {org} are kept in a shared immutable list,
+   * which is returned as it is when there are no other entries. Entries referring to {org} are
+   * appended to a copy of it for every organization.
+   */
+  static final class AclTemplate {
+
+    private final List<AclEntry> fixedEntries;
+
+    private final List<OrganizationAclEntry> organizationEntries;
+
+    private AclTemplate(List<AclEntry> fixedEntries,
+        List<OrganizationAclEntry> organizationEntries) {
+      this.fixedEntries = fixedEntries;
+      this.organizationEntries = organizationEntries;
+    }
+
+    /**
+     * @param entries ACL entries in "type:name:permission" form
+     * @throws IllegalArgumentException if an entry cannot be parsed or has unknown placeholders
+     */
+    static AclTemplate compile(List<String> entries, Map<String, String> variables) {
+      ImmutableList.Builder<AclEntry> fixedEntries = ImmutableList.builder();
+      ImmutableList.Builder<OrganizationAclEntry> organizationEntries = ImmutableList.builder();
+      for (String text : entries) {
+        String resolved = Template.compile(text, variables).resolve("{" + ORG + "}");
+        AclEntry entry;
+        try {
+          entry = AclEntry.parseAclEntry(resolved, true);
+        } catch (IllegalArgumentException e) {
+          throw invalid("ACL entry %s cannot be parsed: %s", text, e.getMessage());
+        }
+        if (entry.getName() != null && entry.getName().contains("{" + ORG + "}")) {
+          organizationEntries
+              .add(new OrganizationAclEntry(entry, Template.compile(entry.getName(), variables)));
+        } else {
+          fixedEntries.add(entry);
+        }
+      }
+      return new AclTemplate(fixedEntries.build(), organizationEntries.build());
+    }
+
+    /**
+     * @return immutable ACL entries of the organization, entries referring to it last
+     */
+    List<AclEntry> resolve(String orgId) {
+      if (organizationEntries.isEmpty()) {
+        return fixedEntries;
+      }
+      int fixed = fixedEntries.size();
+      AclEntry[] entries = fixedEntries.toArray(new AclEntry[fixed + organizationEntries.size()]);
+      for (int i = 0; i < organizationEntries.size(); i++) {
+        entries[fixed + i] = organizationEntries.get(i).resolve(orgId);
+      }
+      return Collections.unmodifiableList(Arrays.asList(entries));
+    }
+  }
+
+  private static final class OrganizationAclEntry {
+
+    private final AclEntry entry;
+
+    private final Template name;
+
+    private OrganizationAclEntry(AclEntry entry, Template name) {
+      this.entry = entry;
+      this.name = name;
+    }
+
+    AclEntry resolve(String orgId) {
+      return new AclEntry.Builder().setType(entry.getType()).setScope(entry.getScope())
+          .setPermission(entry.getPermission()).setName(name.resolve(orgId)).build();
+    }
+  }
+
+  private static final class CompiledDirectory {
+
+    private final String path;
+
+    private final boolean marker;
+
+    private final Template pathTemplate;
+
+    private final Template owner;
+
+    private final Template group;
+
+    private final FsPermission permission;
+
+    // null if the directory has no ACL
+    private final AclTemplate acl;
+
+    private CompiledDirectory(String path, boolean marker, Template pathTemplate, Template owner,
+        Template group, FsPermission permission, AclTemplate acl) {
+      this.path = path;
+      this.marker = marker;
+      this.pathTemplate = pathTemplate;
+      this.owner = owner;
+      this.group = group;
+      this.permission = permission;
+      this.acl = acl;
+    }
+
+    Path resolvePath(Path organizationPath, String orgId) {
+      return path.isEmpty() ? organizationPath
+          : new Path(organizationPath, pathTemplate.resolve(orgId));
+    }
+
+    Directory resolve(Path organizationPath, String orgId) {
+      return Directory.of(resolvePath(organizationPath, orgId), owner.resolve(orgId),
+          group.resolve(orgId), permission,
+          acl == null ? ImmutableList.of() : acl.resolve(orgId));
+    }
+  }
+}
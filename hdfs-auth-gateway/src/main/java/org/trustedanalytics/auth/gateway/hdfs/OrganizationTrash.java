@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.trustedanalytics.auth.gateway.hdfs.config.FileSystemProvider;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Trash of removed organizations. An organization is removed by moving its tree under the trash
+ * directory with a single rename, whatever its size. A background purger then deletes the trashed
+ * trees bottom-up, one directory with its files per call and at most a configured number of
+ * NameNode calls per second, so no single call holds the NameNode for long.
+ *
+ * Progress is registered as "hdfs.trash.pending" (trashed organizations left in the current run),
+ * "hdfs.trash.purged" (organizations purged), "hdfs.trash.deleted" (directories deleted) and
+ * "hdfs.trash.failures" (runs which failed and are retried by the next one).
+ */
+final class OrganizationTrash {
+
+  private static final Logger LOGGER = LoggerFactory.getLogger(OrganizationTrash.class);
+
+  private static final String METRIC_PREFIX = "hdfs.trash";
+
+  private static final FsPermission TRASH_PERMISSION = HdfsPermission.USER_ALL.getPermission();
+
+  private final Path trashPath;
+
+  private final FileSystemProvider fileSystemProvider;
+
+  private final RateLimiter rateLimiter;
+
+  private final AtomicInteger pending = new AtomicInteger();
+
+  private final Counter purged;
+
+  private final Counter deleted;
+
+  private final Counter failures;
+
+  private ScheduledExecutorService purger;
+
+  OrganizationTrash(Path trashPath, double callsPerSecond, FileSystemProvider fileSystemProvider,
+      MetricRegistry metricRegistry) {
+    this.trashPath = trashPath;
+    this.fileSystemProvider = fileSystemProvider;
+    this.rateLimiter = RateLimiter.create(callsPerSecond);
+    this.purged = metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, "purged"));
+    this.deleted = metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, "deleted"));
+    this.failures = metricRegistry.counter(MetricRegistry.name(METRIC_PREFIX, "failures"));
+    String pendingName = MetricRegistry.name(METRIC_PREFIX, "pending");
+    metricRegistry.remove(pendingName);
+    metricRegistry.register(pendingName, (Gauge<Integer>) pending::get);
+  }
+
+  Path getTrashPath() {
+    return trashPath;
+  }
+
+  /**
+   * Moves the organization directory under the trash. The name of the trashed tree is suffixed
+   * with the time of removal, so an organization added again can be removed again before the
+   * purger is done with the previous tree.
+   */
+  void moveToTrash(HdfsClient hdfsClient, Path orgPath, String orgId) throws IOException {
+    hdfsClient.moveDirectory(orgPath,
+        new Path(trashPath, orgId + "-" + System.currentTimeMillis()), TRASH_PERMISSION);
+  }
+
+  /**
+   * Starts purging right away, which also picks up trees left over by a previous run of the
+   * gateway, then every given number of seconds after the previous run finished.
+   */
+  synchronized void start(long intervalInSeconds) {
+    purger = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("hdfs-trash-purger-%d").setDaemon(true).build());
+    purger.scheduleWithFixedDelay(this::purge, 0, intervalInSeconds, TimeUnit.SECONDS);
+  }
+
+  synchronized void shutdown() {
+    if (purger != null) {
+      purger.shutdownNow();
+      purger = null;
+    }
+  }
+
+  void purge() {
+    try {
+      HdfsClient hdfsClient = HdfsClient.getNewInstance(fileSystemProvider.getFileSystem());
+      rateLimiter.acquire();
+      List<FileStatus> trashed = hdfsClient.listDirectory(trashPath);
+      pending.set(trashed.size());
+      for (FileStatus status : trashed) {
+        purgeTree(hdfsClient, status);
+        purged.inc();
+        pending.decrementAndGet();
+      }
+    } catch (IOException | RuntimeException e) {
+      failures.inc();
+      LOGGER.warn(String.format("Can't purge trash: %s, retrying in next run", trashPath), e);
+    }
+  }
+
+  /**
+   * Deletes subdirectories first, so every delete call only removes a directory and its files.
+   */
+  private void purgeTree(HdfsClient hdfsClient, FileStatus status) throws IOException {
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Interrupted while purging trash");
+    }
+    if (status.isDirectory()) {
+      rateLimiter.acquire();
+      for (FileStatus child : hdfsClient.listDirectory(status.getPath())) {
+        if (child.isDirectory()) {
+          purgeTree(hdfsClient, child);
+        }
+      }
+    }
+    rateLimiter.acquire();
+    hdfsClient.deleteRecursively(status.getPath());
+    deleted.inc();
+  }
+}
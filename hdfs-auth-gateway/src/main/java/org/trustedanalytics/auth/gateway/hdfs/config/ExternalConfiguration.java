@@ -43,6 +43,30 @@ public class ExternalConfiguration {
   @NotNull
   private String arcadiaUser;
 
+  // seconds between checks of the kerberos ticket, renewed from the keytab when close to expiry
+  @Value("${hdfs.reloginInterval:60}")
+  private long reloginInterval;
+
+  // threads creating sibling directories of an organization concurrently, 1 creates them in turn
+  @Value("${hdfs.directoryThreads:1}")
+  private int directoryThreads;
+
+  // move removed organizations to the trash path with a single rename and delete them later
+  @Value("${hdfs.trashEnabled:false}")
+  private boolean trashEnabled;
+
+  // directory holding removed organizations until they are purged, outside of /org
+  @Value("${hdfs.trashPath:/org-trash}")
+  private String trashPath;
+
+  // seconds between runs of the purger deleting trashed organizations
+  @Value("${hdfs.purgeInterval:60}")
+  private long purgeInterval;
+
+  // NameNode calls per second the purger is allowed to make
+  @Value("${hdfs.purgeRate:20}")
+  private double purgeRate;
+
   public String getKeytab() {
     return keytab;
   }
@@ -82,4 +106,52 @@ public class ExternalConfiguration {
   public void setVcapUser(String vcapUser) {
     this.vcapUser = vcapUser;
   }
+
+  public long getReloginInterval() {
+    return reloginInterval;
+  }
+
+  public void setReloginInterval(long reloginInterval) {
+    this.reloginInterval = reloginInterval;
+  }
+
+  public int getDirectoryThreads() {
+    return directoryThreads;
+  }
+
+  public void setDirectoryThreads(int directoryThreads) {
+    this.directoryThreads = directoryThreads;
+  }
+
+  public boolean isTrashEnabled() {
+    return trashEnabled;
+  }
+
+  public void setTrashEnabled(boolean trashEnabled) {
+    this.trashEnabled = trashEnabled;
+  }
+
+  public String getTrashPath() {
+    return trashPath;
+  }
+
+  public void setTrashPath(String trashPath) {
+    this.trashPath = trashPath;
+  }
+
+  public long getPurgeInterval() {
+    return purgeInterval;
+  }
+
+  public void setPurgeInterval(long purgeInterval) {
+    this.purgeInterval = purgeInterval;
+  }
+
+  public double getPurgeRate() {
+    return purgeRate;
+  }
+
+  public void setPurgeRate(double purgeRate) {
+    this.purgeRate = purgeRate;
+  }
 }
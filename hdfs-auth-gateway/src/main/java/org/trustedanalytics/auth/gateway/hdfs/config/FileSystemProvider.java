@@ -16,11 +16,18 @@ package org.trustedanalytics.auth.gateway.hdfs.config;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.security.PrivilegedExceptionAction;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.security.auth.login.LoginException;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,7 +41,15 @@ import org.trustedanalytics.auth.gateway.hdfs.utils.Qualifiers;
 import sun.security.krb5.KrbException;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
+/**
+ * Provides one file system shared by all gateway operations, created when the gateway starts.
+ * With kerberos enabled the gateway logs in once from the keytab and the file system acts as
+ * the login user. Its ticket is checked every {@code hdfs.reloginInterval} seconds and renewed
+ * from the keytab in place once it nears expiry, so neither the login nor the file system is
+ * ever replaced and operations never wait for the KDC.
+ */
 @Profile(Qualifiers.HDFS)
 @org.springframework.context.annotation.Configuration
 public class FileSystemProvider {
@@ -53,29 +68,95 @@ public class FileSystemProvider {
   @Autowired
   private Configuration configuration;
 
+  @Autowired
+  private ExternalConfiguration externalConfiguration;
+
+  private volatile FileSystem fileSystem;
+
+  private ScheduledExecutorService relogin;
+
+  /**
+   * Logs in and creates the file system before the first operation, so operations do not queue
+   * behind the login. If it fails, e.g. as the KDC is down, the first operation tries again.
+   */
+  @PostConstruct
+  public void init() {
+    try {
+      getFileSystem();
+    } catch (IOException e) {
+      LOGGER.error("Cannot create file system, trying again on first use", e);
+    }
+  }
+
   public FileSystem getFileSystem() throws IOException {
-    if (isKerberosEnabled(configuration)) {
-      LOGGER.info("Trying to get file system with kerberos authorization");
-      try {
-        LoggedInKerberosClient kerberosClient = new LoggedInKerberosClient(kerberosProperties);
-        configuration = kerberosClient.getConfiguration();
-      } catch (KrbException | LoginException | IOException e) {
-        LOGGER.error("Authorization to kerberos failed", e);
-        Throwables.propagateIfPossible(e, IOException.class);
-        throw new IOException("Authorization to kerberos failed", e);
+    FileSystem current = fileSystem;
+    if (current != null) {
+      return current;
+    }
+    synchronized (this) {
+      if (fileSystem == null) {
+        fileSystem = createFileSystem();
+        scheduleRelogin();
       }
+      return fileSystem;
+    }
+  }
+
+  @PreDestroy
+  public synchronized void close() {
+    if (relogin != null) {
+      relogin.shutdownNow();
+      relogin = null;
+    }
+    closeQuietly(fileSystem);
+    fileSystem = null;
+  }
+
+  /**
+   * Logs in again from the keytab if the ticket is close to expiry, otherwise returns without
+   * contacting the KDC.
+   */
+  void relogin() {
+    try {
+      UserGroupInformation.getLoginUser().checkTGTAndReloginFromKeytab();
+    } catch (IOException e) {
+      LOGGER.error("Cannot renew kerberos ticket, trying again at next check", e);
     }
-    return getFileSystemForUser(kerberosProperties.getKeytabPrincipal(), configuration);
+  }
+
+  private FileSystem createFileSystem() throws IOException {
+    if (!isKerberosEnabled(configuration)) {
+      return getFileSystemForUser(kerberosProperties.getKeytabPrincipal(), configuration);
+    }
+    LOGGER.info("Trying to get file system with kerberos authorization");
+    try {
+      new LoggedInKerberosClient(kerberosProperties, configuration);
+      return UserGroupInformation.getLoginUser()
+          .doAs((PrivilegedExceptionAction<FileSystem>) () -> FileSystem
+              .newInstance(new URI(configuration.getRaw(HADOOP_DEFAULT_FS)), configuration));
+    } catch (KrbException | LoginException | InterruptedException | IOException e) {
+      LOGGER.error("Authorization to kerberos failed", e);
+      Throwables.propagateIfPossible(e, IOException.class);
+      throw new IOException("Authorization to kerberos failed", e);
+    }
+  }
+
+  private void scheduleRelogin() {
+    long interval = externalConfiguration.getReloginInterval();
+    if (!isKerberosEnabled(configuration) || interval <= 0) {
+      return;
+    }
+    relogin = Executors.newSingleThreadScheduledExecutor(
+        new ThreadFactoryBuilder().setNameFormat("hdfs-relogin-%d").setDaemon(true).build());
+    relogin.scheduleWithFixedDelay(this::relogin, interval, interval, TimeUnit.SECONDS);
   }
 
   private FileSystem getFileSystemForUser(String user, Configuration configuration)
       throws IOException {
     LOGGER.info(String.format("Get fileSystem as : %s", user));
-    FileSystem fileSystem = null;
     try {
-      fileSystem =
-          FileSystem.get(new URI(configuration.getRaw(HADOOP_DEFAULT_FS)), configuration, user);
-      return fileSystem;
+      return FileSystem.newInstance(new URI(configuration.getRaw(HADOOP_DEFAULT_FS)),
+          configuration, user);
     } catch (InterruptedException | URISyntaxException | IOException e) {
       LOGGER.warn("Cannot create file system", e);
       Throwables.propagateIfPossible(e, IOException.class);
@@ -83,6 +164,17 @@ public class FileSystemProvider {
     }
   }
 
+  private void closeQuietly(FileSystem fileSystem) {
+    if (fileSystem == null) {
+      return;
+    }
+    try {
+      fileSystem.close();
+    } catch (IOException e) {
+      LOGGER.warn("Cannot close file system", e);
+    }
+  }
+
   private boolean isKerberosEnabled(Configuration configuration) {
     return AUTHENTICATION_METHOD.equals(configuration.get(AUTHENTICATION_METHOD_PROPERTY));
   }
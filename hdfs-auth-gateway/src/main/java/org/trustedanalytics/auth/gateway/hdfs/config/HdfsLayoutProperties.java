@@ -0,0 +1,175 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs.config;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+import org.trustedanalytics.auth.gateway.hdfs.utils.Qualifiers;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+
+/**
+ * Directories created for every organization, bound from "hdfs.layout". Paths are relative to
+ * the organization directory, the empty path being the organization directory itself. Paths,
+ * owners, groups and ACL entries can refer to {org} and to {hiveUser}, {arcadiaUser},
+ * {vcapUser} and {technicalUser}. Without directories the default layout is used.
+ */
+@Profile(Qualifiers.HDFS)
+@Configuration
+@ConfigurationProperties("hdfs.layout")
+public class HdfsLayoutProperties {
+
+  private static final List<String> USERS_EXECUTE = ImmutableList.of("user:{arcadiaUser}:--x",
+      "user:{hiveUser}:--x", "user:{vcapUser}:--x");
+
+  private static final Map<String, List<String>> DEFAULT_ACLS = ImmutableMap.of(
+      "organization", ImmutableList.<String>builder().add("group::--x", "mask::--x")
+          .addAll(USERS_EXECUTE).add("user:{technicalUser}:--x", "group:{org}_sys:--x").build(),
+      "userspace", ImmutableList.<String>builder().add("group::rwx", "mask::rwx")
+          .addAll(USERS_EXECUTE).add("user:{technicalUser}:rwx", "group:{org}_sys:--x").build());
+
+  private static final List<DirectoryProperties> DEFAULT_DIRECTORIES = ImmutableList.of(
+      directory("", "710", "organization"),
+      directory("brokers", "710", "organization"),
+      directory("brokers/userspace", "710", "userspace"),
+      directory("oozie-jobs", "770", null),
+      directory("sqoop-imports", "770", null),
+      directory("user", "710", null),
+      directory("tmp", "770", null),
+      directory("apps", "710", null).marker());
+
+  // directories of the organization, the default layout is used when empty
+  private List<DirectoryProperties> directories = new ArrayList<>();
+
+  // named lists of ACL entries in "type:name:permission" form, added to the default ones
+  private Map<String, List<String>> acls = new HashMap<>();
+
+  public List<DirectoryProperties> getDirectories() {
+    return directories;
+  }
+
+  public void setDirectories(List<DirectoryProperties> directories) {
+    this.directories = directories;
+  }
+
+  public Map<String, List<String>> getAcls() {
+    return acls;
+  }
+
+  public void setAcls(Map<String, List<String>> acls) {
+    this.acls = acls;
+  }
+
+  /**
+   * @return configured directories or the default layout if there are none
+   */
+  public List<DirectoryProperties> getEffectiveDirectories() {
+    return directories.isEmpty() ? DEFAULT_DIRECTORIES : directories;
+  }
+
+  /**
+   * @return default ACLs ("organization" and "userspace") overridden by configured ones
+   */
+  public Map<String, List<String>> getEffectiveAcls() {
+    Map<String, List<String>> effective = new HashMap<>(DEFAULT_ACLS);
+    effective.putAll(acls);
+    return effective;
+  }
+
+  private static DirectoryProperties directory(String path, String permission, String acl) {
+    DirectoryProperties directory = new DirectoryProperties();
+    directory.setPath(path);
+    directory.setPermission(permission);
+    directory.setAcl(acl);
+    return directory;
+  }
+
+  public static class DirectoryProperties {
+
+    private String path = "";
+
+    private String owner = "{org}_admin";
+
+    private String group = "{org}";
+
+    // octal, umask is not applied
+    private String permission = "710";
+
+    // name of the ACL set on the directory, none if empty
+    private String acl;
+
+    // created after all others, so its existence means the whole layout is in place
+    private boolean marker;
+
+    public String getPath() {
+      return path;
+    }
+
+    public void setPath(String path) {
+      this.path = path;
+    }
+
+    public String getOwner() {
+      return owner;
+    }
+
+    public void setOwner(String owner) {
+      this.owner = owner;
+    }
+
+    public String getGroup() {
+      return group;
+    }
+
+    public void setGroup(String group) {
+      this.group = group;
+    }
+
+    public String getPermission() {
+      return permission;
+    }
+
+    public void setPermission(String permission) {
+      this.permission = permission;
+    }
+
+    public String getAcl() {
+      return acl;
+    }
+
+    public void setAcl(String acl) {
+      this.acl = acl;
+    }
+
+    public boolean isMarker() {
+      return marker;
+    }
+
+    public void setMarker(boolean marker) {
+      this.marker = marker;
+    }
+
+    private DirectoryProperties marker() {
+      this.marker = true;
+      return this;
+    }
+  }
+}
@@ -18,11 +18,10 @@ import java.io.IOException;
 import javax.security.auth.login.LoginException;
 
 import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.security.UserGroupInformation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.trustedanalytics.auth.gateway.KeyTab;
-import org.trustedanalytics.auth.gateway.SystemEnvironment;
-import org.trustedanalytics.hadoop.kerberos.KrbLoginManager;
 import org.trustedanalytics.hadoop.kerberos.KrbLoginManagerFactory;
 
 import sun.security.krb5.KrbException;
@@ -35,9 +34,13 @@ public class LoggedInKerberosClient {
 
   private Configuration configuration;
 
-  public LoggedInKerberosClient(KerberosProperties kerberosProperties) throws IOException,
-      LoginException, KrbException {
+  /**
+   * @param configuration hadoop configuration the login is done for
+   */
+  public LoggedInKerberosClient(KerberosProperties kerberosProperties, Configuration configuration)
+      throws IOException, LoginException, KrbException {
     this.kerberosProperties = kerberosProperties;
+    this.configuration = configuration;
     this.loginInToHadoop();
   }
 
@@ -49,14 +52,14 @@ public class LoggedInKerberosClient {
     LOGGER.info(String.format("Trying authorization with kerberos as: %s using keytab",
         kerberosProperties.getKeytabPrincipal()));
 
-    KrbLoginManager loginManager =
-        KrbLoginManagerFactory.getInstance().getKrbLoginManagerInstance(
-            kerberosProperties.getKdc(), kerberosProperties.getRealm());
-    configuration = new SystemEnvironment().getHadoopConfiguration();
+    KrbLoginManagerFactory.getInstance().getKrbLoginManagerInstance(kerberosProperties.getKdc(),
+        kerberosProperties.getRealm());
 
-    loginManager.loginInHadoop(loginManager.loginWithKeyTab(
-        kerberosProperties.getKeytabPrincipal(),
+    // logged in from the keytab file, so the login user can renew its ticket from it, see
+    // UserGroupInformation#checkTGTAndReloginFromKeytab
+    UserGroupInformation.setConfiguration(configuration);
+    UserGroupInformation.loginUserFromKeytab(kerberosProperties.getKeytabPrincipal(),
         KeyTab.createInstance(kerberosProperties.getKeytab(),
-            kerberosProperties.getKeytabPrincipal()).getFullKeyTabFilePath()), configuration);
+            kerberosProperties.getKeytabPrincipal()).getFullKeyTabFilePath());
   }
 }
@@ -25,36 +25,8 @@ public class PathCreator {
 
   private static final String USER = "user";
 
-  private static final String BROKER = "brokers";
-
-  private static final String BROKER_USERSPACE = "userspace";
-
-  private static final String OOZIE_JOBS = "oozie-jobs";
-
-  private static final String SQOOP_IMPORTS = "sqoop-imports";
-
-  private static final String TMP = "tmp";
-
-  private static final String APP = "apps";
-
-  public Path getBrokerPath(String org) {
-    return createPath(ORGS, org, BROKER);
-  }
-
-  public Path getUserspacePath(String org) {
-    return createPath(ORGS, org, BROKER, BROKER_USERSPACE);
-  }
-
-  public Path getOozieJobsPath(String org) { return createPath(ORGS, org, OOZIE_JOBS); }
-
-  public Path getSqoopImportsPath(String org) { return createPath(ORGS, org, SQOOP_IMPORTS); }
-
-  public Path getTmpPath(String org) {
-    return createPath(ORGS, org, TMP);
-  }
-
-  public Path getAppPath(String org) {
-    return createPath(ORGS, org, APP);
+  public Path getOrgsPath() {
+    return createPath(ORGS);
   }
 
   public Path getOrgPath(String org) {
@@ -99,6 +99,13 @@ public class HdfsAclBuilderTest {
     assertThatNamedAclEntriesEqual(aclEntries.get(2), "test3", AclEntryType.USER, TEST_ACTION);
   }
 
+  @Test(expected = UnsupportedOperationException.class)
+  public void createAclList_listModified_exceptionThrown() {
+    List<AclEntry> aclEntries =
+        HdfsAclBuilder.newInstance().withUserAclEntry(TEST_USER, TEST_ACTION).build();
+    aclEntries.clear();
+  }
+
   private void assertThatNamedAclEntriesEqual(AclEntry aclEntry, String name,
       AclEntryType aclEntryType, FsAction action) {
     assertThat(aclEntry.getName(), equalTo(name));
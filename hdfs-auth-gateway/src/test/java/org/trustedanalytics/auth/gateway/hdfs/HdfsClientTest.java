@@ -15,28 +15,38 @@ package org.trustedanalytics.auth.gateway.hdfs;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.spy;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.powermock.api.mockito.PowerMockito.when;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 
+import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.fs.permission.AclEntry;
 import org.apache.hadoop.fs.permission.AclEntryType;
+import org.apache.hadoop.fs.permission.AclStatus;
 import org.apache.hadoop.fs.permission.FsAction;
 import org.apache.hadoop.fs.permission.FsPermission;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.trustedanalytics.auth.gateway.hdfs.config.ExternalConfiguration;
 import org.trustedanalytics.auth.gateway.hdfs.config.FileSystemProvider;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -61,30 +71,110 @@ public class HdfsClientTest {
   @Before
   public void init() throws IOException {
     userPermission = new FsPermission(FsAction.ALL, FsAction.NONE, FsAction.NONE);
-    when(fileSystemProvider.getFileSystem()).thenReturn(fileSystem);
   }
 
   @Test
-  public void createDirectory_fileSystemMkdirsAndSetOwnerCalled_creationSuccess()
+  public void createDirectory_directoryMissing_createdWithPermissionAndOwner()
       throws IOException {
-    when(fileSystem.exists(TEST_PATH)).thenReturn(false);
+    givenMissing(TEST_PATH);
 
     hdfsClient.createDirectory(TEST_PATH, "test_admin", "test", userPermission);
 
-    verify(fileSystem).exists(TEST_PATH);
-    verify(fileSystem).mkdirs(TEST_PATH);
-    verify(fileSystem).setPermission(TEST_PATH, userPermission);
+    InOrder order = inOrder(fileSystem);
+    order.verify(fileSystem).mkdirs(TEST_PATH, userPermission);
+    order.verify(fileSystem).setPermission(TEST_PATH, userPermission);
+    order.verify(fileSystem).setOwner(TEST_PATH, "test_admin", "test");
+    assertThat(hdfsClient.getCallCount(), equalTo(4));
+  }
+
+  @Test
+  public void createDirectory_directoryWithOtherPermission_permissionAndOwnerSet()
+      throws IOException {
+    FsPermission groupAll = new FsPermission(FsAction.ALL, FsAction.ALL, FsAction.NONE);
+    givenStatus("hdfs", "supergroup",
+        new FsPermission(FsAction.ALL, FsAction.READ_EXECUTE, FsAction.NONE), false);
+
+    hdfsClient.createDirectory(TEST_PATH, "test_admin", "test", groupAll);
+
+    verify(fileSystem, times(0)).mkdirs(TEST_PATH, groupAll);
+    verify(fileSystem).setPermission(TEST_PATH, groupAll);
     verify(fileSystem).setOwner(TEST_PATH, "test_admin", "test");
+    assertThat(hdfsClient.getCallCount(), equalTo(3));
   }
 
-  @Test()
-  public void createDirectory_directoryAlreadyExists_doNothing() throws IOException {
-    when(fileSystem.exists(TEST_PATH)).thenReturn(true);
+  @Test
+  public void createDirectory_directoryAlreadyInPlace_onlyStatusRead() throws IOException {
+    givenStatus("test_admin", "test", userPermission, false);
 
     hdfsClient.createDirectory(TEST_PATH, "test_admin", "test", userPermission);
-    verify(fileSystem, times(0)).mkdirs(TEST_PATH);
+
+    verify(fileSystem, times(0)).mkdirs(TEST_PATH, userPermission);
     verify(fileSystem, times(0)).setPermission(TEST_PATH, userPermission);
     verify(fileSystem, times(0)).setOwner(TEST_PATH, "test_admin", "test");
+    assertThat(hdfsClient.getCallCount(), equalTo(1));
+  }
+
+  @Test(expected = IOException.class)
+  public void createDirectory_fileInPlace_exceptionThrown() throws IOException {
+    when(fileSystem.getFileStatus(TEST_PATH)).thenReturn(new FileStatus(0, false, 0, 0, 0,
+        TEST_PATH));
+
+    hdfsClient.createDirectory(TEST_PATH, "test_admin", "test", userPermission);
+  }
+
+  @Test
+  public void createDirectoryWithAcl_directoryMissing_aclEntriesAddedWithoutReadingAcl()
+      throws IOException {
+    List<AclEntry> acl = HdfsAclBuilder.newInstanceWithDefaultEntries(FsAction.EXECUTE).build();
+    givenMissing(TEST_PATH);
+
+    hdfsClient.createDirectoryWithAcl(TEST_PATH, "test_admin", "test", userPermission, acl);
+
+    verify(fileSystem).modifyAclEntries(TEST_PATH, acl);
+    verify(fileSystem, times(0)).getAclStatus(TEST_PATH);
+    assertThat(hdfsClient.getCallCount(), equalTo(5));
+  }
+
+  @Test
+  public void createDirectoryWithAcl_directoryWithoutAcl_aclEntriesAdded() throws IOException {
+    List<AclEntry> acl = HdfsAclBuilder.newInstanceWithDefaultEntries(FsAction.EXECUTE).build();
+    givenStatus("hdfs", "supergroup", userPermission, false);
+
+    hdfsClient.createDirectoryWithAcl(TEST_PATH, "test_admin", "test", userPermission, acl);
+
+    verify(fileSystem).modifyAclEntries(TEST_PATH, acl);
+    assertThat(hdfsClient.getCallCount(), equalTo(3));
+  }
+
+  @Test
+  public void createDirectoryWithAcl_directoryWithSameAcl_aclEntriesNotAdded()
+      throws IOException {
+    List<AclEntry> acl = HdfsAclBuilder.newInstanceWithDefaultEntries(FsAction.ALL).build();
+    // group bits of a directory with ACL show the mask, so they are not compared
+    givenStatus("test_admin", "test",
+        new FsPermission(FsAction.ALL, FsAction.ALL, FsAction.NONE), true);
+    givenAcl(acl.get(0));
+
+    hdfsClient.createDirectoryWithAcl(TEST_PATH, "test_admin", "test", userPermission, acl);
+
+    verify(fileSystem, times(0)).setPermission(TEST_PATH, userPermission);
+    verify(fileSystem, times(0)).modifyAclEntries(TEST_PATH, acl);
+    assertThat(hdfsClient.getCallCount(), equalTo(2));
+  }
+
+  @Test
+  public void createDirectoryWithAcl_directoryWithAclMissingEntry_aclEntriesAdded()
+      throws IOException {
+    List<AclEntry> acl = HdfsAclBuilder.newInstanceWithDefaultEntries(FsAction.ALL)
+        .withUserAclEntry("test_user", FsAction.READ_EXECUTE).build();
+    givenStatus("test_admin", "test",
+        new FsPermission(FsAction.ALL, FsAction.ALL, FsAction.NONE), true);
+    givenAcl(acl.get(0));
+
+    hdfsClient.createDirectoryWithAcl(TEST_PATH, "test_admin", "test", userPermission, acl);
+
+    verify(fileSystem).modifyAclEntries(TEST_PATH, acl);
+    assertThat(hdfsClient.getCallCount(), equalTo(3));
   }
 
   @Test
@@ -121,6 +211,93 @@ public class HdfsClientTest {
     assertUserAcl(userAcl.get(3), "test_user2", FsAction.READ_EXECUTE, AclEntryType.USER);
   }
 
+  @Test
+  public void createDirectoryAtomically_missingDirectory_ownerSetBeforeRename()
+      throws IOException {
+    Path temporary = new Path("/org/test._CREATING_");
+    givenMissing(TEST_PATH);
+    givenMissing(temporary);
+    when(fileSystem.rename(temporary, TEST_PATH)).thenReturn(true);
+
+    hdfsClient.createDirectoryAtomically(TEST_PATH, "test_admin", "test", userPermission,
+        ImmutableList.of());
+
+    InOrder order = inOrder(fileSystem);
+    order.verify(fileSystem).mkdirs(temporary, userPermission);
+    order.verify(fileSystem).setOwner(temporary, "test_admin", "test");
+    order.verify(fileSystem).rename(temporary, TEST_PATH);
+    verify(fileSystem, times(0)).mkdirs(TEST_PATH, userPermission);
+    assertThat(hdfsClient.getCallCount(), equalTo(6));
+  }
+
+  @Test
+  public void createDirectoryAtomically_existingDirectory_ownerSetInPlace() throws IOException {
+    givenStatus("hdfs", "supergroup", userPermission, false);
+
+    hdfsClient.createDirectoryAtomically(TEST_PATH, "test_admin", "test", userPermission,
+        ImmutableList.of());
+
+    verify(fileSystem).setOwner(TEST_PATH, "test_admin", "test");
+    verify(fileSystem, times(0)).rename(any(Path.class), any(Path.class));
+    assertThat(hdfsClient.getCallCount(), equalTo(2));
+  }
+
+  @Test(expected = IOException.class)
+  public void createDirectoryAtomically_renameFailed_exceptionThrown() throws IOException {
+    Path temporary = new Path("/org/test._CREATING_");
+    givenMissing(TEST_PATH);
+    givenStatus(temporary, "test_admin", "test", userPermission, false);
+    when(fileSystem.rename(temporary, TEST_PATH)).thenReturn(false);
+
+    hdfsClient.createDirectoryAtomically(TEST_PATH, "test_admin", "test", userPermission,
+        ImmutableList.of());
+  }
+
+  @Test
+  public void moveDirectory_directoryExists_renamedWithSingleCall() throws IOException {
+    Path target = new Path("/org-trash/test-1");
+    when(fileSystem.exists(TEST_PATH)).thenReturn(true);
+    when(fileSystem.rename(TEST_PATH, target)).thenReturn(true);
+
+    hdfsClient.moveDirectory(TEST_PATH, target, userPermission);
+
+    verify(fileSystem).mkdirs(new Path("/org-trash"), userPermission);
+    verify(fileSystem).rename(TEST_PATH, target);
+    verify(fileSystem, times(0)).delete(TEST_PATH, true);
+    assertThat(hdfsClient.getCallCount(), equalTo(3));
+  }
+
+  @Test(expected = IOException.class)
+  public void moveDirectory_renameFailed_exceptionThrown() throws IOException {
+    Path target = new Path("/org-trash/test-1");
+    when(fileSystem.exists(TEST_PATH)).thenReturn(true);
+    when(fileSystem.rename(TEST_PATH, target)).thenReturn(false);
+
+    hdfsClient.moveDirectory(TEST_PATH, target, userPermission);
+  }
+
+  private void givenStatus(String owner, String group, FsPermission permission, boolean acl)
+      throws IOException {
+    givenStatus(TEST_PATH, owner, group, permission, acl);
+  }
+
+  private void givenStatus(Path path, String owner, String group, FsPermission permission,
+      boolean acl) throws IOException {
+    FsPermission statusPermission = spy(permission);
+    doReturn(acl).when(statusPermission).getAclBit();
+    when(fileSystem.getFileStatus(path)).thenReturn(
+        new FileStatus(0, true, 0, 0, 0, 0, statusPermission, owner, group, path));
+  }
+
+  private void givenMissing(Path path) throws IOException {
+    when(fileSystem.getFileStatus(path)).thenThrow(new FileNotFoundException());
+  }
+
+  private void givenAcl(AclEntry... entries) throws IOException {
+    when(fileSystem.getAclStatus(TEST_PATH)).thenReturn(new AclStatus.Builder()
+        .owner("test_admin").group("test").addEntries(Arrays.asList(entries)).build());
+  }
+
   private void assertUserAcl(AclEntry aclEntry, String name, FsAction fsAction,
       AclEntryType entryType) {
     assertUserAcl(aclEntry, fsAction, entryType);
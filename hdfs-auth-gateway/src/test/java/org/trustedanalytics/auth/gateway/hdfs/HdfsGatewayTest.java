@@ -13,12 +13,23 @@
  */
 package org.trustedanalytics.auth.gateway.hdfs;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.powermock.api.mockito.PowerMockito.doThrow;
 import static org.powermock.api.mockito.PowerMockito.when;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.Set;
 
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
@@ -30,14 +41,23 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 import org.trustedanalytics.auth.gateway.hdfs.config.ExternalConfiguration;
 import org.trustedanalytics.auth.gateway.hdfs.config.FileSystemProvider;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties;
 import org.trustedanalytics.auth.gateway.hdfs.kerberos.KerberosProperties;
 import org.trustedanalytics.auth.gateway.hdfs.utils.PathCreator;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 @RunWith(PowerMockRunner.class)
 @PrepareForTest(HdfsClient.class)
@@ -49,6 +69,8 @@ public class HdfsGatewayTest {
 
   private static final String SYS_GROUP = "test_org_sys";
 
+  private static final Path ORGS_PATH = new Path("/org");
+
   private static final Path ORG_PATH = new Path("/org/test_org");
 
   private static final Path ORG_USERS_PATH = new Path("/org/test_org/user");
@@ -89,6 +111,12 @@ public class HdfsGatewayTest {
   @Mock
   private ExternalConfiguration config;
 
+  @Spy
+  private MetricRegistry metricRegistry = new MetricRegistry();
+
+  @Spy
+  private HdfsLayoutProperties layoutProperties = new HdfsLayoutProperties();
+
   @InjectMocks
   private HdfsGateway hdfsGateway;
 
@@ -112,13 +140,8 @@ public class HdfsGatewayTest {
     PowerMockito.spy(HdfsClient.class);
     PowerMockito.when(HdfsClient.getNewInstance(fileSystem)).thenReturn(hdfsClient);
 
+    when(pathCreator.getOrgsPath()).thenReturn(ORGS_PATH);
     when(pathCreator.getOrgPath("test_org")).thenReturn(ORG_PATH);
-    when(pathCreator.getBrokerPath("test_org")).thenReturn(BROKER_PATH);
-    when(pathCreator.getUserspacePath("test_org")).thenReturn(BROKER_USERSPACE_PATH);
-    when(pathCreator.getTmpPath("test_org")).thenReturn(TMP_PATH);
-    when(pathCreator.getAppPath("test_org")).thenReturn(APP_PATH);
-    when(pathCreator.getSqoopImportsPath("test_org")).thenReturn(SQOOP_PATH);
-    when(pathCreator.getOozieJobsPath("test_org")).thenReturn(OOZIE_PATH);
     when(pathCreator.getUsersPath("test_org")).thenReturn(ORG_USERS_PATH);
     when(pathCreator.getUserPath("test_org", "test_user")).thenReturn(USER_PATH);
     when(pathCreator.getUserHomePath("test_user")).thenReturn(USER_HOME_PATH);
@@ -127,10 +150,10 @@ public class HdfsGatewayTest {
     when(config.getArcadiaUser()).thenReturn("test_arcadia");
     when(config.getVcapUser()).thenReturn("test_vcap");
 
-    defaultWithTechUserExec =
-        hdfsGateway.getDefaultAclWithKrbTechUserAction(FsAction.EXECUTE, FsAction.EXECUTE, SYS_GROUP);
-    defaultWithTechUserAll =
-        hdfsGateway.getDefaultAclWithKrbTechUserAction(FsAction.ALL, FsAction.ALL, SYS_GROUP);
+    hdfsGateway.compileLayout();
+
+    defaultWithTechUserExec = getDefaultAcl(FsAction.EXECUTE, FsAction.EXECUTE);
+    defaultWithTechUserAll = getDefaultAcl(FsAction.ALL, FsAction.ALL);
   }
 
   @Test
@@ -147,7 +170,73 @@ public class HdfsGatewayTest {
     verify(hdfsClient).createDirectory(ORG_USERS_PATH, "test_org_admin", "test_org",
         usrAllGroupExec);
     verify(hdfsClient).createDirectory(TMP_PATH, "test_org_admin", "test_org", usrAllGroupAll);
-    verify(hdfsClient).createDirectory(APP_PATH, "test_org_admin", "test_org", usrAllGroupExec);
+    verify(hdfsClient).createDirectoryAtomically(APP_PATH, "test_org_admin", "test_org",
+        usrAllGroupExec, ImmutableList.of());
+  }
+
+  @Test
+  public void addOrganization_concurrentCreation_everyDirectoryCreated()
+      throws AuthorizableGatewayException, IOException {
+    when(config.getDirectoryThreads()).thenReturn(4);
+
+    try {
+      hdfsGateway.addOrganization(ORG);
+    } finally {
+      hdfsGateway.shutdown();
+    }
+
+    verify(hdfsClient).createDirectoryWithAcl(BROKER_USERSPACE_PATH, "test_org_admin", "test_org",
+        usrAllGroupExec, defaultWithTechUserAll);
+    verify(hdfsClient).createDirectory(OOZIE_PATH, "test_org_admin", "test_org", usrAllGroupAll);
+    verify(hdfsClient).createDirectory(SQOOP_PATH, "test_org_admin", "test_org", usrAllGroupAll);
+    verify(hdfsClient).createDirectory(ORG_USERS_PATH, "test_org_admin", "test_org",
+        usrAllGroupExec);
+    verify(hdfsClient).createDirectory(TMP_PATH, "test_org_admin", "test_org", usrAllGroupAll);
+    verify(hdfsClient).createDirectoryAtomically(APP_PATH, "test_org_admin", "test_org",
+        usrAllGroupExec, ImmutableList.of());
+  }
+
+  @Test
+  public void addOrganization_siblingCreationFails_appsDirectoryNotCreated() throws IOException {
+    when(config.getDirectoryThreads()).thenReturn(4);
+    doThrow(new IOException()).when(hdfsClient).createDirectory(TMP_PATH, "test_org_admin",
+        "test_org", usrAllGroupAll);
+
+    try {
+      hdfsGateway.addOrganization(ORG);
+      fail("AuthorizableGatewayException expected");
+    } catch (AuthorizableGatewayException e) {
+      verify(hdfsClient).createDirectory(SQOOP_PATH, "test_org_admin", "test_org",
+          usrAllGroupAll);
+      verify(hdfsClient, never()).createDirectoryAtomically(APP_PATH, "test_org_admin",
+          "test_org", usrAllGroupExec, ImmutableList.of());
+    } finally {
+      hdfsGateway.shutdown();
+    }
+  }
+
+  @Test
+  public void getOrganizationTree_organization_appsDirectoryCreatedLastAlone() {
+    List<List<DirectoryTree.Directory>> levels = hdfsGateway.getOrganizationTree(ORG).getLevels();
+
+    assertThat(levels.size(), equalTo(4));
+    assertThat(levels.get(0).get(0).getPath(), equalTo(ORG_PATH));
+    assertThat(levels.get(1).size(), equalTo(5));
+    assertThat(levels.get(2).get(0).getPath(), equalTo(BROKER_USERSPACE_PATH));
+    assertThat(levels.get(3).size(), equalTo(1));
+    assertThat(levels.get(3).get(0).getPath(), equalTo(APP_PATH));
+  }
+
+  @Test
+  public void addOrganization_directoriesCreated_nameNodeCallsRecorded()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.getCallCount()).thenReturn(26);
+
+    hdfsGateway.addOrganization(ORG);
+
+    Histogram calls = metricRegistry.histogram("hdfs.namenode.addOrganization.calls");
+    assertThat(calls.getCount(), equalTo(1L));
+    assertThat(calls.getSnapshot().getMax(), equalTo(26L));
   }
 
   @Test(expected = AuthorizableGatewayException.class)
@@ -201,4 +290,157 @@ public class HdfsGatewayTest {
     doThrow(new IOException()).when(hdfsClient).deleteDirectory(USER_PATH);
     hdfsGateway.removeUserFromOrg(USER, ORG);
   }
+
+  @Test
+  public void listOrganizations_orgDirectoriesExist_directoryNamesReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.listDirectoryNames(ORGS_PATH)).thenReturn(Arrays.asList("org1", "org2"));
+    Optional<Set<String>> orgs = hdfsGateway.listOrganizations();
+    assertThat(orgs, equalTo(Optional.of(ImmutableSet.of("org1", "org2"))));
+  }
+
+  @Test
+  public void listUsersInOrganization_userDirectoriesExist_directoryNamesReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.listDirectoryNames(ORG_USERS_PATH)).thenReturn(Arrays.asList(USER));
+    Optional<Set<String>> users = hdfsGateway.listUsersInOrganization(ORG);
+    assertThat(users, equalTo(Optional.of(ImmutableSet.of(USER))));
+  }
+
+  @Test
+  public void hasOrganization_appDirectoryExists_trueReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.exists(APP_PATH)).thenReturn(true);
+    assertThat(hdfsGateway.hasOrganization(ORG), equalTo(Optional.of(true)));
+  }
+
+  @Test
+  public void hasOrganization_onlyOrgDirectoryExists_unknownReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.exists(APP_PATH)).thenReturn(false);
+    when(hdfsClient.exists(ORG_PATH)).thenReturn(true);
+    assertThat(hdfsGateway.hasOrganization(ORG), equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void hasOrganization_noOrgDirectory_falseReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.exists(APP_PATH)).thenReturn(false);
+    when(hdfsClient.exists(ORG_PATH)).thenReturn(false);
+    assertThat(hdfsGateway.hasOrganization(ORG), equalTo(Optional.of(false)));
+  }
+
+  @Test
+  public void hasUserInOrganization_userAndHomeDirectoriesExist_trueReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.exists(USER_PATH)).thenReturn(true);
+    when(hdfsClient.exists(USER_HOME_PATH)).thenReturn(true);
+    assertThat(hdfsGateway.hasUserInOrganization(USER, ORG), equalTo(Optional.of(true)));
+  }
+
+  @Test
+  public void hasUserInOrganization_noUserDirectory_falseReturned()
+      throws AuthorizableGatewayException, IOException {
+    when(hdfsClient.exists(USER_PATH)).thenReturn(false);
+    assertThat(hdfsGateway.hasUserInOrganization(USER, ORG), equalTo(Optional.of(false)));
+  }
+
+  @Test(expected = AuthorizableGatewayException.class)
+  public void listOrganizations_hdfsClientThrowIOException_throwAuthorizableGatewayException()
+      throws AuthorizableGatewayException, IOException {
+    doThrow(new IOException()).when(hdfsClient).listDirectoryNames(ORGS_PATH);
+    hdfsGateway.listOrganizations();
+  }
+
+  @Test
+  public void planAddOrganization_wholeTree_everyNameNodeCallPlanned() {
+    List<PlannedCall> plan = hdfsGateway.planAddOrganization(ORG).get();
+
+    // getFileStatus, mkdirs, setPermission and setOwner of 8 directories, modifyAclEntries of
+    // 3 of them, getFileStatus of the temporary marker directory and its rename
+    assertThat(plan.size(), equalTo(37));
+    assertThat(plan, hasItem(PlannedCall.of("mkdirs", APP_PATH + "._CREATING_")));
+    assertThat(plan,
+        hasItem(PlannedCall.of("rename", APP_PATH + "._CREATING_", APP_PATH.toString())));
+    assertThat(plan, hasItem(PlannedCall.of("setOwner", ORG_PATH.toString(),
+        "test_org_admin:test_org")));
+    verifyZeroInteractions(fileSystemProvider, hdfsClient);
+  }
+
+  @Test
+  public void planAddUserToOrg_userAndHomeDirectories_callsPlanned() {
+    List<PlannedCall> plan = hdfsGateway.planAddUserToOrg(USER, ORG).get();
+
+    assertThat(plan.size(), equalTo(8));
+    assertThat(plan, hasItem(PlannedCall.of("mkdirs", USER_HOME_PATH.toString())));
+    verifyZeroInteractions(fileSystemProvider, hdfsClient);
+  }
+
+  @Test
+  public void planRemoveOrganization_orgDirectory_recursiveDeletePlanned() {
+    List<PlannedCall> plan = hdfsGateway.planRemoveOrganization(ORG).get();
+
+    assertThat(plan, equalTo(Arrays.asList(PlannedCall.of("exists", ORG_PATH.toString()),
+        PlannedCall.of("delete", ORG_PATH.toString(), "recursive"))));
+  }
+
+  @Test
+  public void removeOrganization_trashEnabled_orgDirectoryMovedToTrash()
+      throws AuthorizableGatewayException, IOException {
+    enableTrash("/org-trash");
+    try {
+      hdfsGateway.removeOrganization(ORG);
+    } finally {
+      hdfsGateway.shutdown();
+    }
+
+    verify(hdfsClient).moveDirectory(eq(ORG_PATH), any(Path.class), eq(userAllOnly));
+    verify(hdfsClient, never()).deleteDirectory(ORG_PATH);
+  }
+
+  @Test
+  public void planRemoveOrganization_trashEnabled_renamePlanned() {
+    enableTrash("/org-trash");
+    List<PlannedCall> plan;
+    try {
+      plan = hdfsGateway.planRemoveOrganization(ORG).get();
+    } finally {
+      hdfsGateway.shutdown();
+    }
+
+    assertThat(plan, equalTo(Arrays.asList(PlannedCall.of("exists", ORG_PATH.toString()),
+        PlannedCall.of("mkdirs", "/org-trash"),
+        PlannedCall.of("rename", ORG_PATH.toString(), "/org-trash"))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void startTrash_trashUnderOrgsDirectory_exceptionThrown() {
+    enableTrash("/org/trash");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void startTrash_trashSameAsOrgsDirectory_exceptionThrown() {
+    enableTrash("/org");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void startTrash_trashContainingOrgsDirectory_exceptionThrown() {
+    enableTrash("/");
+  }
+
+  private void enableTrash(String trashPath) {
+    when(config.isTrashEnabled()).thenReturn(true);
+    when(config.getTrashPath()).thenReturn(trashPath);
+    when(config.getPurgeRate()).thenReturn(1000.0);
+    when(config.getPurgeInterval()).thenReturn(3600L);
+    hdfsGateway.startTrash();
+  }
+
+  private List<AclEntry> getDefaultAcl(FsAction groupAction, FsAction techUserAction) {
+    return HdfsAclBuilder.newInstanceWithDefaultEntries(groupAction)
+        .withUsersAclEntry(ImmutableMap.of("test_arcadia", FsAction.EXECUTE, "test_hive",
+            FsAction.EXECUTE, "test_vcap", FsAction.EXECUTE))
+        .withUserAclEntry("test_cf", techUserAction)
+        .withGroupAclEntry(SYS_GROUP, FsAction.EXECUTE).build();
+  }
 }
@@ -0,0 +1,171 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.hasItem;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.fs.permission.AclEntry;
+import org.apache.hadoop.fs.permission.AclEntryScope;
+import org.apache.hadoop.fs.permission.AclEntryType;
+import org.apache.hadoop.fs.permission.FsAction;
+import org.apache.hadoop.fs.permission.FsPermission;
+import org.junit.Before;
+import org.junit.Test;
+import org.trustedanalytics.auth.gateway.hdfs.DirectoryTree.Directory;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties;
+import org.trustedanalytics.auth.gateway.hdfs.config.HdfsLayoutProperties.DirectoryProperties;
+
+public class OrganizationLayoutTest {
+
+  private static final Path ORG_PATH = new Path("/org/test_org");
+
+  private Map<String, String> variables;
+
+  private HdfsLayoutProperties properties;
+
+  @Before
+  public void init() {
+    variables = new HashMap<>();
+    variables.put("hiveUser", "test_hive");
+    variables.put("arcadiaUser", "test_arcadia");
+    variables.put("vcapUser", "test_vcap");
+    variables.put("technicalUser", "test_cf");
+    properties = new HdfsLayoutProperties();
+  }
+
+  @Test
+  public void resolve_defaultLayout_organizationTreeInFourLevels() {
+    List<List<Directory>> levels =
+        OrganizationLayout.compile(properties, variables).resolve(ORG_PATH, "test_org")
+            .getLevels();
+
+    assertThat(levels.size(), equalTo(4));
+    assertThat(levels.get(0).get(0).getPath(), equalTo(ORG_PATH));
+    assertThat(levels.get(0).get(0).getUser(), equalTo("test_org_admin"));
+    assertThat(levels.get(0).get(0).getAclEntries(), hasItem(new AclEntry.Builder()
+        .setScope(AclEntryScope.ACCESS).setType(AclEntryType.GROUP).setName("test_org_sys")
+        .setPermission(FsAction.EXECUTE).build()));
+    assertThat(levels.get(1).size(), equalTo(5));
+    assertThat(levels.get(2).get(0).getPath(), equalTo(new Path(ORG_PATH, "brokers/userspace")));
+    assertThat(levels.get(3).get(0).getPath(), equalTo(new Path(ORG_PATH, "apps")));
+  }
+
+  @Test
+  public void resolve_directoryAdded_createdWithItsParent() {
+    properties.setDirectories(Arrays.asList(directory("", "710", null),
+        directory("spark-events", "1777", null), directory("apps", "710", null)));
+    properties.getDirectories().get(2).setMarker(true);
+
+    List<List<Directory>> levels =
+        OrganizationLayout.compile(properties, variables).resolve(ORG_PATH, "test_org")
+            .getLevels();
+
+    assertThat(levels.size(), equalTo(3));
+    assertThat(levels.get(1).get(0).getPath(), equalTo(new Path(ORG_PATH, "spark-events")));
+    assertThat(levels.get(1).get(0).getPermission(), equalTo(new FsPermission((short) 01777)));
+  }
+
+  @Test
+  public void getMarkerPath_defaultLayout_appsDirectoryReturned() {
+    assertThat(OrganizationLayout.compile(properties, variables).getMarkerPath(ORG_PATH,
+        "test_org"), equalTo(new Path(ORG_PATH, "apps")));
+  }
+
+  @Test
+  public void resolveAcl_noOrganizationEntries_sharedListReturned() {
+    OrganizationLayout.AclTemplate acl = OrganizationLayout.AclTemplate
+        .compile(Arrays.asList("group::--x", "user:{hiveUser}:--x"), variables);
+
+    assertThat(acl.resolve("test_org"), sameInstance(acl.resolve("other_org")));
+  }
+
+  @Test
+  public void resolveAcl_organizationEntry_appendedToFixedEntries() {
+    List<AclEntry> acl = OrganizationLayout.AclTemplate
+        .compile(Arrays.asList("group:{org}_sys:--x", "group::--x"), variables)
+        .resolve("test_org");
+
+    assertThat(acl.size(), equalTo(2));
+    assertThat(acl.get(0).getName(), nullValue());
+    assertThat(acl.get(1).getName(), equalTo("test_org_sys"));
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void resolveAcl_organizationEntry_immutableListReturned() {
+    List<AclEntry> acl = OrganizationLayout.AclTemplate
+        .compile(Arrays.asList("group::--x", "group:{org}_sys:--x"), variables)
+        .resolve("test_org");
+
+    acl.add(acl.get(0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compile_unknownPlaceholder_exceptionThrown() {
+    properties.setDirectories(Arrays.asList(directory("", "710", null),
+        directory("{space}", "710", null)));
+    properties.getDirectories().get(1).setMarker(true);
+
+    OrganizationLayout.compile(properties, variables);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compile_noMarker_exceptionThrown() {
+    properties.setDirectories(Arrays.asList(directory("", "710", null)));
+
+    OrganizationLayout.compile(properties, variables);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compile_pathOutsideOrganization_exceptionThrown() {
+    properties.setDirectories(Arrays.asList(directory("", "710", null),
+        directory("../shared", "710", null)));
+    properties.getDirectories().get(1).setMarker(true);
+
+    OrganizationLayout.compile(properties, variables);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compile_permissionNotOctal_exceptionThrown() {
+    properties.setDirectories(Arrays.asList(directory("", "rwx", null)));
+    properties.getDirectories().get(0).setMarker(true);
+
+    OrganizationLayout.compile(properties, variables);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void compile_aclNotDefined_exceptionThrown() {
+    properties.setDirectories(Arrays.asList(directory("", "710", "missing")));
+    properties.getDirectories().get(0).setMarker(true);
+
+    OrganizationLayout.compile(properties, variables);
+  }
+
+  private DirectoryProperties directory(String path, String permission, String acl) {
+    DirectoryProperties directory = new DirectoryProperties();
+    directory.setPath(path);
+    directory.setPermission(permission);
+    directory.setAcl(acl);
+    return directory;
+  }
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.auth.gateway.hdfs.config.FileSystemProvider;
+
+import com.codahale.metrics.MetricRegistry;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OrganizationTrashTest {
+
+  private static final Path TRASH_PATH = new Path("/org-trash");
+
+  private static final Path TRASHED_ORG_PATH = new Path("/org-trash/test_org-1");
+
+  private static final Path TRASHED_USERS_PATH = new Path("/org-trash/test_org-1/user");
+
+  @Mock
+  private FileSystemProvider fileSystemProvider;
+
+  @Mock
+  private FileSystem fileSystem;
+
+  private MetricRegistry metricRegistry;
+
+  private OrganizationTrash trash;
+
+  @Before
+  public void init() throws IOException {
+    when(fileSystemProvider.getFileSystem()).thenReturn(fileSystem);
+    metricRegistry = new MetricRegistry();
+    trash = new OrganizationTrash(TRASH_PATH, 1000, fileSystemProvider, metricRegistry);
+  }
+
+  @Test
+  public void purge_trashedOrganization_subdirectoriesDeletedFirst() throws IOException {
+    when(fileSystem.listStatus(TRASH_PATH))
+        .thenReturn(new FileStatus[] {directory(TRASHED_ORG_PATH)});
+    when(fileSystem.listStatus(TRASHED_ORG_PATH)).thenReturn(new FileStatus[] {
+        directory(TRASHED_USERS_PATH), file(new Path(TRASHED_ORG_PATH, "data.csv"))});
+    when(fileSystem.listStatus(TRASHED_USERS_PATH)).thenReturn(new FileStatus[0]);
+
+    trash.purge();
+
+    InOrder deletes = inOrder(fileSystem);
+    deletes.verify(fileSystem).delete(TRASHED_USERS_PATH, true);
+    deletes.verify(fileSystem).delete(TRASHED_ORG_PATH, true);
+    assertThat(metricRegistry.counter("hdfs.trash.deleted").getCount(), equalTo(2L));
+    assertThat(metricRegistry.counter("hdfs.trash.purged").getCount(), equalTo(1L));
+    assertThat((Integer) metricRegistry.getGauges().get("hdfs.trash.pending").getValue(),
+        equalTo(0));
+  }
+
+  @Test
+  public void purge_listingFailed_failureCounted() throws IOException {
+    when(fileSystem.listStatus(TRASH_PATH)).thenThrow(new IOException());
+
+    trash.purge();
+
+    assertThat(metricRegistry.counter("hdfs.trash.failures").getCount(), equalTo(1L));
+    assertThat(metricRegistry.counter("hdfs.trash.purged").getCount(), equalTo(0L));
+  }
+
+  private static FileStatus directory(Path path) {
+    return new FileStatus(0, true, 0, 0, 0, path);
+  }
+
+  private static FileStatus file(Path path) {
+    return new FileStatus(0, false, 0, 0, 0, path);
+  }
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) 2015 Intel Corporation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.trustedanalytics.auth.gateway.hdfs.config;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.LocalFileSystem;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.runners.MockitoJUnitRunner;
+import org.trustedanalytics.auth.gateway.hdfs.kerberos.KerberosProperties;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FileSystemProviderTest {
+
+  @Mock
+  private KerberosProperties kerberosProperties;
+
+  @Mock
+  private ExternalConfiguration externalConfiguration;
+
+  @Spy
+  private Configuration configuration = new Configuration(false);
+
+  @InjectMocks
+  private FileSystemProvider fileSystemProvider;
+
+  @Before
+  public void init() {
+    configuration.set("fs.defaultFS", "file:///");
+    configuration.set("fs.file.impl", TrackedFileSystem.class.getName());
+  }
+
+  @After
+  public void cleanUp() {
+    fileSystemProvider.close();
+  }
+
+  @Test
+  public void getFileSystem_calledTwice_sameInstanceReturned() throws IOException {
+    FileSystem fileSystem = fileSystemProvider.getFileSystem();
+
+    assertThat(fileSystemProvider.getFileSystem(), sameInstance(fileSystem));
+  }
+
+  @Test
+  public void init_fileSystemCreated_sameInstanceReturnedLater() throws IOException {
+    fileSystemProvider.init();
+    FileSystem fileSystem = fileSystemProvider.getFileSystem();
+
+    fileSystemProvider.init();
+
+    assertThat(fileSystemProvider.getFileSystem(), sameInstance(fileSystem));
+  }
+
+  @Test
+  public void relogin_fileSystemCreated_fileSystemKeptOpen() throws IOException {
+    FileSystem fileSystem = fileSystemProvider.getFileSystem();
+
+    fileSystemProvider.relogin();
+
+    assertThat(fileSystemProvider.getFileSystem(), sameInstance(fileSystem));
+    assertThat(isClosed(fileSystem), equalTo(false));
+  }
+
+  @Test
+  public void close_fileSystemCreated_closedAndNewInstanceCreatedOnNextCall()
+      throws IOException {
+    FileSystem fileSystem = fileSystemProvider.getFileSystem();
+
+    fileSystemProvider.close();
+
+    assertThat(isClosed(fileSystem), equalTo(true));
+    assertThat(fileSystemProvider.getFileSystem(), not(sameInstance(fileSystem)));
+  }
+
+  private static boolean isClosed(FileSystem fileSystem) {
+    return ((TrackedFileSystem) fileSystem).closed;
+  }
+
+  public static class TrackedFileSystem extends LocalFileSystem {
+
+    private volatile boolean closed;
+
+    @Override
+    public void close() throws IOException {
+      closed = true;
+      super.close();
+    }
+  }
+}
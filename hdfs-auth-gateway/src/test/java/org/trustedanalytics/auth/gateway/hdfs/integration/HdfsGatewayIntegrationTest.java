@@ -37,6 +37,9 @@ import org.trustedanalytics.auth.gateway.hdfs.config.FileSystemProvider;
 import org.trustedanalytics.auth.gateway.hdfs.integration.config.LocalConfiguration;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
 
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricRegistry;
+
 @RunWith(SpringJUnit4ClassRunner.class)
 @ActiveProfiles({"test", "hdfs-auth-gateway"})
 @SpringApplicationConfiguration(classes = {TestIntegrationApplication.class,
@@ -49,6 +52,9 @@ public class HdfsGatewayIntegrationTest {
   @Autowired
   private FileSystemProvider fileSystemProvider;
 
+  @Autowired
+  private MetricRegistry metricRegistry;
+
   private FileSystem fileSystem;
 
   private FsPermission userPermission;
@@ -118,6 +124,20 @@ public class HdfsGatewayIntegrationTest {
     checkIfDirectoryExistsWithPermissions(TEST_ORG_PATH, "intel_admin", groupExecPermission);
   }
 
+  @Test
+  public void createSecondOrgWithSameName_directoriesInPlace_onlyStatusAndAclRead()
+      throws AuthorizableGatewayException {
+    hdfsGateway.addOrganization("intel");
+    metricRegistry.remove("hdfs.namenode.addOrganization.calls");
+
+    hdfsGateway.addOrganization("intel");
+
+    // getFileStatus of each of the 8 directories, getAclStatus of the 3 with an ACL
+    Histogram calls = metricRegistry.histogram("hdfs.namenode.addOrganization.calls");
+    assertThat(calls.getCount(), equalTo(1L));
+    assertThat(calls.getSnapshot().getMax(), equalTo(11L));
+  }
+
   @Test
   public void createOrgWithUsers_directoryExistWithPermissionsAndOwner_createDirectories()
       throws IOException, AuthorizableGatewayException {
@@ -26,10 +26,17 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.trustedanalytics.auth.gateway.hdfs.kerberos.KerberosProperties;
 
+import com.codahale.metrics.MetricRegistry;
+
 @Configuration
 @Profile("test")
 public class LocalConfiguration {
 
+  @Bean
+  public MetricRegistry metricRegistry() {
+    return new MetricRegistry();
+  }
+
   @Bean
   public KerberosProperties getKerberosProperties() throws IOException {
     return new KerberosProperties("kdc", "krealm", "test_cf", "super", "base64");
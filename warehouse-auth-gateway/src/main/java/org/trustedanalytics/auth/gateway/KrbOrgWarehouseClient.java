@@ -21,8 +21,15 @@ import org.trustedanalytics.auth.gateway.impala.ImpalaClientFactory;
 import org.trustedanalytics.auth.gateway.sentry.SentryClientFactory;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.utils.Qualifiers;
 
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
 @Component
 @Profile(Qualifiers.KERBEROS)
 public class KrbOrgWarehouseClient implements Authorizable {
@@ -76,6 +83,43 @@ public class KrbOrgWarehouseClient implements Authorizable {
 
   }
 
+  @Override
+  public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+    String database = orgId.replace('-', '_');
+    return Optional.of(ImmutableList.of(
+        PlannedCall.of("create_sentry_role", orgId),
+        PlannedCall.of("alter_sentry_role_add_groups", orgId, orgId + "," + orgId + "_admin"),
+        PlannedCall.of("CREATE DATABASE", database),
+        PlannedCall.of("GRANT ALL ON DATABASE", database, "TO ROLE " + orgId),
+        PlannedCall.of("GRANT ALL ON URI", orgId, "TO ROLE " + orgId),
+        PlannedCall.of("INVALIDATE METADATA", "impala")));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+    return Optional.of(ImmutableList.of(PlannedCall.of("drop_sentry_role", orgId)));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
   @Override
   public String getName() {
     return WAREHOUSE;
@@ -20,8 +20,15 @@ import org.trustedanalytics.auth.gateway.hive.HiveClientFactory;
 import org.trustedanalytics.auth.gateway.impala.ImpalaClientFactory;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.utils.Qualifiers;
 
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
 
 @Component
 @Profile(Qualifiers.SIMPLE)
@@ -56,6 +63,38 @@ public class OrgWarehouseClient implements Authorizable {
   @Override
   public void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException {}
 
+  @Override
+  public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+    return Optional.of(ImmutableList.of(
+        PlannedCall.of("CREATE DATABASE", orgId.replace('-', '_')),
+        PlannedCall.of("INVALIDATE METADATA", "impala")));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
   @Override
   public String getName() {
     return WAREHOUSE;
@@ -13,8 +13,10 @@
  */
 package org.trustedanalytics.auth.gateway.yarn;
 
+import java.util.List;
 import java.util.Optional;
 
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.yarn.cloudera.ConfigurationException;
 
 public interface YarnApiClient {
@@ -23,4 +25,13 @@ public interface YarnApiClient {
 
   Optional<PoolConfiguration> deleteQueue(String queue) throws ConfigurationException;
 
+  List<String> listQueues() throws ConfigurationException;
+
+  /**
+   * @return requests {@link #addQueue(String)} sends when the queue does not exist yet
+   */
+  List<PlannedCall> planAddQueue(String queue);
+
+  List<PlannedCall> planDeleteQueue(String queue);
+
 }
@@ -13,6 +13,12 @@
  */
 package org.trustedanalytics.auth.gateway.yarn;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -20,6 +26,7 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
 @Profile("yarn-auth-gateway")
 @Configuration
@@ -29,6 +36,8 @@ public class YarnGateway implements Authorizable {
 
   private static final String NAME = "yarn";
 
+  private static final String DEFAULT_QUEUE = "default";
+
   @Autowired
   private YarnApiClient yarnApiClient;
 
@@ -65,6 +74,46 @@ public class YarnGateway implements Authorizable {
   @Override
   public void removeUserFromOrg(String userId, String orgId) throws AuthorizableGatewayException {}
 
+  @Override
+  public Optional<Set<String>> listOrganizations() throws AuthorizableGatewayException {
+    try {
+      return Optional.of(yarnApiClient.listQueues().stream()
+          .filter(queue -> !DEFAULT_QUEUE.equals(queue)).collect(Collectors.toSet()));
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException("Can't list organizations", e);
+    }
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+    return Optional.of(yarnApiClient.planAddQueue(orgId));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+    return Optional.of(yarnApiClient.planDeleteQueue(orgId));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+    return Optional.of(Collections.emptyList());
+  }
+
   @Override
   public String getName() {
     return NAME;
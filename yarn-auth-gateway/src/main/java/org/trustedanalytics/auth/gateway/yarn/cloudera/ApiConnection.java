@@ -33,12 +33,14 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.yarn.cloudera.client.api.ApiEndpoints;
 import org.trustedanalytics.auth.gateway.yarn.cloudera.client.api.entity.*;
 import org.trustedanalytics.auth.gateway.yarn.cloudera.config.ClouderaConfiguration;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 
 @Profile("yarn-auth-gateway")
 @Configuration
@@ -85,6 +87,25 @@ public class ApiConnection {
     updateConfigurationWithRetries(command, restTemplate, name);
   }
 
+  /**
+   * @return requests of {@link #getConfiguration()}
+   */
+  public List<PlannedCall> planGetConfiguration() {
+    return ImmutableList.of(PlannedCall.of("GET", ApiEndpoints.CLUSTERS),
+        PlannedCall.of("GET", ApiEndpoints.CONFIGURATION, YARN_SCHEDULED_ALLOCATIONS));
+  }
+
+  /**
+   * @return requests of {@link #updateConfiguration(String)}, with the command status polled
+   * once, though it is polled until the pools refresh finishes
+   */
+  public List<PlannedCall> planUpdateConfiguration(String change) {
+    return ImmutableList.of(PlannedCall.of("GET", ApiEndpoints.CLUSTERS),
+        PlannedCall.of("PUT", ApiEndpoints.CONFIGURATION, change),
+        PlannedCall.of("POST", ApiEndpoints.POOLS_REFRESH),
+        PlannedCall.of("GET", ApiEndpoints.COMMANDS));
+  }
+
   private RestTemplate createRestTemplate() {
     BasicCredentialsProvider credentialsProvider = new BasicCredentialsProvider();
     credentialsProvider.setCredentials(AuthScope.ANY,
@@ -17,12 +17,14 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Profile;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.yarn.PoolConfiguration;
 import org.trustedanalytics.auth.gateway.yarn.YarnApiClient;
 import org.trustedanalytics.auth.gateway.yarn.cloudera.ApiConnection;
@@ -33,6 +35,7 @@ import org.trustedanalytics.auth.gateway.yarn.cloudera.queues.SchedulablePropert
 
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableList;
 
 @Profile("yarn-auth-gateway")
 @Configuration
@@ -90,6 +93,24 @@ public class YarnClouderaApiClient implements YarnApiClient {
     return Optional.ofNullable(newConfiguration);
   }
 
+  @Override
+  public List<String> listQueues() throws ConfigurationException {
+    return apiConnection.getConfiguration().getQueuesList().stream().map(Queue::getName)
+        .collect(Collectors.toList());
+  }
+
+  @Override
+  public List<PlannedCall> planAddQueue(String queue) {
+    return ImmutableList.<PlannedCall>builder().addAll(apiConnection.planGetConfiguration())
+        .addAll(apiConnection.planUpdateConfiguration("add queue " + queue)).build();
+  }
+
+  @Override
+  public List<PlannedCall> planDeleteQueue(String queue) {
+    return ImmutableList.<PlannedCall>builder().addAll(apiConnection.planGetConfiguration())
+        .addAll(apiConnection.planUpdateConfiguration("delete queue " + queue)).build();
+  }
+
   private String getStringRepresentation(YarnScheduledAllocations yarnScheduledAllocations)
       throws ConfigurationException {
     try {
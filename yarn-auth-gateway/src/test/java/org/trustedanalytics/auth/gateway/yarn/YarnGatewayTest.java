@@ -13,10 +13,16 @@
  */
 package org.trustedanalytics.auth.gateway.yarn;
 
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Optional;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -24,6 +30,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.yarn.cloudera.ConfigurationException;
 
 @RunWith(MockitoJUnitRunner.class)
@@ -79,4 +86,30 @@ public class YarnGatewayTest {
     yarnGateway.removeOrganization(TEST_ORG);
   }
 
+  @Test
+  public void listOrganizations_defaultQueueExists_onlyOrganizationQueuesReturned()
+      throws AuthorizableGatewayException, ConfigurationException {
+    when(yarnApiClient.listQueues()).thenReturn(Arrays.asList("default", TEST_ORG));
+    assertThat(yarnGateway.listOrganizations(),
+        equalTo(Optional.of(Collections.singleton(TEST_ORG))));
+  }
+
+  @Test(expected = AuthorizableGatewayException.class)
+  public void listOrganizations_throwConfigurationException_listingFailed()
+      throws AuthorizableGatewayException, ConfigurationException {
+    when(yarnApiClient.listQueues()).thenThrow(ConfigurationException.class);
+    yarnGateway.listOrganizations();
+  }
+
+  @Test
+  public void planAddOrganization_queueAdditionPlanned_queueNotAdded()
+      throws ConfigurationException {
+    PlannedCall refresh = PlannedCall.of("POST", "/poolsRefresh");
+    when(yarnApiClient.planAddQueue(TEST_ORG)).thenReturn(Collections.singletonList(refresh));
+
+    assertThat(yarnGateway.planAddOrganization(TEST_ORG),
+        equalTo(Optional.of(Collections.singletonList(refresh))));
+    verify(yarnApiClient, never()).addQueue(TEST_ORG);
+  }
+
 }
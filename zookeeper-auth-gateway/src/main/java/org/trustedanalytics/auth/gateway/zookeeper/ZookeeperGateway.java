@@ -13,11 +13,20 @@
  */
 package org.trustedanalytics.auth.gateway.zookeeper;
 
+import org.apache.zookeeper.KeeperException;
 import org.trustedanalytics.auth.gateway.spi.Authorizable;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 import org.trustedanalytics.auth.gateway.zookeeper.client.ZookeeperClient;
 import org.trustedanalytics.auth.gateway.zookeeper.client.ZookeeperPermission;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
 public class ZookeeperGateway implements Authorizable {
 
   private final ZookeeperClient zkClient;
@@ -51,6 +60,16 @@ public class ZookeeperGateway implements Authorizable {
     }
   }
 
+  @Override
+  public void addUsersToOrg(Collection<String> userIds, String orgId)
+      throws AuthorizableGatewayException {
+    try {
+      zkClient.addUsersToAcl(orgId, userIds, ZookeeperPermission.CRDW);
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException(failMsg("modifying znode ACLs"), e);
+    }
+  }
+
   @Override
   public void removeOrganization(String orgId) throws AuthorizableGatewayException {
     try {
@@ -74,6 +93,91 @@ public class ZookeeperGateway implements Authorizable {
     }
   }
 
+  @Override
+  public void removeUsersFromOrg(Collection<String> userIds, String orgId)
+      throws AuthorizableGatewayException {
+    try {
+      zkClient.removeUsersFromAcl(orgId, userIds);
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException(failMsg("modifying znode ACLs"), e);
+    }
+  }
+
+  /**
+   * Znode is created together with its ACL, so its existence means the organization is complete.
+   */
+  @Override
+  public Optional<Boolean> hasOrganization(String orgId) throws AuthorizableGatewayException {
+    try {
+      return Optional.of(zkClient.znodeExists(orgId));
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException(failMsg("checking znode"), e);
+    }
+  }
+
+  @Override
+  public Optional<Boolean> hasUserInOrganization(String userId, String orgId)
+      throws AuthorizableGatewayException {
+    try {
+      return zkClient.getAclUsers(orgId).map(users -> users.contains(userId));
+    } catch (KeeperException.NoNodeException e) {
+      // writing to a missing organization fails, which should not be skipped
+      return Optional.empty();
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException(failMsg("reading znode ACLs"), e);
+    }
+  }
+
+  @Override
+  public Optional<Set<String>> listOrganizations() throws AuthorizableGatewayException {
+    try {
+      return Optional.of(zkClient.listZnodes().stream().collect(Collectors.toSet()));
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException(failMsg("listing znodes"), e);
+    }
+  }
+
+  @Override
+  public Optional<Set<String>> listUsersInOrganization(String orgId)
+      throws AuthorizableGatewayException {
+    try {
+      return zkClient.getAclUsers(orgId).map(users -> users.stream()
+          .filter(user -> !user.equals(superUser)).collect(Collectors.toSet()));
+    } catch (Exception e) {
+      throw new AuthorizableGatewayException(failMsg("reading znode ACLs"), e);
+    }
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddOrganization(String orgId) {
+    return Optional.of(zkClient.planCreateZnode(orgId, superUser, ZookeeperPermission.CRDWA));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveOrganization(String orgId) {
+    return Optional.of(zkClient.planDeleteZnode(orgId));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUserToOrg(String userId, String orgId) {
+    return Optional.of(zkClient.planAddUserToAcl(orgId, userId, ZookeeperPermission.CRDW));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUserFromOrg(String userId, String orgId) {
+    return Optional.of(zkClient.planRemoveUserFromAcl(orgId, userId));
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planAddUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
+  @Override
+  public Optional<List<PlannedCall>> planRemoveUser(String userId) {
+    return Optional.of(Collections.emptyList());
+  }
+
   private String failMsg(String failureReason) {
     return "Zookeeper auth gateway failed on " + failureReason;
   }
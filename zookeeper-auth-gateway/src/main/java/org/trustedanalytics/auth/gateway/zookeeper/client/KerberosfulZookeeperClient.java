@@ -19,12 +19,20 @@ import org.apache.zookeeper.data.ACL;
 import org.apache.zookeeper.data.Id;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
 
+import com.google.common.collect.ImmutableList;
+
+import java.util.Collection;
 import java.util.List;
+import java.util.Locale;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
 
 import static java.util.Collections.singletonList;
 import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
 
 /**
  *
@@ -73,28 +81,93 @@ public class KerberosfulZookeeperClient implements ZookeeperClient {
     }
   }
 
+  @Override
+  public boolean znodeExists(String znodePath) throws Exception {
+    return curatorClient.checkExists().forPath(pathOps.makePath(znodePath)) != null;
+  }
+
+  @Override
+  public List<String> listZnodes() throws Exception {
+    return curatorClient.getChildren().forPath(pathOps.makePath(""));
+  }
+
+  @Override
+  public Optional<Set<String>> getAclUsers(String znodePath) throws Exception {
+    List<ACL> acls = curatorClient.getACL().forPath(pathOps.makePath(znodePath));
+    return Optional.of(acls.stream().map(ACL::getId)
+        .filter(id -> Objects.equals(id.getScheme(), "sasl")).map(Id::getId).collect(toSet()));
+  }
+
   @Override
   public void addUserToAcl(String znodePath, String username, ZookeeperPermission permission)
       throws Exception {
+    addUsersToAcl(znodePath, singletonList(username), permission);
+  }
+
+  /**
+   * Reads ACL of the znode once and writes it back with a single setACL for all users.
+   */
+  @Override
+  public void addUsersToAcl(String znodePath, Collection<String> usernames,
+      ZookeeperPermission permission) throws Exception {
 
     LOGGER.info("Trying to get data for " + znodePath);
     LOGGER.info(new String(curatorClient.getData().forPath(pathOps.makePath(znodePath))));
 
     List<ACL> acls = curatorClient.getACL().forPath(pathOps.makePath(znodePath));
-    acls.add(new ACL(permission.getPerms(), new Id("sasl", username)));
+    for (String username : usernames) {
+      acls.add(new ACL(permission.getPerms(), new Id("sasl", username)));
+    }
     LOGGER.info("Trying to set '" + acls + "' for " + znodePath);
     curatorClient.setACL().withACL(acls).forPath(pathOps.makePath(znodePath));
   }
 
   @Override
   public void removeUserFromAcl(String znodePath, String username) throws Exception {
+    removeUsersFromAcl(znodePath, singletonList(username));
+  }
+
+  @Override
+  public void removeUsersFromAcl(String znodePath, Collection<String> usernames)
+      throws Exception {
     List<ACL> acls = curatorClient.getACL().forPath(pathOps.makePath(znodePath));
-    acls = acls.stream().filter(acl -> notMatch(acl, username)).collect(toList());
+    acls = acls.stream().filter(acl -> notMatch(acl, usernames)).collect(toList());
     curatorClient.setACL().withACL(acls).forPath(pathOps.makePath(znodePath));
   }
 
-  private boolean notMatch(ACL acl, String username) {
-    return !(Objects.equals(acl.getId().getId(), username)
+  @Override
+  public List<PlannedCall> planCreateZnode(String znodePath, String username,
+      ZookeeperPermission permission) {
+    return ImmutableList.of(PlannedCall.of("create", pathOps.makePath(znodePath),
+        saslAcl(username, permission)));
+  }
+
+  @Override
+  public List<PlannedCall> planDeleteZnode(String znodePath) {
+    return ImmutableList.of(PlannedCall.of("delete", pathOps.makePath(znodePath)));
+  }
+
+  @Override
+  public List<PlannedCall> planAddUserToAcl(String znodePath, String username,
+      ZookeeperPermission permission) {
+    String path = pathOps.makePath(znodePath);
+    return ImmutableList.of(PlannedCall.of("getData", path), PlannedCall.of("getACL", path),
+        PlannedCall.of("setACL", path, "+" + saslAcl(username, permission)));
+  }
+
+  @Override
+  public List<PlannedCall> planRemoveUserFromAcl(String znodePath, String username) {
+    String path = pathOps.makePath(znodePath);
+    return ImmutableList.of(PlannedCall.of("getACL", path),
+        PlannedCall.of("setACL", path, "-sasl:" + username));
+  }
+
+  private static String saslAcl(String username, ZookeeperPermission permission) {
+    return "sasl:" + username + ":" + permission.name().toLowerCase(Locale.ENGLISH);
+  }
+
+  private boolean notMatch(ACL acl, Collection<String> usernames) {
+    return !(usernames.contains(acl.getId().getId())
         && Objects.equals(acl.getId().getScheme(), "sasl"));
   }
 }
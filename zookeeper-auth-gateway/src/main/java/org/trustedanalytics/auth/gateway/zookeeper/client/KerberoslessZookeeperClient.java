@@ -17,6 +17,11 @@ import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
 
 public class KerberoslessZookeeperClient implements ZookeeperClient {
 
@@ -52,6 +57,38 @@ public class KerberoslessZookeeperClient implements ZookeeperClient {
     }
   }
 
+  @Override
+  public boolean znodeExists(String znodePath) throws Exception {
+    return curatorClient.checkExists().forPath(pathOps.makePath(znodePath)) != null;
+  }
+
+  @Override
+  public List<String> listZnodes() throws Exception {
+    return curatorClient.getChildren().forPath(pathOps.makePath(""));
+  }
+
+  @Override
+  public List<PlannedCall> planCreateZnode(String znodePath, String username,
+      ZookeeperPermission permission) {
+    return ImmutableList.of(PlannedCall.of("create", pathOps.makePath(znodePath)));
+  }
+
+  @Override
+  public List<PlannedCall> planDeleteZnode(String znodePath) {
+    return ImmutableList.of(PlannedCall.of("delete", pathOps.makePath(znodePath)));
+  }
+
+  @Override
+  public List<PlannedCall> planAddUserToAcl(String znodePath, String username,
+      ZookeeperPermission permission) {
+    return ImmutableList.of();
+  }
+
+  @Override
+  public List<PlannedCall> planRemoveUserFromAcl(String znodePath, String username) {
+    return ImmutableList.of();
+  }
+
   @Override
   public void addUserToAcl(String znodePath, String username, ZookeeperPermission permission)
       throws Exception {
@@ -13,6 +13,13 @@
  */
 package org.trustedanalytics.auth.gateway.zookeeper.client;
 
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
 public interface ZookeeperClient {
   void createZnode(String znodePath, String username, ZookeeperPermission permission)
       throws Exception;
@@ -23,4 +30,46 @@ public interface ZookeeperClient {
       throws Exception;
 
   void removeUserFromAcl(String znodePath, String username) throws Exception;
+
+  boolean znodeExists(String znodePath) throws Exception;
+
+  /**
+   * @return requests {@link #createZnode(String, String, ZookeeperPermission)} sends when the
+   * znode does not exist yet
+   */
+  List<PlannedCall> planCreateZnode(String znodePath, String username,
+      ZookeeperPermission permission);
+
+  List<PlannedCall> planDeleteZnode(String znodePath);
+
+  List<PlannedCall> planAddUserToAcl(String znodePath, String username,
+      ZookeeperPermission permission);
+
+  List<PlannedCall> planRemoveUserFromAcl(String znodePath, String username);
+
+  /**
+   * @return names of znodes directly under the root node
+   */
+  List<String> listZnodes() throws Exception;
+
+  /**
+   * @return users present in ACL of the znode, or empty if this client does not manage ACLs
+   */
+  default Optional<Set<String>> getAclUsers(String znodePath) throws Exception {
+    return Optional.empty();
+  }
+
+  default void addUsersToAcl(String znodePath, Collection<String> usernames,
+      ZookeeperPermission permission) throws Exception {
+    for (String username : usernames) {
+      addUserToAcl(znodePath, username, permission);
+    }
+  }
+
+  default void removeUsersFromAcl(String znodePath, Collection<String> usernames)
+      throws Exception {
+    for (String username : usernames) {
+      removeUserFromAcl(znodePath, username);
+    }
+  }
 }
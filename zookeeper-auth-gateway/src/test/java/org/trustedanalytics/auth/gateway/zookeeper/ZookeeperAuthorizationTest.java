@@ -14,6 +14,7 @@
 
 package org.trustedanalytics.auth.gateway.zookeeper;
 
+import org.apache.curator.framework.CuratorFramework;
 import org.apache.zookeeper.KeeperException;
 import org.junit.Before;
 import org.junit.Test;
@@ -21,19 +22,29 @@ import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
 import org.trustedanalytics.auth.gateway.spi.AuthorizableGatewayException;
+import org.trustedanalytics.auth.gateway.spi.PlannedCall;
+import org.trustedanalytics.auth.gateway.zookeeper.client.KerberosfulZookeeperClient;
 import org.trustedanalytics.auth.gateway.zookeeper.client.ZookeeperClient;
 import org.trustedanalytics.auth.gateway.zookeeper.client.ZookeeperPermission;
 
+import com.google.common.collect.ImmutableSet;
+
+import java.util.Arrays;
+import java.util.Optional;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyZeroInteractions;
+import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ZookeeperAuthorizationTest {
 
   private static final String ADMIN_USER = "adminUsername";
   private static final String USER = "user";
+  private static final String OTHER_USER = "other_user";
   private static final String ORG_ID = "aa549477-2899-4889-b8a2-04930909ad67";
   private static final String ORG_NAME = "org";
 
@@ -42,6 +53,9 @@ public class ZookeeperAuthorizationTest {
   @Mock
   private ZookeeperClient zkClient;
 
+  @Mock
+  private CuratorFramework curatorClient;
+
   @Before
   public void setUp() throws Exception {
     zookeeperGateway = new ZookeeperGateway(zkClient, ADMIN_USER);
@@ -132,8 +146,92 @@ public class ZookeeperAuthorizationTest {
     verify(zkClient).removeUserFromAcl(ORG_ID, USER);
   }
 
+  @Test
+  public void addUsersToOrg_orgExists_aclsAddedInOneCall() throws Exception {
+    zookeeperGateway.addUsersToOrg(Arrays.asList(USER, OTHER_USER), ORG_ID);
+    verify(zkClient).addUsersToAcl(ORG_ID, Arrays.asList(USER, OTHER_USER),
+        ZookeeperPermission.CRDW);
+  }
+
+  @Test(expected = AuthorizableGatewayException.class)
+  public void addUsersToOrg_zkFails_exceptionRethrown() throws Exception {
+    doThrow(new Exception()).when(zkClient).addUsersToAcl(ORG_ID, Arrays.asList(USER, OTHER_USER),
+        ZookeeperPermission.CRDW);
+    zookeeperGateway.addUsersToOrg(Arrays.asList(USER, OTHER_USER), ORG_ID);
+  }
+
+  @Test
+  public void removeUsersFromOrg_orgExists_aclsRevokedInOneCall() throws Exception {
+    zookeeperGateway.removeUsersFromOrg(Arrays.asList(USER, OTHER_USER), ORG_ID);
+    verify(zkClient).removeUsersFromAcl(ORG_ID, Arrays.asList(USER, OTHER_USER));
+  }
+
+  @Test
+  public void listOrganizations_znodesExist_znodeNamesReturned() throws Exception {
+    when(zkClient.listZnodes()).thenReturn(Arrays.asList(ORG_ID, ORG_NAME));
+    assertThat(zookeeperGateway.listOrganizations(),
+        equalTo(Optional.of(ImmutableSet.of(ORG_ID, ORG_NAME))));
+  }
+
+  @Test(expected = AuthorizableGatewayException.class)
+  public void listOrganizations_zkFails_exceptionRethrown() throws Exception {
+    doThrow(new Exception()).when(zkClient).listZnodes();
+    zookeeperGateway.listOrganizations();
+  }
+
+  @Test
+  public void listUsersInOrganization_aclContainsAdmin_onlyUsersReturned() throws Exception {
+    when(zkClient.getAclUsers(ORG_ID))
+        .thenReturn(Optional.of(ImmutableSet.of(ADMIN_USER, USER, OTHER_USER)));
+    assertThat(zookeeperGateway.listUsersInOrganization(ORG_ID),
+        equalTo(Optional.of(ImmutableSet.of(USER, OTHER_USER))));
+  }
+
+  @Test
+  public void listUsersInOrganization_aclsNotManaged_emptyReturned() throws Exception {
+    when(zkClient.getAclUsers(ORG_ID)).thenReturn(Optional.empty());
+    assertThat(zookeeperGateway.listUsersInOrganization(ORG_ID), equalTo(Optional.empty()));
+  }
+
+  @Test
+  public void hasOrganization_znodeExists_trueReturned() throws Exception {
+    when(zkClient.znodeExists(ORG_ID)).thenReturn(true);
+    assertThat(zookeeperGateway.hasOrganization(ORG_ID), equalTo(Optional.of(true)));
+  }
+
+  @Test
+  public void hasUserInOrganization_userInAcl_trueReturned() throws Exception {
+    when(zkClient.getAclUsers(ORG_ID)).thenReturn(Optional.of(ImmutableSet.of(ADMIN_USER, USER)));
+    assertThat(zookeeperGateway.hasUserInOrganization(USER, ORG_ID), equalTo(Optional.of(true)));
+    assertThat(zookeeperGateway.hasUserInOrganization(OTHER_USER, ORG_ID),
+        equalTo(Optional.of(false)));
+  }
+
+  @Test
+  public void hasUserInOrganization_orgNotExist_unknownReturned() throws Exception {
+    when(zkClient.getAclUsers(ORG_ID)).thenThrow(new KeeperException.NoNodeException());
+    assertThat(zookeeperGateway.hasUserInOrganization(USER, ORG_ID), equalTo(Optional.empty()));
+  }
+
   @Test
   public void getName_always_returnsZookeeper() throws Exception {
     assertThat(zookeeperGateway.getName(), equalTo("zookeeper"));
   }
+
+  @Test
+  public void planAddOrganization_kerberos_znodeWithAdminAclPlanned() throws Exception {
+    ZookeeperGateway gateway = new ZookeeperGateway(
+        new KerberosfulZookeeperClient(curatorClient, "/orgs"), ADMIN_USER);
+    assertThat(gateway.planAddOrganization(ORG_ID), equalTo(Optional.of(Arrays.asList(
+        PlannedCall.of("create", "/orgs/" + ORG_ID, "sasl:adminUsername:crdwa")))));
+    verifyZeroInteractions(curatorClient);
+  }
+
+  @Test
+  public void planAddUserToOrg_kerberos_aclReadAndWritePlanned() throws Exception {
+    ZookeeperGateway gateway = new ZookeeperGateway(
+        new KerberosfulZookeeperClient(curatorClient, "/orgs"), ADMIN_USER);
+    assertThat(gateway.planAddUserToOrg(USER, ORG_ID).get().size(), equalTo(3));
+    verifyZeroInteractions(curatorClient);
+  }
 }